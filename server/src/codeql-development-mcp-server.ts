@@ -22,6 +22,7 @@ import { registerAuditTools } from './tools/audit-tools';
 import { registerCacheTools } from './tools/cache-tools';
 import { registerSarifTools } from './tools/sarif-tools';
 import { sessionDataManager } from './lib/session-data-manager';
+import { closeDiscoveryCatalogs, primeDiscoveryCatalogs } from './lib/discovery-catalog';
 import { patchValidateToolInput } from './lib/tool-validation';
 import { resolveCodeQLBinary, validateCodeQLBinaryReachable } from './lib/cli-executor';
 import { initServerManager, shutdownServerManager } from './lib/server-manager';
@@ -107,6 +108,17 @@ export async function startServer(mode: 'stdio' | 'http' = 'stdio'): Promise<Mcp
     manager.warmUpCLIServer(),
   ]).catch(() => { /* individual errors logged inside each warm-up method */ });
 
+  // Trim the shared compilation/evaluation cache to its byte budget in the
+  // background, once this session holds its lease; generations in use by
+  // running servers are kept.
+  manager.acquireSharedCache().then(() => manager.getSharedCache().enforceBudget()).catch((error) => {
+    logger.warn('Shared CodeQL cache eviction failed:', error);
+  });
+
+  // Catalog the configured database and query/MRVA run directories in the
+  // background so that the first list_* calls are answered from memory.
+  primeDiscoveryCatalogs();
+
   if (mode === 'stdio') {
     const transport = new StdioServerTransport();
     await server.connect(transport);
@@ -170,6 +182,7 @@ function setupGracefulShutdown(server: McpServer): void {
     try {
       // Shut down all CodeQL background servers first
       await shutdownServerManager();
+      closeDiscoveryCatalogs();
       await server.close();
       logger.info('McpServer closed gracefully');
       process.exit(0);
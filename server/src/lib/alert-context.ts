@@ -0,0 +1,339 @@
+/**
+ * Batch extraction of source context for SARIF alerts.
+ *
+ * Triage workflows need the code around every primary location and
+ * code-flow step of many alerts.  Reading them one `read_database_source`
+ * call at a time repeats the archive lookup and inflates the same source
+ * file once per location.  Here the locations of a page of alerts are
+ * grouped by file, their context windows are merged where they overlap,
+ * and each file is read once for all of its windows.
+ */
+
+import { existsSync } from 'fs';
+import { readdir, readFile } from 'fs/promises';
+import { join, resolve } from 'path';
+import { fileURLToPath } from 'url';
+import type { SarifDocument, SarifLocation } from '../types/sarif';
+import { getSourceArchive, LineRangeCollector, SourcePathIndex } from './source-archive';
+
+/** Source files read concurrently. */
+const FILE_CONCURRENCY = 8;
+
+/** A location of an alert that a snippet covers. */
+export interface AlertLocationRef {
+  /** Index of the alert across all runs of the SARIF. */
+  alert: number;
+  endLine: number;
+  kind: 'primary' | 'flow';
+  message?: string;
+  startLine: number;
+  /** Code flow, thread flow and step index of a flow location. */
+  step?: [number, number, number];
+}
+
+/** Merged context lines around one or more locations in a file. */
+export interface AlertSnippet {
+  endLine: number;
+  locations: AlertLocationRef[];
+  startLine: number;
+  text: string;
+}
+
+/** The snippets of one source file. */
+export interface AlertContextFile {
+  /** Matching source archive entry or src/ path. */
+  entryPath?: string;
+  error?: string;
+  /** Path of the file as given (and base-resolved) by the SARIF. */
+  path: string;
+  snippets: AlertSnippet[];
+  totalLines?: number;
+}
+
+/** Identification of an alert on the page. */
+export interface AlertSummary {
+  index: number;
+  locations: number;
+  message: string;
+  ruleId: string;
+}
+
+/** One page of alert context. */
+export interface AlertContextPage {
+  alerts: AlertSummary[];
+  files: AlertContextFile[];
+  nextCursor?: number;
+  sourceType: 'src.zip' | 'src/';
+  totalAlerts: number;
+  /** Locations of the page without a file or line. */
+  unlocatedLocations: number;
+}
+
+export interface AlertContextOptions {
+  /** Lines of context before and after each location. */
+  contextLines: number;
+  /** Index of the first alert of the page. */
+  cursor: number;
+  /** Include the steps of code flows, not only primary locations. */
+  includeCodeFlows: boolean;
+  /** Alerts per page. */
+  maxAlerts: number;
+}
+
+/** Source files of a database, from its src.zip or src/ directory. */
+interface DatabaseSource {
+  readSpans(
+    entryPath: string,
+    spans: ReadonlyArray<{ endLine: number; startLine: number }>,
+  ): Promise<{ texts: Array<string | null>; totalLines: number }>;
+  resolve(path: string): string | undefined;
+  sourceType: 'src.zip' | 'src/';
+}
+
+type SarifRunLike = SarifDocument['runs'][number] & {
+  originalUriBaseIds?: Record<string, { uri?: string }>;
+};
+
+/**
+ * Filesystem-style path of a location's artifact, resolving `uriBaseId`
+ * against the run's `originalUriBaseIds` when possible.
+ */
+function artifactPath(location: SarifLocation | undefined, run: SarifRunLike): string | undefined {
+  const artifact = location?.physicalLocation?.artifactLocation;
+  if (!artifact?.uri) return undefined;
+
+  let uri = artifact.uri;
+  const base = artifact.uriBaseId ? run.originalUriBaseIds?.[artifact.uriBaseId]?.uri : undefined;
+  if (base && !/^[a-z][a-z0-9+.-]*:/i.test(uri)) {
+    try {
+      uri = new URL(uri, base.endsWith('/') ? base : `${base}/`).href;
+    } catch {
+      // Keep the relative URI; suffix matching still applies.
+    }
+  }
+  if (uri.startsWith('file:')) {
+    try {
+      return fileURLToPath(uri);
+    } catch {
+      return uri.replace(/^file:\/\//, '');
+    }
+  }
+  try {
+    return decodeURIComponent(uri);
+  } catch {
+    return uri;
+  }
+}
+
+/** Location references of a page of alerts, grouped by file path. */
+function collectLocations(
+  sarif: SarifDocument,
+  options: AlertContextOptions,
+): { alerts: AlertSummary[]; byPath: Map<string, AlertLocationRef[]>; total: number; unlocated: number } {
+  const alerts: AlertSummary[] = [];
+  const byPath = new Map<string, AlertLocationRef[]>();
+  let unlocated = 0;
+  let added = 0;
+  let index = 0;
+  const end = options.cursor + options.maxAlerts;
+
+  const add = (
+    location: SarifLocation | undefined,
+    run: SarifRunLike,
+    ref: Omit<AlertLocationRef, 'endLine' | 'startLine'>,
+  ): void => {
+    added++;
+    const path = artifactPath(location, run);
+    const region = location?.physicalLocation?.region;
+    if (!path || !region?.startLine) {
+      unlocated++;
+      return;
+    }
+    const refs = byPath.get(path) ?? [];
+    refs.push({
+      ...ref,
+      endLine: Math.max(region.startLine, region.endLine ?? region.startLine),
+      startLine: region.startLine,
+    });
+    byPath.set(path, refs);
+  };
+
+  for (const run of sarif.runs as SarifRunLike[]) {
+    for (const result of run.results ?? []) {
+      const alert = index++;
+      if (alert < options.cursor || alert >= end) continue;
+
+      const before = added;
+      for (const location of result.locations ?? []) {
+        add(location, run, { alert, kind: 'primary' });
+      }
+      if (options.includeCodeFlows) {
+        const flows = result.codeFlows ?? [];
+        for (let f = 0; f < flows.length; f++) {
+          const threads = flows[f]?.threadFlows ?? [];
+          for (let t = 0; t < threads.length; t++) {
+            const steps = threads[t]?.locations ?? [];
+            for (let s = 0; s < steps.length; s++) {
+              const location: SarifLocation | undefined = steps[s]?.location;
+              add(location, run, { alert, kind: 'flow', message: location?.message?.text, step: [f, t, s] });
+            }
+          }
+        }
+      }
+      alerts.push({ index: alert, locations: added - before, message: result.message.text, ruleId: result.ruleId });
+    }
+  }
+  return { alerts, byPath, total: index, unlocated };
+}
+
+/**
+ * Group location references into snippets: context windows that overlap
+ * or touch are merged.  Snippets are in line order.
+ */
+export function mergeContextWindows(refs: AlertLocationRef[], contextLines: number): Omit<AlertSnippet, 'text'>[] {
+  const sorted = [...refs].sort((a, b) => a.startLine - b.startLine || a.endLine - b.endLine);
+  const snippets: Omit<AlertSnippet, 'text'>[] = [];
+  for (const ref of sorted) {
+    const startLine = Math.max(1, ref.startLine - contextLines);
+    const endLine = ref.endLine + contextLines;
+    const last = snippets[snippets.length - 1];
+    if (last && startLine <= last.endLine + 1) {
+      last.endLine = Math.max(last.endLine, endLine);
+      last.locations.push(ref);
+    } else {
+      snippets.push({ endLine, locations: [ref], startLine });
+    }
+  }
+  return snippets;
+}
+
+async function listDirectory(root: string): Promise<string[]> {
+  const paths: string[] = [];
+  const walk = async (dir: string, prefix: string): Promise<void> => {
+    for (const entry of await readdir(dir, { withFileTypes: true })) {
+      const relativePath = prefix ? `${prefix}/${entry.name}` : entry.name;
+      if (entry.isDirectory()) await walk(join(dir, entry.name), relativePath);
+      else if (entry.isFile()) paths.push(relativePath);
+    }
+  };
+  await walk(root, '');
+  return paths;
+}
+
+/**
+ * Open the source files of a database: its src.zip, or its src/ directory
+ * for databases without an archive.
+ */
+async function openDatabaseSource(databasePath: string): Promise<DatabaseSource> {
+  const root = resolve(databasePath);
+  if (!existsSync(root)) {
+    throw new Error(`Database path does not exist: ${databasePath}`);
+  }
+
+  const zipPath = join(root, 'src.zip');
+  if (existsSync(zipPath)) {
+    const archive = await getSourceArchive(zipPath);
+    return {
+      readSpans: (entryPath, spans) => archive.readLineSpans(archive.resolve(entryPath)!, spans),
+      resolve: path => archive.resolve(path)?.name,
+      sourceType: 'src.zip',
+    };
+  }
+
+  const srcDir = join(root, 'src');
+  if (existsSync(srcDir)) {
+    const paths = new SourcePathIndex(await listDirectory(srcDir));
+    return {
+      readSpans: async (entryPath, spans) => {
+        const content = await readFile(join(srcDir, entryPath));
+        const collectors = spans.map(span => new LineRangeCollector(span.startLine, span.endLine));
+        for (const collector of collectors) collector.push(content);
+        const totalLines = collectors[0]?.totalLines ?? 1;
+        return {
+          texts: spans.map((span, i) => (span.startLine <= totalLines ? collectors[i].text() : null)),
+          totalLines,
+        };
+      },
+      resolve: path => paths.resolve(path),
+      sourceType: 'src/',
+    };
+  }
+
+  throw new Error(`No source archive found in database: expected src.zip or src/ in ${databasePath}`);
+}
+
+async function readFileContext(
+  source: DatabaseSource,
+  path: string,
+  refs: AlertLocationRef[],
+  contextLines: number,
+): Promise<AlertContextFile> {
+  const entryPath = source.resolve(path);
+  if (entryPath === undefined) {
+    return { error: 'File not found in the database source archive', path, snippets: [] };
+  }
+
+  const windows = mergeContextWindows(refs, contextLines);
+  try {
+    const { texts, totalLines } = await source.readSpans(entryPath, windows);
+    const snippets: AlertSnippet[] = [];
+    let pastEnd = 0;
+    windows.forEach((window, i) => {
+      const text = texts[i];
+      if (text === null) {
+        pastEnd += window.locations.length;
+      } else {
+        snippets.push({ ...window, endLine: Math.min(window.endLine, totalLines), text });
+      }
+    });
+    return {
+      entryPath,
+      error: pastEnd > 0 ? `${pastEnd} location(s) are past the end of the file` : undefined,
+      path,
+      snippets,
+      totalLines,
+    };
+  } catch (error) {
+    return {
+      entryPath,
+      error: error instanceof Error ? error.message : String(error),
+      path,
+      snippets: [],
+    };
+  }
+}
+
+/**
+ * Extract the code around every location of a page of alerts from the
+ * source archive of `databasePath`.  Files are listed in the order their
+ * first location appears in the SARIF.
+ */
+export async function extractAlertContext(
+  sarif: SarifDocument,
+  databasePath: string,
+  options: AlertContextOptions,
+): Promise<AlertContextPage> {
+  const source = await openDatabaseSource(databasePath);
+  const { alerts, byPath, total, unlocated } = collectLocations(sarif, options);
+
+  const paths = [...byPath.keys()];
+  const files: AlertContextFile[] = new Array(paths.length);
+  let next = 0;
+  const worker = async (): Promise<void> => {
+    while (next < paths.length) {
+      const i = next++;
+      files[i] = await readFileContext(source, paths[i], byPath.get(paths[i])!, options.contextLines);
+    }
+  };
+  await Promise.all(Array.from({ length: Math.min(FILE_CONCURRENCY, paths.length) }, worker));
+
+  const end = options.cursor + options.maxAlerts;
+  return {
+    alerts,
+    files,
+    nextCursor: end < total ? end : undefined,
+    sourceType: source.sourceType,
+    totalAlerts: total,
+    unlocatedLocations: unlocated,
+  };
+}
@@ -0,0 +1,246 @@
+/**
+ * Blob Store — content-addressed files for large cached payloads.
+ *
+ * Interpreted query results (SARIF, CSV, graphtext) can be many megabytes.
+ * Keeping them as TEXT in the in-memory sql.js database pins them in the
+ * Node heap for the lifetime of the process and makes every snapshot flush
+ * rewrite them.  Instead, `SqliteStore` writes each payload once to
+ * `<storageDir>/blobs/<aa>/<sha256>[.gz]` and keeps only the relative path
+ * and digest in the row.  Identical payloads share a single file.
+ */
+
+import { createHash } from 'crypto';
+import {
+  closeSync,
+  existsSync,
+  mkdirSync,
+  openSync,
+  readFileSync,
+  readSync,
+  renameSync,
+  unlinkSync,
+  writeFileSync,
+} from 'fs';
+import { dirname, join } from 'path';
+import { gunzipSync, gzipSync } from 'zlib';
+
+/**
+ * On-disk encoding for new blobs.
+ *
+ * - `none`: plain UTF-8.  Line-range reads stream through the file in
+ *   fixed-size chunks without materializing it.
+ * - `gzip`: gzip-compressed.  Smaller on disk (SARIF typically compresses
+ *   5–10x), but every read inflates the whole blob.
+ */
+export type BlobCompression = 'gzip' | 'none';
+
+/**
+ * Resolve blob compression from the `CODEQL_MCP_CACHE_COMPRESSION`
+ * environment variable.  Unknown values fall back to `none`.
+ */
+export function getBlobCompression(): BlobCompression {
+  const value = process.env.CODEQL_MCP_CACHE_COMPRESSION?.trim().toLowerCase();
+  return value === 'gzip' ? 'gzip' : 'none';
+}
+
+/**
+ * Reference to a stored blob, as persisted in the owning row.
+ */
+export interface BlobRef {
+  /** Hex SHA-256 of the uncompressed content. */
+  digest: string;
+  /** Path relative to the blob root, e.g. `ab/ab12…ef.gz`. */
+  path: string;
+  /** Uncompressed size in bytes. */
+  bytes: number;
+}
+
+/** Chunk size used for streaming line reads. */
+const READ_CHUNK_BYTES = 64 * 1024;
+
+export class BlobStore {
+  private rootDir: string;
+  private compression: BlobCompression;
+
+  constructor(rootDir: string, compression: BlobCompression = 'none') {
+    this.rootDir = rootDir;
+    this.compression = compression;
+  }
+
+  /**
+   * Store `content` and return its reference.  Writing content that is
+   * already present (under either encoding) is a no-op.
+   */
+  put(content: string): BlobRef {
+    const data = Buffer.from(content, 'utf8');
+    const digest = createHash('sha256').update(data).digest('hex');
+    const bytes = data.length;
+
+    for (const suffix of ['', '.gz']) {
+      const existing = `${digest.substring(0, 2)}/${digest}${suffix}`;
+      if (existsSync(join(this.rootDir, existing))) {
+        return { digest, path: existing, bytes };
+      }
+    }
+
+    const path = `${digest.substring(0, 2)}/${digest}${this.compression === 'gzip' ? '.gz' : ''}`;
+    const absPath = join(this.rootDir, path);
+    mkdirSync(dirname(absPath), { recursive: true });
+    // Atomic write: a crash never leaves a truncated blob under its final name.
+    const tmpPath = `${absPath}.${process.pid}.tmp`;
+    writeFileSync(tmpPath, this.compression === 'gzip' ? gzipSync(data) : data);
+    renameSync(tmpPath, absPath);
+    return { digest, path, bytes };
+  }
+
+  /**
+   * Read a whole blob as a string.  Returns `null` if it does not exist.
+   */
+  read(path: string): string | null {
+    const buffer = this.readBuffer(path);
+    return buffer ? buffer.toString('utf8') : null;
+  }
+
+  /**
+   * Read an inclusive, 1-based line range `[start, end]` from a blob,
+   * returning at most `maxLines` of those lines plus the total line count.
+   *
+   * Uncompressed blobs are scanned in fixed-size chunks, so only the
+   * selected lines are ever held in memory.
+   */
+  readLines(
+    path: string,
+    start: number,
+    end: number,
+    maxLines: number,
+  ): { lines: string[]; selectedLines: number; totalLines: number } | null {
+    const absPath = join(this.rootDir, path);
+    if (path.endsWith('.gz')) {
+      const buffer = this.readBuffer(path);
+      if (!buffer) return null;
+      return selectLines(buffer.toString('utf8').split('\n'), start, end, maxLines);
+    }
+
+    let fd: number;
+    try {
+      fd = openSync(absPath, 'r');
+    } catch {
+      return null;
+    }
+    const lines: string[] = [];
+    let lineNo = 1;
+    let selectedLines = 0;
+    let pending: Buffer[] = [];
+    const take = (line: Buffer): void => {
+      if (lineNo >= start && lineNo <= end) {
+        selectedLines++;
+        if (lines.length < maxLines) lines.push(line.toString('utf8'));
+      }
+      lineNo++;
+    };
+    try {
+      const chunk = Buffer.allocUnsafe(READ_CHUNK_BYTES);
+      for (;;) {
+        const n = readSync(fd, chunk, 0, chunk.length, null);
+        if (n === 0) break;
+        let offset = 0;
+        for (;;) {
+          const nl = chunk.indexOf(0x0a, offset);
+          if (nl === -1 || nl >= n) break;
+          const inWindow = lineNo >= start && lineNo <= end && lines.length < maxLines;
+          if (inWindow) {
+            pending.push(Buffer.from(chunk.subarray(offset, nl)));
+            take(Buffer.concat(pending));
+          } else {
+            take(Buffer.alloc(0));
+          }
+          pending = [];
+          offset = nl + 1;
+        }
+        if (offset < n && lineNo >= start && lineNo <= end && lines.length < maxLines) {
+          pending.push(Buffer.from(chunk.subarray(offset, n)));
+        }
+      }
+      // The segment after the last newline is a line too (matching split('\n')).
+      take(Buffer.concat(pending));
+    } finally {
+      closeSync(fd);
+    }
+    return { lines, selectedLines, totalLines: lineNo - 1 };
+  }
+
+  /**
+   * Read the whole blob as raw (uncompressed) bytes.  Returns `null` if it
+   * does not exist.
+   */
+  readBytes(path: string): Buffer | null {
+    return this.readBuffer(path);
+  }
+
+  /**
+   * Read several byte ranges of the uncompressed content.  Uncompressed
+   * blobs are read with positioned reads, touching only the requested bytes.
+   */
+  readRanges(path: string, ranges: Array<{ offset: number; length: number }>): string[] | null {
+    if (path.endsWith('.gz')) {
+      const buffer = this.readBuffer(path);
+      if (!buffer) return null;
+      return ranges.map(r => buffer.toString('utf8', r.offset, r.offset + r.length));
+    }
+    let fd: number;
+    try {
+      fd = openSync(join(this.rootDir, path), 'r');
+    } catch {
+      return null;
+    }
+    try {
+      return ranges.map(r => {
+        const buffer = Buffer.allocUnsafe(r.length);
+        const n = readSync(fd, buffer, 0, r.length, r.offset);
+        return buffer.toString('utf8', 0, n);
+      });
+    } finally {
+      closeSync(fd);
+    }
+  }
+
+  /**
+   * Delete a blob.  Missing blobs are ignored.
+   */
+  delete(path: string): void {
+    try {
+      unlinkSync(join(this.rootDir, path));
+    } catch { /* already gone */ }
+  }
+
+  /**
+   * Absolute path of a blob on disk.
+   */
+  resolvePath(path: string): string {
+    return join(this.rootDir, path);
+  }
+
+  private readBuffer(path: string): Buffer | null {
+    let raw: Buffer;
+    try {
+      raw = readFileSync(join(this.rootDir, path));
+    } catch {
+      return null;
+    }
+    return path.endsWith('.gz') ? gunzipSync(raw) : raw;
+  }
+}
+
+function selectLines(
+  allLines: string[],
+  start: number,
+  end: number,
+  maxLines: number,
+): { lines: string[]; selectedLines: number; totalLines: number } {
+  const selected = allLines.slice(Math.max(0, start - 1), Math.min(allLines.length, end));
+  return {
+    lines: selected.slice(0, maxLines),
+    selectedLines: selected.length,
+    totalLines: allLines.length,
+  };
+}
@@ -0,0 +1,407 @@
+/**
+ * Content fingerprints for query result cache validity.
+ *
+ * A cached query result is only reusable when neither the query source nor
+ * the database it ran against has changed.  Paths alone cannot tell us that:
+ * a `.ql` file may be edited in place and a database may be re-created at the
+ * same location.  This module derives short content hashes for both sides so
+ * they can be folded into the cache key.
+ */
+
+import { createHash } from 'crypto';
+import { type Dirent, existsSync, readdirSync, readFileSync, statSync } from 'fs';
+import { delimiter, dirname, join, resolve } from 'path';
+import { resolveDatabasePath } from './database-resolver';
+import { getDefaultAdditionalPacksPath } from '../utils/package-paths';
+
+/** Pack manifest filenames that mark the root of a QL pack. */
+const PACK_MANIFESTS = ['qlpack.yml', 'codeql-pack.yml'];
+
+/** Lock filenames that pin the versions of a pack's dependencies. */
+const PACK_LOCK_FILES = ['codeql-pack.lock.yml', 'qlpack.lock.yml'];
+
+/** File marking the root of a multi-pack workspace, whose packs are on the search path. */
+const WORKSPACE_FILE = 'codeql-workspace.yml';
+
+/**
+ * Matches QL import statements and captures the module path, e.g.
+ * `import semmle.code.java.Foo`, `private import Foo as F`,
+ * `import DataFlow::PathGraph` (captures `DataFlow` and the `::`).
+ */
+const IMPORT_PATTERN = /^\s*(?:(?:private|deprecated)\s+)*import\s+([A-Za-z_][A-Za-z0-9_]*(?:\.[A-Za-z_][A-Za-z0-9_]*)*)(\s*::)?/gm;
+
+/**
+ * One import statement of a QL file.
+ */
+export interface QlImport {
+  /** Dotted module path, or the first name of a `::`-qualified path. */
+  module: string;
+  /**
+   * Whether the path continues with `::`.  Such a name may also refer to a
+   * module brought into scope by another import rather than to a file.
+   */
+  qualified: boolean;
+}
+
+/**
+ * Per-file memo of content hash and parsed imports, keyed by absolute path
+ * and validated against the file's size and mtime.  Library files are hashed
+ * once per process no matter how many queries import them.
+ */
+interface FileFingerprint {
+  hash: string;
+  imports: QlImport[];
+  mtimeMs: number;
+  size: number;
+}
+
+const fileFingerprintMemo = new Map<string, FileFingerprint>();
+
+/** Upper bound on memoized files before the memo is reset. */
+const MAX_MEMOIZED_FILES = 50_000;
+
+/**
+ * Return the memoized fingerprint for a file, re-reading it only when its
+ * size or mtime changed.  Returns `null` for unreadable files.
+ */
+function getFileFingerprint(filePath: string): FileFingerprint | null {
+  let st;
+  try {
+    st = statSync(filePath);
+  } catch {
+    fileFingerprintMemo.delete(filePath);
+    return null;
+  }
+  const memo = fileFingerprintMemo.get(filePath);
+  if (memo && memo.mtimeMs === st.mtimeMs && memo.size === st.size) {
+    return memo;
+  }
+  let content: Buffer;
+  try {
+    content = readFileSync(filePath);
+  } catch {
+    return null;
+  }
+  const entry: FileFingerprint = {
+    hash: createHash('sha256').update(content).digest('hex'),
+    imports: filePath.endsWith('.yml') ? [] : parseQlImports(content.toString('utf8')),
+    mtimeMs: st.mtimeMs,
+    size: st.size,
+  };
+  if (fileFingerprintMemo.size >= MAX_MEMOIZED_FILES) fileFingerprintMemo.clear();
+  fileFingerprintMemo.set(filePath, entry);
+  return entry;
+}
+
+/**
+ * Clear the per-file fingerprint memo (exported for testing).
+ */
+export function clearFingerprintMemo(): void {
+  fileFingerprintMemo.clear();
+}
+
+/**
+ * Find the nearest ancestor directory of `filePath` that contains one of
+ * `markers`.
+ */
+function findAncestorWith(filePath: string, markers: string[]): string | null {
+  let dir = dirname(resolve(filePath));
+  for (;;) {
+    if (markers.some(m => existsSync(join(dir, m)))) return dir;
+    const parent = dirname(dir);
+    if (parent === dir) return null;
+    dir = parent;
+  }
+}
+
+/**
+ * Find the root directory of the QL pack that contains `filePath`, i.e. the
+ * nearest ancestor directory holding a pack manifest.
+ */
+export function findPackRoot(filePath: string): string | null {
+  return findAncestorWith(filePath, PACK_MANIFESTS);
+}
+
+/**
+ * Extract the modules imported by a QL source file.
+ */
+export function parseQlImports(source: string): QlImport[] {
+  const imports: QlImport[] = [];
+  for (const match of source.matchAll(IMPORT_PATTERN)) {
+    imports.push({ module: match[1], qualified: match[2] !== undefined });
+  }
+  return imports;
+}
+
+/**
+ * Collect the roots of every pack in or below `dir`.  Hidden directories
+ * (including `.codeql` pack caches) and `node_modules` are not searched.
+ */
+function collectPackRoots(dir: string, roots: string[]): void {
+  let entries: Dirent[];
+  try {
+    entries = readdirSync(dir, { withFileTypes: true });
+  } catch {
+    return;
+  }
+  if (entries.some(e => e.isFile() && PACK_MANIFESTS.includes(e.name))) roots.push(dir);
+  for (const entry of entries) {
+    if (entry.isDirectory() && !entry.name.startsWith('.') && entry.name !== 'node_modules') {
+      collectPackRoots(join(dir, entry.name), roots);
+    }
+  }
+}
+
+/**
+ * The directories CodeQL searches for source packs when it runs `queryPath`:
+ * the workspace enclosing the query, if any, and `additionalPacks`.
+ */
+function getPackSearchPath(queryPath: string, additionalPacks: string[]): string[] {
+  const dirs = additionalPacks.map(p => resolve(p));
+  const workspace = findAncestorWith(queryPath, [WORKSPACE_FILE]);
+  if (workspace) dirs.unshift(workspace);
+  return [...new Set(dirs)];
+}
+
+/**
+ * Resolve an imported module path to a `.qll` file, looking next to the
+ * importing file, then at the root of its pack, then at the roots of the
+ * source packs on the search path (listed by `searchPackRoots` on first use).
+ */
+function resolveImport(
+  moduleName: string,
+  importingFile: string,
+  searchPackRoots: () => string[],
+): string | null {
+  const relative = moduleName.split('.').join('/') + '.qll';
+  const candidates = [join(dirname(importingFile), relative)];
+  const packRoot = findPackRoot(importingFile);
+  if (packRoot) candidates.push(join(packRoot, relative));
+  for (const candidate of candidates) {
+    if (existsSync(candidate)) return resolve(candidate);
+  }
+  for (const root of searchPackRoots()) {
+    const candidate = join(root, relative);
+    if (existsSync(candidate)) return resolve(candidate);
+  }
+  return null;
+}
+
+/**
+ * Collect the query file plus every library file it transitively imports
+ * from the local filesystem: the query's own pack, the workspace enclosing
+ * it and the `additionalPacks` directories (by default the server's
+ * `--additional-packs` search path).
+ *
+ * Imports that resolve to none of these come from dependency packs in the
+ * package cache or the CLI distribution.  They are represented by name and
+ * by the lock files that pin their versions.  An import from a pack without
+ * a lock file is listed in `unpinnedImports`: its source is unknown, so the
+ * query cannot be fingerprinted.
+ */
+export function collectQuerySourceFiles(
+  queryPath: string,
+  additionalPacks: string[] = splitPackPath(getDefaultAdditionalPacksPath()),
+): {
+  files: string[];
+  lockFiles: string[];
+  unpinnedImports: string[];
+  unresolvedImports: string[];
+} {
+  const seen = new Set<string>();
+  const unresolved = new Set<string>();
+  const unpinned = new Set<string>();
+  const lockFiles = new Set<string>();
+  const pending = [resolve(queryPath)];
+
+  let packRoots: string[] | undefined;
+  const searchPackRoots = (): string[] => {
+    if (!packRoots) {
+      packRoots = [];
+      for (const dir of getPackSearchPath(queryPath, additionalPacks)) collectPackRoots(dir, packRoots);
+    }
+    return packRoots;
+  };
+
+  while (pending.length > 0) {
+    const file = pending.pop()!;
+    if (seen.has(file)) continue;
+    seen.add(file);
+
+    let pinned = false;
+    const packRoot = findPackRoot(file);
+    if (packRoot) {
+      for (const lock of PACK_LOCK_FILES) {
+        const lockPath = join(packRoot, lock);
+        if (existsSync(lockPath)) {
+          lockFiles.add(lockPath);
+          pinned = true;
+        }
+      }
+    }
+
+    const fingerprint = getFileFingerprint(file);
+    if (!fingerprint) continue;
+    for (const { module, qualified } of fingerprint.imports) {
+      const resolved = resolveImport(module, file, searchPackRoots);
+      if (resolved) {
+        if (!seen.has(resolved)) pending.push(resolved);
+      } else if (!qualified) {
+        // A qualified name that is not a file refers to a module in scope.
+        unresolved.add(module);
+        if (!pinned) unpinned.add(module);
+      }
+    }
+  }
+
+  return {
+    files: [...seen].sort(),
+    lockFiles: [...lockFiles].sort(),
+    unpinnedImports: [...unpinned].sort(),
+    unresolvedImports: [...unresolved].sort(),
+  };
+}
+
+/** Split a `--additional-packs` value into its directories. */
+function splitPackPath(packPath: string | undefined): string[] {
+  return packPath ? packPath.split(delimiter).filter(p => p.length > 0) : [];
+}
+
+/**
+ * Compute a fingerprint over the content of a query file, its resolvable
+ * import closure, and the lock files of the packs involved.
+ *
+ * Returns `undefined` when the query imports modules that neither resolve
+ * on the pack search path nor are pinned by a lock file, because a change
+ * to them would go unnoticed.  Such queries must not be served from a cache.
+ *
+ * Per-file content hashes are memoized by (path, mtime, size), so repeated
+ * calls only stat the closure and re-read files that actually changed.
+ */
+export function computeQueryFingerprint(queryPath: string, additionalPacks?: string[]): string | undefined {
+  const { files, lockFiles, unpinnedImports, unresolvedImports } = collectQuerySourceFiles(queryPath, additionalPacks);
+  if (unpinnedImports.length > 0) return undefined;
+  const hash = createHash('sha256');
+  for (const file of [...files, ...lockFiles]) {
+    hash.update(file).update('\0');
+    hash.update(getFileFingerprint(file)?.hash ?? '<unreadable>');
+    hash.update('\0');
+  }
+  hash.update(unresolvedImports.join(','));
+  return hash.digest('hex').substring(0, 16);
+}
+
+/**
+ * Feed the name, size and mtime of every regular file directly inside `dir`
+ * into `hash`, in a deterministic order.  Subdirectories are not entered.
+ */
+function hashFileStats(hash: ReturnType<typeof createHash>, dir: string, prefix: string): void {
+  let children: string[];
+  try {
+    children = readdirSync(dir).sort();
+  } catch {
+    return;
+  }
+  for (const child of children) {
+    try {
+      const st = statSync(join(dir, child));
+      if (st.isFile()) hash.update(`${prefix}/${child}:${st.size}:${st.mtimeMs}\n`);
+    } catch { /* entry vanished mid-scan */ }
+  }
+}
+
+/**
+ * Compute a fingerprint of a CodeQL database from its `codeql-database.yml`
+ * and the size and modification time of its dataset metadata: the files at
+ * the top of each `db-<language>` directory (dbscheme and stats), the
+ * relation files in `db-<language>/default`, and the source archive.
+ *
+ * Everything below `default` — notably the evaluation `cache` that every
+ * query run writes — is left out, so evaluating queries does not change the
+ * fingerprint, and only a few directories are listed even for multi-GB
+ * databases.
+ */
+export function computeDatabaseFingerprint(databasePath: string): string {
+  const hash = createHash('sha256');
+  for (const filename of ['codeql-database.yml', 'codeql-database.yaml']) {
+    try {
+      hash.update(readFileSync(join(databasePath, filename)));
+      break;
+    } catch { /* try next */ }
+  }
+
+  let entries: string[] = [];
+  try {
+    entries = readdirSync(databasePath).sort();
+  } catch { /* missing database — fingerprint is the yml (if any) alone */ }
+
+  for (const entry of entries) {
+    if (!entry.startsWith('db-') && entry !== 'src.zip') continue;
+    const entryPath = join(databasePath, entry);
+    try {
+      const st = statSync(entryPath);
+      if (st.isDirectory()) {
+        hash.update(`${entry}/\n`);
+        hashFileStats(hash, entryPath, entry);
+        hashFileStats(hash, join(entryPath, 'default'), `${entry}/default`);
+      } else {
+        hash.update(`${entry}:${st.size}:${st.mtimeMs}\n`);
+      }
+    } catch { /* entry vanished mid-scan */ }
+  }
+  return hash.digest('hex').substring(0, 16);
+}
+
+/**
+ * Freshness of a cached entry relative to the current query source and
+ * database on disk.
+ *
+ * - `fresh`: every recorded fingerprint matches the current one.
+ * - `stale`: at least one recorded fingerprint no longer matches.
+ * - `unknown`: the entry predates fingerprinting, or its inputs are gone.
+ */
+export type CacheFreshness = 'fresh' | 'stale' | 'unknown';
+
+/**
+ * Compare the fingerprints recorded with a cache entry against freshly
+ * computed ones.  `memo` lets callers checking many entries reuse
+ * fingerprints of the same database or query.
+ */
+export function checkCacheEntryFreshness(
+  entry: {
+    databaseFingerprint: string | null;
+    databasePath: string;
+    queryFingerprint: string | null;
+    queryPath: string;
+  },
+  memo: Map<string, string> = new Map(),
+): CacheFreshness {
+  if (!entry.databaseFingerprint && !entry.queryFingerprint) return 'unknown';
+
+  const memoized = (key: string, compute: () => string): string => {
+    let value = memo.get(key);
+    if (value === undefined) {
+      value = compute();
+      memo.set(key, value);
+    }
+    return value;
+  };
+
+  if (entry.databaseFingerprint) {
+    if (!entry.databasePath || !existsSync(entry.databasePath)) return 'unknown';
+    let current: string;
+    try {
+      current = memoized(`db:${entry.databasePath}`,
+        () => computeDatabaseFingerprint(resolveDatabasePath(entry.databasePath)));
+    } catch {
+      return 'unknown'; // ambiguous multi-language database root
+    }
+    if (current !== entry.databaseFingerprint) return 'stale';
+  }
+  if (entry.queryFingerprint) {
+    if (!entry.queryPath || !existsSync(entry.queryPath)) return 'unknown';
+    const current = memoized(`q:${entry.queryPath}`, () => computeQueryFingerprint(entry.queryPath) ?? '');
+    if (current !== entry.queryFingerprint) return 'stale';
+  }
+  return 'fresh';
+}
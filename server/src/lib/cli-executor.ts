@@ -656,9 +656,9 @@ const FRESH_PROCESS_SUBCOMMANDS = new Set([
 /**
  * Execute a CodeQL command.
  *
- * By default, commands are routed through the persistent `codeql execute
- * cli-server` process managed by {@link CodeQLServerManager}, eliminating
- * repeated JVM startup overhead (~2-5 s savings per call).
+ * By default, commands are routed through the pool of persistent `codeql
+ * execute cli-server` processes managed by {@link CodeQLServerManager},
+ * eliminating repeated JVM startup overhead (~2-5 s savings per call).
  *
  * Commands listed in {@link FRESH_PROCESS_SUBCOMMANDS} (e.g. `database create`,
  * `test run`) are always executed as fresh processes because they either spawn
@@ -699,7 +699,10 @@ export async function executeCodeQLCommand(
         const cliServer = await manager.getCLIServer({});
         const sanitizedArgs = sanitizeCLIArguments(args);
 
-        logger.info(`Executing CodeQL command via cli-server: ${subcommand}`, { args: sanitizedArgs });
+        logger.info(`Executing CodeQL command via cli-server: ${subcommand}`, {
+          args: sanitizedArgs,
+          pending: cliServer.getMetrics().totalPending,
+        });
 
         const stdout = await cliServer.runCommand(sanitizedArgs);
 
@@ -0,0 +1,227 @@
+/**
+ * Pool of CodeQL CLI Server processes.
+ *
+ * A single `codeql execute cli-server` JVM answers one command at a time, so
+ * a slow `bqrs interpret` blocks every cheap `resolve` queued behind it.
+ * When several clients share the HTTP transport that head-of-line blocking
+ * dominates latency.  The pool runs N cli-server JVMs and dispatches each
+ * command to the least busy one, keeping fast commands away from JVMs that
+ * are working through heavy ones.
+ */
+
+import { CLIServerConfig } from './server-config';
+import { CodeQLCLIServer } from './cli-server';
+import { logger } from '../utils/logger';
+
+/**
+ * Cost class of a CLI command, used for routing.
+ *
+ * - `heavy`: evaluation and result decoding (seconds to minutes).
+ * - `light`: everything else, e.g. `resolve *` (milliseconds).
+ */
+export type CLICommandClass = 'heavy' | 'light';
+
+/**
+ * Subcommands that can keep a cli-server busy for a long time.
+ */
+const HEAVY_SUBCOMMANDS = [
+  'bqrs decode',
+  'bqrs interpret',
+  'database finalize',
+  'database interpret-results',
+  'database upgrade',
+  'generate log-summary',
+  'query compile',
+  'query run',
+];
+
+/** Default number of cli-server processes. */
+const DEFAULT_POOL_SIZE = 2;
+
+/** Upper bound on the pool size; each member is a full JVM. */
+const MAX_POOL_SIZE = 8;
+
+/**
+ * Resolve the pool size from the `CODEQL_MCP_CLI_SERVER_POOL_SIZE`
+ * environment variable.  `1` restores a single shared cli-server.
+ */
+export function getCLIServerPoolSize(): number {
+  const raw = process.env.CODEQL_MCP_CLI_SERVER_POOL_SIZE;
+  if (raw === undefined || raw.trim() === '') return DEFAULT_POOL_SIZE;
+  const value = Number(raw);
+  if (!Number.isInteger(value) || value < 1) return DEFAULT_POOL_SIZE;
+  return Math.min(value, MAX_POOL_SIZE);
+}
+
+/**
+ * Classify a cli-server command by its leading subcommand words.
+ */
+export function classifyCLICommand(args: string[]): CLICommandClass {
+  const head = args.slice(0, 2).join(' ');
+  return HEAVY_SUBCOMMANDS.some(sub => head === sub || head.startsWith(`${sub} `)) ? 'heavy' : 'light';
+}
+
+/**
+ * Queue-depth metrics of one pool member.
+ */
+export interface CLIServerMemberMetrics {
+  completed: number;
+  heavyPending: number;
+  index: number;
+  /** `light` members only accept light commands; `any` members accept both. */
+  lane: 'any' | 'light';
+  pending: number;
+  running: boolean;
+}
+
+/**
+ * Queue-depth metrics of the whole pool.
+ */
+export interface CLIServerPoolMetrics {
+  members: CLIServerMemberMetrics[];
+  size: number;
+  totalPending: number;
+}
+
+interface PoolMember {
+  heavyPending: number;
+  index: number;
+  lane: 'any' | 'light';
+  server: CodeQLCLIServer;
+}
+
+/**
+ * A fixed-size set of {@link CodeQLCLIServer} processes with least-busy
+ * dispatch.
+ *
+ * With two or more members, member 0 is reserved for light commands so that
+ * `resolve` calls always have a JVM that is never stuck on an evaluation.
+ * Heavy commands go to the least busy of the remaining members.  Light
+ * commands go to the least busy member overall, avoiding members with heavy
+ * work pending.
+ */
+export class CodeQLCLIServerPool {
+  private readonly config: CLIServerConfig;
+  private members: PoolMember[] = [];
+  private readonly size: number;
+
+  constructor(config: CLIServerConfig, size: number = getCLIServerPoolSize()) {
+    this.config = config;
+    this.size = Math.max(1, size);
+  }
+
+  /**
+   * Start all pool members.  If any member fails to start, the ones already
+   * started are shut down and the error is rethrown.
+   */
+  async start(): Promise<void> {
+    if (this.members.length > 0) {
+      throw new Error('CLI server pool is already running');
+    }
+
+    const members: PoolMember[] = [];
+    for (let index = 0; index < this.size; index++) {
+      members.push({
+        heavyPending: 0,
+        index,
+        lane: this.size > 1 && index === 0 ? 'light' : 'any',
+        server: new CodeQLCLIServer(this.config),
+      });
+    }
+
+    const started = await Promise.allSettled(members.map(m => m.server.start()));
+    const failure = started.find((r): r is PromiseRejectedResult => r.status === 'rejected');
+    if (failure) {
+      await Promise.all(members.map(m => m.server.shutdown().catch(() => undefined)));
+      throw failure.reason;
+    }
+
+    this.members = members;
+    logger.info(`CodeQL CLI Server pool started with ${this.size} member(s)`);
+  }
+
+  /**
+   * Run a CodeQL CLI command on the least busy suitable member.
+   *
+   * @param args - The full command arguments (e.g. `['resolve', 'qlpacks']`).
+   * @returns The stdout output from the command.
+   */
+  runCommand(args: string[]): Promise<string> {
+    const commandClass = classifyCLICommand(args);
+    const member = this.pickMember(commandClass);
+    if (!member) {
+      return Promise.reject(new Error('CLI server is not running'));
+    }
+    if (commandClass === 'light') {
+      return member.server.runCommand(args);
+    }
+    member.heavyPending++;
+    return member.server.runCommand(args).finally(() => {
+      member.heavyPending--;
+    });
+  }
+
+  /**
+   * Shut down all pool members.
+   */
+  async shutdown(): Promise<void> {
+    const members = this.members;
+    this.members = [];
+    await Promise.all(members.map(async (m) => {
+      try {
+        await m.server.shutdown();
+      } catch (error) {
+        logger.warn(`Error stopping cli-server pool member ${m.index}:`, error);
+      }
+    }));
+  }
+
+  /**
+   * Whether at least one pool member is running.
+   */
+  isRunning(): boolean {
+    return this.members.some(m => m.server.isRunning());
+  }
+
+  /**
+   * Per-member queue depths and completion counts.
+   */
+  getMetrics(): CLIServerPoolMetrics {
+    const members = this.members.map(m => ({
+      completed: m.server.getCompletedCount(),
+      heavyPending: m.heavyPending,
+      index: m.index,
+      lane: m.lane,
+      pending: m.server.getPendingCount(),
+      running: m.server.isRunning(),
+    }));
+    return {
+      members,
+      size: this.size,
+      totalPending: members.reduce((sum, m) => sum + m.pending, 0),
+    };
+  }
+
+  // ---- private helpers ----
+
+  private pickMember(commandClass: CLICommandClass): PoolMember | undefined {
+    const running = this.members.filter(m => m.server.isRunning());
+    let eligible = commandClass === 'heavy' ? running.filter(m => m.lane === 'any') : running;
+    // If every heavy-capable member died, fall back to whatever is left.
+    if (eligible.length === 0) eligible = running;
+
+    // Light commands avoid members with heavy work queued, then prefer the
+    // shortest queue; ties go to the lowest index, i.e. the light lane.
+    let best: PoolMember | undefined;
+    let bestScore: [number, number] = [Infinity, Infinity];
+    for (const member of eligible) {
+      const blocked = commandClass === 'light' && member.heavyPending > 0 ? 1 : 0;
+      const score: [number, number] = [blocked, member.server.getPendingCount()];
+      if (score[0] < bestScore[0] || (score[0] === bestScore[0] && score[1] < bestScore[1])) {
+        best = member;
+        bestScore = score;
+      }
+    }
+    return best;
+  }
+}
@@ -14,6 +14,7 @@ import { EventEmitter } from 'events';
 import { clearTimeout, setTimeout } from 'timers';
 import { buildCLIServerArgs, CLIServerConfig } from './server-config';
 import { getResolvedCodeQLDir } from './cli-executor';
+import { NulDelimitedFramer } from './message-framing';
 import { logger } from '../utils/logger';
 import { waitForProcessReady } from '../utils/process-ready';
 
@@ -37,12 +38,13 @@ interface QueuedCommand {
 export class CodeQLCLIServer extends EventEmitter {
   private commandInProgress = false;
   private commandQueue: Array<() => void> = [];
+  private completedCommands = 0;
   private readonly config: CLIServerConfig;
   private currentReject: ((_error: Error) => void) | null = null;
   private currentResolve: ((_value: string) => void) | null = null;
   private nullBuffer = Buffer.alloc(1);
   private process: ChildProcess | null = null;
-  private stdoutBuffer = '';
+  private readonly stdoutFramer = new NulDelimitedFramer((result) => this.handleResult(result));
 
   constructor(config: CLIServerConfig) {
     super();
@@ -182,6 +184,20 @@ export class CodeQLCLIServer extends EventEmitter {
     return this.process !== null && !this.process.killed;
   }
 
+  /**
+   * Number of commands accepted but not yet answered (in flight plus queued).
+   */
+  getPendingCount(): number {
+    return this.commandQueue.length + (this.commandInProgress ? 1 : 0);
+  }
+
+  /**
+   * Number of commands answered since the server started.
+   */
+  getCompletedCount(): number {
+    return this.completedCommands;
+  }
+
   // ---- private helpers ----
 
   private executeCommand(cmd: QueuedCommand): void {
@@ -207,25 +223,19 @@ export class CodeQLCLIServer extends EventEmitter {
   }
 
   private handleStdout(data: Buffer): void {
-    this.stdoutBuffer += data.toString();
-
-    // Process all NUL-delimited responses in the buffer
-    let nulIndex = this.stdoutBuffer.indexOf('\0');
-    while (nulIndex !== -1) {
-      const result = this.stdoutBuffer.substring(0, nulIndex);
-      this.stdoutBuffer = this.stdoutBuffer.substring(nulIndex + 1);
-
-      if (this.currentResolve) {
-        this.currentResolve(result);
-        this.currentResolve = null;
-        this.currentReject = null;
-      }
-
-      this.commandInProgress = false;
-      this.runNext();
+    this.stdoutFramer.push(data);
+  }
 
-      nulIndex = this.stdoutBuffer.indexOf('\0');
+  private handleResult(result: string): void {
+    if (this.currentResolve) {
+      this.currentResolve(result);
+      this.currentResolve = null;
+      this.currentReject = null;
     }
+
+    this.completedCommands++;
+    this.commandInProgress = false;
+    this.runNext();
   }
 
   private runNext(): void {
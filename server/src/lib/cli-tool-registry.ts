@@ -9,10 +9,18 @@ import { readDatabaseMetadata, resolveDatabasePath } from './database-resolver';
 import { logger } from '../utils/logger';
 import { getOrCreateLogDirectory } from './log-directory-manager';
 import { buildEnhancedToolSchema } from './param-normalization';
+import { parseEvaluatorLog } from './evaluator-log-parser';
 import { resolveQueryPath } from './query-resolver';
-import { cacheDatabaseAnalyzeResults, processQueryRunResults } from './result-processor';
-import { getUserWorkspaceDir, packageRootDir } from '../utils/package-paths';
-import { existsSync, mkdirSync, realpathSync, rmSync, writeFileSync } from 'fs';
+import { cacheDatabaseAnalyzeResults, lookupCachedQueryRunResults, processQueryRunResults } from './result-processor';
+import {
+  getDefaultQueryExecutionMode,
+  QueryExecutionMode,
+  runCliOnDatabase,
+  runQueryOnQueryServer,
+} from './query-server-evaluation';
+import { getServerManager } from './server-manager';
+import { getDefaultAdditionalPacksPath, getUserWorkspaceDir, packageRootDir } from '../utils/package-paths';
+import { existsSync, mkdirSync, rmSync, writeFileSync } from 'fs';
 import { basename, delimiter, dirname, isAbsolute, join, resolve } from 'path';
 import * as yaml from 'js-yaml';
 import { createProjectTempDir } from '../utils/temp-dir';
@@ -20,34 +28,78 @@ import { createProjectTempDir } from '../utils/temp-dir';
 export type { CLIExecutionResult } from './cli-executor';
 
 /**
- * Per-database mutex map — serializes concurrent CLI operations that
- * acquire an exclusive lock on a CodeQL database (e.g. database analyze).
+ * Evaluate a `codeql_query_run` call on the persistent query server when the
+ * `query-server` execution mode is selected.
+ *
+ * Returns `undefined` when the call should run through the CLI instead:
+ * the CLI mode is selected, the call uses `additionalArgs` (which only the
+ * CLI understands), or the query server is unavailable.
  */
-const databaseLocks = new Map<string, Promise<unknown>>();
+async function runQueryOnQueryServerIfEnabled(
+  executionMode: unknown,
+  options: Record<string, unknown>,
+  params: Record<string, unknown>,
+  additionalArgs: string[],
+): Promise<CLIExecutionResult | undefined> {
+  const mode = (executionMode as QueryExecutionMode | undefined) ?? getDefaultQueryExecutionMode();
+  if (mode !== 'query-server') return undefined;
+
+  const database = options.database as string | undefined;
+  const queryPath = (params._resolvedQueryPath ?? params.query) as string | undefined;
+  const outputPath = options.output as string | undefined;
+  if (!database || !queryPath || !outputPath) {
+    logger.warn('Query server execution needs a database, query and output path; using the CLI');
+    return undefined;
+  }
+  if (additionalArgs.length > 0) {
+    logger.warn('additionalArgs are not supported by the query server; using the CLI');
+    return undefined;
+  }
+
+  const externalInputs: Record<string, string> = {};
+  const external = options.external as string[] | undefined;
+  for (const entry of Array.isArray(external) ? external : []) {
+    const eq = entry.indexOf('=');
+    if (eq > 0) externalInputs[entry.substring(0, eq)] = entry.substring(eq + 1);
+  }
+  const additionalPacks = typeof options['additional-packs'] === 'string'
+    ? (options['additional-packs'] as string).split(delimiter).filter(p => p.length > 0)
+    : [];
+  const modelPacks = options['model-packs'] as string[] | undefined;
+  // `--model-packs` takes `name@version`; the query server takes pack names.
+  const extensionPacks = (Array.isArray(modelPacks) ? modelPacks : []).map(p => p.replace(/@[^@/]*$/, ''));
+
+  try {
+    return await runQueryOnQueryServer({
+      additionalPacks,
+      database,
+      extensionPacks,
+      externalInputs,
+      logPath: options['evaluator-log'] as string | undefined,
+      outputPath,
+      queryPath,
+      timeoutMs: typeof options.timeout === 'number' ? options.timeout * 1000 : undefined,
+    });
+  } catch (error) {
+    logger.warn(`Query server evaluation unavailable, using the CLI: ${error instanceof Error ? error.message : String(error)}`);
+    return undefined;
+  }
+}
 
 /**
- * Acquire a serialized slot for the given database path.
- * Returns a release function that must be called when the operation completes.
+ * Add the predicate cache hits of an evaluator log summary to the shared
+ * cache's hit-rate counters.  Runs in the background; failures are logged.
  */
-function acquireDatabaseLock(dbPath: string): { ready: Promise<void>; release: () => void } {
-  const key = dbPath;
-  const previous = databaseLocks.get(key) ?? Promise.resolve();
-
-  let resolveGate!: () => void;
-  const gate = new Promise<void>(resolve => {
-    resolveGate = resolve;
-  });
-  databaseLocks.set(key, gate);
-
-  return {
-    ready: previous.then(() => {}),
-    release: () => {
-      resolveGate();
-      if (databaseLocks.get(key) === gate) {
-        databaseLocks.delete(key);
-      }
-    },
-  };
+function recordSharedCacheUsage(summaryPath: string): void {
+  parseEvaluatorLog(summaryPath)
+    .then((profile) => {
+      const lookups = profile.queries.reduce((sum, q) => sum + q.predicateCount, 0);
+      const hits = profile.queries.reduce((sum, q) => sum + q.cacheHits, 0);
+      return getServerManager().getSharedCache().recordEvaluation(lookups, hits);
+    })
+    .catch((error) => {
+      logger.warn(`Failed to record shared cache usage: ${error}`);
+    });
 }
 
 export interface CLIToolDefinition {
@@ -159,7 +211,9 @@ export function registerCLITool(server: McpServer, definition: CLIToolDefinition
               evaluationOutput: params.evaluationOutput,
               directory: params.directory,
               logDir: params.logDir,
-              qlref: params.qlref
+              qlref: params.qlref,
+              useCachedResults: params.useCachedResults,
+              executionMode: params.executionMode
             }
           : {
               _positional: params._positional || [],
@@ -181,7 +235,9 @@ export function registerCLITool(server: McpServer, definition: CLIToolDefinition
               evaluationOutput: params.evaluationOutput,
               directory: params.directory,
               logDir: params.logDir,
-              qlref: params.qlref
+              qlref: params.qlref,
+              useCachedResults: params.useCachedResults,
+              executionMode: params.executionMode
             };
 
         const {
@@ -205,6 +261,8 @@ export function registerCLITool(server: McpServer, definition: CLIToolDefinition
           directory,
           logDir: customLogDir,
           qlref,
+          useCachedResults,
+          executionMode,
         } = extractedParams;
 
         // Get remaining options (everything not extracted above)
@@ -212,6 +270,9 @@ export function registerCLITool(server: McpServer, definition: CLIToolDefinition
         Object.keys(extractedParams).forEach(key => delete options[key]);
         let positionalArgs = Array.isArray(_positional) ? _positional as string[] : [_positional as string];
 
+        // Set when a read-through cache lookup for codeql_query_run misses
+        let cacheMissNote: string | undefined;
+
         // Handle files parameter as positional arguments for certain tools
         if (files && Array.isArray(files)) {
           positionalArgs = [...positionalArgs, ...files as string[]];
@@ -306,6 +367,8 @@ export function registerCLITool(server: McpServer, definition: CLIToolDefinition
             // Auto-resolve multi-language DB root to language subfolder
             if (options.database && typeof options.database === 'string') {
               options.database = resolveDatabasePath(options.database);
+              // Used to fingerprint the database for query result caching
+              params._resolvedDatabasePath = options.database;
             }
             
             // Implement query resolution logic with enhanced results processing
@@ -318,6 +381,25 @@ export function registerCLITool(server: McpServer, definition: CLIToolDefinition
             } else if (query) {
               positionalArgs = [...positionalArgs, query as string];
             }
+
+            // Opt-in read-through cache: return a valid cached result without
+            // evaluating the query when the query source and database are
+            // unchanged since the result was cached.
+            if (useCachedResults) {
+              const cacheQueryPath = resolvedQuery ?? (query as string | undefined);
+              if (cacheQueryPath) {
+                const lookup = await lookupCachedQueryRunResults(params, cacheQueryPath, logger);
+                if (lookup.hit) {
+                  return {
+                    content: [{ type: 'text' as const, text: lookup.output }],
+                    isError: false,
+                  };
+                }
+                cacheMissNote = `Query result cache: miss (${lookup.reason})`;
+              } else {
+                cacheMissNote = 'Query result cache: miss (query path could not be determined)';
+              }
+            }
             
             // Handle extensible predicates for tool queries via data extensions.
             // Instead of CSV files + --external flags, we create a temporary
@@ -655,9 +737,7 @@ export function registerCLITool(server: McpServer, definition: CLIToolDefinition
           // Only set the default examples path when it actually exists on disk
           // (it may be absent in npm-installed layouts where ql/javascript/examples/
           // is not included in the published package).
-          const defaultExamplesPath = resolve(packageRootDir, 'ql', 'javascript', 'examples');
-          const additionalPacksPath = process.env.CODEQL_ADDITIONAL_PACKS
-            || (existsSync(defaultExamplesPath) ? defaultExamplesPath : undefined);
+          const additionalPacksPath = getDefaultAdditionalPacksPath(packageRootDir);
           if (additionalPacksPath && (name === 'codeql_test_run' || name === 'codeql_query_run' || name === 'codeql_query_compile' || name === 'codeql_database_analyze')) {
             const existingAdditionalPacks = options['additional-packs'] as string | undefined;
             options['additional-packs'] = existingAdditionalPacks
@@ -670,31 +750,29 @@ export function registerCLITool(server: McpServer, definition: CLIToolDefinition
             options['keep-databases'] = true;
           }
           
-          // Serialize concurrent database_analyze calls to the same database
-          // to prevent "cache directory is already locked" errors from the CLI.
-          // Normalize the lock key via realpath to avoid bypassing serialization
-          // when the same database is referenced through relative paths, symlinks,
-          // or different casing.
-          let dbLock: { ready: Promise<void>; release: () => void } | undefined;
+          // CLI commands that open a database are serialized per database
+          // (against each other and against query-server evaluations) to
+          // prevent "cache directory is already locked" errors from the CLI.
+          let cliDatabase: string | undefined;
           if (name === 'codeql_database_analyze') {
             // Use the resolved database path from params (set before positionalArgs
             // construction) rather than positionalArgs[0], which may include
             // _positional values prepended before the database path.
-            const resolvedDb = typeof params.database === 'string'
+            cliDatabase = typeof params.database === 'string'
               ? resolveDatabasePath(params.database)
               : (positionalArgs.length > 0 ? positionalArgs[0] : undefined);
-            if (resolvedDb) {
-              let lockKey = resolve(resolvedDb);
-              try { lockKey = realpathSync(lockKey); } catch { /* use resolved path if realpath fails */ }
-              dbLock = acquireDatabaseLock(lockKey);
-              await dbLock.ready;
-            }
+          } else if (name === 'codeql_query_run' && typeof options.database === 'string') {
+            cliDatabase = options.database;
           }
 
-          try {
-            result = await executeCodeQLCommand(subcommand, options, [...positionalArgs, ...userAdditionalArgs], cwd);
-          } finally {
-            dbLock?.release();
+          const queryServerResult = name === 'codeql_query_run'
+            ? await runQueryOnQueryServerIfEnabled(executionMode, options, params, userAdditionalArgs)
+            : undefined;
+          if (queryServerResult) {
+            result = queryServerResult;
+          } else {
+            const runCLI = () => executeCodeQLCommand(subcommand, options, [...positionalArgs, ...userAdditionalArgs], cwd);
+            result = cliDatabase ? await runCliOnDatabase(cliDatabase, runCLI) : await runCLI();
           }
         } else if (command === 'qlt') {
           result = await executeQLTCommand(subcommand, options, [...positionalArgs, ...userAdditionalArgs]);
@@ -712,6 +790,10 @@ export function registerCLITool(server: McpServer, definition: CLIToolDefinition
           result = await processQueryRunResults(result, params, logger);
         }
 
+        if (cacheMissNote) {
+          result = { ...result, stdout: `${result.stdout}\n\n${cacheMissNote}` };
+        }
+
         // Post-execution: generate evaluator log summary for query run / database analyze
         if ((name === 'codeql_query_run' || name === 'codeql_database_analyze') && result.success && queryLogDir) {
           const evalLogPath = options['evaluator-log'] as string | undefined;
@@ -727,6 +809,7 @@ export function registerCLITool(server: McpServer, definition: CLIToolDefinition
 
               if (summaryResult.success) {
                 logger.info(`Generated evaluator log summary at ${summaryPath}`);
+                recordSharedCacheUsage(summaryPath);
               }
             } catch (error) {
               logger.warn(`Failed to generate evaluator log summary: ${error}`);
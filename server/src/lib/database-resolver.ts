@@ -109,7 +109,8 @@ export function readDatabaseMetadata(databasePath: string): DatabaseMetadata {
 /**
  * Parse the text content of a `codeql-database.yml` file.
  *
- * Exported for testing — callers should prefer `readDatabaseMetadata()`.
+ * Exported for testing and for callers that read the file themselves;
+ * others should prefer `readDatabaseMetadata()`.
  */
 export function parseDatabaseYmlContent(content: string): DatabaseMetadata {
   const metadata: DatabaseMetadata = {};
@@ -0,0 +1,444 @@
+/**
+ * Incremental catalog of discovered databases and query/MRVA runs.
+ *
+ * The `list_*` discovery tools used to rescan their base directories on
+ * every call, reading `timestamp`, `query.log`, `repo_task.json` and
+ * database metadata from disk each time.  A {@link DiscoveryCatalog} keeps
+ * the parsed entry of every subdirectory of a base directory in memory and
+ * in the SQLite store (`discovery_catalog`), and refreshes only what
+ * changed:
+ *
+ * - Each base directory and the directories an entry was read from are
+ *   watched with `fs.watch`; an event marks the base listing or the entry
+ *   dirty, and a call with nothing dirty is answered from memory.
+ * - Entries that could not be watched (watcher budget exhausted, or
+ *   unsupported file system) and entries restored from the store are
+ *   revalidated by the stats (mtime and size) of the paths they were read
+ *   from, and re-read only when those changed.
+ *
+ * Scans read entries asynchronously, {@link SCAN_CONCURRENCY} at a time,
+ * and base directories in parallel.  {@link primeDiscoveryCatalogs} runs the
+ * first scan of every catalog in the background at startup.
+ */
+
+import { type FSWatcher, watch } from 'fs';
+import { readdir, stat } from 'fs/promises';
+import { join } from 'path';
+import { sessionDataManager } from './session-data-manager';
+import type { DiscoveryCatalogRow } from './sqlite-store';
+import { logger } from '../utils/logger';
+
+/** Entries read concurrently while scanning a base directory. */
+const SCAN_CONCURRENCY = 16;
+
+/**
+ * Upper bound on open directory watchers across all catalogs.  Entries past
+ * the budget fall back to stat-based revalidation.
+ */
+const MAX_WATCHERS = 4096;
+
+/** Result of reading one subdirectory of a base directory. */
+export interface CatalogEntryLoad<T> {
+  /** Directories the entry was read from; they are watched for changes. */
+  directories: string[];
+  /** Files read, all inside `directories`; their stats validate the entry. */
+  files: string[];
+  /** The parsed entry, or null when the subdirectory is not of this kind. */
+  value: T | null;
+}
+
+/** What a catalog lists, and how to read one of its entries. */
+export interface DiscoveryCatalogKind<T> {
+  /** Configured base directories, scanned by {@link primeDiscoveryCatalogs}. */
+  baseDirs: () => string[];
+  load: (entryPath: string, entryName: string) => Promise<CatalogEntryLoad<T>>;
+  /** Catalog name, used as the `kind` of persisted entries. */
+  name: string;
+}
+
+interface CatalogEntry<T> {
+  directories: string[];
+  dirty: boolean;
+  files: string[];
+  signature: string;
+  value: T | null;
+  /** Whether every directory of the entry has a watcher. */
+  watched: boolean;
+  watchers: Map<string, FSWatcher>;
+}
+
+interface BaseDirState<T> {
+  /** The listing must be re-read. */
+  dirty: boolean;
+  entries: Map<string, CatalogEntry<T>>;
+  mtimeMs: number;
+  /** Subdirectory names in `readdir` order, or null before the first scan. */
+  names: string[] | null;
+  refreshing?: Promise<void>;
+  /** Whether persisted entries have been loaded from the store. */
+  restored: boolean;
+  watcher?: FSWatcher;
+}
+
+const catalogs = new Set<DiscoveryCatalog<unknown>>();
+let openWatchers = 0;
+/** Watchers already closed, so a failed one is not released twice. */
+const closedWatchers = new WeakSet<FSWatcher>();
+
+/**
+ * Map `items` through `fn`, running at most `limit` calls at a time.
+ * Results are in the order of `items`.
+ */
+export async function mapConcurrent<I, O>(
+  items: readonly I[],
+  limit: number,
+  fn: (item: I, index: number) => Promise<O>,
+): Promise<O[]> {
+  const results: O[] = new Array(items.length);
+  let next = 0;
+  const worker = async (): Promise<void> => {
+    while (next < items.length) {
+      const i = next++;
+      results[i] = await fn(items[i], i);
+    }
+  };
+  await Promise.all(Array.from({ length: Math.min(limit, items.length) }, worker));
+  return results;
+}
+
+/**
+ * Stats of `paths` as a comparable string; missing paths are recorded as
+ * such, so their creation also changes the signature.
+ */
+async function computeSignature(paths: string[]): Promise<string> {
+  const parts = await Promise.all(paths.map(async path => {
+    try {
+      const st = await stat(path);
+      return `${st.mtimeMs}:${st.size}`;
+    } catch {
+      return '-';
+    }
+  }));
+  return parts.join('|');
+}
+
+/**
+ * Watch `path` (non-recursively) within the watcher budget.  `onEvent` is
+ * called for every change; `onError` after the watcher has been closed
+ * because it failed.
+ */
+function tryWatch(
+  path: string,
+  onEvent: (eventType: string, filename: string | null) => void,
+  onError: () => void,
+): FSWatcher | undefined {
+  if (openWatchers >= MAX_WATCHERS) return undefined;
+  let watcher: FSWatcher;
+  try {
+    watcher = watch(path, { persistent: false }, (eventType, filename) => {
+      onEvent(eventType, filename === null ? null : String(filename));
+    });
+  } catch {
+    return undefined;
+  }
+  openWatchers++;
+  watcher.on('error', () => {
+    closeWatcher(watcher);
+    onError();
+  });
+  return watcher;
+}
+
+function closeWatcher(watcher: FSWatcher | undefined): void {
+  if (!watcher || closedWatchers.has(watcher)) return;
+  closedWatchers.add(watcher);
+  openWatchers--;
+  try {
+    watcher.close();
+  } catch {
+    // Already closed
+  }
+}
+
+function closeEntryWatchers<T>(entry: CatalogEntry<T>): void {
+  for (const watcher of entry.watchers.values()) closeWatcher(watcher);
+  entry.watchers.clear();
+  entry.watched = false;
+}
+
+/**
+ * Catalog of the entries of one kind in any number of base directories.
+ */
+export class DiscoveryCatalog<T> {
+  private readonly bases = new Map<string, BaseDirState<T>>();
+
+  constructor(private readonly kind: DiscoveryCatalogKind<T>) {
+    catalogs.add(this as DiscoveryCatalog<unknown>);
+  }
+
+  /**
+   * Entries of every base directory, in `baseDirs` order and then in
+   * directory listing order.  Base directories that do not exist are
+   * skipped.
+   */
+  async list(baseDirs: string[]): Promise<T[]> {
+    await Promise.all(baseDirs.map(baseDir => this.refresh(baseDir)));
+    const values: T[] = [];
+    for (const baseDir of baseDirs) {
+      const state = this.bases.get(baseDir);
+      for (const name of state?.names ?? []) {
+        const value = state!.entries.get(name)?.value;
+        if (value !== null && value !== undefined) values.push(value);
+      }
+    }
+    return values;
+  }
+
+  /**
+   * Scan the configured base directories in the background.
+   */
+  prime(): void {
+    const baseDirs = this.kind.baseDirs();
+    if (baseDirs.length === 0) return;
+    this.list(baseDirs).then(
+      entries => logger.info(`Discovery catalog "${this.kind.name}": ${entries.length} entries in ${baseDirs.length} base directories`),
+      error => logger.warn(`Discovery catalog "${this.kind.name}" scan failed:`, error),
+    );
+  }
+
+  /** Close every watcher and forget all in-memory entries. */
+  close(): void {
+    for (const baseDir of [...this.bases.keys()]) this.drop(baseDir);
+  }
+
+  private drop(baseDir: string): void {
+    const state = this.bases.get(baseDir);
+    if (!state) return;
+    closeWatcher(state.watcher);
+    for (const entry of state.entries.values()) closeEntryWatchers(entry);
+    this.bases.delete(baseDir);
+  }
+
+  private async refresh(baseDir: string): Promise<void> {
+    let state = this.bases.get(baseDir);
+    while (state?.refreshing) {
+      await state.refreshing;
+      state = this.bases.get(baseDir);
+    }
+
+    // Let watcher events of changes made before this call be delivered.
+    let mtimeMs: number;
+    try {
+      const st = await stat(baseDir);
+      if (!st.isDirectory()) throw new Error('not a directory');
+      mtimeMs = st.mtimeMs;
+      // Watcher events polled together with the stat run before this.
+      await new Promise(resolve => setImmediate(resolve));
+    } catch {
+      if (this.bases.has(baseDir)) {
+        this.drop(baseDir);
+        this.persist(baseDir, [], null);
+      }
+      return;
+    }
+
+    state = this.bases.get(baseDir);
+    if (state?.refreshing) return this.refresh(baseDir);
+    if (!state) {
+      state = { dirty: true, entries: new Map(), mtimeMs, names: null, restored: false };
+      this.bases.set(baseDir, state);
+    }
+    if (mtimeMs !== state.mtimeMs) state.dirty = true;
+    if (this.isCurrent(state)) return;
+
+    const current = state;
+    current.refreshing = this.rescan(baseDir, current, mtimeMs).finally(() => {
+      current.refreshing = undefined;
+    });
+    await current.refreshing;
+  }
+
+  private isCurrent(state: BaseDirState<T>): boolean {
+    if (!state.watcher || state.dirty || state.names === null) return false;
+    for (const entry of state.entries.values()) {
+      if (entry.dirty || !entry.watched) return false;
+    }
+    return true;
+  }
+
+  private async rescan(baseDir: string, state: BaseDirState<T>, mtimeMs: number): Promise<void> {
+    if (!state.restored) {
+      state.restored = true;
+      this.restore(baseDir, state);
+    }
+
+    if (!state.watcher) {
+      state.watcher = tryWatch(
+        baseDir,
+        (eventType, filename) => {
+          if (eventType === 'rename' || filename === null) state.dirty = true;
+          const entry = filename === null ? undefined : state.entries.get(filename);
+          if (entry) entry.dirty = true;
+        },
+        () => {
+          state.watcher = undefined;
+          state.dirty = true;
+        },
+      );
+    }
+
+    const removed: string[] = [];
+    if (state.dirty || state.names === null) {
+      state.dirty = false;
+      state.mtimeMs = mtimeMs;
+      try {
+        state.names = await readdir(baseDir);
+      } catch {
+        state.names = [];
+      }
+      const names = new Set(state.names);
+      for (const [name, entry] of state.entries) {
+        if (!names.has(name)) {
+          closeEntryWatchers(entry);
+          state.entries.delete(name);
+          removed.push(name);
+        }
+      }
+    }
+
+    const changed = await mapConcurrent(state.names!, SCAN_CONCURRENCY, name =>
+      this.refreshEntry(baseDir, state, name));
+    this.persist(baseDir, changed.filter((row): row is DiscoveryCatalogRow => row !== undefined), removed);
+  }
+
+  /**
+   * Bring one entry up to date.  Returns its row when it was (re-)read.
+   */
+  private async refreshEntry(
+    baseDir: string,
+    state: BaseDirState<T>,
+    name: string,
+  ): Promise<DiscoveryCatalogRow | undefined> {
+    let entry = state.entries.get(name);
+    if (entry && !entry.dirty) {
+      if (entry.watched && state.watcher) return undefined;
+      if (await computeSignature([...entry.directories, ...entry.files]) === entry.signature) {
+        this.watchEntry(entry);
+        return undefined;
+      }
+    }
+
+    if (!entry) {
+      entry = { directories: [], dirty: false, files: [], signature: '', value: null, watched: false, watchers: new Map() };
+      state.entries.set(name, entry);
+    }
+    // An event during the read sets the flag again, so the next call re-reads.
+    entry.dirty = false;
+    let loaded: CatalogEntryLoad<T>;
+    try {
+      loaded = await this.kind.load(join(baseDir, name), name);
+    } catch (error) {
+      logger.debug(`Failed to read ${this.kind.name} entry ${join(baseDir, name)}: ${error instanceof Error ? error.message : String(error)}`);
+      loaded = { directories: [], files: [join(baseDir, name)], value: null };
+    }
+    entry.directories = loaded.directories;
+    entry.files = loaded.files;
+    entry.value = loaded.value;
+    entry.signature = await computeSignature([...loaded.directories, ...loaded.files]);
+    this.watchEntry(entry);
+
+    return {
+      data: JSON.stringify(loaded.value),
+      dependencies: JSON.stringify({ directories: loaded.directories, files: loaded.files }),
+      entryName: name,
+      signature: entry.signature,
+    };
+  }
+
+  /** Watch the entry's directories, dropping watchers of former ones. */
+  private watchEntry(entry: CatalogEntry<T>): void {
+    const wanted = new Set(entry.directories);
+    for (const [dir, watcher] of entry.watchers) {
+      if (!wanted.has(dir)) {
+        closeWatcher(watcher);
+        entry.watchers.delete(dir);
+      }
+    }
+    for (const dir of wanted) {
+      if (entry.watchers.has(dir)) continue;
+      const watcher = tryWatch(
+        dir,
+        () => { entry.dirty = true; },
+        () => {
+          entry.watchers.delete(dir);
+          entry.watched = false;
+          entry.dirty = true;
+        },
+      );
+      if (watcher) entry.watchers.set(dir, watcher);
+    }
+    entry.watched = entry.watchers.size === wanted.size;
+  }
+
+  /** Seed the entries of a base directory from the store. */
+  private restore(baseDir: string, state: BaseDirState<T>): void {
+    let rows: DiscoveryCatalogRow[];
+    try {
+      rows = sessionDataManager.getStore().getDiscoveryEntries(this.kind.name, baseDir);
+    } catch (error) {
+      logger.debug(`Discovery catalog store unavailable: ${error instanceof Error ? error.message : String(error)}`);
+      return;
+    }
+    for (const row of rows) {
+      try {
+        const dependencies = JSON.parse(row.dependencies) as { directories: string[]; files: string[] };
+        state.entries.set(row.entryName, {
+          directories: dependencies.directories,
+          dirty: false,
+          files: dependencies.files,
+          signature: row.signature,
+          value: JSON.parse(row.data) as T | null,
+          watched: false,
+          watchers: new Map(),
+        });
+      } catch {
+        // Unreadable row: the entry is read again
+      }
+    }
+    if (rows.length > 0) {
+      logger.debug(`Restored ${rows.length} ${this.kind.name} catalog entries of ${baseDir}`);
+    }
+  }
+
+  /**
+   * Write changed rows and delete removed entries; `removed` null deletes
+   * every entry of the base directory.
+   */
+  private persist(baseDir: string, rows: DiscoveryCatalogRow[], removed: string[] | null): void {
+    try {
+      const store = sessionDataManager.getStore();
+      if (removed === null) {
+        store.deleteDiscoveryEntries(this.kind.name, baseDir);
+      } else {
+        store.updateDiscoveryEntries(this.kind.name, baseDir, rows, removed);
+      }
+    } catch (error) {
+      logger.debug(`Failed to persist ${this.kind.name} catalog of ${baseDir}: ${error instanceof Error ? error.message : String(error)}`);
+    }
+  }
+}
+
+/**
+ * Scan the configured base directories of every catalog in the background,
+ * so the first `list_*` calls are served from memory.
+ */
+export function primeDiscoveryCatalogs(): void {
+  for (const catalog of catalogs) catalog.prime();
+}
+
+/**
+ * Close the watchers of every catalog.
+ */
+export function closeDiscoveryCatalogs(): void {
+  for (const catalog of catalogs) catalog.close();
+}
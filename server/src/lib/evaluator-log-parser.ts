@@ -10,13 +10,14 @@
  *
  * Both formats use pretty-printed JSON separated by `}\n{` boundaries.
  *
- * Files are streamed line-by-line so that very large evaluator logs
- * (hundreds of MB) are handled without loading the entire file into memory.
+ * Files are streamed through the byte-level scanner in
+ * `evaluator-log-scanner.ts`, which splits objects on raw bytes and, for
+ * large logs, does the scanning and JSON parsing on a worker thread.  Very
+ * large evaluator logs (several GB) are handled without loading the entire
+ * file into memory or blocking the event loop.
  */
 
-import { createReadStream } from 'fs';
-import { createInterface } from 'readline';
-import { logger } from '../utils/logger';
+import { streamEvaluatorEvents } from './evaluator-log-scanner';
 
 // ---------------------------------------------------------------------------
 // Public interfaces
@@ -35,9 +36,15 @@ export interface PipelineStage {
 export interface PredicateProfile {
   predicateName: string;
   position?: string;
+  /** Hash of the predicate's RA; equal across runs when the RA is unchanged. */
+  raHash?: string;
   durationMs: number;
   resultSize?: number;
   pipelineCount?: number;
+  /** Tuples produced across all pipeline steps (kept when detail is dropped). */
+  tupleCount?: number;
+  /** Highest duplication percentage of any pipeline step (kept when detail is dropped). */
+  maxDuplicationPercentage?: number;
   evaluationStrategy?: string;
   dependencies: string[];
   /** RA operation text for each pipeline step (from the `ra` field). */
@@ -63,6 +70,17 @@ export interface ProfileData {
   totalEvents: number;
 }
 
+/** Options accepted by all parse functions. */
+export interface ParseEvaluatorLogOptions {
+  /**
+   * Keep `raSteps` and `pipelineStages` only for the `detailTopK` slowest
+   * predicates of each query.  Every other predicate keeps its summary
+   * metrics, so memory no longer grows with the RA text of the whole log.
+   * All details are kept when omitted.
+   */
+  detailTopK?: number;
+}
+
 // ---------------------------------------------------------------------------
 // Format detection
 // ---------------------------------------------------------------------------
@@ -81,91 +99,127 @@ export function detectLogFormat(firstEvent: Record<string, unknown>): 'raw' | 's
   return 'summary';
 }
 
-// ---------------------------------------------------------------------------
-// Streaming JSON object parser
-// ---------------------------------------------------------------------------
+/**
+ * Predicate names from an event's `dependencies`, which the scanner reduces
+ * to an array of names (the log itself maps names to RA hashes).
+ */
+function dependencyNames(dependencies: unknown): string[] {
+  if (Array.isArray(dependencies)) return dependencies as string[];
+  if (dependencies && typeof dependencies === 'object') return Object.keys(dependencies);
+  return [];
+}
 
 /**
- * Stream a pretty-printed multi-JSON file and yield parsed objects one at
- * a time. Uses readline to process the file line-by-line, tracking brace
- * depth to detect object boundaries. This avoids loading the entire file
- * into memory.
+ * Tuple count and peak duplication summed up over a predicate's pipeline
+ * stages, so that they survive when the stages themselves are dropped.
  */
-async function* streamJsonObjects(
-  logPath: string
-): AsyncGenerator<Record<string, unknown>> {
-  const rl = createInterface({
-    input: createReadStream(logPath, { encoding: 'utf-8' }),
-    crlfDelay: Infinity,
-  });
-
-  let depth = 0;
-  let inString = false;
-  let escape = false;
-  const lines: string[] = [];
-
-  for await (const line of rl) {
-    // Track whether this line pushes us into or out of objects. We need to
-    // handle strings (which may contain `{` or `}`) and escape sequences.
-    for (const ch of line) {
-      if (escape) {
-        escape = false;
-        continue;
-      }
-      if (ch === '\\' && inString) {
-        escape = true;
-        continue;
-      }
-      if (ch === '"') {
-        inString = !inString;
-        continue;
+function pipelineTotals(
+  stages: PipelineStage[],
+): Pick<PredicateProfile, 'maxDuplicationPercentage' | 'tupleCount'> {
+  if (stages.length === 0) return {};
+  let tupleCount = 0;
+  let maxDuplicationPercentage: number | undefined;
+  for (const stage of stages) {
+    for (const count of stage.counts) tupleCount += count;
+    for (const percentage of stage.duplicationPercentages ?? []) {
+      if (maxDuplicationPercentage === undefined || percentage > maxDuplicationPercentage) {
+        maxDuplicationPercentage = percentage;
       }
-      if (inString) continue;
-      if (ch === '{') depth++;
-      if (ch === '}') depth--;
     }
+  }
+  return { maxDuplicationPercentage, tupleCount };
+}
+
+// ---------------------------------------------------------------------------
+// Bounded detail retention
+// ---------------------------------------------------------------------------
 
-    if (depth > 0 || (depth === 0 && line.trim().length > 0 && lines.length > 0)) {
-      lines.push(line);
-    } else if (depth === 0 && lines.length === 0 && line.trim().length > 0) {
-      // Single-line object or start of multi-line
-      lines.push(line);
+/**
+ * Tracks the `limit` slowest predicates of one query in a min-heap and
+ * strips the RA steps and pipeline stages of every predicate that drops
+ * out of it.
+ *
+ * Ties in duration are broken by evaluation order, earlier first, to
+ * agree with a stable sort of the predicates by descending duration.
+ */
+class DetailRetainer {
+  private readonly heap: { order: number; profile: PredicateProfile }[] = [];
+  private count = 0;
+
+  constructor(private readonly limit: number) {}
+
+  /** Offer a completed predicate; strip its detail unless it is in the top K. */
+  offer(profile: PredicateProfile): void {
+    const entry = { order: this.count++, profile };
+    if (this.heap.length < this.limit) {
+      this.heap.push(entry);
+      this.siftUp(this.heap.length - 1);
+      return;
     }
+    if (this.limit === 0 || !this.slower(entry, this.heap[0])) {
+      stripDetail(profile);
+      return;
+    }
+    stripDetail(this.heap[0].profile);
+    this.heap[0] = entry;
+    this.siftDown(0);
+  }
 
-    // When depth returns to 0 and we have accumulated lines, emit an object
-    if (depth === 0 && lines.length > 0) {
-      const objStr = lines.join('\n');
-      lines.length = 0;
-      inString = false;
-      escape = false;
-
-      if (objStr.trim().length === 0) continue;
-
-      try {
-        yield JSON.parse(objStr) as Record<string, unknown>;
-      } catch {
-        logger.warn(
-          `Failed to parse evaluator log object: ${objStr.substring(0, 120)}...`,
-        );
-      }
+  /** Whether `a` ranks above `b`. */
+  private slower(
+    a: { order: number; profile: PredicateProfile },
+    b: { order: number; profile: PredicateProfile },
+  ): boolean {
+    const delta = a.profile.durationMs - b.profile.durationMs;
+    return delta > 0 || (delta === 0 && a.order < b.order);
+  }
+
+  private siftUp(index: number): void {
+    const heap = this.heap;
+    while (index > 0) {
+      const parent = (index - 1) >> 1;
+      if (!this.slower(heap[parent], heap[index])) break;
+      [heap[parent], heap[index]] = [heap[index], heap[parent]];
+      index = parent;
     }
   }
 
-  // Handle any trailing accumulated lines (unterminated object)
-  if (lines.length > 0) {
-    const objStr = lines.join('\n');
-    if (objStr.trim().length > 0) {
-      try {
-        yield JSON.parse(objStr) as Record<string, unknown>;
-      } catch {
-        logger.warn(
-          `Failed to parse trailing evaluator log object: ${objStr.substring(0, 120)}...`,
-        );
+  private siftDown(index: number): void {
+    const heap = this.heap;
+    for (;;) {
+      let smallest = index;
+      for (const child of [2 * index + 1, 2 * index + 2]) {
+        if (child < heap.length && this.slower(heap[smallest], heap[child])) smallest = child;
       }
+      if (smallest === index) return;
+      [heap[smallest], heap[index]] = [heap[index], heap[smallest]];
+      index = smallest;
     }
   }
 }
 
+function stripDetail(profile: PredicateProfile): void {
+  delete profile.raSteps;
+  delete profile.pipelineStages;
+}
+
+/**
+ * Per-query {@link DetailRetainer}s, or `undefined` when all details are kept.
+ */
+function createRetainers<K>(options: ParseEvaluatorLogOptions): ((key: K) => DetailRetainer) | undefined {
+  const limit = options.detailTopK;
+  if (limit === undefined) return undefined;
+  const retainers = new Map<K, DetailRetainer>();
+  return (key) => {
+    let retainer = retainers.get(key);
+    if (!retainer) {
+      retainer = new DetailRetainer(Math.max(0, Math.floor(limit)));
+      retainers.set(key, retainer);
+    }
+    return retainer;
+  };
+}
+
 // ---------------------------------------------------------------------------
 // Raw evaluator log parsing
 // ---------------------------------------------------------------------------
@@ -173,13 +227,17 @@ async function* streamJsonObjects(
 /**
  * Parse a raw `evaluator-log.jsonl` file into {@link ProfileData}.
  *
- * Streams the file line-by-line and processes events incrementally.
+ * Streams the file and processes events incrementally.
  * Tracks `QUERY_STARTED`/`QUERY_COMPLETED` pairs, computes predicate
  * durations from `PREDICATE_STARTED`/`PREDICATE_COMPLETED` nanoTime
- * differences, and groups predicates by `queryCausingWork`.
+ * differences, and groups predicates by `queryCausingWork`.  Start events
+ * are dropped as soon as their predicate or pipeline completes.
  */
-export async function parseRawEvaluatorLog(logPath: string): Promise<ProfileData> {
-  return processRawEvents(streamJsonObjects(logPath));
+export async function parseRawEvaluatorLog(
+  logPath: string,
+  options: ParseEvaluatorLogOptions = {},
+): Promise<ProfileData> {
+  return processRawEvents(streamEvaluatorEvents(logPath), options);
 }
 
 /**
@@ -188,8 +246,10 @@ export async function parseRawEvaluatorLog(logPath: string): Promise<ProfileData
  */
 async function processRawEvents(
   events: AsyncIterable<Record<string, unknown>>,
+  options: ParseEvaluatorLogOptions,
 ): Promise<ProfileData> {
 
+  const retainerFor = createRetainers<number>(options);
   let codeqlVersion: string | undefined;
 
   // Maps: eventId → event data for lookups
@@ -202,6 +262,7 @@ async function processRawEvents(
     {
       predicateName: string;
       position?: string;
+      raHash?: string;
       predicateType?: string;
       dependencies: string[];
       queryCausingWork?: number;
@@ -260,7 +321,6 @@ async function processRawEvents(
 
       case 'PREDICATE_STARTED': {
         const eid = event.eventId as number;
-        const deps = event.dependencies as Record<string, string> | undefined;
         // Extract RA pipeline steps if present
         const raObj = event.ra as Record<string, unknown> | undefined;
         let raSteps: string[] | undefined;
@@ -270,8 +330,9 @@ async function processRawEvents(
         predicateStartEvents.set(eid, {
           predicateName: (event.predicateName as string) || 'unknown',
           position: event.position as string | undefined,
+          raHash: event.raHash as string | undefined,
           predicateType: event.predicateType as string | undefined,
-          dependencies: deps ? Object.keys(deps) : [],
+          dependencies: dependencyNames(event.dependencies),
           queryCausingWork: event.queryCausingWork as number | undefined,
           nanoTime: event.nanoTime as number,
           pipelineCount: 0,
@@ -293,6 +354,8 @@ async function processRawEvents(
         const pipelineStartEid = event.startEvent as number;
         const predEid = pipelineToPredicateMap.get(pipelineStartEid);
         const startNano = pipelineStartNanoTimes.get(pipelineStartEid);
+        pipelineToPredicateMap.delete(pipelineStartEid);
+        pipelineStartNanoTimes.delete(pipelineStartEid);
         if (predEid !== undefined) {
           const predStart = predicateStartEvents.get(predEid);
           if (predStart) {
@@ -315,6 +378,7 @@ async function processRawEvents(
         const startEid = event.startEvent as number;
         const predStart = predicateStartEvents.get(startEid);
         if (predStart) {
+          predicateStartEvents.delete(startEid);
           const durationNs =
             (event.nanoTime as number) - predStart.nanoTime;
           const durationMs = durationNs / 1_000_000;
@@ -322,12 +386,14 @@ async function processRawEvents(
           const profile: PredicateProfile = {
             predicateName: predStart.predicateName,
             position: predStart.position,
+            raHash: predStart.raHash,
             durationMs,
             resultSize: event.resultSize as number | undefined,
             pipelineCount:
               predStart.pipelineCount > 0
                 ? predStart.pipelineCount
                 : undefined,
+            ...pipelineTotals(predStart.pipelineStages),
             evaluationStrategy: predStart.predicateType,
             dependencies: predStart.dependencies,
             raSteps: predStart.raSteps,
@@ -346,6 +412,7 @@ async function processRawEvents(
               queryPredicates.set(qEid, arr);
             }
             arr.push(profile);
+            retainerFor?.(qEid).offer(profile);
           }
         }
         break;
@@ -398,13 +465,16 @@ async function processRawEvents(
 /**
  * Parse an `evaluator-log.summary.jsonl` file into {@link ProfileData}.
  *
- * Streams the file line-by-line and processes events incrementally.
+ * Streams the file and processes events incrementally.
  * Summary events carry `millis` directly (already in ms). Predicates are
  * grouped by `queryCausingWork` which is a **string** (query name) in the
  * summary format.
  */
-export async function parseSummaryLog(logPath: string): Promise<ProfileData> {
-  return processSummaryEvents(streamJsonObjects(logPath));
+export async function parseSummaryLog(
+  logPath: string,
+  options: ParseEvaluatorLogOptions = {},
+): Promise<ProfileData> {
+  return processSummaryEvents(streamEvaluatorEvents(logPath), options);
 }
 
 /**
@@ -413,7 +483,9 @@ export async function parseSummaryLog(logPath: string): Promise<ProfileData> {
  */
 async function processSummaryEvents(
   events: AsyncIterable<Record<string, unknown>>,
+  options: ParseEvaluatorLogOptions,
 ): Promise<ProfileData> {
+  const retainerFor = createRetainers<string>(options);
   let codeqlVersion: string | undefined;
 
   // queryCausingWork (string) → collected predicates
@@ -451,7 +523,6 @@ async function processSummaryEvents(
     const queryName =
       (event.queryCausingWork as string) || 'unknown';
 
-    const deps = event.dependencies as Record<string, string> | undefined;
     const pipelineRuns = event.pipelineRuns as number | undefined;
 
     // Extract RA steps from summary events
@@ -464,11 +535,12 @@ async function processSummaryEvents(
     const profile: PredicateProfile = {
       predicateName,
       position: event.position as string | undefined,
+      raHash: event.raHash as string | undefined,
       durationMs: millis,
       resultSize: event.resultSize as number | undefined,
       pipelineCount: pipelineRuns,
       evaluationStrategy: strategy,
-      dependencies: deps ? Object.keys(deps) : [],
+      dependencies: dependencyNames(event.dependencies),
       raSteps,
     };
 
@@ -486,6 +558,7 @@ async function processSummaryEvents(
       queryPredicatesMap.set(queryName, arr);
     }
     arr.push(profile);
+    retainerFor?.(queryName).offer(profile);
 
     queryTotalMs.set(
       queryName,
@@ -525,10 +598,14 @@ async function processSummaryEvents(
  *
  * @param logPath - Absolute path to `evaluator-log.jsonl` or
  *   `evaluator-log.summary.jsonl`.
+ * @param options - See {@link ParseEvaluatorLogOptions}.
  * @returns Parsed profile data.
  */
-export async function parseEvaluatorLog(logPath: string): Promise<ProfileData> {
-  const stream = streamJsonObjects(logPath);
+export async function parseEvaluatorLog(
+  logPath: string,
+  options: ParseEvaluatorLogOptions = {},
+): Promise<ProfileData> {
+  const stream = streamEvaluatorEvents(logPath);
   const iterator = stream[Symbol.asyncIterator]();
 
   // Read the first event to detect format
@@ -555,7 +632,7 @@ export async function parseEvaluatorLog(logPath: string): Promise<ProfileData> {
   }
 
   if (format === 'raw') {
-    return processRawEvents(prependFirst());
+    return processRawEvents(prependFirst(), options);
   }
-  return processSummaryEvents(prependFirst());
+  return processSummaryEvents(prependFirst(), options);
 }
@@ -0,0 +1,397 @@
+/**
+ * Byte-level scanner for CodeQL evaluator logs.
+ *
+ * Evaluator logs are concatenated, pretty-printed JSON objects and can grow
+ * to several GB.  {@link JsonObjectSplitter} finds object boundaries on the
+ * raw bytes of each chunk, skipping over string contents with `indexOf`
+ * instead of decoding and walking every character.  Each object is then
+ * parsed and reduced by {@link decodeEvaluatorEvent} to the fields the
+ * profile parser reads.
+ *
+ * Logs larger than {@link WORKER_MIN_LOG_BYTES} are scanned and parsed on a
+ * `worker_threads` worker that posts batches of compact events back, so the
+ * MCP event loop stays free while a multi-GB log is read.  The worker is
+ * created from the source of the functions below (`eval: true`), which keeps
+ * the server a single bundled file.
+ */
+
+import { createReadStream, statSync } from 'fs';
+import { Worker } from 'worker_threads';
+import { logger } from '../utils/logger';
+
+/** Logs at least this large are scanned on a worker thread (8 MiB). */
+export const WORKER_MIN_LOG_BYTES = 8 * 1024 * 1024;
+
+/** Bytes read from the log per chunk in the worker. */
+const WORKER_CHUNK_BYTES = 1024 * 1024;
+
+/** Events per message posted by the worker. */
+const WORKER_BATCH_EVENTS = 256;
+
+/** Batches the worker may post ahead of the consumer. */
+const WORKER_MAX_IN_FLIGHT = 8;
+
+/**
+ * Messages posted by the scanner worker.
+ */
+type WorkerMessage =
+  | { events: Record<string, unknown>[]; kind: 'events' }
+  | { kind: 'done' }
+  | { kind: 'error'; message: string }
+  | { kind: 'warn'; message: string };
+
+/**
+ * Splits a byte stream of concatenated JSON objects into one buffer per
+ * top-level object.
+ *
+ * Only `{`, `}` and `"` outside strings affect the state, and all three are
+ * ASCII, so multi-byte UTF-8 sequences never need decoding.  State carries
+ * across chunks, so boundaries may fall anywhere, including inside strings
+ * and escape sequences.
+ *
+ * This class must not reference anything outside its own body: its source
+ * is evaluated in the scanner worker.
+ */
+export class JsonObjectSplitter {
+  private depth = 0;
+  private escape = false;
+  private inString = false;
+  /** Bytes of the object in progress that arrived in earlier chunks. */
+  private parts: Buffer[] = [];
+
+  /**
+   * Scan `chunk` and return every object it completes.  The returned
+   * buffers may share memory with `chunk` and earlier chunks.
+   */
+  push(chunk: Buffer): Buffer[] {
+    const objects: Buffer[] = [];
+    const length = chunk.length;
+    let start = this.depth > 0 ? 0 : -1;
+    let i = 0;
+
+    while (i < length) {
+      if (this.inString) {
+        if (this.escape) {
+          this.escape = false;
+          i++;
+          continue;
+        }
+        // Jump to the closing quote: the next `"` preceded by an even
+        // number of backslashes.
+        const from = i;
+        let quote = chunk.indexOf(0x22, from);
+        while (quote !== -1 && this.backslashesBefore(chunk, from, quote) % 2 === 1) {
+          quote = chunk.indexOf(0x22, quote + 1);
+        }
+        if (quote === -1) {
+          this.escape = this.backslashesBefore(chunk, from, length) % 2 === 1;
+          break;
+        }
+        this.inString = false;
+        i = quote + 1;
+        continue;
+      }
+
+      if (this.depth === 0) {
+        const open = chunk.indexOf(0x7b, i); // '{'
+        if (open === -1) break;
+        start = open;
+        this.depth = 1;
+        i = open + 1;
+        continue;
+      }
+
+      const byte = chunk[i];
+      if (byte === 0x22) { // '"'
+        this.inString = true;
+      } else if (byte === 0x7b) { // '{'
+        this.depth++;
+      } else if (byte === 0x7d && --this.depth === 0) { // '}'
+        const tail = chunk.subarray(start, i + 1);
+        objects.push(this.parts.length > 0 ? Buffer.concat([...this.parts, tail]) : tail);
+        this.parts = [];
+        start = -1;
+      }
+      i++;
+    }
+
+    if (this.depth > 0 && start < length) {
+      this.parts.push(chunk.subarray(start));
+    }
+    return objects;
+  }
+
+  /**
+   * Return the bytes of an unterminated trailing object, if any, and reset.
+   */
+  finish(): Buffer | null {
+    const rest = this.parts.length > 0 ? Buffer.concat(this.parts) : null;
+    this.depth = 0;
+    this.escape = false;
+    this.inString = false;
+    this.parts = [];
+    return rest;
+  }
+
+  /** Length of the run of backslashes ending just before `end`, not before `from`. */
+  private backslashesBefore(chunk: Buffer, from: number, end: number): number {
+    let count = 0;
+    for (let j = end - 1; j >= from && chunk[j] === 0x5c; j--) count++;
+    return count;
+  }
+}
+
+/**
+ * Parse one evaluator log object and keep only the fields the profile
+ * parser reads.  `dependencies` is reduced to its keys (the predicate
+ * names) and a raw-log `ra` object to its `pipeline`.
+ *
+ * Throws on invalid JSON.  Like {@link JsonObjectSplitter}, this function
+ * is evaluated in the scanner worker and must be self-contained.
+ */
+export function decodeEvaluatorEvent(bytes: Buffer): Record<string, unknown> {
+  const event = JSON.parse(bytes.toString('utf8')) as Record<string, unknown>;
+  const fields = [
+    'codeqlVersion', 'counts', 'duplicationPercentages', 'evaluationStrategy', 'eventId',
+    'isCached', 'millis', 'nanoTime', 'pipelineRuns', 'position', 'predicateName',
+    'predicateStartEvent', 'predicateType', 'queryCausingWork', 'queryName', 'raHash',
+    'resultSize', 'startEvent', 'summaryLogVersion', 'type',
+  ];
+  const compact: Record<string, unknown> = {};
+  for (const field of fields) {
+    if (event[field] !== undefined) compact[field] = event[field];
+  }
+
+  const dependencies = event.dependencies;
+  if (dependencies && typeof dependencies === 'object') {
+    compact.dependencies = Array.isArray(dependencies) ? dependencies : Object.keys(dependencies);
+  }
+
+  const ra = event.ra;
+  if (typeof ra === 'string') {
+    compact.ra = ra;
+  } else if (ra && typeof ra === 'object' && 'pipeline' in ra) {
+    compact.ra = { pipeline: (ra as { pipeline: unknown }).pipeline };
+  }
+  return compact;
+}
+
+/**
+ * Worker entry point.  Reads the log synchronously (the worker has nothing
+ * else to do), splits and decodes it, and posts events in batches.  At most
+ * `maxInFlight` batches are outstanding; each batch the consumer takes is
+ * acknowledged with a message, which bounds worker-side memory when the
+ * consumer is slower than the scan.
+ */
+async function evaluatorLogWorkerMain(
+  Splitter: typeof JsonObjectSplitter,
+  decode: typeof decodeEvaluatorEvent,
+): Promise<void> {
+  const { parentPort, workerData } = process.getBuiltinModule('worker_threads');
+  const { closeSync, openSync, readSync } = process.getBuiltinModule('fs');
+  const { batchSize, chunkBytes, logPath, maxInFlight } = workerData as {
+    batchSize: number;
+    chunkBytes: number;
+    logPath: string;
+    maxInFlight: number;
+  };
+  const port = parentPort!;
+
+  let credits = maxInFlight;
+  let resume: (() => void) | null = null;
+  port.on('message', () => {
+    credits++;
+    const wake = resume;
+    resume = null;
+    wake?.();
+  });
+
+  let batch: Record<string, unknown>[] = [];
+  const post = async (): Promise<void> => {
+    while (credits === 0) {
+      await new Promise<void>(resolve => { resume = resolve; });
+    }
+    credits--;
+    port.postMessage({ events: batch, kind: 'events' });
+    batch = [];
+  };
+  const add = (bytes: Buffer, trailing: boolean): void => {
+    try {
+      batch.push(decode(bytes));
+    } catch {
+      port.postMessage({
+        kind: 'warn',
+        message: `Failed to parse ${trailing ? 'trailing ' : ''}evaluator log object: ${bytes.toString('utf8', 0, 120)}...`,
+      });
+    }
+  };
+
+  let fd: number;
+  try {
+    fd = openSync(logPath, 'r');
+  } catch (error) {
+    port.postMessage({ kind: 'error', message: error instanceof Error ? error.message : String(error) });
+    return;
+  }
+  try {
+    const splitter = new Splitter();
+    for (;;) {
+      // A fresh buffer per read: split objects may reference earlier chunks.
+      const chunk = Buffer.allocUnsafe(chunkBytes);
+      const read = readSync(fd, chunk, 0, chunkBytes, null);
+      if (read === 0) break;
+      for (const bytes of splitter.push(chunk.subarray(0, read))) {
+        add(bytes, false);
+        if (batch.length >= batchSize) await post();
+      }
+    }
+    const rest = splitter.finish();
+    if (rest) add(rest, true);
+    if (batch.length > 0) await post();
+    port.postMessage({ kind: 'done' });
+  } catch (error) {
+    port.postMessage({ kind: 'error', message: error instanceof Error ? error.message : String(error) });
+  } finally {
+    closeSync(fd);
+  }
+}
+
+let workerSource: string | undefined;
+
+/**
+ * Source of the scanner worker: the entry point applied to the splitter
+ * and decoder, passed as arguments so that renaming by the bundler cannot
+ * break the references between them.
+ */
+function getWorkerSource(): string {
+  workerSource ??= `(${evaluatorLogWorkerMain.toString()})(${JsonObjectSplitter.toString()}, ${decodeEvaluatorEvent.toString()});`;
+  return workerSource;
+}
+
+/**
+ * Scan a log on the current thread.
+ */
+async function* scanOnCurrentThread(logPath: string): AsyncGenerator<Record<string, unknown>> {
+  const splitter = new JsonObjectSplitter();
+  const decode = (bytes: Buffer, trailing: boolean): Record<string, unknown> | null => {
+    try {
+      return decodeEvaluatorEvent(bytes);
+    } catch {
+      logger.warn(
+        `Failed to parse ${trailing ? 'trailing ' : ''}evaluator log object: ${bytes.toString('utf8', 0, 120)}...`,
+      );
+      return null;
+    }
+  };
+
+  for await (const chunk of createReadStream(logPath)) {
+    for (const bytes of splitter.push(chunk as Buffer)) {
+      const event = decode(bytes, false);
+      if (event) yield event;
+    }
+  }
+  const rest = splitter.finish();
+  if (rest) {
+    const event = decode(rest, true);
+    if (event) yield event;
+  }
+}
+
+/**
+ * Scan a log on a worker thread, yielding the events it posts.
+ */
+async function* scanOnWorker(worker: Worker): AsyncGenerator<Record<string, unknown>> {
+  const queue: WorkerMessage[] = [];
+  let wake: (() => void) | null = null;
+  const enqueue = (message: WorkerMessage): void => {
+    queue.push(message);
+    const resolve = wake;
+    wake = null;
+    resolve?.();
+  };
+  worker.on('message', enqueue);
+  worker.on('error', error => enqueue({ kind: 'error', message: error.message }));
+  worker.on('exit', code => enqueue(code === 0
+    ? { kind: 'done' }
+    : { kind: 'error', message: `Evaluator log worker exited with code ${code}` }));
+
+  try {
+    for (;;) {
+      while (queue.length === 0) {
+        await new Promise<void>(resolve => { wake = resolve; });
+      }
+      const message = queue.shift()!;
+      switch (message.kind) {
+        case 'events':
+          // Acknowledge before consuming so the worker scans the next batch
+          // while this one is processed.
+          worker.postMessage(null);
+          yield* message.events;
+          break;
+        case 'warn':
+          logger.warn(message.message);
+          break;
+        case 'error':
+          throw new Error(message.message);
+        case 'done':
+          return;
+      }
+    }
+  } finally {
+    void worker.terminate();
+  }
+}
+
+/**
+ * Options for {@link streamEvaluatorEvents}.
+ */
+export interface StreamEvaluatorEventsOptions {
+  /**
+   * Scan on a worker thread.  Defaults to `true` for logs of at least
+   * {@link WORKER_MIN_LOG_BYTES}, where it outweighs the worker start-up.
+   */
+  useWorker?: boolean;
+}
+
+/**
+ * Stream the events of an evaluator log as compact records (see
+ * {@link decodeEvaluatorEvent}).  Objects that are not valid JSON are
+ * logged and skipped.
+ */
+export async function* streamEvaluatorEvents(
+  logPath: string,
+  options: StreamEvaluatorEventsOptions = {},
+): AsyncGenerator<Record<string, unknown>> {
+  let useWorker = options.useWorker;
+  if (useWorker === undefined) {
+    try {
+      useWorker = statSync(logPath).size >= WORKER_MIN_LOG_BYTES;
+    } catch {
+      // Let the read report the error.
+      useWorker = false;
+    }
+  }
+
+  if (useWorker) {
+    let worker: Worker | undefined;
+    try {
+      worker = new Worker(getWorkerSource(), {
+        eval: true,
+        workerData: {
+          batchSize: WORKER_BATCH_EVENTS,
+          chunkBytes: WORKER_CHUNK_BYTES,
+          logPath,
+          maxInFlight: WORKER_MAX_IN_FLIGHT,
+        },
+      });
+    } catch (error) {
+      logger.warn('Failed to start evaluator log worker; scanning on the main thread:', error);
+    }
+    if (worker) {
+      yield* scanOnWorker(worker);
+      return;
+    }
+  }
+
+  yield* scanOnCurrentThread(logPath);
+}
@@ -0,0 +1,217 @@
+/**
+ * Diff of two evaluator log profiles of the same query, for catching
+ * performance regressions between runs.
+ *
+ * Predicates are lined up per query in three passes, each over the
+ * predicates still unmatched:
+ *
+ * 1. by exact predicate name;
+ * 2. by RA hash, when it is unique on both sides (the same computation
+ *    under a new name);
+ * 3. by name with trailing `#<hex>` hash suffixes removed, when unique on
+ *    both sides (the same predicate with changed RA).
+ *
+ * A predicate evaluated more than once in a run (e.g. once per stage) is
+ * summed into a single entry first.
+ */
+
+import { basename } from 'path';
+import type { PredicateProfile, ProfileData, QueryProfile } from './evaluator-log-parser';
+
+/** How a pair of predicates was lined up. */
+export type PredicateMatch = 'name' | 'normalizedName' | 'raHash';
+
+/** A predicate's metrics summed over its evaluations in one run. */
+export interface PredicateTotals {
+  durationMs: number;
+  evaluations: number;
+  maxDuplicationPercentage?: number;
+  predicateName: string;
+  raHash?: string;
+  resultSize?: number;
+  tupleCount?: number;
+}
+
+/** A predicate present in both runs. */
+export interface PredicateChange {
+  baseline: PredicateTotals;
+  candidate: PredicateTotals;
+  /** Candidate minus baseline duration. */
+  durationDeltaMs: number;
+  /** Candidate duration over baseline duration, or `null` when the baseline took 0 ms. */
+  durationRatio: number | null;
+  duplicationDelta: number | null;
+  match: PredicateMatch;
+  /** Whether the RA hash differs between the runs. */
+  raChanged: boolean;
+  resultSizeDelta: number | null;
+  tupleCountDelta: number | null;
+}
+
+/** Diff of one query's predicates. */
+export interface QueryProfileDiff {
+  added: PredicateTotals[];
+  baselineDurationMs: number;
+  baselineQuery: string;
+  candidateDurationMs: number;
+  candidateQuery: string;
+  /** Matched predicates, largest absolute duration change first. */
+  changes: PredicateChange[];
+  removed: PredicateTotals[];
+}
+
+/** Diff of two profiles. */
+export interface ProfileDiff {
+  queries: QueryProfileDiff[];
+  /** Queries present in only one of the runs. */
+  unmatchedQueries: { baseline: string[]; candidate: string[] };
+}
+
+/**
+ * Remove trailing `#<hex>` hash suffixes from a predicate name, e.g.
+ * `Foo::bar/1#a1b2c3d4` and `Foo::bar/1#9f8e7d6c` both become `Foo::bar/1`.
+ */
+export function normalizePredicateName(name: string): string {
+  return name.replace(/(?:#[0-9a-f]{6,})+$/i, '');
+}
+
+/** Sum a query's predicate evaluations per predicate name. */
+function totalsByName(predicates: PredicateProfile[]): Map<string, PredicateTotals> {
+  const totals = new Map<string, PredicateTotals>();
+  for (const pred of predicates) {
+    const entry = totals.get(pred.predicateName);
+    if (!entry) {
+      totals.set(pred.predicateName, {
+        durationMs: pred.durationMs,
+        evaluations: 1,
+        maxDuplicationPercentage: pred.maxDuplicationPercentage,
+        predicateName: pred.predicateName,
+        raHash: pred.raHash,
+        resultSize: pred.resultSize,
+        tupleCount: pred.tupleCount,
+      });
+      continue;
+    }
+    entry.durationMs += pred.durationMs;
+    entry.evaluations++;
+    entry.raHash ??= pred.raHash;
+    if (pred.resultSize !== undefined) entry.resultSize = pred.resultSize;
+    if (pred.tupleCount !== undefined) entry.tupleCount = (entry.tupleCount ?? 0) + pred.tupleCount;
+    if (pred.maxDuplicationPercentage !== undefined) {
+      entry.maxDuplicationPercentage = Math.max(entry.maxDuplicationPercentage ?? 0, pred.maxDuplicationPercentage);
+    }
+  }
+  return totals;
+}
+
+function delta(baseline: number | undefined, candidate: number | undefined): number | null {
+  return baseline === undefined || candidate === undefined ? null : candidate - baseline;
+}
+
+function describeChange(baseline: PredicateTotals, candidate: PredicateTotals, match: PredicateMatch): PredicateChange {
+  return {
+    baseline,
+    candidate,
+    durationDeltaMs: candidate.durationMs - baseline.durationMs,
+    durationRatio: baseline.durationMs > 0 ? candidate.durationMs / baseline.durationMs : null,
+    duplicationDelta: delta(baseline.maxDuplicationPercentage, candidate.maxDuplicationPercentage),
+    match,
+    raChanged: baseline.raHash !== undefined && candidate.raHash !== undefined && baseline.raHash !== candidate.raHash,
+    resultSizeDelta: delta(baseline.resultSize, candidate.resultSize),
+    tupleCountDelta: delta(baseline.tupleCount, candidate.tupleCount),
+  };
+}
+
+/**
+ * Pair the unmatched predicates whose `key` is unique on both sides.
+ */
+function matchUniqueKeys(
+  baseline: Map<string, PredicateTotals>,
+  candidate: Map<string, PredicateTotals>,
+  key: (_totals: PredicateTotals) => string | undefined,
+  match: PredicateMatch,
+  changes: PredicateChange[],
+): void {
+  const index = (side: Map<string, PredicateTotals>): Map<string, PredicateTotals | null> => {
+    const byKey = new Map<string, PredicateTotals | null>();
+    for (const totals of side.values()) {
+      const k = key(totals);
+      if (k === undefined) continue;
+      byKey.set(k, byKey.has(k) ? null : totals);
+    }
+    return byKey;
+  };
+  const candidateByKey = index(candidate);
+  for (const [k, base] of index(baseline)) {
+    const cand = candidateByKey.get(k);
+    if (!base || !cand) continue;
+    changes.push(describeChange(base, cand, match));
+    baseline.delete(base.predicateName);
+    candidate.delete(cand.predicateName);
+  }
+}
+
+/**
+ * Diff the predicates of two runs of one query.
+ */
+export function diffQueryProfiles(baseline: QueryProfile, candidate: QueryProfile): QueryProfileDiff {
+  const baselineLeft = totalsByName(baseline.predicates);
+  const candidateLeft = totalsByName(candidate.predicates);
+  const changes: PredicateChange[] = [];
+
+  for (const [name, base] of baselineLeft) {
+    const cand = candidateLeft.get(name);
+    if (!cand) continue;
+    changes.push(describeChange(base, cand, 'name'));
+    baselineLeft.delete(name);
+    candidateLeft.delete(name);
+  }
+  matchUniqueKeys(baselineLeft, candidateLeft, t => t.raHash, 'raHash', changes);
+  matchUniqueKeys(baselineLeft, candidateLeft, t => normalizePredicateName(t.predicateName), 'normalizedName', changes);
+
+  const byDuration = (a: PredicateTotals, b: PredicateTotals): number => b.durationMs - a.durationMs;
+  return {
+    added: [...candidateLeft.values()].sort(byDuration),
+    baselineDurationMs: baseline.totalDurationMs,
+    baselineQuery: baseline.queryName,
+    candidateDurationMs: candidate.totalDurationMs,
+    candidateQuery: candidate.queryName,
+    changes: changes.sort((a, b) => Math.abs(b.durationDeltaMs) - Math.abs(a.durationDeltaMs)),
+    removed: [...baselineLeft.values()].sort(byDuration),
+  };
+}
+
+/**
+ * Diff two profiles.  Queries are paired by file name; two single-query
+ * profiles are always paired, so a query that moved between runs still
+ * lines up.
+ */
+export function diffProfiles(baseline: ProfileData, candidate: ProfileData): ProfileDiff {
+  if (baseline.queries.length === 1 && candidate.queries.length === 1) {
+    return {
+      queries: [diffQueryProfiles(baseline.queries[0], candidate.queries[0])],
+      unmatchedQueries: { baseline: [], candidate: [] },
+    };
+  }
+
+  const candidateByName = new Map(candidate.queries.map(q => [basename(q.queryName), q]));
+  const queries: QueryProfileDiff[] = [];
+  const unmatchedBaseline: string[] = [];
+  for (const query of baseline.queries) {
+    const name = basename(query.queryName);
+    const match = candidateByName.get(name);
+    if (match) {
+      queries.push(diffQueryProfiles(query, match));
+      candidateByName.delete(name);
+    } else {
+      unmatchedBaseline.push(query.queryName);
+    }
+  }
+  return {
+    queries,
+    unmatchedQueries: {
+      baseline: unmatchedBaseline,
+      candidate: [...candidateByName.values()].map(q => q.queryName),
+    },
+  };
+}
@@ -0,0 +1,171 @@
+/**
+ * Persisted evaluator log profiles.
+ *
+ * Parsing a large evaluator log takes far longer than hashing it, and a log
+ * never changes once its query run has finished.  Parsed profiles are
+ * therefore stored in the SQLite store (see `SqliteStore.putEvaluatorProfile`)
+ * keyed by the SHA-256 of the log, and a repeated request for the same log
+ * is answered from the store without parsing.
+ *
+ * Persistence is best-effort: when the store is unavailable the log is
+ * parsed as before and the failure is logged.
+ */
+
+import { createHash } from 'crypto';
+import { createReadStream, statSync } from 'fs';
+import { resolve } from 'path';
+import {
+  parseEvaluatorLog,
+  type ParseEvaluatorLogOptions,
+  type ProfileData,
+} from './evaluator-log-parser';
+import { sessionDataManager } from './session-data-manager';
+import type { EvaluatorProfileKind, EvaluatorProfileMeta } from './sqlite-store';
+import { logger } from '../utils/logger';
+
+/** Bytes read per chunk while hashing a log. */
+const HASH_CHUNK_BYTES = 1024 * 1024;
+
+/** Upper bound on memoized log hashes before the memo is reset. */
+const MAX_MEMOIZED_HASHES = 1000;
+
+/**
+ * Log hashes keyed by absolute path and validated against the file's size
+ * and mtime, so a log is read for hashing at most once per process.
+ */
+const logHashMemo = new Map<string, { hash: string; mtimeMs: number; size: number }>();
+
+/**
+ * The query run that produced a log, recorded with its profile so that a
+ * later request for the same run can reuse the log.
+ */
+export interface EvaluatorProfileRun {
+  databaseFingerprint: string;
+  databasePath: string;
+  queryFingerprint: string;
+  queryPath: string;
+}
+
+/**
+ * A profile together with the hash of its log.
+ */
+export interface LoadedEvaluatorProfile<T> {
+  /** Whether the profile came from the store rather than from parsing. */
+  cached: boolean;
+  logHash: string;
+  profile: T;
+}
+
+/**
+ * Hex SHA-256 and size of an evaluator log.
+ */
+export async function hashEvaluatorLog(logPath: string): Promise<{ bytes: number; hash: string }> {
+  const absolutePath = resolve(logPath);
+  const st = statSync(absolutePath);
+  const memo = logHashMemo.get(absolutePath);
+  if (memo && memo.mtimeMs === st.mtimeMs && memo.size === st.size) {
+    return { bytes: st.size, hash: memo.hash };
+  }
+
+  const hash = createHash('sha256');
+  for await (const chunk of createReadStream(absolutePath, { highWaterMark: HASH_CHUNK_BYTES })) {
+    hash.update(chunk as Buffer);
+  }
+  const digest = hash.digest('hex');
+  if (logHashMemo.size >= MAX_MEMOIZED_HASHES) logHashMemo.clear();
+  logHashMemo.set(absolutePath, { hash: digest, mtimeMs: st.mtimeMs, size: st.size });
+  return { bytes: st.size, hash: digest };
+}
+
+/**
+ * Return the stored profile of `kind` for a log, or compute and store it.
+ *
+ * @param detailTopK - RA detail the profile must keep (see
+ *   `SqliteStore.getEvaluatorProfile`); `null` for every predicate.
+ * @param compute - Parses the log when no stored profile qualifies.
+ * @param run - The query run that produced the log, if known.
+ */
+export async function loadStoredProfile<T>(
+  logPath: string,
+  kind: EvaluatorProfileKind,
+  detailTopK: number | null,
+  compute: () => Promise<T>,
+  run?: EvaluatorProfileRun,
+): Promise<LoadedEvaluatorProfile<T>> {
+  const { bytes, hash } = await hashEvaluatorLog(logPath);
+
+  try {
+    const stored = sessionDataManager.getStore().getEvaluatorProfile(hash, kind, detailTopK);
+    if (stored) {
+      logger.info(`Using stored ${kind} of evaluator log ${logPath} (${hash.substring(0, 12)})`);
+      return { cached: true, logHash: hash, profile: JSON.parse(stored.content) as T };
+    }
+  } catch (error) {
+    logger.debug(`Evaluator profile store unavailable: ${error instanceof Error ? error.message : String(error)}`);
+  }
+
+  const profile = await compute();
+
+  try {
+    sessionDataManager.getStore().putEvaluatorProfile({
+      content: JSON.stringify(profile),
+      databaseFingerprint: run?.databaseFingerprint ?? null,
+      databasePath: run?.databasePath ?? null,
+      detailTopK,
+      kind,
+      logBytes: bytes,
+      logHash: hash,
+      logPath: resolve(logPath),
+      queryFingerprint: run?.queryFingerprint ?? null,
+      queryPath: run?.queryPath ?? null,
+    });
+  } catch (error) {
+    logger.debug(`Failed to store ${kind} of evaluator log ${logPath}: ${error instanceof Error ? error.message : String(error)}`);
+  }
+  return { cached: false, logHash: hash, profile };
+}
+
+/**
+ * Parse an evaluator log with {@link parseEvaluatorLog}, or return its
+ * stored profile.
+ */
+export async function loadEvaluatorProfile(
+  logPath: string,
+  options: ParseEvaluatorLogOptions = {},
+  run?: EvaluatorProfileRun,
+): Promise<LoadedEvaluatorProfile<ProfileData>> {
+  return loadStoredProfile(
+    logPath,
+    'profile',
+    options.detailTopK ?? null,
+    () => parseEvaluatorLog(logPath, options),
+    run,
+  );
+}
+
+/**
+ * Find the log of an earlier profiled run of the same query source against
+ * the same database, if it is still on disk unchanged.
+ */
+export async function findProfiledRun(
+  kind: EvaluatorProfileKind,
+  run: EvaluatorProfileRun,
+): Promise<EvaluatorProfileMeta | null> {
+  let meta: EvaluatorProfileMeta | null;
+  try {
+    meta = sessionDataManager.getStore().findEvaluatorProfileForRun(kind, run.queryPath, run.databasePath);
+  } catch {
+    return null;
+  }
+  if (!meta
+    || meta.queryFingerprint !== run.queryFingerprint
+    || meta.databaseFingerprint !== run.databaseFingerprint) {
+    return null;
+  }
+  try {
+    return (await hashEvaluatorLog(meta.logPath)).hash === meta.logHash ? meta : null;
+  } catch {
+    // The log was removed
+    return null;
+  }
+}
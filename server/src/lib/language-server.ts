@@ -12,6 +12,7 @@ import { logger } from '../utils/logger';
 import { getPackageVersion } from '../utils/package-paths';
 import { getProjectTmpDir } from '../utils/temp-dir';
 import { getResolvedCodeQLDir } from './cli-executor';
+import { ContentLengthFramer } from './message-framing';
 import { waitForProcessReady } from '../utils/process-ready';
 
 export interface LSPMessage {
@@ -164,7 +165,10 @@ export class CodeQLLanguageServer extends EventEmitter {
   private pendingResponses = new Map<number, { resolve: (_value: unknown) => void; reject: (_error: Error) => void }>();
   private isInitialized = false;
   private currentWorkspaceUri: string | undefined;
-  private messageBuffer = '';
+  private readonly stdoutFramer = new ContentLengthFramer(
+    (messageContent) => this.handleMessageContent(messageContent),
+    (header) => logger.error('Invalid LSP header:', header),
+  );
 
   constructor(private _options: LanguageServerOptions = {}) {
     super();
@@ -239,38 +243,15 @@ export class CodeQLLanguageServer extends EventEmitter {
   }
 
   private handleStdout(data: Buffer): void {
-    this.messageBuffer += data.toString();
-    
-    let headerEnd = this.messageBuffer.indexOf('\r\n\r\n');
-    while (headerEnd !== -1) {
-      const header = this.messageBuffer.substring(0, headerEnd);
-      const contentLengthMatch = header.match(/Content-Length: (\d+)/);
-      
-      if (contentLengthMatch) {
-        const contentLength = parseInt(contentLengthMatch[1]);
-        const messageStart = headerEnd + 4;
-        const messageEnd = messageStart + contentLength;
-        
-        if (this.messageBuffer.length >= messageEnd) {
-          const messageContent = this.messageBuffer.substring(messageStart, messageEnd);
-          this.messageBuffer = this.messageBuffer.substring(messageEnd);
-          
-          try {
-            const message: LSPMessage = JSON.parse(messageContent);
-            this.handleMessage(message);
-          } catch (error) {
-            logger.error('Failed to parse LSP message:', error, messageContent);
-          }
-          
-          headerEnd = this.messageBuffer.indexOf('\r\n\r\n');
-        } else {
-          break;
-        }
-      } else {
-        logger.error('Invalid LSP header:', header);
-        this.messageBuffer = '';
-        break;
-      }
+    this.stdoutFramer.push(data);
+  }
+
+  private handleMessageContent(messageContent: string): void {
+    try {
+      const message: LSPMessage = JSON.parse(messageContent);
+      this.handleMessage(message);
+    } catch (error) {
+      logger.error('Failed to parse LSP message:', error, messageContent);
     }
   }
 
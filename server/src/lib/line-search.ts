@@ -0,0 +1,344 @@
+/**
+ * Line-oriented regex search over files, on the current thread or on a
+ * bounded pool of `worker_threads` workers.
+ *
+ * {@link LineMatcher} consumes decoded text in chunks of any size and
+ * collects matching lines with their context, so a file is never held in
+ * memory as a whole.  Workers are created from the source of the functions
+ * below (`eval: true`), like the evaluator log scanner, which keeps the
+ * server a single bundled file.  Each worker searches a batch of files per
+ * task with synchronous reads; the pool keeps idle workers for a short
+ * while so that consecutive searches do not pay the start-up again.
+ *
+ * While reading a file completely, a search can also build its trigram
+ * signature for the search index (see `ql-search-index.ts`).
+ */
+
+import { createReadStream } from 'fs';
+import { availableParallelism } from 'os';
+import { Worker } from 'worker_threads';
+import { TrigramSignatureBuilder } from './ql-search-index';
+
+/** Bytes read per chunk while searching a file. */
+const SEARCH_CHUNK_BYTES = 256 * 1024;
+
+/** Upper bound on workers in the search pool. */
+const MAX_SEARCH_WORKERS = 8;
+
+/** Idle workers are terminated after this long without a task. */
+const SEARCH_WORKER_IDLE_MS = 30_000;
+
+/** A matching line and its context. */
+export interface LineMatch {
+  filePath: string;
+  lineNumber: number;
+  lineContent: string;
+  contextBefore?: string[];
+  contextAfter?: string[];
+}
+
+/** Matches collected from one file and the number of matching lines. */
+export interface FileSearchResult {
+  matches: LineMatch[];
+  /** Trigram signature of the file, when requested and the file was read to the end. */
+  signature?: Uint8Array;
+  totalCount: number;
+}
+
+/** A batch of files to search with one pattern. */
+export interface LineSearchTask {
+  contextLines: number;
+  files: string[];
+  flags: string;
+  /** Matches to collect per file; further matching lines are only counted. */
+  maxCollect: number;
+  pattern: string;
+  /** Per file, whether to build its trigram signature. */
+  signatures?: boolean[];
+  /** Stop reading a file once this many lines matched. */
+  stopAfter: number;
+}
+
+/**
+ * Collects the lines of one file that match a regex, fed as decoded text
+ * chunks.  Lines end at `\n`; a trailing `\r` is dropped, and a final line
+ * without a terminator is emitted by {@link finish}.
+ *
+ * This class must not reference anything outside its own body: its source
+ * is evaluated in the search workers.
+ */
+export class LineMatcher {
+  readonly matches: LineMatch[] = [];
+  totalCount = 0;
+  private carry = '';
+  private lineNumber = 0;
+  /** Matches still waiting for lines of trailing context. */
+  private pending: { afterNeeded: number; match: LineMatch }[] = [];
+  /** The last `contextLines` lines, for leading context. */
+  private recent: string[] = [];
+
+  constructor(
+    private readonly filePath: string,
+    private readonly regex: RegExp,
+    private readonly contextLines: number,
+    private readonly maxCollect: number,
+    private readonly stopAfter: number = Infinity,
+  ) {}
+
+  /** Whether `stopAfter` matching lines were seen. */
+  get done(): boolean {
+    return this.totalCount >= this.stopAfter;
+  }
+
+  push(text: string): void {
+    const data = this.carry + text;
+    let start = 0;
+    for (let end = data.indexOf('\n'); end !== -1 && !this.done; end = data.indexOf('\n', start)) {
+      this.line(data.charCodeAt(end - 1) === 13 ? data.substring(start, end - 1) : data.substring(start, end));
+      start = end + 1;
+    }
+    this.carry = this.done ? '' : data.substring(start);
+  }
+
+  finish(): FileSearchResult {
+    if (this.carry.length > 0 && !this.done) {
+      this.line(this.carry.endsWith('\r') ? this.carry.slice(0, -1) : this.carry);
+    }
+    this.carry = '';
+    return { matches: this.matches, totalCount: this.totalCount };
+  }
+
+  private line(line: string): void {
+    this.lineNumber++;
+
+    for (const p of this.pending) {
+      p.match.contextAfter!.push(line);
+      p.afterNeeded--;
+    }
+    while (this.pending.length > 0 && this.pending[0].afterNeeded === 0) {
+      this.pending.shift();
+    }
+
+    const collecting = this.matches.length < this.maxCollect;
+    if (this.regex.test(line)) {
+      this.totalCount++;
+      if (collecting) {
+        const match: LineMatch = { filePath: this.filePath, lineNumber: this.lineNumber, lineContent: line };
+        if (this.contextLines > 0) {
+          match.contextBefore = this.recent.slice();
+          match.contextAfter = [];
+          this.pending.push({ afterNeeded: this.contextLines, match });
+        }
+        this.matches.push(match);
+      }
+    }
+
+    // Leading context is only needed while matches are still collected.
+    if (this.contextLines > 0 && collecting) {
+      this.recent.push(line);
+      if (this.recent.length > this.contextLines) {
+        this.recent.shift();
+      }
+    }
+  }
+}
+
+/**
+ * Worker entry point.  Answers each task message with the per-file results
+ * of its batch, read synchronously in `chunkBytes` chunks.  A file that
+ * cannot be read yields no matches.
+ */
+function lineSearchWorkerMain(
+  Matcher: typeof LineMatcher,
+  SignatureBuilder: typeof TrigramSignatureBuilder,
+): void {
+  const { parentPort, workerData } = process.getBuiltinModule('worker_threads');
+  const { closeSync, openSync, readSync } = process.getBuiltinModule('fs');
+  const { StringDecoder } = process.getBuiltinModule('string_decoder');
+  const { chunkBytes } = workerData as { chunkBytes: number };
+  const buffer = Buffer.allocUnsafe(chunkBytes);
+  let compiled: { flags: string; pattern: string; regex: RegExp } | undefined;
+
+  parentPort!.on('message', (task: LineSearchTask) => {
+    if (compiled?.pattern !== task.pattern || compiled.flags !== task.flags) {
+      compiled = { flags: task.flags, pattern: task.pattern, regex: new RegExp(task.pattern, task.flags) };
+    }
+    const regex = compiled.regex;
+    const results = task.files.map((filePath, fileIndex) => {
+      let fd: number;
+      try {
+        fd = openSync(filePath, 'r');
+      } catch {
+        return { matches: [], totalCount: 0 };
+      }
+      try {
+        const matcher = new Matcher(filePath, regex, task.contextLines, task.maxCollect, task.stopAfter);
+        const builder = task.signatures?.[fileIndex] ? new SignatureBuilder() : undefined;
+        const decoder = new StringDecoder('utf8');
+        for (;;) {
+          const read = readSync(fd, buffer, 0, buffer.length, null);
+          if (read === 0) break;
+          const text = decoder.write(buffer.subarray(0, read));
+          matcher.push(text);
+          builder?.push(text);
+          if (matcher.done) break;
+        }
+        const rest = decoder.end();
+        matcher.push(rest);
+        builder?.push(rest);
+        const result: FileSearchResult = matcher.finish();
+        if (builder && !matcher.done) result.signature = builder.finish();
+        return result;
+      } catch {
+        return { matches: [], totalCount: 0 };
+      } finally {
+        closeSync(fd);
+      }
+    });
+    parentPort!.postMessage(results);
+  });
+}
+
+let workerSource: string | undefined;
+
+function getWorkerSource(): string {
+  workerSource ??= `(${lineSearchWorkerMain.toString()})(${LineMatcher.toString()}, ${TrigramSignatureBuilder.toString()});`;
+  return workerSource;
+}
+
+/**
+ * Search one file on the current thread with asynchronous reads.
+ *
+ * @param signature - Also build the file's trigram signature.
+ */
+export async function searchFileOnCurrentThread(
+  filePath: string,
+  regex: RegExp,
+  task: Pick<LineSearchTask, 'contextLines' | 'maxCollect' | 'stopAfter'>,
+  signature = false,
+): Promise<FileSearchResult> {
+  const matcher = new LineMatcher(filePath, regex, task.contextLines, task.maxCollect, task.stopAfter);
+  const builder = signature ? new TrigramSignatureBuilder() : undefined;
+  try {
+    for await (const chunk of createReadStream(filePath, { encoding: 'utf8', highWaterMark: SEARCH_CHUNK_BYTES })) {
+      matcher.push(chunk as string);
+      builder?.push(chunk as string);
+      if (matcher.done) break;
+    }
+  } catch {
+    return { matches: [], totalCount: 0 };
+  }
+  const result = matcher.finish();
+  if (builder && !matcher.done) result.signature = builder.finish();
+  return result;
+}
+
+/**
+ * A bounded pool of search workers.  Each worker runs one task at a time;
+ * tasks beyond the pool size wait for a worker to become free.
+ */
+export class LineSearchPool {
+  private readonly idle: Worker[] = [];
+  private idleTimer: NodeJS.Timeout | undefined;
+  private readonly waiting: Array<{ reject: (_error: unknown) => void; resolve: (_worker: Worker) => void }> = [];
+  private readonly workers = new Set<Worker>();
+
+  constructor(readonly size: number) {}
+
+  /**
+   * Run a task on a free worker.  Rejects if the worker cannot be started
+   * or dies while searching.
+   */
+  async run(task: LineSearchTask): Promise<FileSearchResult[]> {
+    const worker = await this.acquire();
+    worker.ref();
+    try {
+      const results = await new Promise<FileSearchResult[]>((resolve, reject) => {
+        const onMessage = (message: FileSearchResult[]): void => { cleanup(); resolve(message); };
+        const onError = (error: Error): void => { cleanup(); reject(error); };
+        const onExit = (code: number): void => { cleanup(); reject(new Error(`Search worker exited with code ${code}`)); };
+        const cleanup = (): void => {
+          worker.off('message', onMessage);
+          worker.off('error', onError);
+          worker.off('exit', onExit);
+        };
+        worker.on('message', onMessage);
+        worker.on('error', onError);
+        worker.on('exit', onExit);
+        worker.postMessage(task);
+      });
+      this.release(worker);
+      return results;
+    } catch (error) {
+      this.discard(worker);
+      throw error;
+    }
+  }
+
+  /** Terminate every worker. */
+  close(): void {
+    clearTimeout(this.idleTimer);
+    for (const worker of this.workers) {
+      void worker.terminate();
+    }
+    this.workers.clear();
+    this.idle.length = 0;
+  }
+
+  private async acquire(): Promise<Worker> {
+    clearTimeout(this.idleTimer);
+    const idle = this.idle.pop();
+    if (idle) return idle;
+    if (this.workers.size < this.size) return this.spawn();
+    return new Promise((resolve, reject) => this.waiting.push({ reject, resolve }));
+  }
+
+  private spawn(): Worker {
+    const worker = new Worker(getWorkerSource(), {
+      eval: true,
+      workerData: { chunkBytes: SEARCH_CHUNK_BYTES },
+    });
+    this.workers.add(worker);
+    return worker;
+  }
+
+  private release(worker: Worker): void {
+    const next = this.waiting.shift();
+    if (next) {
+      next.resolve(worker);
+      return;
+    }
+    // An idle worker must not keep the process alive.
+    worker.unref();
+    this.idle.push(worker);
+    if (this.idle.length === this.workers.size) {
+      this.idleTimer = setTimeout(() => this.close(), SEARCH_WORKER_IDLE_MS);
+      this.idleTimer.unref();
+    }
+  }
+
+  private discard(worker: Worker): void {
+    this.workers.delete(worker);
+    void worker.terminate();
+    // Hand a replacement to a waiting task.
+    const next = this.waiting.shift();
+    if (next) {
+      try {
+        next.resolve(this.spawn());
+      } catch (error) {
+        next.reject(error);
+      }
+    }
+  }
+}
+
+let pool: LineSearchPool | undefined;
+
+/**
+ * The shared search pool, sized to the available parallelism minus the
+ * main thread.
+ */
+export function getLineSearchPool(): LineSearchPool {
+  pool ??= new LineSearchPool(Math.max(1, Math.min(availableParallelism() - 1, MAX_SEARCH_WORKERS)));
+  return pool;
+}
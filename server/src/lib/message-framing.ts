@@ -0,0 +1,225 @@
+/**
+ * Byte-level message framing for the CodeQL background server protocols.
+ *
+ * - cli-server replies are NUL-terminated.
+ * - query-server2 and language-server messages use `Content-Length` headers
+ *   (JSON-RPC / LSP base protocol).
+ *
+ * Appending each stdout chunk to a string and re-scanning it with `indexOf`
+ * and `substring` copies and re-decodes the accumulated text on every chunk,
+ * which is quadratic for multi-megabyte replies such as
+ * `bqrs decode --format=json`.  The framers here keep the raw chunks in a
+ * list, scan only bytes they have not scanned before, and decode each
+ * message exactly once.  `Content-Length` is also counted in bytes, as the
+ * protocol specifies, rather than in UTF-16 code units.
+ */
+
+const NUL = Buffer.from([0]);
+const HEADER_TERMINATOR = Buffer.from('\r\n\r\n', 'ascii');
+const CONTENT_LENGTH_PATTERN = /Content-Length: (\d+)/;
+
+/**
+ * A FIFO of Buffer chunks addressed as one contiguous byte sequence.
+ *
+ * Positions are relative to the first unconsumed byte.
+ */
+export class ChunkList {
+  private chunks: Buffer[] = [];
+  /** Offset of the first unconsumed byte within `chunks[0]`. */
+  private head = 0;
+  private total = 0;
+
+  /** Number of unconsumed bytes. */
+  get length(): number {
+    return this.total;
+  }
+
+  append(chunk: Buffer): void {
+    if (chunk.length === 0) return;
+    this.chunks.push(chunk);
+    this.total += chunk.length;
+  }
+
+  /**
+   * Position of the first occurrence of `pattern` at or after `from`, or -1.
+   */
+  indexOf(pattern: Buffer, from = 0): number {
+    let chunkStart = -this.head;
+    for (let i = 0; i < this.chunks.length; i++) {
+      const chunk = this.chunks[i];
+      const start = Math.max(from - chunkStart, i === 0 ? this.head : 0);
+      if (start < chunk.length) {
+        let pos = chunk.indexOf(pattern[0], start);
+        while (pos !== -1) {
+          if (this.matchesAt(i, pos, pattern)) return chunkStart + pos;
+          pos = chunk.indexOf(pattern[0], pos + 1);
+        }
+      }
+      chunkStart += chunk.length;
+    }
+    return -1;
+  }
+
+  /**
+   * Remove and return the first `n` bytes.  Bytes within a single chunk are
+   * returned as a view; only a range spanning chunks is copied.
+   */
+  take(n: number): Buffer {
+    if (n > this.total) throw new RangeError(`cannot take ${n} of ${this.total} bytes`);
+    const parts: Buffer[] = [];
+    let remaining = n;
+    while (remaining > 0) {
+      const chunk = this.chunks[0];
+      const available = chunk.length - this.head;
+      if (available <= remaining) {
+        parts.push(this.head === 0 ? chunk : chunk.subarray(this.head));
+        this.chunks.shift();
+        this.head = 0;
+        remaining -= available;
+      } else {
+        parts.push(chunk.subarray(this.head, this.head + remaining));
+        this.head += remaining;
+        remaining = 0;
+      }
+    }
+    this.total -= n;
+    if (parts.length === 1) return parts[0];
+    return Buffer.concat(parts, n);
+  }
+
+  /**
+   * Discard the first `n` bytes.
+   */
+  skip(n: number): void {
+    let remaining = Math.min(n, this.total);
+    this.total -= remaining;
+    while (remaining > 0) {
+      const available = this.chunks[0].length - this.head;
+      if (available <= remaining) {
+        this.chunks.shift();
+        this.head = 0;
+        remaining -= available;
+      } else {
+        this.head += remaining;
+        remaining = 0;
+      }
+    }
+  }
+
+  clear(): void {
+    this.chunks = [];
+    this.head = 0;
+    this.total = 0;
+  }
+
+  private matchesAt(chunkIndex: number, pos: number, pattern: Buffer): boolean {
+    let i = chunkIndex;
+    let p = pos;
+    for (let k = 0; k < pattern.length; k++) {
+      while (i < this.chunks.length && p >= this.chunks[i].length) {
+        i++;
+        p = 0;
+      }
+      if (i >= this.chunks.length || this.chunks[i][p] !== pattern[k]) return false;
+      p++;
+    }
+    return true;
+  }
+}
+
+/**
+ * Splits a byte stream into NUL-terminated UTF-8 messages (cli-server).
+ */
+export class NulDelimitedFramer {
+  private buffer = new ChunkList();
+  /** Bytes already scanned without finding a terminator. */
+  private scanned = 0;
+  private readonly onMessage: (_message: string) => void;
+
+  constructor(onMessage: (_message: string) => void) {
+    this.onMessage = onMessage;
+  }
+
+  /**
+   * Feed a stdout chunk; `onMessage` is called for each completed message.
+   */
+  push(data: Buffer): void {
+    this.buffer.append(data);
+    let nulIndex = this.buffer.indexOf(NUL, this.scanned);
+    while (nulIndex !== -1) {
+      const message = this.buffer.take(nulIndex).toString('utf8');
+      this.buffer.skip(1);
+      this.scanned = 0;
+      this.onMessage(message);
+      nulIndex = this.buffer.indexOf(NUL);
+    }
+    this.scanned = this.buffer.length;
+  }
+
+  reset(): void {
+    this.buffer.clear();
+    this.scanned = 0;
+  }
+}
+
+/**
+ * Splits a byte stream into `Content-Length`-framed UTF-8 messages
+ * (JSON-RPC / LSP base protocol).
+ */
+export class ContentLengthFramer {
+  private buffer = new ChunkList();
+  /** Body length of the message being read, or -1 while reading a header. */
+  private bodyLength = -1;
+  /** Header bytes already scanned without finding the terminator. */
+  private scanned = 0;
+  private readonly onMessage: (_body: string) => void;
+  private readonly onInvalidHeader: (_header: string) => void;
+
+  /**
+   * @param onMessage - Called with each complete message body.
+   * @param onInvalidHeader - Called with a header lacking `Content-Length`;
+   *   all buffered data is discarded, as the stream cannot be resynchronized.
+   */
+  constructor(onMessage: (_body: string) => void, onInvalidHeader: (_header: string) => void) {
+    this.onMessage = onMessage;
+    this.onInvalidHeader = onInvalidHeader;
+  }
+
+  /**
+   * Feed a stdout chunk; `onMessage` is called for each completed message.
+   */
+  push(data: Buffer): void {
+    this.buffer.append(data);
+    for (;;) {
+      if (this.bodyLength < 0) {
+        // The terminator may straddle the previously scanned bytes.
+        const from = Math.max(0, this.scanned - (HEADER_TERMINATOR.length - 1));
+        const headerEnd = this.buffer.indexOf(HEADER_TERMINATOR, from);
+        if (headerEnd === -1) {
+          this.scanned = this.buffer.length;
+          return;
+        }
+        const header = this.buffer.take(headerEnd).toString('ascii');
+        this.buffer.skip(HEADER_TERMINATOR.length);
+        this.scanned = 0;
+        const match = CONTENT_LENGTH_PATTERN.exec(header);
+        if (!match) {
+          this.reset();
+          this.onInvalidHeader(header);
+          return;
+        }
+        this.bodyLength = parseInt(match[1], 10);
+      }
+      if (this.buffer.length < this.bodyLength) return;
+      const body = this.buffer.take(this.bodyLength).toString('utf8');
+      this.bodyLength = -1;
+      this.onMessage(body);
+    }
+  }
+
+  reset(): void {
+    this.buffer.clear();
+    this.bodyLength = -1;
+    this.scanned = 0;
+  }
+}
@@ -0,0 +1,290 @@
+/**
+ * Ingestion of MRVA (Multi-Repository Variant Analysis) results into the
+ * SQLite store.
+ *
+ * An MRVA run has one `results/results.sarif` per repository.  Answering a
+ * cross-repository question by loading every SARIF separately does not scale
+ * to runs of hundreds or thousands of repositories, so
+ * {@link ingestMrvaRun} parses them on a bounded set of `worker_threads`
+ * workers and writes one row per result to `mrva_results`, indexed by
+ * repository, rule, file and fingerprint.  A repository whose SARIF has the
+ * same size and mtime as when it was last ingested is skipped.
+ *
+ * Workers are created from the source of the functions below (`eval: true`),
+ * which keeps the server a single bundled file.
+ */
+
+import { readFile, stat } from 'fs/promises';
+import { availableParallelism } from 'os';
+import { Worker } from 'worker_threads';
+import { mapConcurrent } from './discovery-catalog';
+import { sessionDataManager } from './session-data-manager';
+import type { MrvaRepoIngestRow, MrvaResultRow } from './sqlite-store';
+import { logger } from '../utils/logger';
+
+/** Upper bound on ingestion workers. */
+const MAX_INGEST_WORKERS = 8;
+
+/** Repositories parsed per worker task. */
+const INGEST_BATCH_REPOS = 8;
+
+/** Below this many repositories the SARIF files are parsed on the current thread. */
+const WORKER_MIN_REPOS = 16;
+
+/** Result messages longer than this are truncated in the store. */
+const MAX_MESSAGE_CHARS = 500;
+
+/** A repository whose SARIF is to be ingested. */
+export interface MrvaRepoSarif {
+  fullName: string;
+  sarifPath: string;
+}
+
+/** Rows read from one repository's SARIF. */
+interface RepoExtraction {
+  error?: string;
+  rows: Array<Omit<MrvaResultRow, 'fullName'>>;
+}
+
+export interface MrvaIngestOptions {
+  /** Re-ingest repositories whose SARIF did not change. */
+  force?: boolean;
+  /** Parse on worker threads; defaults to runs of at least {@link WORKER_MIN_REPOS} repositories. */
+  useWorkers?: boolean;
+}
+
+export interface MrvaIngestSummary {
+  durationMs: number;
+  failedRepos: Array<{ error: string; fullName: string }>;
+  ingestedRepos: number;
+  /** Repositories dropped because their SARIF is gone. */
+  removedRepos: number;
+  /** Results of the ingested repositories. */
+  results: number;
+  /** Repositories whose SARIF did not change since the last ingestion. */
+  unchangedRepos: number;
+  workers: number;
+}
+
+/**
+ * Reduce a parsed SARIF document to one row per result of every run.
+ *
+ * This function must not reference anything outside its own body: its
+ * source is evaluated in the ingestion workers.
+ */
+export function extractMrvaResultRows(sarif: unknown, maxMessageChars: number): Array<Omit<MrvaResultRow, 'fullName'>> {
+  interface Result {
+    fingerprints?: Record<string, string>;
+    level?: string;
+    locations?: Array<{ physicalLocation?: { artifactLocation?: { uri?: string }; region?: { startLine?: number } } }>;
+    message?: { text?: string };
+    partialFingerprints?: Record<string, string>;
+    rule?: { id?: string; index?: number };
+    ruleId?: string;
+    ruleIndex?: number;
+  }
+  interface Run {
+    results?: Result[];
+    tool?: { driver?: { rules?: Array<{ id?: string }> } };
+  }
+
+  const rows: Array<Omit<MrvaResultRow, 'fullName'>> = [];
+  const runs = (sarif as { runs?: Run[] } | null)?.runs ?? [];
+  let resultIndex = 0;
+  for (const run of runs) {
+    const rules = run.tool?.driver?.rules ?? [];
+    for (const result of run.results ?? []) {
+      const ruleIndex = result.ruleIndex ?? result.rule?.index;
+      const ruleId = result.ruleId ?? result.rule?.id ?? (ruleIndex !== undefined ? rules[ruleIndex]?.id : undefined);
+      const physical = result.locations?.[0]?.physicalLocation;
+      const fingerprint = result.partialFingerprints?.primaryLocationLineHash
+        ?? Object.values(result.partialFingerprints ?? {})[0]
+        ?? Object.values(result.fingerprints ?? {})[0];
+      const message = result.message?.text ?? '';
+      rows.push({
+        filePath: physical?.artifactLocation?.uri ?? null,
+        fingerprint: fingerprint ?? null,
+        level: result.level ?? null,
+        message: message.length > maxMessageChars ? `${message.slice(0, maxMessageChars)}…` : message,
+        resultIndex: resultIndex++,
+        ruleId: ruleId ?? null,
+        startLine: physical?.region?.startLine ?? null,
+      });
+    }
+  }
+  return rows;
+}
+
+/**
+ * Worker entry point.  Answers each task message (a batch of SARIF paths)
+ * with the rows of each file, read synchronously.
+ */
+function mrvaIngestWorkerMain(extract: typeof extractMrvaResultRows): void {
+  const { parentPort, workerData } = process.getBuiltinModule('worker_threads');
+  const { readFileSync } = process.getBuiltinModule('fs');
+  const { maxMessageChars } = workerData as { maxMessageChars: number };
+
+  parentPort!.on('message', (sarifPaths: string[]) => {
+    const extractions = sarifPaths.map((sarifPath) => {
+      try {
+        return { rows: extract(JSON.parse(readFileSync(sarifPath, 'utf-8')), maxMessageChars) };
+      } catch (error) {
+        return { error: error instanceof Error ? error.message : String(error), rows: [] };
+      }
+    });
+    parentPort!.postMessage(extractions);
+  });
+}
+
+let workerSource: string | undefined;
+
+function getWorkerSource(): string {
+  workerSource ??= `(${mrvaIngestWorkerMain.toString()})(${extractMrvaResultRows.toString()});`;
+  return workerSource;
+}
+
+async function extractOnCurrentThread(sarifPath: string): Promise<RepoExtraction> {
+  try {
+    return { rows: extractMrvaResultRows(JSON.parse(await readFile(sarifPath, 'utf-8')), MAX_MESSAGE_CHARS) };
+  } catch (error) {
+    return { error: error instanceof Error ? error.message : String(error), rows: [] };
+  }
+}
+
+/**
+ * Parse batches of SARIF files on `size` workers, calling `onBatch` with the
+ * extractions of each batch as it completes.  The workers are terminated
+ * once every batch is done.
+ */
+async function extractOnWorkers(
+  batches: string[][],
+  size: number,
+  onBatch: (_batch: number, _extractions: RepoExtraction[]) => void,
+): Promise<void> {
+  let next = 0;
+  const runWorker = async (): Promise<void> => {
+    const worker = new Worker(getWorkerSource(), { eval: true, workerData: { maxMessageChars: MAX_MESSAGE_CHARS } });
+    try {
+      while (next < batches.length) {
+        const batch = next++;
+        const extractions = await new Promise<RepoExtraction[]>((resolve, reject) => {
+          const onMessage = (message: RepoExtraction[]): void => { cleanup(); resolve(message); };
+          const onError = (error: Error): void => { cleanup(); reject(error); };
+          const onExit = (code: number): void => { cleanup(); reject(new Error(`Ingestion worker exited with code ${code}`)); };
+          const cleanup = (): void => {
+            worker.off('message', onMessage);
+            worker.off('error', onError);
+            worker.off('exit', onExit);
+          };
+          worker.on('message', onMessage);
+          worker.on('error', onError);
+          worker.on('exit', onExit);
+          worker.postMessage(batches[batch]);
+        });
+        onBatch(batch, extractions);
+      }
+    } finally {
+      void worker.terminate();
+    }
+  };
+  await Promise.all(Array.from({ length: Math.min(size, batches.length) }, runWorker));
+}
+
+/**
+ * Ingest the SARIF of every repository of the MRVA run at `runPath` into the
+ * store.  Repositories previously ingested for the run but missing from
+ * `repos` are removed.
+ */
+export async function ingestMrvaRun(
+  runPath: string,
+  repos: MrvaRepoSarif[],
+  options: MrvaIngestOptions = {},
+): Promise<MrvaIngestSummary> {
+  const started = Date.now();
+  const store = sessionDataManager.getStore();
+  const previous = new Map(store.getMrvaRepos(runPath).map((row) => [row.fullName, row]));
+
+  const summary: MrvaIngestSummary = {
+    durationMs: 0,
+    failedRepos: [],
+    ingestedRepos: 0,
+    removedRepos: 0,
+    results: 0,
+    unchangedRepos: 0,
+    workers: 0,
+  };
+
+  const wanted = new Set(repos.map((repo) => repo.fullName));
+  const removed = [...previous.keys()].filter((fullName) => !wanted.has(fullName));
+  if (removed.length > 0) {
+    store.deleteMrvaResults(runPath, removed);
+    summary.removedRepos = removed.length;
+  }
+
+  // Stat every SARIF to find the repositories that changed.
+  const stats = await mapConcurrent(repos, 64, async (repo) => {
+    try {
+      const st = await stat(repo.sarifPath);
+      return { mtimeMs: st.mtimeMs, size: st.size };
+    } catch {
+      return null;
+    }
+  });
+  const pending: Array<{ repo: MrvaRepoSarif; row: Omit<MrvaRepoIngestRow, 'ingestedAt' | 'resultCount'> }> = [];
+  repos.forEach((repo, i) => {
+    const st = stats[i];
+    const before = previous.get(repo.fullName);
+    if (!options.force && st && before && !before.error
+      && before.sarifPath === repo.sarifPath && before.sarifMtimeMs === st.mtimeMs && before.sarifBytes === st.size) {
+      summary.unchangedRepos++;
+      return;
+    }
+    pending.push({
+      repo,
+      row: {
+        error: st ? null : 'SARIF file not found',
+        fullName: repo.fullName,
+        sarifBytes: st?.size ?? 0,
+        sarifMtimeMs: st?.mtimeMs ?? 0,
+        sarifPath: repo.sarifPath,
+      },
+    });
+  });
+
+  const record = (entry: (typeof pending)[number], extraction: RepoExtraction): void => {
+    const error = entry.row.error ?? extraction.error ?? null;
+    const rows = error ? [] : extraction.rows.map((row) => ({ ...row, fullName: entry.repo.fullName }));
+    store.putMrvaRepoResults(runPath, { ...entry.row, error }, rows);
+    if (error) {
+      summary.failedRepos.push({ error, fullName: entry.repo.fullName });
+    } else {
+      summary.ingestedRepos++;
+      summary.results += rows.length;
+    }
+  };
+
+  const useWorkers = options.useWorkers ?? pending.length >= WORKER_MIN_REPOS;
+  if (useWorkers && pending.length > 0) {
+    const batches: Array<typeof pending> = [];
+    for (let i = 0; i < pending.length; i += INGEST_BATCH_REPOS) {
+      batches.push(pending.slice(i, i + INGEST_BATCH_REPOS));
+    }
+    summary.workers = Math.max(1, Math.min(availableParallelism() - 1, MAX_INGEST_WORKERS, batches.length));
+    await extractOnWorkers(
+      batches.map((batch) => batch.map((entry) => entry.repo.sarifPath)),
+      summary.workers,
+      (batch, extractions) => batches[batch].forEach((entry, i) => record(entry, extractions[i])),
+    );
+  } else {
+    const extractions = await mapConcurrent(pending, INGEST_BATCH_REPOS, (entry) =>
+      entry.row.error ? Promise.resolve({ rows: [] }) : extractOnCurrentThread(entry.repo.sarifPath));
+    pending.forEach((entry, i) => record(entry, extractions[i]));
+  }
+
+  summary.durationMs = Date.now() - started;
+  logger.info(
+    `Ingested MRVA run ${runPath}: ${summary.ingestedRepos} repositories (${summary.results} results), ` +
+    `${summary.unchangedRepos} unchanged, ${summary.failedRepos.length} failed, ${summary.removedRepos} removed`,
+  );
+  return summary;
+}
@@ -0,0 +1,425 @@
+/**
+ * Persistent trigram index for `search_ql_code`.
+ *
+ * For every searched file the index keeps a *trigram signature*: a bitmap
+ * with one bit set per distinct trigram of the file's text (ASCII letters
+ * folded to lower case), sized to about 8 bits per trigram.  A search first
+ * derives the literal trigrams every matching line must contain from its
+ * regex ({@link patternTrigrams}) and only reads the files whose signature
+ * has all of them.  Signatures can report false positives (a few percent
+ * per trigram) but never false negatives, so results are unchanged.
+ *
+ * Entries are keyed by absolute path and validated against the file's
+ * mtime and size.  New or changed files are searched in full and their
+ * signature is computed during that same read, so the index refreshes
+ * incrementally as a side effect of searching.
+ *
+ * The index is a single file in `CODEQL_MCP_SEARCH_INDEX_DIR` (default:
+ * `.tmp/ql-search-index`), written atomically after searches that changed
+ * it:
+ *
+ * ```
+ * "QLSI" | version u32 | header length u32 | header JSON | signatures
+ * ```
+ *
+ * where the header lists `[path, mtimeMs, size, seenAt, signatureBytes]`
+ * per file and the signatures follow in the same order.
+ */
+
+import { mkdir, readFile, rename, writeFile } from 'fs/promises';
+import { extname, join, sep } from 'path';
+import { getProjectTmpDir } from '../utils/temp-dir';
+import { logger } from '../utils/logger';
+
+const INDEX_FILE = 'index.bin';
+const INDEX_MAGIC = 'QLSI';
+const INDEX_VERSION = 1;
+
+/** Entries of files not seen by any search for this long are dropped on save. */
+const ENTRY_MAX_IDLE_MS = 30 * 24 * 60 * 60 * 1000;
+
+/**
+ * Builds the trigram signature of a text fed in chunks of any size.
+ *
+ * This class must not reference anything outside its own body: its source
+ * is evaluated in the search workers.
+ */
+export class TrigramSignatureBuilder {
+  private c0 = -1;
+  private c1 = -1;
+  private readonly keys = new Set<number>();
+
+  /** Key of a trigram of (folded) UTF-16 code units. */
+  static key(c0: number, c1: number, c2: number): number {
+    return c0 * 4294967296 + c1 * 65536 + c2;
+  }
+
+  /** Fold ASCII upper-case letters to lower case. */
+  static fold(c: number): number {
+    return c >= 65 && c <= 90 ? c | 32 : c;
+  }
+
+  static hash(key: number): number {
+    let h = Math.imul(Math.floor(key / 4294967296) ^ 0x9e3779b9, 0x85ebca6b) ^ (key >>> 0);
+    h = Math.imul(h ^ (h >>> 16), 0x7feb352d);
+    h = Math.imul(h ^ (h >>> 15), 0x846ca68b);
+    return (h ^ (h >>> 16)) >>> 0;
+  }
+
+  /** Whether `signature` may contain the trigram `key`. */
+  static contains(signature: Uint8Array, key: number): boolean {
+    const bit = TrigramSignatureBuilder.hash(key) & (signature.length * 8 - 1);
+    return (signature[bit >>> 3] & (1 << (bit & 7))) !== 0;
+  }
+
+  push(text: string): void {
+    let c0 = this.c0;
+    let c1 = this.c1;
+    for (let i = 0; i < text.length; i++) {
+      const c = TrigramSignatureBuilder.fold(text.charCodeAt(i));
+      if (c0 >= 0) this.keys.add(TrigramSignatureBuilder.key(c0, c1, c));
+      c0 = c1;
+      c1 = c;
+    }
+    this.c0 = c0;
+    this.c1 = c1;
+  }
+
+  finish(): Uint8Array {
+    let bits = 64;
+    while (bits < this.keys.size * 8) bits *= 2;
+    const signature = new Uint8Array(bits / 8);
+    for (const key of this.keys) {
+      const bit = TrigramSignatureBuilder.hash(key) & (bits - 1);
+      signature[bit >>> 3] |= 1 << (bit & 7);
+    }
+    return signature;
+  }
+}
+
+// ---------------------------------------------------------------------------
+// Regex analysis
+// ---------------------------------------------------------------------------
+
+/**
+ * Split a pattern at top-level `|` (outside groups and classes).
+ */
+function splitAlternatives(pattern: string): string[] {
+  const branches: string[] = [];
+  let depth = 0;
+  let inClass = false;
+  let start = 0;
+  for (let i = 0; i < pattern.length; i++) {
+    const ch = pattern[i];
+    if (ch === '\\') {
+      i++;
+    } else if (inClass) {
+      if (ch === ']') inClass = false;
+    } else if (ch === '[') {
+      inClass = true;
+    } else if (ch === '(') {
+      depth++;
+    } else if (ch === ')') {
+      depth--;
+    } else if (ch === '|' && depth === 0) {
+      branches.push(pattern.substring(start, i));
+      start = i + 1;
+    }
+  }
+  branches.push(pattern.substring(start));
+  return branches;
+}
+
+/** Index just past the group or class that starts at `i`. */
+function skipGroup(pattern: string, i: number): number {
+  let depth = 0;
+  let inClass = false;
+  for (; i < pattern.length; i++) {
+    const ch = pattern[i];
+    if (ch === '\\') {
+      i++;
+    } else if (inClass) {
+      if (ch === ']') {
+        inClass = false;
+        if (depth === 0) return i + 1;
+      }
+    } else if (ch === '[') {
+      inClass = true;
+    } else if (ch === '(') {
+      depth++;
+    } else if (ch === ')') {
+      if (--depth === 0) return i + 1;
+    }
+  }
+  return i;
+}
+
+/** Length of the escape sequence body after `\` at `i` for non-literal escapes. */
+function escapeLength(pattern: string, i: number): number {
+  switch (pattern[i]) {
+    case 'x': return 3;
+    case 'u': return pattern[i + 1] === '{' ? delimitedLength(pattern, i, '}') : 5;
+    case 'c': return 2;
+    // Named backreference `\k<name>` and property escapes `\p{...}`.
+    case 'k': return pattern[i + 1] === '<' ? delimitedLength(pattern, i, '>') : 1;
+    case 'p':
+    case 'P': return pattern[i + 1] === '{' ? delimitedLength(pattern, i, '}') : 1;
+    default: {
+      let end = i + 1;
+      if (/[0-9]/.test(pattern[i])) {
+        while (end < pattern.length && /[0-9]/.test(pattern[end])) end++;
+      }
+      return end - i;
+    }
+  }
+}
+
+/** Length from `i` to just past the next `close`, or to the end of the pattern. */
+function delimitedLength(pattern: string, i: number, close: string): number {
+  const end = pattern.indexOf(close, i);
+  return (end === -1 ? pattern.length : end + 1) - i;
+}
+
+/**
+ * Literal runs that every match of a branch (without top-level `|`)
+ * contains.  Groups, classes, escapes other than escaped punctuation, and
+ * optional atoms break runs; the result is conservative.
+ */
+function literalRuns(branch: string, caseInsensitive: boolean): string[] {
+  const runs: string[] = [];
+  let run = '';
+  const flush = (): void => {
+    if (run.length >= 3) runs.push(run);
+    run = '';
+  };
+
+  let i = 0;
+  while (i < branch.length) {
+    const ch = branch[i];
+    let literal: string | null = null;
+    if (ch === '\\') {
+      const next = branch[i + 1];
+      if (next !== undefined && !/[A-Za-z0-9]/.test(next)) {
+        literal = next;
+        i += 2;
+      } else {
+        i += 1 + (next === undefined ? 0 : escapeLength(branch, i + 1));
+      }
+    } else if (ch === '(' || ch === '[') {
+      i = skipGroup(branch, i);
+    } else if (ch === '.' || ch === '^' || ch === '$') {
+      i++;
+    } else {
+      literal = ch;
+      i++;
+    }
+
+    // Case-insensitive matching may map non-ASCII characters to other
+    // code units than the index folds them to.
+    if (literal !== null && caseInsensitive && literal.charCodeAt(0) > 127) {
+      literal = null;
+    }
+
+    const quantifier = /^(?:[*?+]|\{(\d+)(?:,\d*)?\})/.exec(branch.substring(i));
+    if (quantifier) {
+      i += quantifier[0].length;
+      if (branch[i] === '?') i++;
+      const min = quantifier[0] === '+' ? 1 : quantifier[1] !== undefined ? Number(quantifier[1]) : 0;
+      if (literal !== null && min > 0) run += literal;
+      flush();
+    } else if (literal !== null) {
+      run += literal;
+    } else {
+      flush();
+    }
+  }
+  flush();
+  return runs;
+}
+
+/**
+ * The trigram keys a line must contain to match `pattern`, as alternatives
+ * of which at least one must be fully present, or `null` when the pattern
+ * has no literal of three characters in some alternative and cannot
+ * narrow the files.
+ */
+export function patternTrigrams(pattern: string, flags: string): number[][] | null {
+  const alternatives: number[][] = [];
+  for (const branch of splitAlternatives(pattern)) {
+    const keys = new Set<number>();
+    for (const run of literalRuns(branch, flags.includes('i'))) {
+      for (let k = 0; k + 3 <= run.length; k++) {
+        keys.add(TrigramSignatureBuilder.key(
+          TrigramSignatureBuilder.fold(run.charCodeAt(k)),
+          TrigramSignatureBuilder.fold(run.charCodeAt(k + 1)),
+          TrigramSignatureBuilder.fold(run.charCodeAt(k + 2)),
+        ));
+      }
+    }
+    if (keys.size === 0) return null;
+    alternatives.push([...keys]);
+  }
+  return alternatives;
+}
+
+/**
+ * Whether a file with `signature` may contain a match.
+ */
+export function signatureMayMatch(signature: Uint8Array, trigrams: number[][]): boolean {
+  return trigrams.some(keys => keys.every(key => TrigramSignatureBuilder.contains(signature, key)));
+}
+
+// ---------------------------------------------------------------------------
+// Persistence
+// ---------------------------------------------------------------------------
+
+/** Index entry of one file. */
+export interface SearchIndexEntry {
+  mtimeMs: number;
+  /** When a search last considered the file (epoch ms). */
+  seenAt: number;
+  signature: Uint8Array;
+  size: number;
+}
+
+/**
+ * The on-disk trigram index, loaded on first use.
+ */
+export class QlSearchIndex {
+  private readonly entries = new Map<string, SearchIndexEntry>();
+  private loading: Promise<void> | undefined;
+  private dirty = false;
+  private saving: Promise<void> | undefined;
+
+  constructor(readonly dir: string) {}
+
+  get size(): number {
+    return this.entries.size;
+  }
+
+  /** Load the index file, once.  A missing or unreadable file starts an empty index. */
+  load(): Promise<void> {
+    this.loading ??= this.read();
+    return this.loading;
+  }
+
+  /** The entry of `path` if it matches the file's current mtime and size. */
+  getFresh(path: string, mtimeMs: number, size: number): SearchIndexEntry | undefined {
+    const entry = this.entries.get(path);
+    if (!entry || entry.mtimeMs !== mtimeMs || entry.size !== size) return undefined;
+    entry.seenAt = Date.now();
+    return entry;
+  }
+
+  set(path: string, entry: Omit<SearchIndexEntry, 'seenAt'>): void {
+    this.entries.set(path, { ...entry, seenAt: Date.now() });
+    this.dirty = true;
+  }
+
+  /**
+   * Drop entries of files below `roots` with one of `extensions` (any, when
+   * empty) that are not in `seen`, i.e. that a complete traversal of the
+   * roots no longer found.
+   */
+  prune(roots: string[], extensions: string[], seen: Set<string>): void {
+    const prefixes = roots.map(root => root.endsWith(sep) ? root : root + sep);
+    for (const path of this.entries.keys()) {
+      if (seen.has(path)) continue;
+      if (extensions.length > 0 && !extensions.includes(extname(path))) continue;
+      if (prefixes.some(prefix => path.startsWith(prefix))) {
+        this.entries.delete(path);
+        this.dirty = true;
+      }
+    }
+  }
+
+  /**
+   * Write the index if it changed.  Concurrent calls are serialized, and a
+   * failure is logged rather than thrown: the index is only a cache.
+   */
+  save(): Promise<void> {
+    this.saving = (this.saving ?? Promise.resolve()).then(async () => {
+      if (!this.dirty) return;
+      this.dirty = false;
+      try {
+        await this.write();
+      } catch (error) {
+        logger.debug(`Failed to write search index: ${error instanceof Error ? error.message : String(error)}`);
+      }
+    });
+    return this.saving;
+  }
+
+  private async read(): Promise<void> {
+    let data: Buffer;
+    try {
+      data = await readFile(join(this.dir, INDEX_FILE));
+    } catch {
+      return;
+    }
+    try {
+      if (data.toString('latin1', 0, 4) !== INDEX_MAGIC || data.readUInt32LE(4) !== INDEX_VERSION) {
+        throw new Error('unknown format');
+      }
+      const headerBytes = data.readUInt32LE(8);
+      const header = JSON.parse(data.toString('utf8', 12, 12 + headerBytes)) as
+        Array<[string, number, number, number, number]>;
+      let offset = 12 + headerBytes;
+      for (const [path, mtimeMs, size, seenAt, bytes] of header) {
+        // Entries added since the load are newer.
+        if (!this.entries.has(path)) {
+          this.entries.set(path, { mtimeMs, seenAt, signature: data.subarray(offset, offset + bytes), size });
+        }
+        offset += bytes;
+      }
+    } catch (error) {
+      logger.debug(`Ignoring unreadable search index: ${error instanceof Error ? error.message : String(error)}`);
+    }
+  }
+
+  private async write(): Promise<void> {
+    const cutoff = Date.now() - ENTRY_MAX_IDLE_MS;
+    const header: Array<[string, number, number, number, number]> = [];
+    const signatures: Uint8Array[] = [];
+    for (const [path, entry] of this.entries) {
+      if (entry.seenAt < cutoff) {
+        this.entries.delete(path);
+        continue;
+      }
+      header.push([path, entry.mtimeMs, entry.size, entry.seenAt, entry.signature.length]);
+      signatures.push(entry.signature);
+    }
+    const headerJson = Buffer.from(JSON.stringify(header));
+    const prefix = Buffer.alloc(12);
+    prefix.write(INDEX_MAGIC, 0, 'latin1');
+    prefix.writeUInt32LE(INDEX_VERSION, 4);
+    prefix.writeUInt32LE(headerJson.length, 8);
+
+    await mkdir(this.dir, { recursive: true });
+    const path = join(this.dir, INDEX_FILE);
+    const tmpPath = `${path}.${process.pid}.tmp`;
+    await writeFile(tmpPath, Buffer.concat([prefix, headerJson, ...signatures]));
+    await rename(tmpPath, path);
+  }
+}
+
+let index: QlSearchIndex | undefined;
+
+/**
+ * Resolve the index directory from `CODEQL_MCP_SEARCH_INDEX_DIR`, falling
+ * back to `.tmp/ql-search-index`.  Re-read on each call so that runtime
+ * changes are respected.
+ */
+export function getSearchIndexDir(): string {
+  const configured = process.env.CODEQL_MCP_SEARCH_INDEX_DIR?.trim();
+  return configured ? configured : getProjectTmpDir('ql-search-index');
+}
+
+/**
+ * The process-wide search index for the configured directory.
+ */
+export function getSearchIndex(): QlSearchIndex {
+  const dir = getSearchIndexDir();
+  if (index?.dir !== dir) index = new QlSearchIndex(dir);
+  return index;
+}
@@ -0,0 +1,280 @@
+/**
+ * Query evaluation through the persistent CodeQL Query Server.
+ *
+ * `codeql query run` starts a JVM per call, recompiles the query and reloads
+ * the database cache from disk.  query-server2 keeps registered databases
+ * open and holds compiled queries and evaluated predicates in memory, so
+ * re-running a query (or a slightly edited one) against the same database
+ * only pays for what changed.
+ *
+ * Protocol: the `evaluation/*` methods of query-server2, as used by the
+ * CodeQL extension for VS Code.
+ */
+
+import { realpathSync } from 'fs';
+import { resolve } from 'path';
+import { CLIExecutionResult } from './cli-executor';
+import { CodeQLQueryServer } from './query-server';
+import { getServerManager } from './server-manager';
+import { logger } from '../utils/logger';
+
+/**
+ * How `codeql_query_run` evaluates a query.
+ *
+ * - `cli`: a one-off `codeql query run` process.
+ * - `query-server`: the shared query-server2 process.
+ */
+export type QueryExecutionMode = 'cli' | 'query-server';
+
+/**
+ * `QueryResultType` values returned by `evaluation/runQuery`.
+ */
+export const QueryResultType = {
+  SUCCESS: 0,
+  COMPILATION_ERROR: 1,
+  OTHER_ERROR: 2,
+  OOM: 3,
+  CANCELLATION: 4,
+  DBSCHEME_MISMATCH_NAME: 5,
+  DBSCHEME_NO_UPGRADE: 6,
+} as const;
+
+const RESULT_TYPE_NAMES: Record<number, string> = {
+  [QueryResultType.COMPILATION_ERROR]: 'compilation error',
+  [QueryResultType.OTHER_ERROR]: 'evaluation error',
+  [QueryResultType.OOM]: 'out of memory',
+  [QueryResultType.CANCELLATION]: 'cancelled',
+  [QueryResultType.DBSCHEME_MISMATCH_NAME]: 'database scheme mismatch',
+  [QueryResultType.DBSCHEME_NO_UPGRADE]: 'database scheme mismatch (no upgrade available)',
+};
+
+/**
+ * A source range selected for quick evaluation (1-based, inclusive).
+ */
+export interface QuickEvalPosition {
+  column: number;
+  endColumn: number;
+  endLine: number;
+  fileName: string;
+  line: number;
+}
+
+/**
+ * Parameters for evaluating one query on the query server.
+ */
+export interface QueryServerRunOptions {
+  /** Directories searched for packs before the CodeQL search path. */
+  additionalPacks?: string[];
+  /** Path to the database directory (language subfolder). */
+  database: string;
+  /** Names of extension packs to activate. */
+  extensionPacks?: string[];
+  /** External predicate inputs: predicate name to CSV file. */
+  externalInputs?: Record<string, string>;
+  /** Structured evaluator log (JSONL) to write, as with `--evaluator-log`. */
+  logPath?: string;
+  /** Path of the BQRS file to write. */
+  outputPath: string;
+  /** Path of the `.ql` file. */
+  queryPath: string;
+  /** Evaluate only this range of `queryPath` instead of the whole query. */
+  quickEvalPosition?: QuickEvalPosition;
+  /** Request timeout in milliseconds. */
+  timeoutMs?: number;
+}
+
+/**
+ * `evaluation/runQuery` response body.
+ */
+interface RunQueryResult {
+  evaluationTime: number;
+  expectedDbschemeName?: string;
+  message?: string;
+  resultType: number;
+}
+
+/** Default request timeout: the same as a CLI invocation. */
+const DEFAULT_TIMEOUT_MS = 300_000;
+
+/** Databases registered with each query server instance. */
+const registeredDatabases = new WeakMap<CodeQLQueryServer, Set<string>>();
+
+/**
+ * Per-database mutex map — serializes query-server evaluations and CLI
+ * commands that open the same database, so they never contend for its
+ * cache lock.
+ */
+const databaseLocks = new Map<string, Promise<unknown>>();
+
+/** Progress IDs sent with `evaluation/*` requests; unique per process. */
+let nextProgressId = 1;
+
+/**
+ * Resolve the default execution mode from `CODEQL_MCP_QUERY_EXECUTION_MODE`.
+ */
+export function getDefaultQueryExecutionMode(): QueryExecutionMode {
+  return process.env.CODEQL_MCP_QUERY_EXECUTION_MODE?.trim() === 'query-server' ? 'query-server' : 'cli';
+}
+
+/**
+ * Run `operation` while holding the lock for `database`.  The lock key is
+ * the real path, so relative paths and symlinks to one database share it.
+ */
+async function withDatabaseLock<T>(database: string, operation: () => Promise<T>): Promise<T> {
+  let key = resolve(database);
+  try { key = realpathSync(key); } catch { /* use resolved path if realpath fails */ }
+
+  const previous = databaseLocks.get(key) ?? Promise.resolve();
+  let releaseGate!: () => void;
+  const gate = new Promise<void>(resolveGate => {
+    releaseGate = resolveGate;
+  });
+  databaseLocks.set(key, gate);
+
+  try {
+    await previous;
+    return await operation();
+  } finally {
+    releaseGate();
+    if (databaseLocks.get(key) === gate) {
+      databaseLocks.delete(key);
+    }
+  }
+}
+
+/**
+ * Register `database` with the query server unless it already is.
+ *
+ * Registration opens the database and keeps it open, which is what lets
+ * later evaluations reuse its in-memory predicate cache.
+ */
+async function ensureDatabaseRegistered(server: CodeQLQueryServer, database: string): Promise<void> {
+  let databases = registeredDatabases.get(server);
+  if (!databases) {
+    databases = new Set();
+    registeredDatabases.set(server, databases);
+  }
+  if (databases.has(database)) return;
+
+  await server.sendRequest('evaluation/registerDatabases', {
+    body: { databases: [database] },
+    progressId: nextProgressId++,
+  });
+  databases.add(database);
+  logger.info(`Registered database with query server: ${database}`);
+}
+
+/**
+ * Evaluate a query (or a quick-evaluation range of it) on the shared query
+ * server and write its results to `outputPath`.
+ *
+ * The result mirrors a `codeql query run` invocation so the caller can
+ * post-process it the same way.  A transport failure (for example, the query
+ * server cannot be started) is thrown; evaluation failures such as
+ * compilation errors are returned as an unsuccessful result.
+ *
+ * Holds the database lock for the whole evaluation, so a CLI command started
+ * through {@link runCliOnDatabase} waits for it to finish.
+ */
+export async function runQueryOnQueryServer(options: QueryServerRunOptions): Promise<CLIExecutionResult> {
+  const database = resolve(options.database);
+  const server = await getServerManager().getQueryServer({});
+  return withDatabaseLock(database, async () => {
+    await ensureDatabaseRegistered(server, database);
+    return evaluateOnQueryServer(server, database, options);
+  });
+}
+
+/**
+ * Send `evaluation/runQuery` for a registered database and translate the
+ * response into a CLI-style result.
+ */
+async function evaluateOnQueryServer(
+  server: CodeQLQueryServer,
+  database: string,
+  options: QueryServerRunOptions,
+): Promise<CLIExecutionResult> {
+  const target = options.quickEvalPosition
+    ? { quickEval: { quickEvalPos: options.quickEvalPosition } }
+    : { query: {} };
+  const body = {
+    additionalPacks: options.additionalPacks ?? [],
+    db: database,
+    extensionPacks: options.extensionPacks ?? [],
+    externalInputs: options.externalInputs ?? {},
+    logPath: options.logPath,
+    outputPath: options.outputPath,
+    queryPath: resolve(options.queryPath),
+    singletonExternalInputs: {},
+    target,
+  };
+
+  const started = Date.now();
+  const result = await server.sendRequest(
+    'evaluation/runQuery',
+    { body, progressId: nextProgressId++ },
+    options.timeoutMs ?? DEFAULT_TIMEOUT_MS,
+  ) as RunQueryResult;
+
+  if (result.resultType !== QueryResultType.SUCCESS) {
+    const kind = RESULT_TYPE_NAMES[result.resultType] ?? `result type ${result.resultType}`;
+    const detail = result.message ?? (result.expectedDbschemeName ? `expected dbscheme ${result.expectedDbschemeName}` : '');
+    return {
+      error: `Query server evaluation failed (${kind})${detail ? `: ${detail}` : ''}`,
+      exitCode: 1,
+      stderr: detail,
+      stdout: '',
+      success: false,
+    };
+  }
+
+  const elapsed = Date.now() - started;
+  return {
+    stderr: '',
+    stdout: `Evaluated ${options.quickEvalPosition ? 'selection' : 'query'} on the query server in ${result.evaluationTime ?? elapsed} ms; results written to ${options.outputPath}`,
+    success: true,
+  };
+}
+
+/**
+ * Close `database` in the query server, if it is open there.
+ *
+ * The database is registered again on its next query-server evaluation.
+ * CLI commands should use {@link runCliOnDatabase}, which also waits for
+ * in-flight evaluations on the database.
+ */
+export async function releaseQueryServerDatabase(database: string): Promise<void> {
+  const manager = getServerManager();
+  if (!manager.isRunning('query')) return;
+
+  const server = await manager.getQueryServer({});
+  const databases = registeredDatabases.get(server);
+  const key = resolve(database);
+  if (!databases?.has(key)) return;
+
+  try {
+    await server.sendRequest('evaluation/deregisterDatabases', {
+      body: { databases: [key] },
+      progressId: nextProgressId++,
+    });
+  } catch (error) {
+    logger.warn(`Failed to deregister database from query server: ${key}`, error);
+  } finally {
+    databases.delete(key);
+  }
+}
+
+/**
+ * Run a CLI command that opens `database` (such as `codeql query run` or
+ * `codeql database analyze`).
+ *
+ * The command waits for other CLI commands and query-server evaluations on
+ * the same database, and the query server closes the database first so the
+ * CLI can lock its cache.
+ */
+export async function runCliOnDatabase<T>(database: string, operation: () => Promise<T>): Promise<T> {
+  return withDatabaseLock(database, async () => {
+    await releaseQueryServerDatabase(database);
+    return operation();
+  });
+}
@@ -15,6 +15,7 @@ import { EventEmitter } from 'events';
 import { clearTimeout, setTimeout } from 'timers';
 import { buildQueryServerArgs, QueryServerConfig } from './server-config';
 import { getResolvedCodeQLDir } from './cli-executor';
+import { ContentLengthFramer } from './message-framing';
 import { logger } from '../utils/logger';
 import { waitForProcessReady } from '../utils/process-ready';
 
@@ -33,7 +34,10 @@ interface PendingRequest {
  * using JSON-RPC with Content-Length framing.
  */
 export class CodeQLQueryServer extends EventEmitter {
-  private messageBuffer = '';
+  private readonly stdoutFramer = new ContentLengthFramer(
+    (messageContent) => this.handleMessageContent(messageContent),
+    (header) => logger.error('Invalid query server header:', header),
+  );
   private messageId = 1;
   private pendingRequests = new Map<number, PendingRequest>();
   private process: ChildProcess | null = null;
@@ -191,38 +195,15 @@ export class CodeQLQueryServer extends EventEmitter {
   // ---- private helpers ----
 
   private handleStdout(data: Buffer): void {
-    this.messageBuffer += data.toString();
-
-    let headerEnd = this.messageBuffer.indexOf('\r\n\r\n');
-    while (headerEnd !== -1) {
-      const header = this.messageBuffer.substring(0, headerEnd);
-      const contentLengthMatch = header.match(/Content-Length: (\d+)/);
-
-      if (contentLengthMatch) {
-        const contentLength = parseInt(contentLengthMatch[1]);
-        const messageStart = headerEnd + 4;
-        const messageEnd = messageStart + contentLength;
-
-        if (this.messageBuffer.length >= messageEnd) {
-          const messageContent = this.messageBuffer.substring(messageStart, messageEnd);
-          this.messageBuffer = this.messageBuffer.substring(messageEnd);
-
-          try {
-            const message = JSON.parse(messageContent);
-            this.handleMessage(message);
-          } catch (error) {
-            logger.error('Failed to parse query server message:', error);
-          }
-
-          headerEnd = this.messageBuffer.indexOf('\r\n\r\n');
-        } else {
-          break;
-        }
-      } else {
-        logger.error('Invalid query server header:', header);
-        this.messageBuffer = '';
-        break;
-      }
+    this.stdoutFramer.push(data);
+  }
+
+  private handleMessageContent(messageContent: string): void {
+    try {
+      const message = JSON.parse(messageContent);
+      this.handleMessage(message);
+    } catch (error) {
+      logger.error('Failed to parse query server message:', error);
     }
   }
 
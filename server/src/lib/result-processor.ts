@@ -7,10 +7,11 @@
  */
 
 import { basename, dirname } from 'path';
-import { mkdirSync, readFileSync } from 'fs';
+import { existsSync, mkdirSync, readFileSync, writeFileSync } from 'fs';
 import { createHash } from 'crypto';
+import { computeDatabaseFingerprint, computeQueryFingerprint } from './cache-fingerprint';
 import { CLIExecutionResult, executeCodeQLCommand, getActualCodeqlVersion } from './cli-executor';
-import { readDatabaseMetadata } from './database-resolver';
+import { readDatabaseMetadata, resolveDatabasePath } from './database-resolver';
 import { evaluateQueryResults, extractQueryMetadata, QueryEvaluationResult, QueryMetadata } from './query-results-evaluator';
 import { resolveQueryPath } from './query-resolver';
 import { collectAllRules, decomposeSarifByRule, getRuleDisplayName } from './sarif-utils';
@@ -26,24 +27,183 @@ interface ProcessorLogger {
 
 /**
  * Compute a deterministic cache key for a query execution.
+ *
+ * When `queryFingerprint` / `databaseFingerprint` are supplied (see
+ * `cache-fingerprint.ts`), the key also changes whenever the query source or
+ * the database contents change, so a key match implies a valid result.
  */
 export function computeQueryCacheKey(params: {
   codeqlVersion: string;
+  databaseFingerprint?: string;
   databasePath: string;
   externalPredicates?: Record<string, string>;
   outputFormat: string;
+  queryFingerprint?: string;
   queryPath: string;
 }): string {
   const input = JSON.stringify({
     d: params.databasePath,
+    df: params.databaseFingerprint,
     e: params.externalPredicates ?? {},
     f: params.outputFormat,
     q: params.queryPath,
+    qf: params.queryFingerprint,
     v: params.codeqlVersion,
   });
   return createHash('sha256').update(input).digest('hex').substring(0, 16);
 }
 
+/**
+ * Compute the cache key (and its inputs) for a `codeql_query_run` call.
+ *
+ * Shared by the write path (`processQueryRunResults`) and the read-through
+ * lookup (`lookupCachedQueryRunResults`) so both always agree on the key.
+ */
+export function computeQueryRunCacheKey(
+  params: Record<string, unknown>,
+  queryPath: string,
+  outputFormat: string,
+): {
+  cacheKey: string;
+  codeqlVersion: string;
+  databaseFingerprint: string | undefined;
+  databasePath: string;
+  externalPredicates: Record<string, string>;
+  queryFingerprint: string | undefined;
+} {
+  const codeqlVersion = getActualCodeqlVersion();
+  const databasePath = (params.database as string) || '';
+  const externalPredicates: Record<string, string> = {};
+  if (params.sourceFiles) externalPredicates.sourceFiles = params.sourceFiles as string;
+  if (params.sourceFunction) externalPredicates.sourceFunction = params.sourceFunction as string;
+  if (params.targetFunction) externalPredicates.targetFunction = params.targetFunction as string;
+
+  // Prefer the language-resolved path for fingerprinting.
+  const fingerprintDbPath = (params._resolvedDatabasePath as string | undefined)
+    || (databasePath ? resolveDatabasePath(databasePath) : '');
+  const databaseFingerprint = fingerprintDbPath ? computeDatabaseFingerprint(fingerprintDbPath) : undefined;
+  const queryFingerprint = computeQueryFingerprint(queryPath);
+
+  const cacheKey = computeQueryCacheKey({
+    codeqlVersion,
+    databaseFingerprint,
+    databasePath,
+    externalPredicates: Object.keys(externalPredicates).length > 0 ? externalPredicates : undefined,
+    outputFormat,
+    queryFingerprint,
+    queryPath,
+  });
+  return { cacheKey, codeqlVersion, databaseFingerprint, databasePath, externalPredicates, queryFingerprint };
+}
+
+/**
+ * Resolve the interpretation format for a query run: the caller's explicit
+ * `format`, or one inferred from the query's `@kind` metadata when the
+ * caller did not use the legacy `evaluationFunction` parameter.
+ */
+function resolveEffectiveFormat(
+  params: Record<string, unknown>,
+  queryMetadata: QueryMetadata | undefined,
+): string | undefined {
+  if (params.format) return params.format as string;
+  if (params.evaluationFunction || !queryMetadata) return undefined;
+  if (queryMetadata.kind === 'problem' || queryMetadata.kind === 'path-problem') {
+    return 'sarif-latest';
+  }
+  if (queryMetadata.kind === 'graph') {
+    return 'graphtext';
+  }
+  return undefined;
+}
+
+/**
+ * Outcome of a read-through cache lookup for `codeql_query_run`.
+ */
+export type QueryRunCacheLookup =
+  | { cacheKey: string; hit: true; output: string }
+  | { cacheKey?: string; hit: false; reason: string };
+
+/**
+ * Look up a valid cached result for a `codeql_query_run` call before the
+ * query is evaluated (opt-in via the `useCachedResults` parameter).
+ *
+ * The cache key incorporates fingerprints of the query's source closure and
+ * of the database, so any hit is for identical inputs.  Calls whose inputs
+ * cannot be fingerprinted (`external` CSV data, raw `additionalArgs`, the
+ * legacy `evaluationFunction`, or library imports whose source is unknown)
+ * are always reported as misses.
+ *
+ * On a hit, the cached interpreted output is written to `interpretedOutput`
+ * when the caller requested a specific path.
+ */
+export async function lookupCachedQueryRunResults(
+  params: Record<string, unknown>,
+  queryPath: string,
+  logger: ProcessorLogger,
+): Promise<QueryRunCacheLookup> {
+  try {
+    if (!sessionDataManager.getConfig().enableAnnotationTools) {
+      return { hit: false, reason: 'result caching is disabled' };
+    }
+    if (params.evaluationFunction) {
+      return { hit: false, reason: 'evaluationFunction results are not cached' };
+    }
+    if (Array.isArray(params.external) && params.external.length > 0) {
+      return { hit: false, reason: 'external predicate files are not fingerprinted' };
+    }
+    if (Array.isArray(params.additionalArgs) && params.additionalArgs.length > 0) {
+      return { hit: false, reason: 'additionalArgs may change query semantics' };
+    }
+
+    let queryMetadata: QueryMetadata | undefined;
+    try {
+      queryMetadata = await extractQueryMetadata(queryPath);
+    } catch { /* leave undefined; explicit format may still apply */ }
+    const outputFormat = resolveEffectiveFormat(params, queryMetadata);
+    if (!outputFormat) {
+      return { hit: false, reason: 'query results are not interpreted, so they are not cached' };
+    }
+
+    const { cacheKey, queryFingerprint } = computeQueryRunCacheKey(params, queryPath, outputFormat);
+    if (!queryFingerprint) {
+      return { cacheKey, hit: false, reason: 'the query imports library modules that are neither on the pack search path nor pinned by a pack lock file' };
+    }
+    const store = sessionDataManager.getStore();
+    const cached = store.lookupCacheEntry(cacheKey);
+    if (!cached) {
+      return { cacheKey, hit: false, reason: 'no cached result for this query source and database' };
+    }
+    const { content, meta } = cached;
+
+    let output = `Query result cache: hit (key: ${cacheKey}). Skipped query evaluation.`;
+    output += `
+Format: ${meta.outputFormat}`;
+    if (meta.resultCount !== null) output += `
+Result count: ${meta.resultCount}`;
+    output += `
+Cached at: ${meta.createdAt}`;
+
+    const interpretedOutput = params.interpretedOutput as string | undefined;
+    if (interpretedOutput) {
+      mkdirSync(dirname(interpretedOutput), { recursive: true });
+      writeFileSync(interpretedOutput, content, 'utf8');
+      output += `
+Interpreted output saved to: ${interpretedOutput}`;
+    } else if (meta.interpretedPath && existsSync(meta.interpretedPath)) {
+      output += `
+Interpreted output: ${meta.interpretedPath}`;
+    }
+    output += `
+Use query_results_cache_retrieve with cacheKey "${cacheKey}" to page through the results.`;
+
+    logger.info(`Query result cache hit for ${queryPath} (key: ${cacheKey})`);
+    return { cacheKey, hit: true, output };
+  } catch (error) {
+    logger.error('Query result cache lookup failed:', error);
+    return { hit: false, reason: `lookup failed: ${error instanceof Error ? error.message : String(error)}` };
+  }
+}
+
 /**
  * Get default output extension based on format.
  */
@@ -190,7 +350,6 @@ export async function processQueryRunResults(
     //
     // The metadata is also reused below by `interpretBQRSFile` to avoid a second
     // file read for the same query.
-    let effectiveFormat: string | undefined = format as string | undefined;
     let queryMetadata: QueryMetadata | undefined;
     if (queryPath) {
       try {
@@ -199,15 +358,9 @@ export async function processQueryRunResults(
         logger.error('Failed to extract query metadata:', metaErr);
       }
     }
-    if (!effectiveFormat && !evaluationFunction && queryMetadata) {
-      if (queryMetadata.kind === 'problem' || queryMetadata.kind === 'path-problem') {
-        effectiveFormat = 'sarif-latest';
-      } else if (queryMetadata.kind === 'graph') {
-        effectiveFormat = 'graphtext';
-      }
-      if (effectiveFormat) {
-        logger.info(`No format specified; defaulting to '${effectiveFormat}' for @kind ${queryMetadata.kind} query`);
-      }
+    const effectiveFormat = resolveEffectiveFormat(params, queryMetadata);
+    if (!format && effectiveFormat) {
+      logger.info(`No format specified; defaulting to '${effectiveFormat}' for @kind ${queryMetadata?.kind} query`);
     }
 
     // If no format (explicit or inferred) and no evaluationFunction, return as-is
@@ -250,21 +403,15 @@ export async function processQueryRunResults(
           const config = sessionDataManager.getConfig();
           if (config.enableAnnotationTools && outputFilePath && queryPath) {
             const resultContent = readFileSync(outputFilePath, 'utf8');
-            const codeqlVersion = getActualCodeqlVersion();
-            const dbPath = (params.database as string) || '';
-            const lang = (queryLanguage as string) || (dbPath ? (readDatabaseMetadata(dbPath).language ?? 'unknown') : 'unknown');
-            const extPreds: Record<string, string> = {};
-            if (params.sourceFiles) extPreds.sourceFiles = params.sourceFiles as string;
-            if (params.sourceFunction) extPreds.sourceFunction = params.sourceFunction as string;
-            if (params.targetFunction) extPreds.targetFunction = params.targetFunction as string;
-
-            const cacheKey = computeQueryCacheKey({
+            const {
+              cacheKey,
               codeqlVersion,
+              databaseFingerprint,
               databasePath: dbPath,
-              externalPredicates: Object.keys(extPreds).length > 0 ? extPreds : undefined,
-              outputFormat,
-              queryPath,
-            });
+              externalPredicates: extPreds,
+              queryFingerprint,
+            } = computeQueryRunCacheKey(params, queryPath, outputFormat);
+            const lang = (queryLanguage as string) || (dbPath ? (readDatabaseMetadata(dbPath).language ?? 'unknown') : 'unknown');
 
             const store = sessionDataManager.getStore();
 
@@ -293,11 +440,13 @@ export async function processQueryRunResults(
               bqrsPath,
               cacheKey,
               codeqlVersion,
+              databaseFingerprint,
               databasePath: dbPath,
               externalPredicates: Object.keys(extPreds).length > 0 ? JSON.stringify(extPreds) : null,
               interpretedPath: outputFilePath,
               language: lang,
               outputFormat,
+              queryFingerprint,
               queryName: sarifQueryName || (queryName as string) || basename(queryPath, '.ql'),
               queryPath,
               resultContent,
@@ -414,10 +563,19 @@ export function cacheDatabaseAnalyzeResults(
     // Resolve language from database metadata
     const language = (params.language as string) || (readDatabaseMetadata(dbPath).language ?? 'unknown');
 
+    // Suites (.qls) and pack references are not fingerprinted; a single
+    // .ql file is.  The database is always fingerprinted.
+    const databaseFingerprint = computeDatabaseFingerprint(resolveDatabasePath(dbPath));
+    const queryFingerprint = queries?.endsWith('.ql') && existsSync(queries)
+      ? computeQueryFingerprint(queries)
+      : undefined;
+
     const cacheKey = computeQueryCacheKey({
       codeqlVersion,
+      databaseFingerprint,
       databasePath: dbPath,
       outputFormat: format,
+      queryFingerprint,
       queryPath: queries || 'database-analyze',
     });
 
@@ -427,10 +585,12 @@ export function cacheDatabaseAnalyzeResults(
     store.putCacheEntry({
       cacheKey,
       codeqlVersion,
+      databaseFingerprint,
       databasePath: dbPath,
       interpretedPath: outputPath,
       language,
       outputFormat: format,
+      queryFingerprint,
       queryName,
       queryPath: queries || 'database-analyze',
       resultContent,
@@ -450,18 +610,22 @@ export function cacheDatabaseAnalyzeResults(
           const ruleDisplayName = ruleDef ? getRuleDisplayName(ruleDef) : ruleId;
           const ruleCacheKey = computeQueryCacheKey({
             codeqlVersion,
+            databaseFingerprint,
             databasePath: dbPath,
             outputFormat: format,
+            queryFingerprint,
             queryPath: `${queries || 'database-analyze'}#${ruleId}`,
           });
 
           store.putCacheEntry({
             cacheKey: ruleCacheKey,
             codeqlVersion,
+            databaseFingerprint,
             databasePath: dbPath,
             interpretedPath: outputPath,
             language,
             outputFormat: format,
+            queryFingerprint,
             queryName: ruleDisplayName,
             queryPath: queries || 'database-analyze',
             resultContent: ruleContent,
@@ -0,0 +1,123 @@
+/**
+ * Parsed SARIF document cache — a process-wide, byte-bounded LRU.
+ *
+ * A typical triage workflow calls several `sarif_*` tools on the same
+ * multi-megabyte SARIF in a row.  Without a cache each call re-reads and
+ * re-parses the document.  Entries are keyed by source (file path or cache
+ * key) and validated against a version stamp (file mtime and size, or the
+ * content-addressed blob path), so a changed source is never served stale.
+ *
+ * Cached documents are shared between callers and must be treated as
+ * read-only.
+ */
+
+import type { SarifDocument } from '../types/sarif';
+
+/**
+ * Counters and occupancy of a {@link SarifDocumentCache}.
+ */
+export interface SarifDocumentCacheStats {
+  entries: number;
+  bytes: number;
+  maxBytes: number;
+  hits: number;
+  misses: number;
+  evictions: number;
+}
+
+interface CacheSlot {
+  bytes: number;
+  document: SarifDocument;
+  version: string;
+}
+
+/** Default budget: 64 MiB of SARIF source text. */
+const DEFAULT_MAX_BYTES = 64 * 1024 * 1024;
+
+/**
+ * Resolve the cache budget from the `CODEQL_MCP_SARIF_CACHE_BYTES`
+ * environment variable.  `0` disables caching.
+ */
+export function getSarifDocumentCacheMaxBytes(): number {
+  const raw = process.env.CODEQL_MCP_SARIF_CACHE_BYTES;
+  if (raw === undefined || raw.trim() === '') return DEFAULT_MAX_BYTES;
+  const value = Number(raw);
+  return Number.isFinite(value) && value >= 0 ? Math.floor(value) : DEFAULT_MAX_BYTES;
+}
+
+export class SarifDocumentCache {
+  /** Map iteration order is insertion order; the first entry is least recent. */
+  private slots = new Map<string, CacheSlot>();
+  private bytes = 0;
+  private hits = 0;
+  private misses = 0;
+  private evictions = 0;
+  private maxBytes: number;
+
+  constructor(maxBytes: number) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Return the cached document for `key` if it was stored with the same
+   * `version`.  A version mismatch drops the stale entry.
+   */
+  get(key: string, version: string): SarifDocument | undefined {
+    const slot = this.slots.get(key);
+    if (!slot || slot.version !== version) {
+      if (slot) this.remove(key, slot);
+      this.misses++;
+      return undefined;
+    }
+    // Refresh recency.
+    this.slots.delete(key);
+    this.slots.set(key, slot);
+    this.hits++;
+    return slot.document;
+  }
+
+  /**
+   * Cache a parsed document.  `bytes` approximates its footprint (the size
+   * of its source text); documents larger than the whole budget are skipped.
+   */
+  set(key: string, version: string, document: SarifDocument, bytes: number): void {
+    const existing = this.slots.get(key);
+    if (existing) this.remove(key, existing);
+    if (bytes > this.maxBytes) return;
+
+    while (this.bytes + bytes > this.maxBytes && this.slots.size > 0) {
+      const [oldestKey, oldest] = this.slots.entries().next().value as [string, CacheSlot];
+      this.remove(oldestKey, oldest);
+      this.evictions++;
+    }
+    this.slots.set(key, { bytes, document, version });
+    this.bytes += bytes;
+  }
+
+  /**
+   * Drop all entries (counters are kept).
+   */
+  clear(): void {
+    this.slots.clear();
+    this.bytes = 0;
+  }
+
+  getStats(): SarifDocumentCacheStats {
+    return {
+      bytes: this.bytes,
+      entries: this.slots.size,
+      evictions: this.evictions,
+      hits: this.hits,
+      maxBytes: this.maxBytes,
+      misses: this.misses,
+    };
+  }
+
+  private remove(key: string, slot: CacheSlot): void {
+    this.slots.delete(key);
+    this.bytes -= slot.bytes;
+  }
+}
+
+/** Process-wide cache shared by all `sarif_*` tools. */
+export const sarifDocumentCache = new SarifDocumentCache(getSarifDocumentCacheMaxBytes());
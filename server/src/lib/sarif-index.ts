@@ -0,0 +1,238 @@
+/**
+ * SARIF result index — byte-level layout scan of a stored SARIF document.
+ *
+ * `query_results_cache_retrieve` pages through cached SARIF by result index,
+ * file and rule.  Re-parsing a multi-megabyte document on every page makes a
+ * session quadratic in the number of results, so when a SARIF entry is
+ * cached the store records, for each result of the first run, its rule id,
+ * primary location, the files of all its locations and the byte range of
+ * its JSON text in the stored blob.
+ * Retrieval then selects rows with SQL and parses only the chosen slices.
+ *
+ * The scanner works directly on the UTF-8 bytes: it only tracks strings and
+ * bracket depth to find value boundaries, and never builds the document.
+ */
+
+/** Byte range of a JSON value within a buffer. */
+export interface ByteRange {
+  offset: number;
+  length: number;
+}
+
+/** Layout of the first run of a SARIF document. */
+export interface SarifLayout {
+  version: string | null;
+  tool: ByteRange | null;
+  results: ByteRange[];
+}
+
+/** One row of the per-result side index. */
+export interface SarifResultIndexRow extends ByteRange {
+  resultIndex: number;
+  ruleId: string | null;
+  /** URI of the primary location. */
+  fileUri: string | null;
+  /** Distinct URIs of every location of the result. */
+  fileUris: string[];
+  startLine: number | null;
+}
+
+const QUOTE = 0x22;
+const BACKSLASH = 0x5c;
+const COLON = 0x3a;
+const COMMA = 0x2c;
+const LBRACE = 0x7b;
+const RBRACE = 0x7d;
+const LBRACKET = 0x5b;
+const RBRACKET = 0x5d;
+
+class LayoutError extends Error {}
+
+function skipWs(buf: Buffer, pos: number): number {
+  while (pos < buf.length) {
+    const c = buf[pos];
+    if (c !== 0x20 && c !== 0x0a && c !== 0x0d && c !== 0x09) break;
+    pos++;
+  }
+  return pos;
+}
+
+function consume(buf: Buffer, pos: number, byte: number): number {
+  pos = skipWs(buf, pos);
+  if (buf[pos] !== byte) throw new LayoutError(`expected '${String.fromCharCode(byte)}' at ${pos}`);
+  return pos + 1;
+}
+
+/** Return the position just past the string starting at `pos`. */
+function skipString(buf: Buffer, pos: number): number {
+  pos++; // opening quote
+  while (pos < buf.length) {
+    const c = buf[pos];
+    if (c === BACKSLASH) {
+      pos += 2;
+    } else if (c === QUOTE) {
+      return pos + 1;
+    } else {
+      pos++;
+    }
+  }
+  throw new LayoutError('unterminated string');
+}
+
+/** Return the position just past the JSON value starting at `pos`. */
+function skipValue(buf: Buffer, pos: number): number {
+  pos = skipWs(buf, pos);
+  const first = buf[pos];
+  if (first === QUOTE) return skipString(buf, pos);
+  if (first !== LBRACE && first !== LBRACKET) {
+    // Scalar: runs until the next delimiter.
+    while (pos < buf.length) {
+      const c = buf[pos];
+      if (c === COMMA || c === RBRACE || c === RBRACKET || c === 0x20 || c === 0x0a || c === 0x0d || c === 0x09) break;
+      pos++;
+    }
+    return pos;
+  }
+  let depth = 0;
+  while (pos < buf.length) {
+    const c = buf[pos];
+    if (c === QUOTE) {
+      pos = skipString(buf, pos);
+      continue;
+    }
+    if (c === LBRACE || c === LBRACKET) depth++;
+    else if (c === RBRACE || c === RBRACKET) {
+      depth--;
+      if (depth === 0) return pos + 1;
+    }
+    pos++;
+  }
+  throw new LayoutError('unterminated container');
+}
+
+/**
+ * Iterate the members of the object starting at `pos`, calling `onMember`
+ * with each key and the position of its value.  `onMember` returns the
+ * position just past the value.  Returns the position past the object.
+ */
+function forEachMember(
+  buf: Buffer,
+  pos: number,
+  onMember: (_key: string, _valuePos: number) => number,
+): number {
+  pos = consume(buf, pos, LBRACE);
+  pos = skipWs(buf, pos);
+  if (buf[pos] === RBRACE) return pos + 1;
+  for (;;) {
+    pos = skipWs(buf, pos);
+    if (buf[pos] !== QUOTE) throw new LayoutError(`expected key at ${pos}`);
+    const keyEnd = skipString(buf, pos);
+    const key = buf.toString('utf8', pos + 1, keyEnd - 1);
+    pos = consume(buf, keyEnd, COLON);
+    pos = onMember(key, skipWs(buf, pos));
+    pos = skipWs(buf, pos);
+    if (buf[pos] === COMMA) {
+      pos++;
+      continue;
+    }
+    return consume(buf, pos, RBRACE);
+  }
+}
+
+/**
+ * Iterate the elements of the array starting at `pos`, calling `onElement`
+ * with each element's index and position.  `onElement` returns the position
+ * just past the element.  Returns the position past the array.
+ */
+function forEachElement(
+  buf: Buffer,
+  pos: number,
+  onElement: (_index: number, _elementPos: number) => number,
+): number {
+  pos = consume(buf, pos, LBRACKET);
+  pos = skipWs(buf, pos);
+  if (buf[pos] === RBRACKET) return pos + 1;
+  for (let index = 0; ; index++) {
+    pos = onElement(index, skipWs(buf, pos));
+    pos = skipWs(buf, pos);
+    if (buf[pos] === COMMA) {
+      pos++;
+      continue;
+    }
+    return consume(buf, pos, RBRACKET);
+  }
+}
+
+/**
+ * Locate the `version`, `runs[0].tool` and each `runs[0].results[i]` value
+ * in a SARIF document.  Returns `null` if the buffer is not a JSON object
+ * with a non-empty `runs` array.
+ */
+export function scanSarifLayout(buf: Buffer): SarifLayout | null {
+  const layout: SarifLayout = { version: null, tool: null, results: [] };
+  let sawRun = false;
+  try {
+    const end = forEachMember(buf, skipWs(buf, 0), (key, pos) => {
+      if (key === 'version' && buf[pos] === QUOTE) {
+        const end = skipString(buf, pos);
+        layout.version = JSON.parse(buf.toString('utf8', pos, end)) as string;
+        return end;
+      }
+      if (key !== 'runs' || buf[pos] !== LBRACKET) return skipValue(buf, pos);
+      return forEachElement(buf, pos, (runIndex, runPos) => {
+        if (runIndex > 0 || buf[runPos] !== LBRACE) return skipValue(buf, runPos);
+        sawRun = true;
+        return forEachMember(buf, runPos, (runKey, valuePos) => {
+          if (runKey === 'tool') {
+            const end = skipValue(buf, valuePos);
+            layout.tool = { offset: valuePos, length: end - valuePos };
+            return end;
+          }
+          if (runKey !== 'results' || buf[valuePos] !== LBRACKET) return skipValue(buf, valuePos);
+          return forEachElement(buf, valuePos, (_i, resultPos) => {
+            const end = skipValue(buf, resultPos);
+            layout.results.push({ offset: resultPos, length: end - resultPos });
+            return end;
+          });
+        });
+      });
+    });
+    if (skipWs(buf, end) !== buf.length) return null;
+  } catch (err) {
+    if (err instanceof LayoutError) return null;
+    throw err;
+  }
+  return sawRun ? layout : null;
+}
+
+/**
+ * Build the per-result index rows for a SARIF document.  Each result slice
+ * is parsed on its own to read its rule id (`ruleId`, else `rule.id`), its
+ * primary location and the file URIs of all its locations.
+ */
+export function buildSarifResultIndex(buf: Buffer, layout: SarifLayout): SarifResultIndexRow[] {
+  return layout.results.map((range, resultIndex) => {
+    let ruleId: string | null = null;
+    let fileUri: string | null = null;
+    let fileUris: string[] = [];
+    let startLine: number | null = null;
+    try {
+      const result = JSON.parse(buf.toString('utf8', range.offset, range.offset + range.length)) as {
+        locations?: Array<{ physicalLocation?: { artifactLocation?: { uri?: string }; region?: { startLine?: number } } }>;
+        rule?: { id?: string };
+        ruleId?: string;
+      };
+      ruleId = result.ruleId ?? result.rule?.id ?? null;
+      const physical = result.locations?.[0]?.physicalLocation;
+      fileUri = physical?.artifactLocation?.uri ?? null;
+      startLine = physical?.region?.startLine ?? null;
+      const uris = new Set<string>();
+      for (const location of result.locations ?? []) {
+        const uri = location.physicalLocation?.artifactLocation?.uri;
+        if (uri !== undefined) uris.add(uri);
+      }
+      fileUris = [...uris];
+    } catch { /* malformed result — index by position only */ }
+    return { ...range, fileUri, fileUris, resultIndex, ruleId, startLine };
+  });
+}
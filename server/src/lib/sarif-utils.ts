@@ -87,6 +87,28 @@ export interface SarifDiffResult {
   unchangedRules: SarifRuleSummary[];
 }
 
+/** Per-rule outcome of matching individual results across two runs */
+export interface RuleResultDiff {
+  /** Indices (within the rule's results in run A) with no counterpart in run B. */
+  absentIndicesA: number[];
+  matchedByFingerprint: number;
+  matchedByLocation: number;
+  /** Indices (within the rule's results in run B) with no counterpart in run A. */
+  newIndicesB: number[];
+  ruleId: string;
+}
+
+/** Result of matching the individual results of two SARIF documents */
+export interface SarifResultDiff {
+  rules: RuleResultDiff[];
+  summary: {
+    absentResults: number;
+    matchedByFingerprint: number;
+    matchedByLocation: number;
+    newResults: number;
+  };
+}
+
 /** A file changed in a git diff, with optional line ranges. */
 export interface DiffFileEntry {
   /** Changed line ranges (hunks). Only includes hunks with lineCount > 0 (additions). */
@@ -327,8 +349,11 @@ function urisMatch(uriA: string, uriB: string): boolean {
 
 /** Check if two regions in the same file overlap. */
 function regionsOverlap(a: NormalizedLocation, b: NormalizedLocation): boolean {
-  if (!urisMatch(a.uri, b.uri)) return false;
+  return urisMatch(a.uri, b.uri) && regionsOverlapInFile(a, b);
+}
 
+/** Check if two regions overlap, assuming their URIs already match. */
+function regionsOverlapInFile(a: NormalizedLocation, b: NormalizedLocation): boolean {
   const aStartLine = a.startLine ?? 0;
   const aEndLine = a.endLine ?? aStartLine;
   const bStartLine = b.startLine ?? 0;
@@ -777,9 +802,6 @@ export function computeLocationOverlap(
   resultB: SarifResult,
   mode: OverlapMode = 'sink',
 ): OverlapResult {
-  let locsA: NormalizedLocation[];
-  let locsB: NormalizedLocation[];
-
   switch (mode) {
     case 'fingerprint': {
       const fpResult = computeFingerprintOverlap(resultA, resultB);
@@ -789,18 +811,6 @@ export function computeLocationOverlap(
       // Fall back to full-path when fingerprints are absent or don't match
       return computeLocationOverlap(resultA, resultB, 'full-path');
     }
-    case 'sink':
-      locsA = extractPrimaryLocations(resultA);
-      locsB = extractPrimaryLocations(resultB);
-      break;
-    case 'source':
-      locsA = extractSourceLocations(resultA);
-      locsB = extractSourceLocations(resultB);
-      break;
-    case 'any-location':
-      locsA = extractAllLocations(resultA);
-      locsB = extractAllLocations(resultB);
-      break;
     case 'full-path': {
       const pathA = extractFullPathLocations(resultA);
       const pathB = extractFullPathLocations(resultB);
@@ -821,10 +831,34 @@ export function computeLocationOverlap(
       };
     }
     default:
-      locsA = extractPrimaryLocations(resultA);
-      locsB = extractPrimaryLocations(resultB);
+      return locationOverlapResult(
+        extractLocationsForMode(resultA, mode),
+        extractLocationsForMode(resultB, mode),
+        mode,
+      );
   }
+}
 
+/**
+ * Locations compared by the `sink`, `source` and `any-location` modes
+ * (unknown modes compare primary locations, like `sink`).
+ */
+function extractLocationsForMode(result: SarifResult, mode: OverlapMode): NormalizedLocation[] {
+  switch (mode) {
+    case 'source':
+      return extractSourceLocations(result);
+    case 'any-location':
+      return extractAllLocations(result);
+    default:
+      return extractPrimaryLocations(result);
+  }
+}
+
+function locationOverlapResult(
+  locsA: NormalizedLocation[],
+  locsB: NormalizedLocation[],
+  mode: OverlapMode,
+): OverlapResult {
   const shared = findSharedLocations(locsA, locsB);
   return {
     overlaps: shared.length > 0,
@@ -833,6 +867,95 @@ export function computeLocationOverlap(
   };
 }
 
+/** A location tagged with its owning result and its line interval. */
+interface IndexedLocation {
+  endLine: number;
+  loc: NormalizedLocation;
+  resultIndex: number;
+  startLine: number;
+}
+
+/**
+ * Group the locations of each result by normalized URI, each group sorted
+ * by start line.
+ */
+function buildLocationIndex(locsPerResult: NormalizedLocation[][]): Map<string, IndexedLocation[]> {
+  const byUri = new Map<string, IndexedLocation[]>();
+  locsPerResult.forEach((locs, resultIndex) => {
+    for (const loc of locs) {
+      const uri = normalizeUri(loc.uri);
+      const startLine = loc.startLine ?? 0;
+      let group = byUri.get(uri);
+      if (!group) {
+        group = [];
+        byUri.set(uri, group);
+      }
+      group.push({ endLine: loc.endLine ?? startLine, loc, resultIndex, startLine });
+    }
+  });
+  for (const group of byUri.values()) {
+    group.sort((x, y) => x.startLine - y.startLine);
+  }
+  return byUri;
+}
+
+/**
+ * Pairs of normalized URIs (one from each index) that `urisMatch` accepts:
+ * equal, or one a suffix of the other.  Every suffix of each URI is looked
+ * up in the other index, so the cost depends on the number of distinct
+ * files, not on the number of alerts.
+ */
+function matchingUriPairs(urisA: Set<string>, urisB: Set<string>): Array<[string, string]> {
+  const pairs = new Map<string, [string, string]>();
+  const add = (a: string, b: string): void => {
+    pairs.set(`${a}\0${b}`, [a, b]);
+  };
+  for (const b of urisB) {
+    for (let k = 0; k <= b.length; k++) {
+      const suffix = b.substring(k);
+      if (urisA.has(suffix)) add(suffix, b);
+    }
+  }
+  for (const a of urisA) {
+    for (let k = 1; k <= a.length; k++) {
+      const suffix = a.substring(k);
+      if (urisB.has(suffix)) add(a, suffix);
+    }
+  }
+  return [...pairs.values()];
+}
+
+/**
+ * Sweep two start-sorted interval lists and report every pair whose closed
+ * line intervals intersect.  Each side keeps an active list of intervals
+ * that may still overlap later ones; intervals ending before the current
+ * start are dropped when scanned, so the sweep is O(N + M + K).
+ */
+function sweepLineOverlaps(
+  listA: IndexedLocation[],
+  listB: IndexedLocation[],
+  onPair: (_a: IndexedLocation, _b: IndexedLocation) => void,
+): void {
+  const activeA: IndexedLocation[] = [];
+  const activeB: IndexedLocation[] = [];
+  let i = 0;
+  let j = 0;
+  while (i < listA.length || j < listB.length) {
+    const fromA = j >= listB.length || (i < listA.length && listA[i].startLine <= listB[j].startLine);
+    const current = fromA ? listA[i++] : listB[j++];
+    const others = fromA ? activeB : activeA;
+    let kept = 0;
+    for (const other of others) {
+      if (other.endLine < current.startLine) continue;
+      others[kept++] = other;
+      if (fromA) onPair(current, other);
+      else onPair(other, current);
+    }
+    others.length = kept;
+    (fromA ? activeA : activeB).push(current);
+  }
+}
+
 /**
  * Find all overlapping alerts between two sets of results (potentially different rules).
  */
@@ -843,26 +966,184 @@ export function findOverlappingAlerts(
   ruleB: SarifRule,
   mode: OverlapMode = 'sink',
 ): AlertOverlap[] {
+  // Every overlap requires at least one pair of overlapping locations (or,
+  // in fingerprint mode, a shared fingerprint), so candidate pairs come from
+  // a per-file interval index and only those are compared in full.  The
+  // output matches comparing every pair with `computeLocationOverlap`.
+  const pathMode = mode === 'full-path' || mode === 'fingerprint';
+  const extract = (r: SarifResult): NormalizedLocation[] =>
+    pathMode ? extractFullPathLocations(r) : extractLocationsForMode(r, mode);
+  const locsA = resultsA.map(extract);
+  const locsB = resultsB.map(extract);
+  const pairKey = (i: number, j: number): number => i * resultsB.length + j;
+
+  const candidates = findLocationOverlapCandidates(locsA, locsB);
+  const fingerprintPairs = new Set<number>();
+  if (mode === 'fingerprint') {
+    for (const [i, j] of matchResultsByFingerprint(resultsA, resultsB)) {
+      fingerprintPairs.add(pairKey(i, j));
+      candidates.add(pairKey(i, j));
+    }
+  }
+
   const overlaps: AlertOverlap[] = [];
+  for (const pair of [...candidates].sort((x, y) => x - y)) {
+    const i = Math.floor(pair / resultsB.length);
+    const j = pair % resultsB.length;
+    let overlapDetails: OverlapResult;
+    if (fingerprintPairs.has(pair)) {
+      overlapDetails = computeFingerprintOverlap(resultsA[i], resultsB[j]);
+    } else if (pathMode) {
+      overlapDetails = computeLocationOverlap(resultsA[i], resultsB[j], 'full-path');
+    } else {
+      overlapDetails = locationOverlapResult(locsA[i], locsB[j], mode);
+    }
+    overlaps.push({
+      overlapDetails,
+      resultA: resultsA[i],
+      resultAIndex: i,
+      resultB: resultsB[j],
+      resultBIndex: j,
+      ruleIdA: ruleA.id,
+      ruleIdB: ruleB.id,
+    });
+  }
+  return overlaps;
+}
 
-  for (let i = 0; i < resultsA.length; i++) {
-    for (let j = 0; j < resultsB.length; j++) {
-      const overlapDetails = computeLocationOverlap(resultsA[i], resultsB[j], mode);
-      if (overlapDetails.overlaps) {
-        overlaps.push({
-          overlapDetails,
-          resultA: resultsA[i],
-          resultAIndex: i,
-          resultB: resultsB[j],
-          resultBIndex: j,
-          ruleIdA: ruleA.id,
-          ruleIdB: ruleB.id,
-        });
+/**
+ * Result pairs (encoded as `i * locsB.length + j`) with at least one pair of
+ * overlapping locations.
+ *
+ * Locations are grouped by file and swept by line, so the cost is
+ * O((N + M) log(N + M) + K) rather than one comparison per result pair.
+ */
+function findLocationOverlapCandidates(
+  locsA: NormalizedLocation[][],
+  locsB: NormalizedLocation[][],
+): Set<number> {
+  const indexA = buildLocationIndex(locsA);
+  const indexB = buildLocationIndex(locsB);
+  const candidates = new Set<number>();
+  for (const [uriA, uriB] of matchingUriPairs(new Set(indexA.keys()), new Set(indexB.keys()))) {
+    sweepLineOverlaps(indexA.get(uriA)!, indexB.get(uriB)!, (a, b) => {
+      if (regionsOverlapInFile(a.loc, b.loc)) {
+        candidates.add(a.resultIndex * locsB.length + b.resultIndex);
+      }
+    });
+  }
+  return candidates;
+}
+
+/**
+ * Match results by `partialFingerprints` with a hash join.
+ *
+ * Each (fingerprint key, value) of `resultsB` is indexed once and probed with
+ * the fingerprints of `resultsA`, so the cost is linear in the number of
+ * results plus matches.  Returns every `[indexA, indexB]` pair that
+ * `computeFingerprintOverlap` would report as a match, ordered by A index
+ * then B index.
+ */
+export function matchResultsByFingerprint(
+  resultsA: SarifResult[],
+  resultsB: SarifResult[],
+): Array<[number, number]> {
+  const byFingerprint = new Map<string, number[]>();
+  resultsB.forEach((result, j) => {
+    for (const [key, value] of Object.entries(result.partialFingerprints ?? {})) {
+      const slot = `${key}\0${value}`;
+      const indices = byFingerprint.get(slot);
+      if (indices) indices.push(j);
+      else byFingerprint.set(slot, [j]);
+    }
+  });
+
+  const pairs: Array<[number, number]> = [];
+  resultsA.forEach((result, i) => {
+    const matched = new Set<number>();
+    for (const [key, value] of Object.entries(result.partialFingerprints ?? {})) {
+      for (const j of byFingerprint.get(`${key}\0${value}`) ?? []) {
+        matched.add(j);
+      }
+    }
+    for (const j of [...matched].sort((x, y) => x - y)) {
+      pairs.push([i, j]);
+    }
+  });
+  return pairs;
+}
+
+/**
+ * Match the individual results of two runs, rule by rule.
+ *
+ * Results are paired one-to-one: first by shared `partialFingerprints`, then
+ * (for results still unmatched on both sides) by full-path location overlap,
+ * preferring the most similar paths, and finally by primary location for
+ * results without code flows.  Result indices are positions within the
+ * rule's results, as used by `sarif_compare_alerts`.
+ */
+export function diffSarifResults(sarifA: SarifDocument, sarifB: SarifDocument): SarifResultDiff {
+  const byRuleA = groupResultsByRule(sarifA.runs[0]?.results ?? []);
+  const byRuleB = groupResultsByRule(sarifB.runs[0]?.results ?? []);
+  const ruleIds = [...new Set([...byRuleA.keys(), ...byRuleB.keys()])].sort();
+
+  const rules: RuleResultDiff[] = [];
+  const summary = { absentResults: 0, matchedByFingerprint: 0, matchedByLocation: 0, newResults: 0 };
+
+  for (const ruleId of ruleIds) {
+    const resultsA = byRuleA.get(ruleId) ?? [];
+    const resultsB = byRuleB.get(ruleId) ?? [];
+    const matchedA = new Set<number>();
+    const matchedB = new Set<number>();
+
+    let matchedByFingerprint = 0;
+    for (const [i, j] of matchResultsByFingerprint(resultsA, resultsB)) {
+      if (matchedA.has(i) || matchedB.has(j)) continue;
+      matchedA.add(i);
+      matchedB.add(j);
+      matchedByFingerprint++;
+    }
+
+    let matchedByLocation = 0;
+    const rule: SarifRule = { id: ruleId };
+    for (const mode of ['full-path', 'sink'] as const) {
+      const openA = resultsA.map((_, i) => i).filter(i => !matchedA.has(i));
+      const openB = resultsB.map((_, j) => j).filter(j => !matchedB.has(j));
+      if (openA.length === 0 || openB.length === 0) break;
+      const overlaps = findOverlappingAlerts(
+        openA.map(i => resultsA[i]), rule, openB.map(j => resultsB[j]), rule, mode,
+      );
+      overlaps.sort((x, y) => (y.overlapDetails.pathSimilarity ?? 0) - (x.overlapDetails.pathSimilarity ?? 0));
+      for (const overlap of overlaps) {
+        const i = openA[overlap.resultAIndex];
+        const j = openB[overlap.resultBIndex];
+        if (matchedA.has(i) || matchedB.has(j)) continue;
+        matchedA.add(i);
+        matchedB.add(j);
+        matchedByLocation++;
       }
     }
+
+    const absentIndicesA = resultsA.map((_, i) => i).filter(i => !matchedA.has(i));
+    const newIndicesB = resultsB.map((_, j) => j).filter(j => !matchedB.has(j));
+    rules.push({ absentIndicesA, matchedByFingerprint, matchedByLocation, newIndicesB, ruleId });
+    summary.absentResults += absentIndicesA.length;
+    summary.matchedByFingerprint += matchedByFingerprint;
+    summary.matchedByLocation += matchedByLocation;
+    summary.newResults += newIndicesB.length;
   }
 
-  return overlaps;
+  return { rules, summary };
+}
+
+function groupResultsByRule(results: SarifResult[]): Map<string, SarifResult[]> {
+  const byRule = new Map<string, SarifResult[]>();
+  for (const result of results) {
+    const group = byRule.get(result.ruleId);
+    if (group) group.push(result);
+    else byRule.set(result.ruleId, [result]);
+  }
+  return byRule;
 }
 
 // ---------------------------------------------------------------------------
@@ -4,11 +4,13 @@
  * Manages the lifecycle of CodeQL background server processes:
  * - language-server (LSP-based QL validation)
  * - query-server2   (query evaluation)
- * - cli-server      (JVM reuse for CLI commands)
+ * - cli-server      (JVM reuse for CLI commands, as a pool of processes)
  *
  * Servers are keyed by a hash of their configuration. When a caller requests
  * a server with a different configuration, the old server is shut down and a
- * new one is started. Session-specific cache directories provide isolation.
+ * new one is started. Logs go to a session-specific directory; compilation
+ * and evaluation caches go to a shared, version-keyed cache that survives
+ * restarts (see {@link SharedCodeQLCache}).
  */
 
 import { mkdirSync } from 'fs';
@@ -24,7 +26,9 @@ import {
 } from './server-config';
 import { CodeQLLanguageServer } from './language-server';
 import { CodeQLQueryServer } from './query-server';
-import { CodeQLCLIServer } from './cli-server';
+import { CLIServerPoolMetrics, CodeQLCLIServerPool } from './cli-server-pool';
+import { getActualCodeqlVersion } from './codeql-version';
+import { SharedCodeQLCache } from './shared-cache';
 import { getProjectTmpDir } from '../utils/temp-dir';
 import { logger } from '../utils/logger';
 
@@ -33,7 +37,7 @@ import { logger } from '../utils/logger';
  */
 interface ManagedServer {
   configHash: string;
-  server: CodeQLCLIServer | CodeQLLanguageServer | CodeQLQueryServer;
+  server: CodeQLCLIServerPool | CodeQLLanguageServer | CodeQLQueryServer;
   sessionId: string;
   type: CodeQLServerType;
 }
@@ -59,25 +63,32 @@ export class CodeQLServerManager {
   private servers = new Map<CodeQLServerType, ManagedServer>();
 
   /** In-flight `getOrRestart` promises, keyed by server type, to serialize concurrent calls. */
-  private pendingStarts = new Map<CodeQLServerType, Promise<CodeQLCLIServer | CodeQLLanguageServer | CodeQLQueryServer>>();
+  private pendingStarts = new Map<CodeQLServerType, Promise<CodeQLCLIServerPool | CodeQLLanguageServer | CodeQLQueryServer>>();
 
   /** The session ID used for cache isolation. */
   private sessionId: string;
 
-  /** Root directory for session-specific caches. */
+  /** Root directory for session-specific files (logs). */
   private sessionCacheDir: string;
 
+  /** Cross-session compilation and evaluation cache, leased for this session. */
+  private sharedCache: SharedCodeQLCache;
+
+  /** Pending or settled lease on the shared cache; see {@link acquireSharedCache}. */
+  private sharedCacheLease: Promise<string> | undefined;
+
   constructor(options?: SessionCacheOptions) {
     this.sessionId = options?.sessionId ?? randomUUID();
     this.sessionCacheDir = join(
       getProjectTmpDir('codeql-cache'),
       this.sessionId,
     );
-    // Pre-create the cache directory tree
-    for (const subdir of ['compilation-cache', 'logs', 'query-cache']) {
-      mkdirSync(join(this.sessionCacheDir, subdir), { recursive: true });
-    }
-    logger.info(`CodeQLServerManager initialized (session: ${this.sessionId})`);
+    mkdirSync(join(this.sessionCacheDir, 'logs'), { recursive: true });
+    this.sharedCache = new SharedCodeQLCache({
+      cliVersion: getActualCodeqlVersion(),
+      leaseId: this.sessionId,
+    });
+    logger.info(`CodeQLServerManager initialized (session: ${this.sessionId}, shared cache: ${this.sharedCache.directory})`);
   }
 
   // ---- Public API ----
@@ -90,12 +101,36 @@ export class CodeQLServerManager {
   }
 
   /**
-   * Get the session-specific cache directory.
+   * Get the session-specific directory.
    */
   getCacheDir(): string {
     return this.sessionCacheDir;
   }
 
+  /**
+   * Get the shared cache passed to servers as `--common-caches`.
+   */
+  getSharedCache(): SharedCodeQLCache {
+    return this.sharedCache;
+  }
+
+  /**
+   * Take this session's lease on the shared cache (idempotent).  Called
+   * before any server starts, since the root lock may be held by another
+   * process for a while.  A failed attempt is retried by the next call.
+   *
+   * @returns The generation directory.
+   */
+  acquireSharedCache(): Promise<string> {
+    if (!this.sharedCacheLease) {
+      this.sharedCacheLease = this.sharedCache.acquire().catch((error) => {
+        this.sharedCacheLease = undefined;
+        throw error;
+      });
+    }
+    return this.sharedCacheLease;
+  }
+
   /**
    * Return the session-specific log directory.
    */
@@ -134,13 +169,26 @@ export class CodeQLServerManager {
   }
 
   /**
-   * Get or create a CLI Server with the given configuration.
+   * Get or create the CLI Server pool with the given configuration.
+   *
+   * The pool size comes from `CODEQL_MCP_CLI_SERVER_POOL_SIZE`; see
+   * {@link CodeQLCLIServerPool} for how commands are dispatched.
    */
-  async getCLIServer(config: CLIServerConfig): Promise<CodeQLCLIServer> {
+  async getCLIServer(config: CLIServerConfig): Promise<CodeQLCLIServerPool> {
     const enriched = this.enrichConfig(config) as CLIServerConfig;
     return this.getOrRestart('cli', enriched, () => {
-      return new CodeQLCLIServer(enriched);
-    }) as Promise<CodeQLCLIServer>;
+      return new CodeQLCLIServerPool(enriched);
+    }) as Promise<CodeQLCLIServerPool>;
+  }
+
+  /**
+   * Queue-depth metrics of the CLI Server pool, or `null` if it is not
+   * running.
+   */
+  getCLIServerPoolMetrics(): CLIServerPoolMetrics | null {
+    const managed = this.servers.get('cli');
+    if (!managed || !managed.server.isRunning()) return null;
+    return (managed.server as CodeQLCLIServerPool).getMetrics();
   }
 
   /**
@@ -171,6 +219,11 @@ export class CodeQLServerManager {
     );
     await Promise.all(shutdownPromises);
     this.servers.clear();
+    if (this.sharedCacheLease) {
+      await this.sharedCacheLease.catch(() => undefined);
+      this.sharedCacheLease = undefined;
+      this.sharedCache.release();
+    }
     logger.info('All servers shut down');
   }
 
@@ -237,7 +290,7 @@ export class CodeQLServerManager {
    * Eagerly start the CLI server so the JVM is warm when the first
    * `executeCodeQLCommand()` call routes through it.
    *
-   * The CLI server uses only session-scoped `commonCaches` and `logdir`,
+   * The CLI server uses only the shared `commonCaches` and session `logdir`,
    * both injected by `enrichConfig()`.  Passing an empty config is
    * intentional — it matches what `executeCodeQLCommand()` will request.
    *
@@ -254,12 +307,12 @@ export class CodeQLServerManager {
   }
 
   /**
-   * Enrich a config with session-specific defaults for commonCaches and logdir.
+   * Enrich a config with the shared commonCaches and the session logdir.
    */
   private enrichConfig<T extends ServerConfig>(config: T): T {
     return {
       ...config,
-      commonCaches: config.commonCaches ?? this.sessionCacheDir,
+      commonCaches: config.commonCaches ?? this.sharedCache.directory,
       logdir: config.logdir ?? this.getLogDir(),
     };
   }
@@ -274,8 +327,8 @@ export class CodeQLServerManager {
   private async getOrRestart(
     type: CodeQLServerType,
     config: ServerConfig,
-    factory: () => CodeQLCLIServer | CodeQLLanguageServer | CodeQLQueryServer,
-  ): Promise<CodeQLCLIServer | CodeQLLanguageServer | CodeQLQueryServer> {
+    factory: () => CodeQLCLIServerPool | CodeQLLanguageServer | CodeQLQueryServer,
+  ): Promise<CodeQLCLIServerPool | CodeQLLanguageServer | CodeQLQueryServer> {
     // If another call is already starting a server of this type, wait for it
     // to settle (success or failure) and then re-check whether the result is
     // still usable.
@@ -306,8 +359,8 @@ export class CodeQLServerManager {
   private async doGetOrRestart(
     type: CodeQLServerType,
     config: ServerConfig,
-    factory: () => CodeQLCLIServer | CodeQLLanguageServer | CodeQLQueryServer,
-  ): Promise<CodeQLCLIServer | CodeQLLanguageServer | CodeQLQueryServer> {
+    factory: () => CodeQLCLIServerPool | CodeQLLanguageServer | CodeQLQueryServer,
+  ): Promise<CodeQLCLIServerPool | CodeQLLanguageServer | CodeQLQueryServer> {
     const hash = computeConfigHash(type, config);
     const existing = this.servers.get(type);
 
@@ -325,6 +378,7 @@ export class CodeQLServerManager {
     }
 
     // Start a new server
+    await this.acquireSharedCache();
     const server = factory();
     await server.start();
 
@@ -7,14 +7,26 @@ import { mkdirSync, writeFileSync } from 'fs';
 import { join } from 'path';
 import { randomUUID } from 'crypto';
 import { getProjectTmpBase } from '../utils/temp-dir';
-import { SqliteStore } from './sqlite-store';
+import { getBlobCompression } from './blob-store';
+import {
+  getQueryResultCachePolicy,
+  getStorePersistenceMode,
+  SESSION_HISTORY_KINDS,
+  SessionHistoryKind,
+  SessionQueryFilter,
+  SqliteStore,
+} from './sqlite-store';
 import {
   QueryDevelopmentSession,
+  QueryDevelopmentSessionSummary,
   QueryState,
   MCPCallRecord,
   TestExecutionRecord,
   QualityScoreRecord,
+  SessionAggregateStats,
   SessionFilter,
+  SessionHistoryPage,
+  SessionListEntry,
   MonitoringConfig,
   MonitoringConfigSchema,
 } from '../types/monitoring';
@@ -24,7 +36,9 @@ import { logger } from '../utils/logger';
  * Session Data Manager - handles all session persistence and lifecycle.
  *
  * Sessions are stored as JSON blobs keyed by session_id in the shared
- * SqliteStore, replacing the previous lowdb JSON-file backend.
+ * SqliteStore, replacing the previous lowdb JSON-file backend.  The call,
+ * test and score history of a session lives in append-only history tables,
+ * so recording one more entry never rewrites the rest of the session.
  */
 export class SessionDataManager {
   private store: SqliteStore;
@@ -40,7 +54,20 @@ export class SessionDataManager {
     this.storageDir = this.config.storageLocation;
     this.ensureStorageDirectory();
 
-    this.store = new SqliteStore(this.storageDir);
+    this.store = this.createStore();
+  }
+
+  /**
+   * Create a SqliteStore for the current storage directory, using the
+   * persistence backend selected by `CODEQL_MCP_STORE_PERSISTENCE` and the
+   * result cache limits from the `CODEQL_MCP_RESULT_CACHE_*` variables.
+   */
+  private createStore(): SqliteStore {
+    return new SqliteStore(this.storageDir, {
+      blobCompression: getBlobCompression(),
+      persistence: getStorePersistenceMode(),
+      resultCachePolicy: getQueryResultCachePolicy(),
+    });
   }
 
   /**
@@ -55,7 +82,7 @@ export class SessionDataManager {
       if (storageDir !== this.storageDir) {
         this.store.close();
         this.storageDir = storageDir;
-        this.store = new SqliteStore(this.storageDir);
+        this.store = this.createStore();
       }
       await this.store.initialize();
       const count = this.store.countSessions();
@@ -137,7 +164,7 @@ export class SessionDataManager {
       recommendations: [],
     };
 
-    this.store.putSession(sessionId, session);
+    this.saveSession(session);
 
     logger.info(`Started new session: ${sessionId} for query: ${queryPath}`);
     return sessionId;
@@ -150,17 +177,18 @@ export class SessionDataManager {
     sessionId: string,
     status: 'completed' | 'failed' | 'abandoned'
   ): Promise<QueryDevelopmentSession | null> {
-    const session = this.store.getSession(sessionId) as QueryDevelopmentSession | null;
-    if (!session) {
+    const summary = this.loadSession(sessionId);
+    if (!summary) {
       logger.warn(`Session not found: ${sessionId}`);
       return null;
     }
 
-    session.status = status;
-    session.endTime = new Date().toISOString();
-    session.currentState.lastActivity = session.endTime;
+    summary.status = status;
+    summary.endTime = new Date().toISOString();
+    summary.currentState.lastActivity = summary.endTime;
 
-    this.store.putSession(sessionId, session);
+    this.saveSession(summary);
+    const session = this.withHistory(summary);
 
     // Archive completed session if enabled
     if (this.config.archiveCompletedSessions && status === 'completed') {
@@ -175,38 +203,67 @@ export class SessionDataManager {
    * Get a specific session by ID
    */
   async getSession(sessionId: string): Promise<QueryDevelopmentSession | null> {
-    const session = this.store.getSession(sessionId) as QueryDevelopmentSession | null;
-    return session || null;
+    const summary = this.loadSession(sessionId);
+    return summary ? this.withHistory(summary) : null;
+  }
+
+  /**
+   * Get a specific session by ID without reading its history
+   */
+  async getSessionSummary(sessionId: string): Promise<QueryDevelopmentSessionSummary | null> {
+    return this.loadSession(sessionId);
+  }
+
+  /**
+   * Get one page of a session's call, test or score history, most recent
+   * record first.  Pass the returned `nextCursor` as `before` to continue.
+   */
+  async getSessionHistory<K extends SessionHistoryKind>(
+    sessionId: string,
+    kind: K,
+    options: { before?: number; limit: number },
+  ): Promise<SessionHistoryPage<QueryDevelopmentSession[K][number]> | null> {
+    if (!this.loadSession(sessionId)) {
+      return null;
+    }
+    const page = this.store.getSessionHistoryPage(kind, sessionId, options);
+    return {
+      nextCursor: page.nextCursor,
+      records: page.records as QueryDevelopmentSession[K][number][],
+      total: this.store.countSessionHistory(kind, sessionId),
+    };
   }
 
   /**
    * List sessions with optional filtering
    */
   async listSessions(filters?: SessionFilter): Promise<QueryDevelopmentSession[]> {
-    let sessions = this.store.getAllSessions() as QueryDevelopmentSession[];
+    return this.store
+      .listSessionRows(toQueryFilter(filters))
+      .map(row => this.withHistory(row.data as QueryDevelopmentSessionSummary));
+  }
 
-    if (filters) {
-      if (filters.queryPath) {
-        sessions = sessions.filter(s => s.queryPath.includes(filters.queryPath!));
-      }
-      if (filters.status) {
-        sessions = sessions.filter(s => s.status === filters.status);
-      }
-      if (filters.language) {
-        sessions = sessions.filter(s => s.language === filters.language);
-      }
-      if (filters.queryType) {
-        sessions = sessions.filter(s => s.queryType === filters.queryType);
-      }
-      if (filters.dateRange) {
-        const [start, end] = filters.dateRange;
-        sessions = sessions.filter(s => 
-          s.startTime >= start && s.startTime <= end
-        );
-      }
-    }
+  /**
+   * List sessions with optional filtering, without reading their history.
+   * Filters are evaluated in SQL on indexed columns.
+   */
+  async listSessionEntries(filters?: SessionFilter, sessionIds?: string[]): Promise<SessionListEntry[]> {
+    return this.store
+      .listSessionRows({ ...toQueryFilter(filters), sessionIds })
+      .map(row => ({
+        ...(row.data as QueryDevelopmentSessionSummary),
+        currentScore: row.currentScore,
+        mcpCallsCount: row.mcpCallCount,
+        testExecutionsCount: row.testExecutionCount,
+      }));
+  }
 
-    return sessions;
+  /**
+   * Aggregate counts and scores over the sessions matching the filters,
+   * computed in SQL without loading the sessions.
+   */
+  async aggregateSessions(filters?: SessionFilter, sessionIds?: string[]): Promise<SessionAggregateStats> {
+    return this.store.aggregateSessions({ ...toQueryFilter(filters), sessionIds });
   }
 
   /**
@@ -215,8 +272,8 @@ export class SessionDataManager {
   async updateSessionState(
     sessionId: string,
     stateUpdate: Partial<QueryState>
-  ): Promise<QueryDevelopmentSession | null> {
-    const session = this.store.getSession(sessionId) as QueryDevelopmentSession | null;
+  ): Promise<QueryDevelopmentSessionSummary | null> {
+    const session = this.loadSession(sessionId);
     if (!session) {
       logger.warn(`Session not found: ${sessionId}`);
       return null;
@@ -228,7 +285,7 @@ export class SessionDataManager {
       lastActivity: new Date().toISOString(),
     };
 
-    this.store.putSession(sessionId, session);
+    this.saveSession(session);
     return session;
   }
 
@@ -236,13 +293,13 @@ export class SessionDataManager {
    * Add MCP call record to session
    */
   async addMCPCall(sessionId: string, callRecord: MCPCallRecord): Promise<void> {
-    const session = this.store.getSession(sessionId) as QueryDevelopmentSession | null;
+    const session = this.loadSession(sessionId);
     if (!session) {
       logger.warn(`Session not found for MCP call: ${sessionId}`);
       return;
     }
 
-    session.mcpCalls.push(callRecord);
+    this.store.appendSessionHistory('mcpCalls', sessionId, callRecord);
     session.currentState.lastActivity = callRecord.timestamp;
 
     // Update next suggested tool if provided
@@ -250,20 +307,20 @@ export class SessionDataManager {
       session.nextSuggestedTool = callRecord.nextSuggestedTool;
     }
 
-    this.store.putSession(sessionId, session);
+    this.saveSession(session);
   }
 
   /**
    * Add test execution record to session
    */
   async addTestExecution(sessionId: string, testRecord: TestExecutionRecord): Promise<void> {
-    const session = this.store.getSession(sessionId) as QueryDevelopmentSession | null;
+    const session = this.loadSession(sessionId);
     if (!session) {
       logger.warn(`Session not found for test execution: ${sessionId}`);
       return;
     }
 
-    session.testExecutions.push(testRecord);
+    this.store.appendSessionHistory('testExecutions', sessionId, testRecord);
     session.currentState.lastActivity = testRecord.timestamp;
 
     // Update compilation/test status based on execution
@@ -273,24 +330,55 @@ export class SessionDataManager {
       session.currentState.testStatus = testRecord.success ? 'passing' : 'failing';
     }
 
-    this.store.putSession(sessionId, session);
+    this.saveSession(session);
   }
 
   /**
    * Add quality score record to session
    */
   async addQualityScore(sessionId: string, scoreRecord: QualityScoreRecord): Promise<void> {
-    const session = this.store.getSession(sessionId) as QueryDevelopmentSession | null;
+    const session = this.loadSession(sessionId);
     if (!session) {
       logger.warn(`Session not found for quality score: ${sessionId}`);
       return;
     }
 
-    session.qualityScores.push(scoreRecord);
+    this.store.appendSessionHistory('qualityScores', sessionId, scoreRecord);
     session.currentState.lastActivity = scoreRecord.timestamp;
     session.recommendations = scoreRecord.recommendations;
 
-    this.store.putSession(sessionId, session);
+    this.saveSession(session);
+  }
+
+  /**
+   * Read a session row without its history.
+   */
+  private loadSession(sessionId: string): QueryDevelopmentSessionSummary | null {
+    return this.store.getSession(sessionId) as QueryDevelopmentSessionSummary | null;
+  }
+
+  /**
+   * Write a session row.  History arrays, if present, are not stored in the
+   * row; they are appended to the history tables as records arrive.
+   */
+  private saveSession(session: QueryDevelopmentSession | QueryDevelopmentSessionSummary): void {
+    const row: Record<string, unknown> = { ...session };
+    for (const kind of SESSION_HISTORY_KINDS) {
+      delete row[kind];
+    }
+    this.store.putSession(session.sessionId, row);
+  }
+
+  /**
+   * Attach the complete history to a session row.
+   */
+  private withHistory(summary: QueryDevelopmentSessionSummary): QueryDevelopmentSession {
+    return {
+      ...summary,
+      mcpCalls: this.store.getSessionHistory('mcpCalls', summary.sessionId) as MCPCallRecord[],
+      qualityScores: this.store.getSessionHistory('qualityScores', summary.sessionId) as QualityScoreRecord[],
+      testExecutions: this.store.getSessionHistory('testExecutions', summary.sessionId) as TestExecutionRecord[],
+    };
   }
 
   /**
@@ -298,7 +386,7 @@ export class SessionDataManager {
    */
   private async archiveSession(sessionId: string): Promise<void> {
     try {
-      const session = this.store.getSession(sessionId) as QueryDevelopmentSession | null;
+      const session = await this.getSession(sessionId);
       if (!session) return;
 
       const date = new Date(session.endTime || session.startTime);
@@ -322,11 +410,10 @@ export class SessionDataManager {
   /**
    * Get active sessions for a specific query path
    */
-  async getActiveSessionsForQuery(queryPath: string): Promise<QueryDevelopmentSession[]> {
-    const sessions = this.store.getAllSessions() as QueryDevelopmentSession[];
-    return sessions.filter(s =>
-      s.queryPath === queryPath && s.status === 'active'
-    );
+  async getActiveSessionsForQuery(queryPath: string): Promise<QueryDevelopmentSessionSummary[]> {
+    return this.store
+      .listSessionRows({ queryPathEquals: queryPath, status: 'active' })
+      .map(row => row.data as QueryDevelopmentSessionSummary);
   }
 
   /**
@@ -337,17 +424,10 @@ export class SessionDataManager {
     cutoffDate.setDate(cutoffDate.getDate() - this.config.retentionDays);
     const cutoffTimestamp = cutoffDate.toISOString();
 
-    const sessions = this.store.getAllSessions() as QueryDevelopmentSession[];
-    const sessionsToRemove = sessions.filter(s =>
-      s.endTime && s.endTime < cutoffTimestamp
-    );
+    const removed = this.store.deleteSessions({ endedBefore: cutoffTimestamp });
 
-    for (const session of sessionsToRemove) {
-      this.store.deleteSession(session.sessionId);
-    }
-
-    if (sessionsToRemove.length > 0) {
-      logger.info(`Cleaned up ${sessionsToRemove.length} old sessions`);
+    if (removed > 0) {
+      logger.info(`Cleaned up ${removed} old sessions`);
     }
   }
 
@@ -375,6 +455,20 @@ export class SessionDataManager {
   }
 }
 
+/**
+ * Convert user-facing session filters to store criteria, ignoring empty values
+ */
+function toQueryFilter(filters?: SessionFilter): SessionQueryFilter {
+  const criteria: SessionQueryFilter = {};
+  if (!filters) return criteria;
+  if (filters.queryPath) criteria.queryPath = filters.queryPath;
+  if (filters.status) criteria.status = filters.status;
+  if (filters.language) criteria.language = filters.language;
+  if (filters.queryType) criteria.queryType = filters.queryType;
+  if (filters.dateRange) criteria.dateRange = filters.dateRange;
+  return criteria;
+}
+
 /**
  * Parse boolean environment variable
  */
@@ -25,7 +25,7 @@ class SessionContext {
   ): Promise<string | null> {
     // If explicit sessionId provided, use it
     if (sessionId) {
-      const session = await sessionDataManager.getSession(sessionId);
+      const session = await sessionDataManager.getSessionSummary(sessionId);
       if (session) {
         return sessionId;
       }
@@ -40,7 +40,7 @@ class SessionContext {
     // Check if there's already an active session for this query
     if (this.activeSessionsByQuery.has(queryPath)) {
       const existingSessionId = this.activeSessionsByQuery.get(queryPath)!;
-      const session = await sessionDataManager.getSession(existingSessionId);
+      const session = await sessionDataManager.getSessionSummary(existingSessionId);
       if (session && session.status === 'active') {
         return existingSessionId;
       }
@@ -445,7 +445,7 @@ async function updateSessionStateFromResult(
 
     // Update file presence based on file operations
     if (toolName.includes('generate') || toolName.includes('create')) {
-      const session = await sessionDataManager.getSession(sessionId);
+      const session = await sessionDataManager.getSessionSummary(sessionId);
       if (session) {
         const currentFiles = session.currentState.filesPresent;
         const queryPath = session.queryPath;
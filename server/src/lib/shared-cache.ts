@@ -0,0 +1,505 @@
+/**
+ * Shared CodeQL cache — a `--common-caches` directory that survives server
+ * restarts and is shared by every MCP server process on the machine.
+ *
+ * The compilation and evaluation caches CodeQL keeps under `--common-caches`
+ * are only valid for the CLI version that wrote them, so the root holds one
+ * *generation* per CLI version, in a directory named after a hash of the
+ * version string:
+ *
+ * ```
+ * <root>/
+ *   .lock                     short-lived lock for manifest updates and eviction
+ *   generations/<key>/
+ *     generation.json         CLI version, last use, hit counters
+ *     leases/<pid>-<id>.json  one per server process using the generation
+ *     ...                     CodeQL's own cache layout
+ * ```
+ *
+ * When the root grows past its byte budget, the least recently used
+ * generations that no running process holds a lease on are evicted.
+ */
+
+import { createHash } from 'crypto';
+import { existsSync, mkdirSync, readdirSync, readFileSync, renameSync, rmSync, statSync, writeFileSync } from 'fs';
+import { lstat, readdir, rm } from 'fs/promises';
+import { hostname } from 'os';
+import { join } from 'path';
+import { setTimeout as sleep } from 'timers/promises';
+import { getProjectTmpDir } from '../utils/temp-dir';
+import { logger } from '../utils/logger';
+
+/** Default byte budget of the shared cache root: 20 GiB. */
+export const DEFAULT_SHARED_CACHE_MAX_BYTES = 20 * 1024 * 1024 * 1024;
+
+/** How long to wait for the root lock before giving up. */
+const LOCK_TIMEOUT_MS = 30_000;
+const LOCK_RETRY_MS = 50;
+/** A lock older than this is assumed to belong to a crashed process. */
+const LOCK_STALE_MS = 60_000;
+/** Leases from other hosts are trusted until they are this old. */
+const REMOTE_LEASE_MAX_AGE_MS = 7 * 24 * 60 * 60 * 1000;
+/** How often a held lease is rewritten, so it never ages out on other hosts. */
+const LEASE_REFRESH_MS = 60 * 60 * 1000;
+/** Session directories from the per-session cache layout older than this are removed. */
+const LEGACY_SESSION_CACHE_MAX_AGE_MS = 24 * 60 * 60 * 1000;
+
+/**
+ * Cache usage counters of one generation, summed over all processes.
+ */
+export interface GenerationStats {
+  /** Server processes that started with an empty generation. */
+  coldStarts: number;
+  /** Query evaluations whose evaluator log was recorded. */
+  evaluations: number;
+  /** Predicates served from the evaluation cache. */
+  predicateCacheHits: number;
+  /** Predicates looked up (evaluated or served from the cache). */
+  predicateLookups: number;
+  /** Server processes that started with an existing generation. */
+  warmStarts: number;
+}
+
+/**
+ * Contents of `generation.json`.
+ */
+export interface GenerationManifest {
+  cliVersion: string;
+  createdAt: string;
+  key: string;
+  lastUsedAt: string;
+  stats: GenerationStats;
+}
+
+/**
+ * Size and usage of one generation, as reported by {@link SharedCodeQLCache.getStats}.
+ */
+export interface SharedCacheGenerationInfo extends GenerationManifest {
+  activeLeases: number;
+  bytes: number;
+  current: boolean;
+  /** `predicateCacheHits / predicateLookups`, or `null` before any lookup. */
+  predicateCacheHitRate: number | null;
+}
+
+/**
+ * Size and usage of the whole shared cache.
+ */
+export interface SharedCacheStats {
+  budgetBytes: number;
+  /** Bytes evicted by this process since it started. */
+  evictedBytes: number;
+  /** Generations evicted by this process since it started. */
+  evictedGenerations: number;
+  generations: SharedCacheGenerationInfo[];
+  root: string;
+  totalBytes: number;
+}
+
+/**
+ * Options for {@link SharedCodeQLCache}.
+ */
+export interface SharedCacheOptions {
+  /** CLI version the generation is keyed by. */
+  cliVersion: string;
+  /** Unique ID of the lease this process holds (e.g. the session ID). */
+  leaseId: string;
+  /** Byte budget (defaults to `CODEQL_MCP_SHARED_CACHE_MAX_BYTES`). */
+  maxBytes?: number;
+  /** Root directory (defaults to `CODEQL_MCP_SHARED_CACHE_DIR`). */
+  root?: string;
+}
+
+/**
+ * Resolve the shared cache root from `CODEQL_MCP_SHARED_CACHE_DIR`, falling
+ * back to `<project tmp>/codeql-shared-cache`.
+ */
+export function getSharedCacheRoot(): string {
+  const configured = process.env.CODEQL_MCP_SHARED_CACHE_DIR?.trim();
+  return configured ? configured : getProjectTmpDir('codeql-shared-cache');
+}
+
+/**
+ * Resolve the byte budget from `CODEQL_MCP_SHARED_CACHE_MAX_BYTES`.
+ * Invalid values fall back to {@link DEFAULT_SHARED_CACHE_MAX_BYTES}.
+ */
+export function getSharedCacheMaxBytes(): number {
+  const raw = process.env.CODEQL_MCP_SHARED_CACHE_MAX_BYTES;
+  if (raw === undefined || raw.trim() === '') return DEFAULT_SHARED_CACHE_MAX_BYTES;
+  const value = Number(raw);
+  return Number.isFinite(value) && value > 0 ? Math.floor(value) : DEFAULT_SHARED_CACHE_MAX_BYTES;
+}
+
+/**
+ * Directory name of the generation for `cliVersion`: a readable version
+ * prefix plus a hash of the full version string.
+ */
+export function generationKey(cliVersion: string): string {
+  const readable = cliVersion.replace(/[^A-Za-z0-9.]+/g, '_').substring(0, 32) || 'unknown';
+  const digest = createHash('sha256').update(cliVersion).digest('hex').substring(0, 12);
+  return `${readable}-${digest}`;
+}
+
+function emptyStats(): GenerationStats {
+  return { coldStarts: 0, evaluations: 0, predicateCacheHits: 0, predicateLookups: 0, warmStarts: 0 };
+}
+
+/**
+ * Total size in bytes of the files below `dir` (symlinks are not followed).
+ */
+async function directorySize(dir: string): Promise<number> {
+  let total = 0;
+  let entries;
+  try {
+    entries = await readdir(dir, { withFileTypes: true });
+  } catch {
+    return 0;
+  }
+  for (const entry of entries) {
+    const path = join(dir, entry.name);
+    if (entry.isDirectory()) {
+      total += await directorySize(path);
+    } else {
+      try {
+        total += (await lstat(path)).size;
+      } catch {
+        // Removed concurrently
+      }
+    }
+  }
+  return total;
+}
+
+function isProcessAlive(pid: number): boolean {
+  try {
+    process.kill(pid, 0);
+    return true;
+  } catch (error) {
+    return (error as NodeJS.ErrnoException).code === 'EPERM';
+  }
+}
+
+/**
+ * A generation of the shared cache, leased by this process for its lifetime.
+ */
+export class SharedCodeQLCache {
+  readonly root: string;
+  readonly key: string;
+  private readonly cliVersion: string;
+  private readonly leaseId: string;
+  private readonly maxBytes: number;
+  private evictedBytes = 0;
+  private evictedGenerations = 0;
+  /** Set by acquire(); folded into the manifest by the next locked update. */
+  private pendingStart: 'coldStarts' | 'warmStarts' | undefined;
+  private leaseRefreshTimer: ReturnType<typeof setInterval> | undefined;
+
+  constructor(options: SharedCacheOptions) {
+    this.root = options.root ?? getSharedCacheRoot();
+    this.cliVersion = options.cliVersion;
+    this.key = generationKey(options.cliVersion);
+    this.leaseId = options.leaseId;
+    this.maxBytes = options.maxBytes ?? getSharedCacheMaxBytes();
+  }
+
+  /** Directory to pass as `--common-caches`. */
+  get directory(): string {
+    return join(this.generationsDir, this.key);
+  }
+
+  private get generationsDir(): string {
+    return join(this.root, 'generations');
+  }
+
+  private get leasePath(): string {
+    return join(this.directory, 'leases', `${process.pid}-${this.leaseId}.json`);
+  }
+
+  /**
+   * Create the generation if needed and take a lease on it, so that other
+   * processes do not evict it while this one is running.  The lease is
+   * rewritten every hour until {@link release}.
+   *
+   * @returns The generation directory.
+   */
+  async acquire(): Promise<string> {
+    const existed = existsSync(join(this.directory, 'generation.json'));
+    this.pendingStart = existed ? 'warmStarts' : 'coldStarts';
+    // Under the root lock, like eviction, so no other process can detach the
+    // generation between checking its leases and renaming it.
+    await this.withLock(() => this.writeLease());
+    if (!existed) {
+      const now = new Date().toISOString();
+      this.writeManifest({ cliVersion: this.cliVersion, createdAt: now, key: this.key, lastUsedAt: now, stats: emptyStats() });
+    }
+    if (!this.leaseRefreshTimer) {
+      this.leaseRefreshTimer = setInterval(() => {
+        this.withLock(() => this.writeLease()).catch((error) => {
+          logger.warn(`Failed to refresh shared CodeQL cache lease: ${error instanceof Error ? error.message : String(error)}`);
+        });
+      }, LEASE_REFRESH_MS);
+      this.leaseRefreshTimer.unref();
+    }
+    return this.directory;
+  }
+
+  /**
+   * Drop this process's lease.  The generation itself is kept for the next
+   * server process.
+   */
+  release(): void {
+    clearInterval(this.leaseRefreshTimer);
+    this.leaseRefreshTimer = undefined;
+    rmSync(this.leasePath, { force: true });
+  }
+
+  /**
+   * Mark the generation as used now and add evaluator-log cache counters.
+   */
+  async recordEvaluation(predicateLookups: number, predicateCacheHits: number): Promise<void> {
+    await this.updateManifest((stats) => {
+      stats.evaluations++;
+      stats.predicateLookups += predicateLookups;
+      stats.predicateCacheHits += predicateCacheHits;
+    });
+  }
+
+  /**
+   * Evict least recently used generations (and leftover per-session caches
+   * from the previous layout) until the root fits its byte budget.
+   * Generations leased by a running process are never evicted.
+   *
+   * @returns The keys of the evicted generations.
+   */
+  async enforceBudget(): Promise<string[]> {
+    await this.updateManifest(() => undefined);
+    await this.removeLegacySessionCaches();
+
+    const generations = await this.measureGenerations();
+    let total = generations.reduce((sum, g) => sum + g.bytes, 0);
+    if (total <= this.maxBytes) return [];
+
+    const candidates = generations
+      .filter(g => g.key !== this.key)
+      .sort((a, b) => a.lastUsedAt.localeCompare(b.lastUsedAt));
+    const evicted: string[] = [];
+    for (const candidate of candidates) {
+      if (total <= this.maxBytes) break;
+      // Decide and detach under the lock; delete outside it.
+      const trashPath = await this.withLock(() => {
+        if (this.countActiveLeases(candidate.key) > 0) return undefined;
+        const trash = join(this.root, `.evicting-${candidate.key}-${process.pid}`);
+        renameSync(join(this.generationsDir, candidate.key), trash);
+        return trash;
+      });
+      if (!trashPath) continue;
+      await rm(trashPath, { force: true, recursive: true });
+      total -= candidate.bytes;
+      this.evictedBytes += candidate.bytes;
+      this.evictedGenerations++;
+      evicted.push(candidate.key);
+      logger.info(`Evicted shared CodeQL cache generation ${candidate.key} (${candidate.bytes} bytes)`);
+    }
+    if (total > this.maxBytes) {
+      logger.warn(`Shared CodeQL cache is ${total} bytes, over its ${this.maxBytes} byte budget; the remaining generations are in use`);
+    }
+    return evicted;
+  }
+
+  /**
+   * Size, last use and hit rates of every generation.
+   */
+  async getStats(): Promise<SharedCacheStats> {
+    const generations = await this.measureGenerations();
+    return {
+      budgetBytes: this.maxBytes,
+      evictedBytes: this.evictedBytes,
+      evictedGenerations: this.evictedGenerations,
+      generations,
+      root: this.root,
+      totalBytes: generations.reduce((sum, g) => sum + g.bytes, 0),
+    };
+  }
+
+  // ---- private helpers ----
+
+  private async measureGenerations(): Promise<SharedCacheGenerationInfo[]> {
+    let keys: string[];
+    try {
+      keys = readdirSync(this.generationsDir);
+    } catch {
+      return [];
+    }
+    const generations: SharedCacheGenerationInfo[] = [];
+    for (const key of keys) {
+      const manifest = this.readManifest(key);
+      if (!manifest) continue;
+      const { predicateCacheHits, predicateLookups } = manifest.stats;
+      generations.push({
+        ...manifest,
+        activeLeases: this.countActiveLeases(key),
+        bytes: await directorySize(join(this.generationsDir, key)),
+        current: key === this.key,
+        predicateCacheHitRate: predicateLookups > 0 ? predicateCacheHits / predicateLookups : null,
+      });
+    }
+    return generations.sort((a, b) => b.lastUsedAt.localeCompare(a.lastUsedAt));
+  }
+
+  /**
+   * Count leases held by live processes, removing leases of dead local ones.
+   */
+  private countActiveLeases(key: string): number {
+    const leasesDir = join(this.generationsDir, key, 'leases');
+    let names: string[];
+    try {
+      names = readdirSync(leasesDir);
+    } catch {
+      return 0;
+    }
+    let active = 0;
+    for (const name of names) {
+      const path = join(leasesDir, name);
+      try {
+        const lease = JSON.parse(readFileSync(path, 'utf8')) as { host: string; pid: number };
+        const live = lease.host === hostname()
+          ? isProcessAlive(lease.pid)
+          : Date.now() - statSync(path).mtimeMs < REMOTE_LEASE_MAX_AGE_MS;
+        if (live) {
+          active++;
+        } else {
+          rmSync(path, { force: true });
+        }
+      } catch {
+        // Unreadable or concurrently removed lease
+      }
+    }
+    return active;
+  }
+
+  /**
+   * Write (or rewrite) this process's lease.  Callers hold the root lock.
+   */
+  private writeLease(): void {
+    mkdirSync(join(this.directory, 'leases'), { recursive: true });
+    writeFileSync(this.leasePath, JSON.stringify({ host: hostname(), pid: process.pid }), 'utf8');
+  }
+
+  private readManifest(key: string): GenerationManifest | undefined {
+    try {
+      const manifest = JSON.parse(readFileSync(join(this.generationsDir, key, 'generation.json'), 'utf8')) as GenerationManifest;
+      return { ...manifest, stats: { ...emptyStats(), ...manifest.stats } };
+    } catch {
+      return undefined;
+    }
+  }
+
+  private writeManifest(manifest: GenerationManifest): void {
+    const path = join(this.directory, 'generation.json');
+    const tmpPath = `${path}.${process.pid}.tmp`;
+    writeFileSync(tmpPath, JSON.stringify(manifest, null, 2), 'utf8');
+    renameSync(tmpPath, path);
+  }
+
+  /**
+   * Read-modify-write this generation's manifest under the root lock,
+   * refreshing `lastUsedAt` and folding in a pending start counter.
+   */
+  private async updateManifest(update: (_stats: GenerationStats) => void): Promise<void> {
+    await this.withLock(() => {
+      const now = new Date().toISOString();
+      const manifest = this.readManifest(this.key)
+        ?? { cliVersion: this.cliVersion, createdAt: now, key: this.key, lastUsedAt: now, stats: emptyStats() };
+      if (this.pendingStart) {
+        manifest.stats[this.pendingStart]++;
+        this.pendingStart = undefined;
+      }
+      update(manifest.stats);
+      manifest.lastUsedAt = now;
+      mkdirSync(this.directory, { recursive: true });
+      this.writeManifest(manifest);
+    });
+  }
+
+  /**
+   * Remove `compilation-cache` and `query-cache` directories left in old
+   * per-session directories (`<project tmp>/codeql-cache/<session>/`).
+   * Only directories untouched for a day are removed, in case a server
+   * from an older release is still using one.
+   */
+  private async removeLegacySessionCaches(): Promise<void> {
+    const sessionsRoot = getProjectTmpDir('codeql-cache');
+    let sessions: string[];
+    try {
+      sessions = readdirSync(sessionsRoot);
+    } catch {
+      return;
+    }
+    for (const session of sessions) {
+      for (const subdir of ['compilation-cache', 'query-cache']) {
+        const path = join(sessionsRoot, session, subdir);
+        try {
+          if (Date.now() - statSync(path).mtimeMs > LEGACY_SESSION_CACHE_MAX_AGE_MS) {
+            await rm(path, { force: true, recursive: true });
+          }
+        } catch {
+          // Not present
+        }
+      }
+    }
+  }
+
+  /**
+   * Run `fn` while holding `<root>/.lock`, an exclusively created file.
+   * A lock left behind by a crashed process is broken once it is stale.
+   */
+  private async withLock<T>(fn: () => T): Promise<T> {
+    const lockPath = this.prepareLock();
+    const deadline = Date.now() + LOCK_TIMEOUT_MS;
+    while (!this.tryLock(lockPath, deadline)) {
+      await sleep(LOCK_RETRY_MS);
+    }
+    try {
+      return fn();
+    } finally {
+      rmSync(lockPath, { force: true });
+    }
+  }
+
+  private prepareLock(): string {
+    mkdirSync(this.root, { recursive: true });
+    return join(this.root, '.lock');
+  }
+
+  /**
+   * Try to create the lock file, breaking a stale lock.  Returns whether
+   * the lock is now held; throws once `deadline` has passed.
+   */
+  private tryLock(lockPath: string, deadline: number): boolean {
+    for (;;) {
+      try {
+        writeFileSync(lockPath, JSON.stringify({ host: hostname(), pid: process.pid }), { flag: 'wx' });
+        return true;
+      } catch (error) {
+        if ((error as NodeJS.ErrnoException).code !== 'EEXIST') throw error;
+        if (!this.isStaleLock(lockPath)) break;
+        rmSync(lockPath, { force: true });
+      }
+    }
+    if (Date.now() > deadline) {
+      throw new Error(`Timed out waiting for shared cache lock: ${lockPath}`);
+    }
+    return false;
+  }
+
+  private isStaleLock(lockPath: string): boolean {
+    try {
+      if (Date.now() - statSync(lockPath).mtimeMs > LOCK_STALE_MS) return true;
+      const holder = JSON.parse(readFileSync(lockPath, 'utf8')) as { host: string; pid: number };
+      return holder.host === hostname() && !isProcessAlive(holder.pid);
+    } catch {
+      // Released between our attempt and this check, or partially written
+      return false;
+    }
+  }
+}
@@ -0,0 +1,617 @@
+/**
+ * Indexed reader for CodeQL database source archives (`src.zip`).
+ *
+ * Opening a `src.zip` with a general-purpose zip library parses the whole
+ * central directory on every call, and resolving a SARIF URI to an entry
+ * then scans every entry name.  For archives of hundreds of megabytes that
+ * dominates the cost of reading a few lines around an alert.
+ *
+ * This module keeps, per archive:
+ *  - a {@link SourceArchive} index of the central directory (entry offsets
+ *    and sizes) with lookup tables for exact, case-insensitive and
+ *    path-suffix resolution, validated against the archive's mtime and size;
+ *  - a pooled open file handle, shared by concurrent reads and closed in
+ *    least-recently-used order;
+ *  - streaming extraction of a single entry that stops inflating once the
+ *    requested lines are collected (when the entry's line count is known
+ *    from an earlier read).
+ *
+ * Only the stored (0) and deflate (8) methods used by the CodeQL CLI are
+ * supported.  ZIP64 archives are supported.
+ */
+
+import { open, stat, type FileHandle } from 'fs/promises';
+import { createInflateRaw } from 'zlib';
+import { logger } from '../utils/logger';
+
+/** Archives whose index is kept in memory. */
+const MAX_CACHED_ARCHIVES = 8;
+
+/** Archives kept open between reads. */
+const MAX_OPEN_ARCHIVES = 16;
+
+/** Bytes read per chunk while extracting an entry. */
+const EXTRACT_CHUNK_BYTES = 64 * 1024;
+
+const EOCD_SIGNATURE = 0x06054b50;
+const ZIP64_EOCD_LOCATOR_SIGNATURE = 0x07064b50;
+const ZIP64_EOCD_SIGNATURE = 0x06064b50;
+const CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+const LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+/** Fixed part of the end-of-central-directory record plus the longest comment. */
+const EOCD_SEARCH_BYTES = 22 + 0xffff;
+
+/** One file entry of the central directory. */
+export interface SourceArchiveEntry {
+  compressedSize: number;
+  /** Offset of the entry data, once its local header was read. */
+  dataOffset?: number;
+  /** Offset of the local file header. */
+  headerOffset: number;
+  method: number;
+  /** Entry name as stored in the archive. */
+  name: string;
+  size: number;
+  /** Number of lines, once the entry was read to the end. */
+  totalLines?: number;
+}
+
+/** Lines read from an archive entry. */
+export interface SourceLines {
+  content: string;
+  endLine: number;
+  startLine: number;
+  totalLines: number;
+}
+
+// ---------------------------------------------------------------------------
+// Line ranges
+// ---------------------------------------------------------------------------
+
+/**
+ * Collects a 1-based, inclusive range of lines from bytes fed in chunks.
+ * Lines end at `\n` and a `\r` before it is dropped, like
+ * `content.split(/\r?\n/)`; the last line is the text after the last `\n`,
+ * so content ending in a newline has a final empty line.
+ */
+export class LineRangeCollector {
+  private readonly chunks: Buffer[] = [];
+  private collectedBytes = 0;
+  /** Number of the line the next byte belongs to. */
+  private line = 1;
+
+  constructor(
+    private readonly startLine: number,
+    private readonly endLine: number,
+    private readonly maxBytes: number = Infinity,
+  ) {}
+
+  /** Whether every line of the range was seen, including the end line's terminator. */
+  get complete(): boolean {
+    return this.line > this.endLine;
+  }
+
+  /** Number of lines seen so far (final once all bytes were pushed). */
+  get totalLines(): number {
+    return this.line;
+  }
+
+  push(chunk: Buffer): void {
+    let pos = 0;
+    while (pos < chunk.length) {
+      const newline = chunk.indexOf(10, pos);
+      const end = newline === -1 ? chunk.length : newline + 1;
+      if (this.line >= this.startLine && this.line <= this.endLine) {
+        this.collect(chunk.subarray(pos, end));
+      }
+      if (newline === -1) break;
+      this.line++;
+      pos = end;
+    }
+  }
+
+  /**
+   * The collected lines joined with `\n`.  `totalLines` must be the line
+   * count of the entry; throws when the range starts past its end.
+   */
+  finish(totalLines: number): SourceLines {
+    const effectiveStart = Math.max(1, this.startLine);
+    const effectiveEnd = Math.min(totalLines, this.endLine);
+    if (effectiveStart > effectiveEnd) {
+      throw new Error(
+        `Invalid line range: startLine (${effectiveStart}) is greater than endLine (${effectiveEnd}). ` +
+          `File has ${totalLines} line(s).`,
+      );
+    }
+    return { content: this.text(), endLine: effectiveEnd, startLine: effectiveStart, totalLines };
+  }
+
+  /** The lines collected so far, joined with `\n`. */
+  text(): string {
+    let content = Buffer.concat(this.chunks, this.collectedBytes).toString('utf-8');
+    // The end line's terminator was collected only if more lines follow.
+    if (this.complete) content = content.replace(/\r?\n$/, '');
+    return content.replace(/\r\n/g, '\n');
+  }
+
+  private collect(bytes: Buffer): void {
+    this.collectedBytes += bytes.length;
+    if (this.collectedBytes > this.maxBytes) {
+      throw new Error(
+        `Requested lines exceed ${this.maxBytes} bytes. Use a smaller startLine/endLine range.`,
+      );
+    }
+    // Chunks are reused by the readers, so keep a copy.
+    this.chunks.push(Buffer.from(bytes));
+  }
+}
+
+// ---------------------------------------------------------------------------
+// File handle pool
+// ---------------------------------------------------------------------------
+
+interface PooledHandle {
+  handle: Promise<FileHandle>;
+  refs: number;
+  /** Set when the archive changed or was evicted; closed once unused. */
+  retired: boolean;
+}
+
+/**
+ * Open archive file handles, shared by concurrent reads.  Unused handles
+ * beyond `maxOpen` are closed in least-recently-used order.
+ */
+export class ArchiveHandlePool {
+  /** Map iteration order is insertion order; the first entry is least recent. */
+  private readonly handles = new Map<string, PooledHandle>();
+
+  constructor(readonly maxOpen: number) {}
+
+  get openCount(): number {
+    return this.handles.size;
+  }
+
+  /** Run `fn` with an open handle of `path`. */
+  async use<T>(path: string, fn: (_handle: FileHandle) => Promise<T>): Promise<T> {
+    let pooled = this.handles.get(path);
+    if (pooled) {
+      this.handles.delete(path);
+    } else {
+      pooled = { handle: open(path, 'r'), refs: 0, retired: false };
+    }
+    this.handles.set(path, pooled);
+    pooled.refs++;
+    this.evict();
+
+    try {
+      return await fn(await pooled.handle);
+    } catch (error) {
+      // A handle that failed to open must not be reused.
+      if (this.handles.get(path) === pooled) {
+        await pooled.handle.catch(() => this.retire(path));
+      }
+      throw error;
+    } finally {
+      pooled.refs--;
+      if (pooled.retired && pooled.refs === 0) this.close(pooled);
+    }
+  }
+
+  /** Stop reusing the handle of `path`, e.g. because the file was replaced. */
+  retire(path: string): void {
+    const pooled = this.handles.get(path);
+    if (!pooled) return;
+    this.handles.delete(path);
+    pooled.retired = true;
+    if (pooled.refs === 0) this.close(pooled);
+  }
+
+  /** Close every unused handle. */
+  closeAll(): void {
+    for (const path of [...this.handles.keys()]) this.retire(path);
+  }
+
+  private evict(): void {
+    for (const [path, pooled] of this.handles) {
+      if (this.handles.size <= this.maxOpen) return;
+      if (pooled.refs === 0) this.retire(path);
+    }
+  }
+
+  private close(pooled: PooledHandle): void {
+    pooled.handle.then(h => h.close()).catch(() => {});
+  }
+}
+
+// ---------------------------------------------------------------------------
+// Central directory
+// ---------------------------------------------------------------------------
+
+async function readAt(handle: FileHandle, position: number, length: number): Promise<Buffer> {
+  const buffer = Buffer.alloc(length);
+  let filled = 0;
+  while (filled < length) {
+    const { bytesRead } = await handle.read(buffer, filled, length - filled, position + filled);
+    if (bytesRead === 0) break;
+    filled += bytesRead;
+  }
+  return filled === length ? buffer : buffer.subarray(0, filled);
+}
+
+/** Locate the central directory from the (ZIP64) end-of-central-directory record. */
+async function readDirectoryLocation(
+  handle: FileHandle,
+  fileSize: number,
+): Promise<{ entries: number; offset: number; size: number }> {
+  const tailStart = Math.max(0, fileSize - EOCD_SEARCH_BYTES);
+  const tail = await readAt(handle, tailStart, fileSize - tailStart);
+  let eocd = -1;
+  for (let i = tail.length - 22; i >= 0; i--) {
+    if (tail.readUInt32LE(i) === EOCD_SIGNATURE) {
+      eocd = i;
+      break;
+    }
+  }
+  if (eocd === -1) {
+    throw new Error('Not a zip archive: end of central directory not found');
+  }
+
+  let entries = tail.readUInt16LE(eocd + 10);
+  let size = tail.readUInt32LE(eocd + 12);
+  let offset = tail.readUInt32LE(eocd + 16);
+
+  if (entries === 0xffff || size === 0xffffffff || offset === 0xffffffff) {
+    const locatorPosition = tailStart + eocd - 20;
+    const locator = await readAt(handle, locatorPosition, 20);
+    if (locator.length === 20 && locator.readUInt32LE(0) === ZIP64_EOCD_LOCATOR_SIGNATURE) {
+      const record = await readAt(handle, Number(locator.readBigUInt64LE(8)), 56);
+      if (record.length < 56 || record.readUInt32LE(0) !== ZIP64_EOCD_SIGNATURE) {
+        throw new Error('Corrupt zip archive: invalid ZIP64 end of central directory');
+      }
+      entries = Number(record.readBigUInt64LE(32));
+      size = Number(record.readBigUInt64LE(40));
+      offset = Number(record.readBigUInt64LE(48));
+    }
+  }
+  return { entries, offset, size };
+}
+
+/** Parse the central directory into file entries (directories are skipped). */
+function parseCentralDirectory(directory: Buffer, expectedEntries: number): SourceArchiveEntry[] {
+  const entries: SourceArchiveEntry[] = [];
+  let pos = 0;
+  for (let n = 0; n < expectedEntries && pos + 46 <= directory.length; n++) {
+    if (directory.readUInt32LE(pos) !== CENTRAL_HEADER_SIGNATURE) {
+      throw new Error('Corrupt zip archive: invalid central directory header');
+    }
+    const flags = directory.readUInt16LE(pos + 8);
+    const method = directory.readUInt16LE(pos + 10);
+    let compressedSize = directory.readUInt32LE(pos + 20);
+    let size = directory.readUInt32LE(pos + 24);
+    const nameLength = directory.readUInt16LE(pos + 28);
+    const extraLength = directory.readUInt16LE(pos + 30);
+    const commentLength = directory.readUInt16LE(pos + 32);
+    let headerOffset = directory.readUInt32LE(pos + 42);
+    const name = directory.toString('utf-8', pos + 46, pos + 46 + nameLength);
+
+    // The ZIP64 extra field holds, in order, each 32-bit field that overflowed.
+    let extra = pos + 46 + nameLength;
+    const extraEnd = extra + extraLength;
+    while (extra + 4 <= extraEnd) {
+      const id = directory.readUInt16LE(extra);
+      const length = directory.readUInt16LE(extra + 2);
+      if (id === 0x0001) {
+        let field = extra + 4;
+        if (size === 0xffffffff) { size = Number(directory.readBigUInt64LE(field)); field += 8; }
+        if (compressedSize === 0xffffffff) { compressedSize = Number(directory.readBigUInt64LE(field)); field += 8; }
+        if (headerOffset === 0xffffffff) { headerOffset = Number(directory.readBigUInt64LE(field)); }
+        break;
+      }
+      extra += 4 + length;
+    }
+
+    if (!name.endsWith('/') && (flags & 1) === 0) {
+      entries.push({ compressedSize, headerOffset, method, name, size });
+    }
+    pos = extraEnd + commentLength;
+  }
+  return entries;
+}
+
+/** Path used for matching: forward slashes, no leading slash. */
+function matchKey(path: string): string {
+  return path.replace(/\\/g, '/').replace(/^\//, '');
+}
+
+function baseName(path: string): string {
+  return path.substring(path.lastIndexOf('/') + 1);
+}
+
+// ---------------------------------------------------------------------------
+// Path resolution
+// ---------------------------------------------------------------------------
+
+/**
+ * Lookup tables that resolve a requested path (e.g. a SARIF artifact URI)
+ * to one of a set of source paths.
+ */
+export class SourcePathIndex {
+  private readonly byKey = new Map<string, string>();
+  private readonly byLowerKey = new Map<string, string>();
+  /** Paths by base name, for suffix matches. */
+  private readonly byBaseName = new Map<string, string[]>();
+
+  constructor(private readonly paths: readonly string[]) {
+    for (const path of paths) {
+      const key = matchKey(path);
+      if (!this.byKey.has(key)) this.byKey.set(key, path);
+      const lower = key.toLowerCase();
+      if (!this.byLowerKey.has(lower)) this.byLowerKey.set(lower, path);
+      const base = baseName(key);
+      const sameBase = this.byBaseName.get(base);
+      if (sameBase) sameBase.push(path);
+      else this.byBaseName.set(base, [path]);
+    }
+  }
+
+  /**
+   * Find the path for a requested path (forward or back slashes, with or
+   * without a leading slash).  Resolution order:
+   *  1. Exact match
+   *  2. Case-insensitive exact match
+   *  3. Suffix match in either direction — the path ends with the requested
+   *     path, or the requested (e.g. absolute) path ends with the path —
+   *     preferring the longest path
+   */
+  resolve(requested: string): string | undefined {
+    const key = matchKey(requested);
+    const exact = this.byKey.get(key) ?? this.byLowerKey.get(key.toLowerCase());
+    if (exact !== undefined) return exact;
+
+    const isSuffixMatch = (path: string): boolean => {
+      const pathKey = matchKey(path);
+      return pathKey.endsWith(key) || key.endsWith(pathKey);
+    };
+    let candidates = (this.byBaseName.get(baseName(key)) ?? []).filter(isSuffixMatch);
+    if (candidates.length === 0) {
+      // Suffixes that do not start at a path separator.
+      candidates = this.paths.filter(isSuffixMatch);
+    }
+    if (candidates.length <= 1) return candidates[0];
+
+    candidates.sort((a, b) => {
+      const lengthDelta = matchKey(b).length - matchKey(a).length;
+      return lengthDelta !== 0 ? lengthDelta : a.localeCompare(b);
+    });
+    logger.warn(
+      `SourcePathIndex.resolve: ambiguous suffix match for "${requested}". ` +
+        `Candidates: ${candidates.join(', ')}. ` +
+        `Using "${candidates[0]}".`,
+    );
+    return candidates[0];
+  }
+}
+
+// ---------------------------------------------------------------------------
+// Archive index
+// ---------------------------------------------------------------------------
+
+/**
+ * The central-directory index of one source archive.
+ */
+export class SourceArchive {
+  private readonly byName = new Map<string, SourceArchiveEntry>();
+  private readonly paths: SourcePathIndex;
+  private sortedNames: string[] | undefined;
+
+  private constructor(
+    readonly path: string,
+    readonly mtimeMs: number,
+    readonly fileSize: number,
+    readonly entries: SourceArchiveEntry[],
+    private readonly pool: ArchiveHandlePool,
+  ) {
+    for (const entry of entries) {
+      if (!this.byName.has(entry.name)) this.byName.set(entry.name, entry);
+    }
+    this.paths = new SourcePathIndex([...this.byName.keys()]);
+  }
+
+  /** Read the central directory of the archive at `path`. */
+  static async open(path: string, pool: ArchiveHandlePool): Promise<SourceArchive> {
+    const info = await stat(path);
+    const entries = await pool.use(path, async handle => {
+      const location = await readDirectoryLocation(handle, info.size);
+      const directory = await readAt(handle, location.offset, location.size);
+      return parseCentralDirectory(directory, location.entries);
+    });
+    return new SourceArchive(path, info.mtimeMs, info.size, entries, pool);
+  }
+
+  /** Names of all file entries, sorted. */
+  get names(): string[] {
+    this.sortedNames ??= this.entries.map(e => e.name).sort();
+    return this.sortedNames;
+  }
+
+  /** Find the entry for a requested path; see {@link SourcePathIndex.resolve}. */
+  resolve(requested: string): SourceArchiveEntry | undefined {
+    const name = this.paths.resolve(requested);
+    return name === undefined ? undefined : this.byName.get(name);
+  }
+
+  /**
+   * Read lines `startLine`..`endLine` (1-based, inclusive; defaults to the
+   * whole entry) of an entry.  Extraction stops after `endLine` when the
+   * entry's line count is already known; otherwise the rest of the entry is
+   * only scanned for line breaks.
+   *
+   * @param maxBytes - Limit on the bytes of the returned lines.
+   */
+  async readLines(
+    entry: SourceArchiveEntry,
+    startLine = 1,
+    endLine = Infinity,
+    maxBytes = Infinity,
+  ): Promise<SourceLines> {
+    if (entry.totalLines !== undefined) {
+      // Validate up front, without reading.
+      new LineRangeCollector(startLine, endLine).finish(entry.totalLines);
+    }
+    const collector = new LineRangeCollector(startLine, endLine, maxBytes);
+    return collector.finish(await this.scan(entry, [collector]));
+  }
+
+  /**
+   * Read several line spans of an entry in one pass.  Returns the text of
+   * each span (`null` for spans that start past the end of the entry, and
+   * truncated for spans that extend past it) and the entry's line count.
+   */
+  async readLineSpans(
+    entry: SourceArchiveEntry,
+    spans: ReadonlyArray<{ endLine: number; startLine: number }>,
+  ): Promise<{ texts: Array<string | null>; totalLines: number }> {
+    const collectors = spans.map(span => new LineRangeCollector(span.startLine, span.endLine));
+    const totalLines = await this.scan(entry, collectors);
+    return {
+      texts: spans.map((span, i) => (span.startLine <= totalLines ? collectors[i].text() : null)),
+      totalLines,
+    };
+  }
+
+  /**
+   * Feed the entry to `collectors` and return its line count.  Extraction
+   * stops once every collector is complete if the line count is already
+   * known.
+   */
+  private async scan(entry: SourceArchiveEntry, collectors: LineRangeCollector[]): Promise<number> {
+    if (entry.method !== 0 && entry.method !== 8) {
+      throw new Error(`Unsupported compression method ${entry.method} for entry "${entry.name}"`);
+    }
+    let lines = 1;
+    await this.pool.use(this.path, async handle => {
+      const dataOffset = await this.dataOffset(handle, entry);
+      const stopEarly = entry.totalLines !== undefined;
+      // Counts lines when there is nothing to collect.
+      const counter = collectors[0] ?? new LineRangeCollector(1, 0);
+      for await (const chunk of extractEntry(handle, dataOffset, entry)) {
+        for (const collector of collectors) collector.push(chunk);
+        if (collectors.length === 0) counter.push(chunk);
+        if (stopEarly && collectors.every(c => c.complete)) break;
+      }
+      lines = counter.totalLines;
+    });
+    entry.totalLines ??= lines;
+    return entry.totalLines;
+  }
+
+  private async dataOffset(handle: FileHandle, entry: SourceArchiveEntry): Promise<number> {
+    if (entry.dataOffset === undefined) {
+      const header = await readAt(handle, entry.headerOffset, 30);
+      if (header.length < 30 || header.readUInt32LE(0) !== LOCAL_HEADER_SIGNATURE) {
+        throw new Error(`Corrupt zip archive: invalid local header for entry "${entry.name}"`);
+      }
+      entry.dataOffset = entry.headerOffset + 30 + header.readUInt16LE(26) + header.readUInt16LE(28);
+    }
+    return entry.dataOffset;
+  }
+}
+
+/**
+ * Yield the uncompressed bytes of an entry in chunks.  The entry is read
+ * with positional reads, so concurrent extractions can share the handle,
+ * and stopping the iteration stops reading and inflating.
+ */
+async function* extractEntry(
+  handle: FileHandle,
+  dataOffset: number,
+  entry: SourceArchiveEntry,
+): AsyncGenerator<Buffer> {
+  const end = dataOffset + entry.compressedSize;
+  if (entry.method === 0) {
+    for (let pos = dataOffset; pos < end;) {
+      const chunk = await readAt(handle, pos, Math.min(EXTRACT_CHUNK_BYTES, end - pos));
+      if (chunk.length === 0) break;
+      pos += chunk.length;
+      yield chunk;
+    }
+    return;
+  }
+
+  const inflate = createInflateRaw({ chunkSize: EXTRACT_CHUNK_BYTES });
+  const output: Buffer[] = [];
+  inflate.on('data', (chunk: Buffer) => output.push(chunk));
+  const step = (start: (_done: () => void) => void): Promise<void> =>
+    new Promise((resolve, reject) => {
+      inflate.once('error', reject);
+      start(() => {
+        inflate.off('error', reject);
+        resolve();
+      });
+    });
+
+  try {
+    for (let pos = dataOffset; pos < end;) {
+      const chunk = await readAt(handle, pos, Math.min(EXTRACT_CHUNK_BYTES, end - pos));
+      if (chunk.length === 0) break;
+      pos += chunk.length;
+      await step(done => inflate.write(chunk, () => done()));
+      yield* output.splice(0);
+    }
+    await step(done => {
+      inflate.once('end', done);
+      inflate.end();
+    });
+    yield* output.splice(0);
+  } finally {
+    inflate.destroy();
+  }
+}
+
+// ---------------------------------------------------------------------------
+// Process-wide cache
+// ---------------------------------------------------------------------------
+
+const handlePool = new ArchiveHandlePool(MAX_OPEN_ARCHIVES);
+
+/** Map iteration order is insertion order; the first entry is least recent. */
+const archives = new Map<string, Promise<SourceArchive>>();
+
+/**
+ * The index of the archive at `path`, read once and reused while the
+ * archive's mtime and size are unchanged.
+ */
+export async function getSourceArchive(path: string): Promise<SourceArchive> {
+  const cached = archives.get(path);
+  if (cached) {
+    const [archive, info] = await Promise.all([cached.catch(() => undefined), stat(path)]);
+    if (archive && archive.mtimeMs === info.mtimeMs && archive.fileSize === info.size) {
+      archives.delete(path);
+      archives.set(path, cached);
+      return archive;
+    }
+    if (archives.get(path) === cached) {
+      archives.delete(path);
+      handlePool.retire(path);
+    }
+  }
+
+  const loading = SourceArchive.open(path, handlePool);
+  archives.set(path, loading);
+  loading.catch(() => {
+    if (archives.get(path) === loading) archives.delete(path);
+  });
+  while (archives.size > MAX_CACHED_ARCHIVES) {
+    const oldest = archives.keys().next().value as string;
+    archives.delete(oldest);
+    handlePool.retire(oldest);
+  }
+  return loading;
+}
+
+/** Drop every cached index and close the pooled handles. */
+export function clearSourceArchiveCache(): void {
+  archives.clear();
+  handlePool.closeAll();
+}
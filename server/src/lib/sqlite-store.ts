@@ -13,9 +13,20 @@
 
 import initSqlJs from 'sql.js/dist/sql-asm.js';
 import type { Database as SqlJsDatabase } from 'sql.js';
-import { mkdirSync, readFileSync, renameSync, unlinkSync, writeFileSync } from 'fs';
+import {
+  appendFileSync,
+  existsSync,
+  mkdirSync,
+  readFileSync,
+  renameSync,
+  statSync,
+  unlinkSync,
+  writeFileSync,
+} from 'fs';
 import { join } from 'path';
 import { logger } from '../utils/logger';
+import { BlobCompression, BlobStore } from './blob-store';
+import { buildSarifResultIndex, scanSarifLayout } from './sarif-index';
 
 /**
  * Annotation record as returned by query methods.
@@ -43,24 +54,431 @@ export interface AnnotationFilter {
   offset?: number;
 }
 
+/**
+ * How the in-memory database is persisted to disk.
+ *
+ * - `snapshot`: every flush exports the whole database and rewrites
+ *   `ql-mcp.db` (tmp + rename).  Flush cost scales with database size.
+ * - `journal`: every flush appends only the mutations made since the last
+ *   flush to `ql-mcp.db.journal`.  The journal is replayed on startup and
+ *   periodically compacted into a fresh snapshot.  Flush cost scales with
+ *   mutation size.
+ */
+export type StorePersistenceMode = 'journal' | 'snapshot';
+
+/**
+ * Options for constructing a SqliteStore.
+ */
+export interface SqliteStoreOptions {
+  /** Persistence backend (default: `snapshot`). */
+  persistence?: StorePersistenceMode;
+  /**
+   * Minimum journal size (bytes) before a flush compacts the journal into a
+   * new snapshot.  Compaction also waits until the journal is at least as
+   * large as the last snapshot, so its cost is amortized over the appends.
+   */
+  journalCompactionBytes?: number;
+  /** Encoding for new cached-result blobs (default: `none`). */
+  blobCompression?: BlobCompression;
+  /** Eviction policy of the query result cache (default: no limits). */
+  resultCachePolicy?: QueryResultCachePolicy;
+}
+
+/**
+ * Limits enforced on `query_result_cache`.  Sizes count the uncompressed
+ * result content of each entry; `0` disables a limit.
+ */
+export interface QueryResultCachePolicy {
+  /** Entries cached longer ago than this are evicted. */
+  maxAgeMs: number;
+  /** Total content budget; least recently used entries are evicted first. */
+  maxBytes: number;
+  /** Content budget of the entries of any one database. */
+  maxBytesPerDatabase: number;
+}
+
+/**
+ * Resolve the persistence mode from the `CODEQL_MCP_STORE_PERSISTENCE`
+ * environment variable.  Unknown values fall back to `snapshot`.
+ */
+export function getStorePersistenceMode(): StorePersistenceMode {
+  const value = process.env.CODEQL_MCP_STORE_PERSISTENCE?.trim().toLowerCase();
+  return value === 'journal' ? 'journal' : 'snapshot';
+}
+
+/**
+ * Non-negative number from the environment variable `name`, or `fallback`
+ * when it is unset or invalid.
+ */
+function readLimitEnv(name: string, fallback: number): number {
+  const raw = process.env[name];
+  if (raw === undefined || raw.trim() === '') return fallback;
+  const value = Number(raw);
+  return Number.isFinite(value) && value >= 0 ? value : fallback;
+}
+
+/**
+ * Resolve the query result cache eviction policy from
+ * `CODEQL_MCP_RESULT_CACHE_MAX_BYTES`,
+ * `CODEQL_MCP_RESULT_CACHE_MAX_BYTES_PER_DATABASE` and
+ * `CODEQL_MCP_RESULT_CACHE_MAX_AGE_HOURS`.  Unset limits are disabled, so
+ * the cache is unbounded unless configured.
+ */
+export function getQueryResultCachePolicy(): QueryResultCachePolicy {
+  return {
+    maxAgeMs: Math.floor(readLimitEnv('CODEQL_MCP_RESULT_CACHE_MAX_AGE_HOURS', 0) * 60 * 60 * 1000),
+    maxBytes: Math.floor(readLimitEnv('CODEQL_MCP_RESULT_CACHE_MAX_BYTES', 0)),
+    maxBytesPerDatabase: Math.floor(readLimitEnv('CODEQL_MCP_RESULT_CACHE_MAX_BYTES_PER_DATABASE', 0)),
+  };
+}
+
+/**
+ * Per-session history arrays that are stored as append-only rows in their
+ * own tables rather than inside the session JSON.
+ */
+export type SessionHistoryKind = 'mcpCalls' | 'qualityScores' | 'testExecutions';
+
+/**
+ * Table holding each kind of session history.
+ */
+const SESSION_HISTORY_TABLES: Record<SessionHistoryKind, string> = {
+  mcpCalls: 'session_mcp_calls',
+  qualityScores: 'session_quality_scores',
+  testExecutions: 'session_test_executions',
+};
+
+export const SESSION_HISTORY_KINDS = Object.keys(SESSION_HISTORY_TABLES) as SessionHistoryKind[];
+
+/**
+ * One page of session history records, most recent first.
+ */
+export interface SessionHistoryPageResult {
+  /** Cursor for the next (older) page, if there is one. */
+  nextCursor?: number;
+  records: unknown[];
+}
+
+/**
+ * Session fields promoted from the session JSON into indexed columns.
+ */
+const SESSION_COLUMNS = {
+  end_time: 'endTime',
+  language: 'language',
+  query_path: 'queryPath',
+  query_type: 'queryType',
+  start_time: 'startTime',
+  status: 'status',
+} as const;
+
+/**
+ * Criteria for selecting sessions, evaluated in SQL against the indexed
+ * session columns.
+ */
+export interface SessionQueryFilter {
+  /** Inclusive [start, end] range of session start times. */
+  dateRange?: [string, string];
+  /** Only sessions that ended strictly before this timestamp. */
+  endedBefore?: string;
+  language?: string;
+  /** Substring of the query path. */
+  queryPath?: string;
+  /** Exact query path. */
+  queryPathEquals?: string;
+  queryType?: string;
+  sessionIds?: string[];
+  status?: string;
+}
+
+/**
+ * A session row together with counts derived from its history.
+ */
+export interface SessionListRow {
+  /** `overallScore` of the most recent quality score, if any. */
+  currentScore: number | null;
+  data: unknown;
+  mcpCallCount: number;
+  testExecutionCount: number;
+}
+
+/**
+ * Aggregates over the sessions matching a {@link SessionQueryFilter}.
+ */
+export interface SessionAggregateRow {
+  /** Mean of each scored session's most recent `overallScore`. */
+  averageQualityScore: number | null;
+  completedSessions: number;
+  failedSessions: number;
+  /** Tool called most often across the matching sessions. */
+  mostUsedTool: string | null;
+  totalMcpCalls: number;
+  totalSessions: number;
+}
+
+/**
+ * Kind of parsed evaluator log stored in `evaluator_profiles`:
+ * `profile` is the predicate profile of `evaluator-log-parser.ts`,
+ * `pipelines` the pipeline graph of `profile_codeql_query`.
+ */
+export type EvaluatorProfileKind = 'pipelines' | 'profile';
+
+/**
+ * Metadata of a stored evaluator log profile.
+ */
+export interface EvaluatorProfileMeta {
+  createdAt: string;
+  databaseFingerprint: string | null;
+  databasePath: string | null;
+  /**
+   * Slowest predicates per query that kept RA steps and pipeline stages,
+   * or `null` when every predicate kept them.
+   */
+  detailTopK: number | null;
+  kind: EvaluatorProfileKind;
+  logBytes: number;
+  /** Hex SHA-256 of the evaluator log. */
+  logHash: string;
+  logPath: string;
+  queryFingerprint: string | null;
+  queryPath: string | null;
+}
+
+/**
+ * A persisted entry of the discovery catalog (see `discovery-catalog.ts`):
+ * one subdirectory of a configured base directory.
+ */
+export interface DiscoveryCatalogRow {
+  /** Paths whose stats make up `signature`, as a JSON array. */
+  dependencies: string;
+  entryName: string;
+  /** Parsed metadata as JSON, or `null` for entries that are not of the kind. */
+  data: string;
+  signature: string;
+}
+
+/**
+ * Ingestion state of one repository of an MRVA run (see `mrva-ingest.ts`).
+ */
+export interface MrvaRepoIngestRow {
+  /** Why the SARIF could not be ingested, if it could not. */
+  error: string | null;
+  fullName: string;
+  ingestedAt?: string;
+  resultCount: number;
+  sarifBytes: number;
+  sarifMtimeMs: number;
+  sarifPath: string;
+}
+
+/**
+ * One SARIF result of a repository of an MRVA run.
+ */
+export interface MrvaResultRow {
+  /** Primary location's artifact URI. */
+  filePath: string | null;
+  /** `primaryLocationLineHash` partial fingerprint, or the first fingerprint. */
+  fingerprint: string | null;
+  fullName: string;
+  level: string | null;
+  message: string;
+  resultIndex: number;
+  ruleId: string | null;
+  startLine: number | null;
+}
+
+/**
+ * Filter over the ingested results of an MRVA run.
+ */
+export interface MrvaResultFilter {
+  /** SQLite GLOB pattern matched against the primary location's URI. */
+  filePattern?: string;
+  fingerprint?: string;
+  fullName?: string;
+  ruleId?: string;
+  runPath: string;
+}
+
+/** Column ingested MRVA results can be grouped by. */
+export type MrvaResultGroupBy = 'file' | 'fingerprint' | 'repo' | 'rule';
+
+/**
+ * Occupancy, lookup and eviction counters of the query result cache.
+ * Counters cover the lifetime of the store instance.
+ */
+export interface QueryResultCacheStats {
+  /** Databases with the most cached content, largest first. */
+  databases: Array<{ bytes: number; databasePath: string; entries: number }>;
+  evicted: {
+    /** Evicted entries by cause. */
+    byReason: Record<QueryResultCacheEvictionReason, number>;
+    bytes: number;
+    entries: number;
+    lastRunAt: string | null;
+  };
+  /** Outcomes of {@link SqliteStore.lookupCacheEntry}. */
+  lookups: { hitRatio: number | null; hits: number; misses: number };
+  occupancy: { bytes: number; entries: number };
+  policy: QueryResultCachePolicy;
+}
+
+/** Why an entry was evicted from the query result cache. */
+export type QueryResultCacheEvictionReason = 'age' | 'databaseQuota' | 'size';
+
+/**
+ * Per-entry header of the SARIF side index.
+ */
+interface SarifIndexHeader {
+  resultCount: number;
+  tool: { offset: number; length: number } | null;
+  version: string | null;
+}
+
+/**
+ * Current UTC time in SQLite `datetime('now')` format.
+ *
+ * Mutations bind this value instead of calling `datetime('now')` in SQL so
+ * that journal replay reproduces the original timestamps.
+ */
+function sqliteNow(): string {
+  return sqliteTime(Date.now());
+}
+
+/**
+ * Epoch milliseconds in SQLite `datetime()` format, for comparisons with
+ * stored timestamps.
+ */
+function sqliteTime(ms: number): string {
+  return new Date(ms).toISOString().replace('T', ' ').substring(0, 19);
+}
+
+/**
+ * Bound values for the indexed session columns of a session object.
+ */
+function sessionColumnValues(data: unknown): Record<string, string | null> {
+  const record = (data && typeof data === 'object' ? data : {}) as Record<string, unknown>;
+  const values: Record<string, string | null> = {};
+  for (const [column, field] of Object.entries(SESSION_COLUMNS)) {
+    const value = record[field];
+    values[`$${column}`] = typeof value === 'string' ? value : null;
+  }
+  return values;
+}
+
+/**
+ * Translate a {@link SessionQueryFilter} into a WHERE clause over `sessions s`.
+ */
+function buildSessionWhere(filter: SessionQueryFilter): {
+  params: Record<string, string>;
+  where: string;
+} {
+  const conditions: string[] = [];
+  const params: Record<string, string> = {};
+  if (filter.status !== undefined) {
+    conditions.push('s.status = $f_status');
+    params.$f_status = filter.status;
+  }
+  if (filter.language !== undefined) {
+    conditions.push('s.language = $f_language');
+    params.$f_language = filter.language;
+  }
+  if (filter.queryType !== undefined) {
+    conditions.push('s.query_type = $f_query_type');
+    params.$f_query_type = filter.queryType;
+  }
+  if (filter.queryPath !== undefined) {
+    conditions.push('instr(s.query_path, $f_query_path) > 0');
+    params.$f_query_path = filter.queryPath;
+  }
+  if (filter.queryPathEquals !== undefined) {
+    conditions.push('s.query_path = $f_query_path_eq');
+    params.$f_query_path_eq = filter.queryPathEquals;
+  }
+  if (filter.dateRange) {
+    conditions.push('s.start_time >= $f_start_from AND s.start_time <= $f_start_to');
+    params.$f_start_from = filter.dateRange[0];
+    params.$f_start_to = filter.dateRange[1];
+  }
+  if (filter.endedBefore !== undefined) {
+    conditions.push('s.end_time < $f_ended_before');
+    params.$f_ended_before = filter.endedBefore;
+  }
+  if (filter.sessionIds) {
+    const placeholders = filter.sessionIds.map((id, i) => {
+      params[`$f_id${i}`] = id;
+      return `$f_id${i}`;
+    });
+    conditions.push(`s.session_id IN (${placeholders.join(', ') || 'NULL'})`);
+  }
+  return {
+    params,
+    where: conditions.length > 0 ? `WHERE ${conditions.join(' AND ')}` : '',
+  };
+}
+
 /**
  * A thin wrapper around sql.js that provides:
- * - Automatic schema migration (sessions + annotations tables)
- * - Flush-on-write persistence to a single .db file
+ * - Automatic schema migration (sessions, session history + annotations tables)
+ * - Flush-on-write persistence to a single .db file, or to an append-only
+ *   journal with periodic compaction (see {@link StorePersistenceMode})
  * - Typed helpers for the session and annotation domains
  */
 export class SqliteStore {
   private db: SqlJsDatabase | null = null;
   private dbPath: string;
+  private journalPath: string;
   private storageDir: string;
   private dirty = false;
   private flushTimer: ReturnType<typeof globalThis.setTimeout> | null = null;
+  private persistence: StorePersistenceMode;
+  private journalCompactionBytes: number;
+  /** Serialized mutations not yet appended to the journal (journal mode). */
+  private pendingJournal: string[] = [];
+  /** True once startup replay has finished and mutations should be journaled. */
+  private journalActive = false;
+  private journalBytes = 0;
+  private journalGeneration = 0;
+  private snapshotBytes = 0;
+  /** Out-of-database storage for cached query result content. */
+  private blobs: BlobStore;
+  private resultCachePolicy: QueryResultCachePolicy;
+  private evictionTimer: ReturnType<typeof globalThis.setTimeout> | null = null;
+  private evictionInterval: ReturnType<typeof globalThis.setInterval> | null = null;
+  private cacheHits = 0;
+  private cacheMisses = 0;
+  private cacheEvicted: QueryResultCacheStats['evicted'] = {
+    byReason: { age: 0, databaseQuota: 0, size: 0 },
+    bytes: 0,
+    entries: 0,
+    lastRunAt: null,
+  };
+  /** Rows per multi-row INSERT when writing the SARIF result index. */
+  private static readonly SARIF_INDEX_BATCH_ROWS = 100;
   /** Debounce interval (ms) for automatic disk writes after mutations. */
   private static readonly FLUSH_DEBOUNCE_MS = 200;
-
-  constructor(storageDir: string) {
+  /** Default minimum journal size before compaction (16 MiB). */
+  private static readonly DEFAULT_JOURNAL_COMPACTION_BYTES = 16 * 1024 * 1024;
+  /** Delay (ms) between a cache write and the eviction pass it triggers. */
+  private static readonly EVICTION_DEBOUNCE_MS = 1000;
+  /** Interval (ms) of the periodic eviction pass that enforces the max age. */
+  private static readonly EVICTION_INTERVAL_MS = 10 * 60 * 1000;
+  /** A cache entry's access time is only rewritten once it is this old (ms). */
+  private static readonly ACCESS_TOUCH_INTERVAL_MS = 60 * 1000;
+
+  constructor(storageDir: string, options: SqliteStoreOptions = {}) {
     this.storageDir = storageDir;
     this.dbPath = join(storageDir, 'ql-mcp.db');
+    this.journalPath = this.dbPath + '.journal';
+    this.persistence = options.persistence ?? 'snapshot';
+    this.journalCompactionBytes =
+      options.journalCompactionBytes ?? SqliteStore.DEFAULT_JOURNAL_COMPACTION_BYTES;
+    this.blobs = new BlobStore(join(storageDir, 'blobs'), options.blobCompression ?? 'none');
+    this.resultCachePolicy = options.resultCachePolicy ?? { maxAgeMs: 0, maxBytes: 0, maxBytesPerDatabase: 0 };
+  }
+
+  /**
+   * The active persistence backend.
+   */
+  getPersistenceMode(): StorePersistenceMode {
+    return this.persistence;
   }
 
   /**
@@ -85,7 +503,29 @@ export class SqliteStore {
     }
 
     this.createSchema();
+
+    // A journal left by a previous journal-mode process is always folded in,
+    // so switching persistence modes between restarts never loses writes.
+    const replayed = this.replayJournal();
+
+    this.migrateInlineCacheContent();
+    this.backfillCacheContentBytes();
+    this.migrateEmbeddedSessionHistory();
+    this.backfillSessionColumns();
+    this.startCacheEviction();
+
+    if (this.persistence === 'journal') {
+      // Start every process from a compact snapshot and an empty journal.
+      this.compact();
+      this.journalActive = true;
+      logger.info(`SQLite store initialized at ${this.dbPath} (journal mode, replayed ${replayed} mutations)`);
+      return;
+    }
+
     this.flush();
+    if (existsSync(this.journalPath)) {
+      try { unlinkSync(this.journalPath); } catch { /* ignore cleanup failure */ }
+    }
     logger.info(`SQLite store initialized at ${this.dbPath}`);
   }
 
@@ -101,6 +541,54 @@ export class SqliteStore {
       );
     `);
 
+    // Migration: commonly filtered session fields as indexed columns, so
+    // listing and aggregation never parse the session JSON.  NULL for rows
+    // written before this change until backfillSessionColumns() runs.
+    for (const column of Object.keys(SESSION_COLUMNS)) {
+      this.migrateAddColumn('sessions', column, 'TEXT');
+    }
+    this.exec(`
+      CREATE INDEX IF NOT EXISTS idx_sessions_status_start
+        ON sessions (status, start_time);
+    `);
+    this.exec(`
+      CREATE INDEX IF NOT EXISTS idx_sessions_language
+        ON sessions (language);
+    `);
+    this.exec(`
+      CREATE INDEX IF NOT EXISTS idx_sessions_query_type
+        ON sessions (query_type);
+    `);
+    this.exec(`
+      CREATE INDEX IF NOT EXISTS idx_sessions_query_path
+        ON sessions (query_path);
+    `);
+    this.exec(`
+      CREATE INDEX IF NOT EXISTS idx_sessions_start_time
+        ON sessions (start_time);
+    `);
+    this.exec(`
+      CREATE INDEX IF NOT EXISTS idx_sessions_end_time
+        ON sessions (end_time);
+    `);
+
+    // Append-only session history.  Each record is a single-row insert, and
+    // (session_id, id) serves both full reads and keyset-paginated pages.
+    for (const table of Object.values(SESSION_HISTORY_TABLES)) {
+      this.exec(`
+        CREATE TABLE IF NOT EXISTS ${table} (
+          id INTEGER PRIMARY KEY AUTOINCREMENT,
+          session_id TEXT NOT NULL,
+          timestamp TEXT,
+          data TEXT NOT NULL
+        );
+      `);
+      this.exec(`
+        CREATE INDEX IF NOT EXISTS idx_${table}_session
+          ON ${table} (session_id, id);
+      `);
+    }
+
     this.exec(`
       CREATE TABLE IF NOT EXISTS annotations (
         id INTEGER PRIMARY KEY AUTOINCREMENT,
@@ -212,6 +700,184 @@ export class SqliteStore {
     // incorporate run_id into the cache key to enable storing multiple runs
     // of the same query against the same database for comparison.
     this.migrateAddColumn('query_result_cache', 'run_id', "TEXT NOT NULL DEFAULT ''");
+
+    // Migration: content fingerprints of the query source closure and of the
+    // database the entry was computed against (see cache-fingerprint.ts).
+    // NULL for entries that pre-date fingerprinting.
+    this.migrateAddColumn('query_result_cache', 'query_fingerprint', 'TEXT');
+    this.migrateAddColumn('query_result_cache', 'database_fingerprint', 'TEXT');
+
+    // Migration: result content lives in the blob store (see blob-store.ts);
+    // result_content is only read for rows written before this change.
+    this.migrateAddColumn('query_result_cache', 'content_path', 'TEXT');
+    this.migrateAddColumn('query_result_cache', 'content_digest', 'TEXT');
+
+    // Migration: accounting for cache eviction.  content_bytes is the
+    // uncompressed content size (backfilled at startup for older rows);
+    // last_accessed_at is NULL until the entry is first looked up.
+    this.migrateAddColumn('query_result_cache', 'content_bytes', 'INTEGER');
+    this.migrateAddColumn('query_result_cache', 'last_accessed_at', 'TEXT');
+
+    // Per-entry side index over cached SARIF (see sarif-index.ts).
+    // sarif_index_entries has one row per indexed cache entry; `indexed` is 0
+    // when the content is not SARIF the scanner understands.
+    this.exec(`
+      CREATE TABLE IF NOT EXISTS sarif_index_entries (
+        cache_key TEXT PRIMARY KEY,
+        indexed INTEGER NOT NULL,
+        version TEXT,
+        tool_offset INTEGER,
+        tool_length INTEGER,
+        result_count INTEGER NOT NULL DEFAULT 0
+      );
+    `);
+
+    this.exec(`
+      CREATE TABLE IF NOT EXISTS sarif_result_index (
+        cache_key TEXT NOT NULL,
+        result_index INTEGER NOT NULL,
+        rule_id TEXT,
+        file_uri TEXT,
+        start_line INTEGER,
+        byte_offset INTEGER NOT NULL,
+        byte_length INTEGER NOT NULL,
+        PRIMARY KEY (cache_key, result_index)
+      );
+    `);
+
+    this.exec(`
+      CREATE INDEX IF NOT EXISTS idx_sri_rule
+        ON sarif_result_index (cache_key, rule_id, result_index);
+    `);
+
+    this.exec(`
+      CREATE INDEX IF NOT EXISTS idx_sri_file
+        ON sarif_result_index (cache_key, file_uri, start_line);
+    `);
+
+    // Files of every location of each indexed result.  sarif_index_files
+    // holds the distinct URIs of an entry, so a file filter tests each URI
+    // once and then reaches the results through the primary key of
+    // sarif_result_files.
+    this.exec(`
+      CREATE TABLE IF NOT EXISTS sarif_index_files (
+        cache_key TEXT NOT NULL,
+        file_id INTEGER NOT NULL,
+        file_uri TEXT NOT NULL,
+        PRIMARY KEY (cache_key, file_id)
+      );
+    `);
+
+    this.exec(`
+      CREATE TABLE IF NOT EXISTS sarif_result_files (
+        cache_key TEXT NOT NULL,
+        file_id INTEGER NOT NULL,
+        result_index INTEGER NOT NULL,
+        PRIMARY KEY (cache_key, file_id, result_index)
+      ) WITHOUT ROWID;
+    `);
+
+    // Migration: entries indexed before sarif_result_files existed have a
+    // NULL files_indexed and are re-indexed on first use.
+    this.migrateAddColumn('sarif_index_entries', 'files_indexed', 'INTEGER');
+    this.exec(`
+      CREATE INDEX IF NOT EXISTS idx_qrc_database_fingerprint
+        ON query_result_cache (database_fingerprint);
+    `);
+
+    // Parsed evaluator logs keyed by a hash of the log file.  detail_top_k is
+    // -1 when every predicate kept its RA detail.  The serialized profile
+    // lives in the blob store, like cached query results.
+    this.exec(`
+      CREATE TABLE IF NOT EXISTS evaluator_profiles (
+        log_hash TEXT NOT NULL,
+        kind TEXT NOT NULL,
+        detail_top_k INTEGER NOT NULL,
+        log_path TEXT NOT NULL,
+        log_bytes INTEGER NOT NULL,
+        query_path TEXT,
+        database_path TEXT,
+        query_fingerprint TEXT,
+        database_fingerprint TEXT,
+        content_path TEXT NOT NULL,
+        content_digest TEXT NOT NULL,
+        created_at TEXT NOT NULL,
+        PRIMARY KEY (log_hash, kind, detail_top_k)
+      );
+    `);
+
+    this.exec(`
+      CREATE INDEX IF NOT EXISTS idx_ep_run
+        ON evaluator_profiles (query_path, database_path, created_at);
+    `);
+
+    // Parsed metadata of discovered databases and query/MRVA runs, keyed by
+    // catalog kind and base directory, so a restart only re-stats entries.
+    this.exec(`
+      CREATE TABLE IF NOT EXISTS discovery_catalog (
+        kind TEXT NOT NULL,
+        base_dir TEXT NOT NULL,
+        entry_name TEXT NOT NULL,
+        signature TEXT NOT NULL,
+        dependencies TEXT NOT NULL,
+        data TEXT NOT NULL,
+        updated_at TEXT NOT NULL,
+        PRIMARY KEY (kind, base_dir, entry_name)
+      );
+    `);
+
+    // Results of MRVA runs, one row per SARIF result of each repository, so
+    // cross-repository questions are answered with indexed queries.
+    // mrva_repos records the SARIF each repository's rows were read from.
+    this.exec(`
+      CREATE TABLE IF NOT EXISTS mrva_repos (
+        run_path TEXT NOT NULL,
+        full_name TEXT NOT NULL,
+        sarif_path TEXT NOT NULL,
+        sarif_mtime_ms REAL NOT NULL,
+        sarif_bytes INTEGER NOT NULL,
+        result_count INTEGER NOT NULL,
+        error TEXT,
+        ingested_at TEXT NOT NULL,
+        PRIMARY KEY (run_path, full_name)
+      );
+    `);
+
+    this.exec(`
+      CREATE TABLE IF NOT EXISTS mrva_results (
+        run_path TEXT NOT NULL,
+        full_name TEXT NOT NULL,
+        result_index INTEGER NOT NULL,
+        rule_id TEXT,
+        file_path TEXT,
+        start_line INTEGER,
+        level TEXT,
+        fingerprint TEXT,
+        message TEXT NOT NULL,
+        PRIMARY KEY (run_path, full_name, result_index)
+      );
+    `);
+
+    this.exec(`
+      CREATE INDEX IF NOT EXISTS idx_mr_rule
+        ON mrva_results (run_path, rule_id, full_name);
+    `);
+    this.exec(`
+      CREATE INDEX IF NOT EXISTS idx_mr_file
+        ON mrva_results (run_path, file_path);
+    `);
+    this.exec(`
+      CREATE INDEX IF NOT EXISTS idx_mr_fingerprint
+        ON mrva_results (run_path, fingerprint);
+    `);
+
+    // Internal bookkeeping (journal generation). Never journaled.
+    this.exec(`
+      CREATE TABLE IF NOT EXISTS store_meta (
+        key TEXT PRIMARY KEY,
+        value TEXT NOT NULL
+      );
+    `);
   }
 
   // ---------------------------------------------------------------------------
@@ -233,11 +899,147 @@ export class SqliteStore {
     }
   }
 
+  /**
+   * Move cached result content still stored inline in `result_content` into
+   * the blob store, then VACUUM so the freed pages leave the snapshot.
+   */
+  private migrateInlineCacheContent(): void {
+    const db = this.ensureDb();
+    const stmt = db.prepare(
+      `SELECT cache_key, result_content FROM query_result_cache
+       WHERE result_content IS NOT NULL AND content_path IS NULL`,
+    );
+    const pending: Array<{ cacheKey: string; content: string }> = [];
+    while (stmt.step()) {
+      const row = stmt.getAsObject();
+      pending.push({ cacheKey: row.cache_key as string, content: row.result_content as string });
+    }
+    stmt.free();
+    if (pending.length === 0) return;
+
+    for (const { cacheKey, content } of pending) {
+      const ref = this.blobs.put(content);
+      this.exec(
+        `UPDATE query_result_cache
+         SET content_path = $path, content_digest = $digest, result_content = NULL
+         WHERE cache_key = $key`,
+        { $digest: ref.digest, $key: cacheKey, $path: ref.path },
+      );
+    }
+    db.run('VACUUM');
+    logger.info(`Moved ${pending.length} cached result(s) from the database into the blob store`);
+  }
+
+  /**
+   * Record the content size of cache rows written before `content_bytes`
+   * existed.  Gzip-compressed blobs are read once to learn their
+   * uncompressed size.
+   */
+  private backfillCacheContentBytes(): void {
+    const db = this.ensureDb();
+    const stmt = db.prepare(
+      `SELECT cache_key, content_path, result_content FROM query_result_cache
+       WHERE content_bytes IS NULL`,
+    );
+    const pending: Array<{ bytes: number; cacheKey: string }> = [];
+    while (stmt.step()) {
+      const row = stmt.getAsObject();
+      const path = row.content_path as string | null;
+      const inline = row.result_content as string | null;
+      let bytes = 0;
+      if (path?.endsWith('.gz')) {
+        bytes = this.blobs.readBytes(path)?.length ?? 0;
+      } else if (path) {
+        try { bytes = statSync(this.blobs.resolvePath(path)).size; } catch { /* missing blob */ }
+      } else if (inline !== null) {
+        bytes = Buffer.byteLength(inline, 'utf8');
+      }
+      pending.push({ bytes, cacheKey: row.cache_key as string });
+    }
+    stmt.free();
+
+    for (const { bytes, cacheKey } of pending) {
+      this.exec(
+        'UPDATE query_result_cache SET content_bytes = $bytes WHERE cache_key = $key',
+        { $bytes: bytes, $key: cacheKey },
+      );
+    }
+  }
+
+  /**
+   * Move history arrays still embedded in session JSON (written before the
+   * history tables existed) into the history tables, oldest record first.
+   */
+  private migrateEmbeddedSessionHistory(): void {
+    const db = this.ensureDb();
+    const conditions = SESSION_HISTORY_KINDS.map(kind => `instr(data, '"${kind}":') > 0`).join(' OR ');
+    const stmt = db.prepare(`SELECT session_id, data FROM sessions WHERE ${conditions}`);
+    const pending: Array<{ data: Record<string, unknown>; sessionId: string }> = [];
+    while (stmt.step()) {
+      const row = stmt.getAsObject();
+      pending.push({
+        data: JSON.parse(row.data as string) as Record<string, unknown>,
+        sessionId: row.session_id as string,
+      });
+    }
+    stmt.free();
+    if (pending.length === 0) return;
+
+    let moved = 0;
+    for (const { data, sessionId } of pending) {
+      for (const kind of SESSION_HISTORY_KINDS) {
+        const records = data[kind];
+        delete data[kind];
+        if (!Array.isArray(records)) continue;
+        for (const record of records) {
+          this.insertSessionHistory(kind, sessionId, record);
+          moved++;
+        }
+      }
+      this.exec(
+        'UPDATE sessions SET data = $data WHERE session_id = $id',
+        { $data: JSON.stringify(data), $id: sessionId },
+      );
+    }
+    logger.info(`Moved ${moved} session history record(s) from ${pending.length} session(s) into history tables`);
+  }
+
+  /**
+   * Populate the indexed session columns of rows written before they
+   * existed (or replayed from a journal written by an older version).
+   */
+  private backfillSessionColumns(): void {
+    const db = this.ensureDb();
+    const stmt = db.prepare(
+      'SELECT session_id, data FROM sessions WHERE status IS NULL AND start_time IS NULL',
+    );
+    const pending: Array<{ data: unknown; sessionId: string }> = [];
+    while (stmt.step()) {
+      const row = stmt.getAsObject();
+      pending.push({ data: JSON.parse(row.data as string), sessionId: row.session_id as string });
+    }
+    stmt.free();
+
+    for (const { data, sessionId } of pending) {
+      const columns = sessionColumnValues(data);
+      if (Object.values(columns).every(value => value === null)) continue;
+      this.exec(
+        `UPDATE sessions SET ${Object.keys(SESSION_COLUMNS).map(c => `${c} = $${c}`).join(', ')}
+         WHERE session_id = $id`,
+        { ...columns, $id: sessionId },
+      );
+    }
+  }
+
   private ensureDb(): SqlJsDatabase {
     if (!this.db) throw new Error('SqliteStore not initialized — call initialize() first');
     return this.db;
   }
 
+  /**
+   * Run a mutating statement.  In journal mode the statement and its bound
+   * parameters are also queued for the next journal append.
+   */
   private exec(sql: string, params?: Record<string, unknown>): void {
     const db = this.ensureDb();
     if (params) {
@@ -246,6 +1048,9 @@ export class SqliteStore {
       db.run(sql);
     }
     this.dirty = true;
+    if (this.journalActive) {
+      this.pendingJournal.push(JSON.stringify({ p: params ?? null, s: sql }) + '\n');
+    }
   }
 
   /**
@@ -278,6 +1083,64 @@ export class SqliteStore {
     return result.length > 0 ? (result[0].values[0][0] as number) : 0;
   }
 
+  /**
+   * Persist pending changes to disk.
+   *
+   * In `snapshot` mode this exports the whole database (see
+   * {@link writeSnapshot}).  In `journal` mode it appends only the
+   * mutations made since the last flush, compacting into a new snapshot
+   * once the journal has grown past the compaction threshold.
+   */
+  flush(): void {
+    if (this.flushTimer) {
+      globalThis.clearTimeout(this.flushTimer);
+      this.flushTimer = null;
+    }
+    if (!this.db) return;
+
+    if (!this.journalActive) {
+      this.writeSnapshot();
+      this.dirty = false;
+      return;
+    }
+
+    if (this.pendingJournal.length > 0) {
+      const chunk = this.pendingJournal.join('');
+      this.pendingJournal = [];
+      appendFileSync(this.journalPath, chunk);
+      this.journalBytes += Buffer.byteLength(chunk);
+    }
+    this.dirty = false;
+
+    if (this.journalBytes >= Math.max(this.journalCompactionBytes, this.snapshotBytes)) {
+      this.compact();
+    }
+  }
+
+  /**
+   * Fold the journal into a fresh snapshot and start a new, empty journal.
+   *
+   * The snapshot records a new journal generation before it is written, and
+   * the new journal starts with a header naming that generation.  If the
+   * process dies between the snapshot rename and the journal reset, the old
+   * journal's header no longer matches and replay skips it, so no mutation
+   * is ever applied twice.
+   */
+  compact(): void {
+    if (!this.db) return;
+    this.journalGeneration += 1;
+    this.db.run(
+      "INSERT OR REPLACE INTO store_meta (key, value) VALUES ('journal_generation', $g)",
+      { $g: String(this.journalGeneration) },
+    );
+    this.writeSnapshot();
+    const header = JSON.stringify({ g: this.journalGeneration }) + '\n';
+    writeFileSync(this.journalPath, header);
+    this.journalBytes = Buffer.byteLength(header);
+    this.pendingJournal = [];
+    this.dirty = false;
+  }
+
   /**
    * Write the in-memory database to disk.
    *
@@ -289,13 +1152,8 @@ export class SqliteStore {
    * locked, we fall back to a direct overwrite, which is best-effort only
    * and not fully crash-safe.
    */
-  flush(): void {
-    if (this.flushTimer) {
-      globalThis.clearTimeout(this.flushTimer);
-      this.flushTimer = null;
-    }
-    if (!this.db) return;
-    const data = this.db.export();
+  private writeSnapshot(): void {
+    const data = this.ensureDb().export();
     const buffer = Buffer.from(data);
     const tmpPath = this.dbPath + '.tmp';
     writeFileSync(tmpPath, buffer);
@@ -307,7 +1165,65 @@ export class SqliteStore {
       writeFileSync(this.dbPath, buffer);
       try { unlinkSync(tmpPath); } catch { /* ignore cleanup failure */ }
     }
-    this.dirty = false;
+    this.snapshotBytes = buffer.length;
+  }
+
+  /**
+   * Re-apply journaled mutations on top of the loaded snapshot.
+   *
+   * Only a journal whose header generation matches the snapshot's is
+   * replayed.  A torn trailing record (crash mid-append) ends the replay.
+   *
+   * @returns The number of mutations applied.
+   */
+  private replayJournal(): number {
+    const db = this.ensureDb();
+    const meta = db.exec("SELECT value FROM store_meta WHERE key = 'journal_generation'");
+    this.journalGeneration = meta.length > 0 ? Number(meta[0].values[0][0]) || 0 : 0;
+
+    if (!existsSync(this.journalPath)) return 0;
+
+    const lines = readFileSync(this.journalPath, 'utf8').split('\n');
+    let header: { g?: number };
+    try {
+      header = JSON.parse(lines[0]) as { g?: number };
+    } catch {
+      logger.warn(`Ignoring SQLite journal with unreadable header: ${this.journalPath}`);
+      return 0;
+    }
+    if (header.g !== this.journalGeneration) {
+      logger.warn(`Ignoring stale SQLite journal (generation ${header.g}, snapshot ${this.journalGeneration})`);
+      return 0;
+    }
+
+    let applied = 0;
+    for (let i = 1; i < lines.length; i++) {
+      if (!lines[i]) continue;
+      let record: { p: Record<string, string | number | null> | null; s: string };
+      try {
+        record = JSON.parse(lines[i]) as typeof record;
+      } catch {
+        logger.warn(`Truncated SQLite journal record at line ${i + 1}; discarding the remainder`);
+        break;
+      }
+      if (record.p) {
+        db.run(record.s, record.p);
+      } else {
+        db.run(record.s);
+      }
+      applied++;
+    }
+    return applied;
+  }
+
+  /**
+   * Size in bytes of the on-disk snapshot and journal.
+   */
+  getStorageSize(): { journalBytes: number; snapshotBytes: number } {
+    const sizeOf = (p: string): number => {
+      try { return statSync(p).size; } catch { return 0; }
+    };
+    return { journalBytes: sizeOf(this.journalPath), snapshotBytes: sizeOf(this.dbPath) };
   }
 
   /**
@@ -322,6 +1238,59 @@ export class SqliteStore {
     }, SqliteStore.FLUSH_DEBOUNCE_MS);
   }
 
+  /**
+   * Start background eviction of the query result cache: one pass shortly
+   * after startup and after cache writes, plus a periodic pass that expires
+   * entries when the policy has a max age.  Does nothing without limits.
+   */
+  private startCacheEviction(): void {
+    const { maxAgeMs, maxBytes, maxBytesPerDatabase } = this.resultCachePolicy;
+    if (maxAgeMs <= 0 && maxBytes <= 0 && maxBytesPerDatabase <= 0) return;
+    this.scheduleCacheEviction();
+    if (maxAgeMs > 0 && !this.evictionInterval) {
+      this.evictionInterval = globalThis.setInterval(
+        () => this.runCacheEviction(),
+        SqliteStore.EVICTION_INTERVAL_MS,
+      );
+      this.evictionInterval.unref?.();
+    }
+  }
+
+  private stopCacheEviction(): void {
+    if (this.evictionTimer) {
+      globalThis.clearTimeout(this.evictionTimer);
+      this.evictionTimer = null;
+    }
+    if (this.evictionInterval) {
+      globalThis.clearInterval(this.evictionInterval);
+      this.evictionInterval = null;
+    }
+  }
+
+  /**
+   * Schedule an eviction pass `EVICTION_DEBOUNCE_MS` from now, unless one
+   * is already pending.  Unlike flushes, passes are not postponed by
+   * further writes, so a steady stream of writes is still bounded.
+   */
+  private scheduleCacheEviction(): void {
+    const { maxAgeMs, maxBytes, maxBytesPerDatabase } = this.resultCachePolicy;
+    if (this.evictionTimer || (maxAgeMs <= 0 && maxBytes <= 0 && maxBytesPerDatabase <= 0)) return;
+    this.evictionTimer = globalThis.setTimeout(() => {
+      this.evictionTimer = null;
+      this.runCacheEviction();
+    }, SqliteStore.EVICTION_DEBOUNCE_MS);
+    this.evictionTimer.unref?.();
+  }
+
+  private runCacheEviction(): void {
+    if (!this.db) return;
+    try {
+      this.evictCacheEntries();
+    } catch (error) {
+      logger.warn('Query result cache eviction failed:', error);
+    }
+  }
+
   /**
    * Flush only if there are pending writes.
    */
@@ -333,6 +1302,7 @@ export class SqliteStore {
    * Close the database (and flush remaining changes).
    */
   close(): void {
+    this.stopCacheEviction();
     if (this.flushTimer) {
       globalThis.clearTimeout(this.flushTimer);
       this.flushTimer = null;
@@ -340,6 +1310,8 @@ export class SqliteStore {
     this.flushIfDirty();
     this.db?.close();
     this.db = null;
+    this.journalActive = false;
+    this.pendingJournal = [];
   }
 
   // ---------------------------------------------------------------------------
@@ -351,12 +1323,12 @@ export class SqliteStore {
    */
   putSession(sessionId: string, data: unknown): void {
     const json = JSON.stringify(data);
-    const db = this.ensureDb();
-    db.run(
-      'INSERT OR REPLACE INTO sessions (session_id, data) VALUES ($id, $data)',
-      { $id: sessionId, $data: json },
+    const columns = Object.keys(SESSION_COLUMNS);
+    this.exec(
+      `INSERT OR REPLACE INTO sessions (session_id, data, ${columns.join(', ')})
+       VALUES ($id, $data, ${columns.map(c => `$${c}`).join(', ')})`,
+      { $id: sessionId, $data: json, ...sessionColumnValues(data) },
     );
-    this.dirty = true;
     this.scheduleFlush();
   }
 
@@ -396,9 +1368,103 @@ export class SqliteStore {
    */
   deleteSession(sessionId: string): void {
     this.exec('DELETE FROM sessions WHERE session_id = $id', { $id: sessionId });
+    for (const table of Object.values(SESSION_HISTORY_TABLES)) {
+      this.exec(`DELETE FROM ${table} WHERE session_id = $id`, { $id: sessionId });
+    }
     this.scheduleFlush();
   }
 
+  /**
+   * List the sessions matching `filter`, oldest start time first, with their
+   * call and test counts and latest quality score.  Filtering happens in SQL
+   * on the indexed session columns; history rows are counted, not read.
+   */
+  listSessionRows(filter: SessionQueryFilter = {}): SessionListRow[] {
+    const db = this.ensureDb();
+    const { params, where } = buildSessionWhere(filter);
+    const stmt = db.prepare(
+      `SELECT s.data,
+         (SELECT COUNT(*) FROM session_mcp_calls c WHERE c.session_id = s.session_id) AS mcp_calls,
+         (SELECT COUNT(*) FROM session_test_executions t WHERE t.session_id = s.session_id) AS test_executions,
+         (SELECT json_extract(q.data, '$.overallScore') FROM session_quality_scores q
+            WHERE q.session_id = s.session_id ORDER BY q.id DESC LIMIT 1) AS current_score
+       FROM sessions s ${where}
+       ORDER BY s.start_time, s.session_id`,
+    );
+    stmt.bind(params);
+    const rows: SessionListRow[] = [];
+    while (stmt.step()) {
+      const row = stmt.getAsObject();
+      rows.push({
+        currentScore: row.current_score === null ? null : Number(row.current_score),
+        data: JSON.parse(row.data as string),
+        mcpCallCount: row.mcp_calls as number,
+        testExecutionCount: row.test_executions as number,
+      });
+    }
+    stmt.free();
+    return rows;
+  }
+
+  /**
+   * Count, score and tool-usage aggregates over the sessions matching
+   * `filter`, computed entirely in SQL.
+   */
+  aggregateSessions(filter: SessionQueryFilter = {}): SessionAggregateRow {
+    const db = this.ensureDb();
+    const { params, where } = buildSessionWhere(filter);
+
+    const totals = db.prepare(
+      `SELECT COUNT(*) AS total,
+         COALESCE(SUM(s.status = 'completed'), 0) AS completed,
+         COALESCE(SUM(s.status = 'failed'), 0) AS failed,
+         COALESCE(SUM((SELECT COUNT(*) FROM session_mcp_calls c WHERE c.session_id = s.session_id)), 0) AS calls,
+         AVG((SELECT json_extract(q.data, '$.overallScore') FROM session_quality_scores q
+            WHERE q.session_id = s.session_id ORDER BY q.id DESC LIMIT 1)) AS average_score
+       FROM sessions s ${where}`,
+    );
+    totals.bind(params);
+    totals.step();
+    const row = totals.getAsObject();
+    totals.free();
+
+    const tools = db.prepare(
+      `SELECT json_extract(c.data, '$.toolName') AS tool, COUNT(*) AS cnt
+       FROM session_mcp_calls c JOIN sessions s ON s.session_id = c.session_id
+       ${where}
+       GROUP BY tool ORDER BY cnt DESC, tool LIMIT 1`,
+    );
+    tools.bind(params);
+    const mostUsedTool = tools.step() ? (tools.getAsObject().tool as string | null) : null;
+    tools.free();
+
+    return {
+      averageQualityScore: row.average_score === null ? null : Number(row.average_score),
+      completedSessions: row.completed as number,
+      failedSessions: row.failed as number,
+      mostUsedTool,
+      totalMcpCalls: row.calls as number,
+      totalSessions: row.total as number,
+    };
+  }
+
+  /**
+   * Delete the sessions matching `filter`, with their history.
+   *
+   * @returns The number of sessions deleted.
+   */
+  deleteSessions(filter: SessionQueryFilter): number {
+    const { params, where } = buildSessionWhere(filter);
+    const condition = `session_id IN (SELECT s.session_id FROM sessions s ${where})`;
+    for (const table of Object.values(SESSION_HISTORY_TABLES)) {
+      this.exec(`DELETE FROM ${table} WHERE ${condition}`, params);
+    }
+    this.exec(`DELETE FROM sessions WHERE ${condition}`, params);
+    const deleted = this.getRowsModified();
+    if (deleted > 0) this.scheduleFlush();
+    return deleted;
+  }
+
   /**
    * Count active sessions.
    */
@@ -411,6 +1477,97 @@ export class SqliteStore {
     return row.cnt as number;
   }
 
+  /**
+   * Append one record to a session's history.
+   */
+  appendSessionHistory(kind: SessionHistoryKind, sessionId: string, record: unknown): void {
+    this.insertSessionHistory(kind, sessionId, record);
+    this.scheduleFlush();
+  }
+
+  private insertSessionHistory(kind: SessionHistoryKind, sessionId: string, record: unknown): void {
+    const timestamp = (record as { timestamp?: unknown } | null)?.timestamp;
+    this.exec(
+      `INSERT INTO ${SESSION_HISTORY_TABLES[kind]} (session_id, timestamp, data)
+       VALUES ($id, $timestamp, $data)`,
+      {
+        $data: JSON.stringify(record),
+        $id: sessionId,
+        $timestamp: typeof timestamp === 'string' ? timestamp : null,
+      },
+    );
+  }
+
+  /**
+   * Return a session's complete history, oldest record first.
+   */
+  getSessionHistory(kind: SessionHistoryKind, sessionId: string): unknown[] {
+    const db = this.ensureDb();
+    const records: unknown[] = [];
+    const stmt = db.prepare(
+      `SELECT data FROM ${SESSION_HISTORY_TABLES[kind]} WHERE session_id = $id ORDER BY id`,
+    );
+    stmt.bind({ $id: sessionId });
+    while (stmt.step()) {
+      records.push(JSON.parse(stmt.getAsObject().data as string));
+    }
+    stmt.free();
+    return records;
+  }
+
+  /**
+   * Return one page of a session's history, most recent record first.
+   *
+   * Pages are keyed on the record id rather than an offset: pass the
+   * returned `nextCursor` as `before` to continue with older records.
+   * Records appended between calls never shift later pages.
+   */
+  getSessionHistoryPage(
+    kind: SessionHistoryKind,
+    sessionId: string,
+    options: { before?: number; limit: number },
+  ): SessionHistoryPageResult {
+    const db = this.ensureDb();
+    const params: Record<string, number | string> = { $id: sessionId, $limit: options.limit + 1 };
+    let where = 'session_id = $id';
+    if (options.before !== undefined) {
+      where += ' AND id < $before';
+      params.$before = options.before;
+    }
+    const stmt = db.prepare(
+      `SELECT id, data FROM ${SESSION_HISTORY_TABLES[kind]} WHERE ${where} ORDER BY id DESC LIMIT $limit`,
+    );
+    stmt.bind(params);
+    const rows: Array<{ data: unknown; id: number }> = [];
+    while (stmt.step()) {
+      const row = stmt.getAsObject();
+      rows.push({ data: JSON.parse(row.data as string), id: row.id as number });
+    }
+    stmt.free();
+
+    const hasMore = rows.length > options.limit;
+    const page = hasMore ? rows.slice(0, options.limit) : rows;
+    return {
+      nextCursor: hasMore ? page[page.length - 1].id : undefined,
+      records: page.map(row => row.data),
+    };
+  }
+
+  /**
+   * Count the records in a session's history.
+   */
+  countSessionHistory(kind: SessionHistoryKind, sessionId: string): number {
+    const db = this.ensureDb();
+    const stmt = db.prepare(
+      `SELECT COUNT(*) AS cnt FROM ${SESSION_HISTORY_TABLES[kind]} WHERE session_id = $id`,
+    );
+    stmt.bind({ $id: sessionId });
+    stmt.step();
+    const row = stmt.getAsObject();
+    stmt.free();
+    return row.cnt as number;
+  }
+
   // ---------------------------------------------------------------------------
   // Annotation storage
   // ---------------------------------------------------------------------------
@@ -426,18 +1583,18 @@ export class SqliteStore {
     metadata?: string | null,
   ): number {
     const db = this.ensureDb();
-    db.run(
+    this.exec(
       `INSERT INTO annotations (category, entity_key, label, content, metadata, created_at, updated_at)
-       VALUES ($category, $entity_key, $label, $content, $metadata, datetime('now'), datetime('now'))`,
+       VALUES ($category, $entity_key, $label, $content, $metadata, $now, $now)`,
       {
         $category: category,
         $entity_key: entityKey,
         $label: label ?? null,
         $content: content ?? null,
         $metadata: metadata ?? null,
+        $now: sqliteNow(),
       },
     );
-    this.dirty = true;
 
     // Retrieve the last inserted row id via scalar query
     const result = db.exec('SELECT last_insert_rowid() as id');
@@ -558,15 +1715,14 @@ export class SqliteStore {
 
     if (setClauses.length === 0) return false;
 
-    setClauses.push("updated_at = datetime('now')");
+    setClauses.push('updated_at = $now');
+    params.$now = sqliteNow();
 
-    const db = this.ensureDb();
-    db.run(
+    this.exec(
       `UPDATE annotations SET ${setClauses.join(', ')} WHERE id = $id`,
-      params as Record<string, string | number | null>,
+      params,
     );
     const changed = this.getRowsModified();
-    this.dirty = true;
     this.scheduleFlush();
 
     return changed > 0;
@@ -598,13 +1754,11 @@ export class SqliteStore {
       throw new Error('deleteAnnotations requires at least one filter criterion');
     }
 
-    const db = this.ensureDb();
-    db.run(
+    this.exec(
       `DELETE FROM annotations WHERE ${conditions.join(' AND ')}`,
-      params as Record<string, string | number>,
+      params,
     );
     const deleted = this.getRowsModified();
-    this.dirty = true;
     this.scheduleFlush();
 
     return deleted;
@@ -616,6 +1770,9 @@ export class SqliteStore {
 
   /**
    * Store a query result in the cache.
+   *
+   * `resultContent` is written to the blob store; the row only keeps the
+   * blob's path and digest.
    */
   putCacheEntry(entry: {
     cacheKey: string;
@@ -633,17 +1790,23 @@ export class SqliteStore {
     executionTimeMs?: number | null;
     ruleId?: string | null;
     runId?: string | null;
+    queryFingerprint?: string | null;
+    databaseFingerprint?: string | null;
   }): void {
-    const db = this.ensureDb();
-    db.run(
+    const blob = entry.resultContent != null ? this.blobs.put(entry.resultContent) : null;
+    const replaced = this.getCacheContentPaths('cache_key = $key', { $key: entry.cacheKey });
+    this.exec(
       `INSERT OR REPLACE INTO query_result_cache
        (cache_key, query_name, query_path, database_path, language, codeql_version,
-        external_predicates, output_format, result_content, result_count,
-        bqrs_path, interpreted_path, execution_time_ms, rule_id, run_id, created_at)
+        external_predicates, output_format, content_path, content_digest, result_count,
+        bqrs_path, interpreted_path, execution_time_ms, rule_id, run_id,
+        query_fingerprint, database_fingerprint, content_bytes, created_at,
+        last_accessed_at)
        VALUES ($cache_key, $query_name, $query_path, $database_path, $language,
-        $codeql_version, $external_predicates, $output_format, $result_content,
-        $result_count, $bqrs_path, $interpreted_path, $execution_time_ms,
-        $rule_id, $run_id, datetime('now'))`,
+        $codeql_version, $external_predicates, $output_format, $content_path,
+        $content_digest, $result_count, $bqrs_path, $interpreted_path,
+        $execution_time_ms, $rule_id, $run_id, $query_fingerprint,
+        $database_fingerprint, $content_bytes, $now, $now)`,
       {
         $cache_key: entry.cacheKey,
         $query_name: entry.queryName,
@@ -653,72 +1816,343 @@ export class SqliteStore {
         $codeql_version: entry.codeqlVersion,
         $external_predicates: entry.externalPredicates ?? null,
         $output_format: entry.outputFormat,
-        $result_content: entry.resultContent ?? null,
+        $content_path: blob?.path ?? null,
+        $content_digest: blob?.digest ?? null,
         $result_count: entry.resultCount ?? null,
         $bqrs_path: entry.bqrsPath ?? null,
         $interpreted_path: entry.interpretedPath ?? null,
         $execution_time_ms: entry.executionTimeMs ?? null,
         $rule_id: entry.ruleId ?? null,
         $run_id: entry.runId ?? '',
+        $query_fingerprint: entry.queryFingerprint ?? null,
+        $database_fingerprint: entry.databaseFingerprint ?? null,
+        $content_bytes: blob?.bytes ?? 0,
+        $now: sqliteNow(),
       },
     );
-    this.dirty = true;
+    this.releaseBlobs(replaced);
+    this.deleteSarifIndex(entry.cacheKey);
+    if (blob && entry.outputFormat.includes('sarif')) {
+      this.indexSarifContent(entry.cacheKey, Buffer.from(entry.resultContent!, 'utf8'));
+    }
+    this.scheduleFlush();
+    this.scheduleCacheEviction();
+  }
+
+  /**
+   * Build the SARIF side index for a cache entry from its content bytes.
+   * Returns the entry header, or null if the content is not indexable.
+   */
+  private indexSarifContent(cacheKey: string, content: Buffer): SarifIndexHeader | null {
+    const layout = scanSarifLayout(content);
+    const header: SarifIndexHeader = {
+      resultCount: layout?.results.length ?? 0,
+      tool: layout?.tool ?? null,
+      version: layout?.version ?? null,
+    };
+    this.exec(
+      `INSERT OR REPLACE INTO sarif_index_entries
+       (cache_key, indexed, version, tool_offset, tool_length, result_count, files_indexed)
+       VALUES ($key, $indexed, $version, $tool_offset, $tool_length, $result_count, 1)`,
+      {
+        $indexed: layout ? 1 : 0,
+        $key: cacheKey,
+        $result_count: header.resultCount,
+        $tool_length: header.tool?.length ?? null,
+        $tool_offset: header.tool?.offset ?? null,
+        $version: header.version,
+      },
+    );
+    if (!layout) return null;
+
+    const rows = buildSarifResultIndex(content, layout);
+    for (let i = 0; i < rows.length; i += SqliteStore.SARIF_INDEX_BATCH_ROWS) {
+      const batch = rows.slice(i, i + SqliteStore.SARIF_INDEX_BATCH_ROWS);
+      const params: Record<string, string | number | null> = { $key: cacheKey };
+      const values = batch.map((row, j) => {
+        params[`$i${j}`] = row.resultIndex;
+        params[`$r${j}`] = row.ruleId;
+        params[`$f${j}`] = row.fileUri;
+        params[`$l${j}`] = row.startLine;
+        params[`$o${j}`] = row.offset;
+        params[`$n${j}`] = row.length;
+        return `($key, $i${j}, $r${j}, $f${j}, $l${j}, $o${j}, $n${j})`;
+      });
+      this.exec(
+        `INSERT INTO sarif_result_index
+         (cache_key, result_index, rule_id, file_uri, start_line, byte_offset, byte_length)
+         VALUES ${values.join(', ')}`,
+        params,
+      );
+    }
+
+    const fileIds = new Map<string, number>();
+    const resultFiles: Array<[number, number]> = [];
+    for (const row of rows) {
+      for (const uri of row.fileUris) {
+        let fileId = fileIds.get(uri);
+        if (fileId === undefined) {
+          fileId = fileIds.size;
+          fileIds.set(uri, fileId);
+        }
+        resultFiles.push([fileId, row.resultIndex]);
+      }
+    }
+    const files = [...fileIds];
+    for (let i = 0; i < files.length; i += SqliteStore.SARIF_INDEX_BATCH_ROWS) {
+      const batch = files.slice(i, i + SqliteStore.SARIF_INDEX_BATCH_ROWS);
+      const params: Record<string, string | number> = { $key: cacheKey };
+      const values = batch.map(([uri, fileId], j) => {
+        params[`$d${j}`] = fileId;
+        params[`$u${j}`] = uri;
+        return `($key, $d${j}, $u${j})`;
+      });
+      this.exec(
+        `INSERT INTO sarif_index_files (cache_key, file_id, file_uri) VALUES ${values.join(', ')}`,
+        params,
+      );
+    }
+    for (let i = 0; i < resultFiles.length; i += SqliteStore.SARIF_INDEX_BATCH_ROWS) {
+      const batch = resultFiles.slice(i, i + SqliteStore.SARIF_INDEX_BATCH_ROWS);
+      const params: Record<string, string | number> = { $key: cacheKey };
+      const values = batch.map(([fileId, resultIndex], j) => {
+        params[`$d${j}`] = fileId;
+        params[`$i${j}`] = resultIndex;
+        return `($key, $d${j}, $i${j})`;
+      });
+      this.exec(
+        `INSERT INTO sarif_result_files (cache_key, file_id, result_index) VALUES ${values.join(', ')}`,
+        params,
+      );
+    }
+    return header;
+  }
+
+  /**
+   * Return the SARIF index header for a blob-backed entry, building the
+   * index on first use for entries cached before the index existed.
+   */
+  private ensureSarifIndex(cacheKey: string, contentPath: string): SarifIndexHeader | null {
+    const db = this.ensureDb();
+    const stmt = db.prepare(
+      `SELECT indexed, version, tool_offset, tool_length, result_count, files_indexed
+       FROM sarif_index_entries WHERE cache_key = $key`,
+    );
+    stmt.bind({ $key: cacheKey });
+    const row = stmt.step() ? stmt.getAsObject() : null;
+    stmt.free();
+    if (row && row.indexed && row.files_indexed === null) {
+      // Indexed before location files were recorded; rebuild below.
+      this.deleteSarifIndex(cacheKey);
+    } else if (row) {
+      if (!row.indexed) return null;
+      return {
+        resultCount: row.result_count as number,
+        tool: row.tool_offset !== null
+          ? { length: row.tool_length as number, offset: row.tool_offset as number }
+          : null,
+        version: (row.version as string | null) ?? null,
+      };
+    }
+
+    const content = this.blobs.readBytes(contentPath);
+    if (!content) return null;
+    const header = this.indexSarifContent(cacheKey, content);
     this.scheduleFlush();
+    return header;
+  }
+
+  private deleteSarifIndex(cacheKey: string): void {
+    this.exec('DELETE FROM sarif_result_files WHERE cache_key = $key', { $key: cacheKey });
+    this.exec('DELETE FROM sarif_index_files WHERE cache_key = $key', { $key: cacheKey });
+    this.exec('DELETE FROM sarif_result_index WHERE cache_key = $key', { $key: cacheKey });
+    this.exec('DELETE FROM sarif_index_entries WHERE cache_key = $key', { $key: cacheKey });
+  }
+
+  /**
+   * Drop SARIF index rows whose cache entry no longer exists.
+   */
+  private pruneSarifIndex(): void {
+    this.exec('DELETE FROM sarif_result_files WHERE cache_key NOT IN (SELECT cache_key FROM query_result_cache)');
+    this.exec('DELETE FROM sarif_index_files WHERE cache_key NOT IN (SELECT cache_key FROM query_result_cache)');
+    this.exec('DELETE FROM sarif_result_index WHERE cache_key NOT IN (SELECT cache_key FROM query_result_cache)');
+    this.exec('DELETE FROM sarif_index_entries WHERE cache_key NOT IN (SELECT cache_key FROM query_result_cache)');
+  }
+
+  /**
+   * Blob paths referenced by the cache rows matching `where`.
+   */
+  private getCacheContentPaths(where: string, params: Record<string, string> = {}): string[] {
+    const db = this.ensureDb();
+    const stmt = db.prepare(
+      `SELECT content_path FROM query_result_cache WHERE content_path IS NOT NULL AND (${where})`,
+    );
+    stmt.bind(params);
+    const paths: string[] = [];
+    while (stmt.step()) {
+      paths.push(stmt.getAsObject().content_path as string);
+    }
+    stmt.free();
+    return paths;
+  }
+
+  /**
+   * Delete blobs no longer referenced by any cache or profile row.  Blobs
+   * are shared between rows with identical content, so each candidate is
+   * re-checked.
+   */
+  private releaseBlobs(paths: string[]): void {
+    if (paths.length === 0) return;
+    const db = this.ensureDb();
+    const stmt = db.prepare(
+      `SELECT 1 FROM query_result_cache WHERE content_path = $path
+       UNION ALL SELECT 1 FROM evaluator_profiles WHERE content_path = $path LIMIT 1`,
+    );
+    for (const path of new Set(paths)) {
+      stmt.bind({ $path: path });
+      const referenced = stmt.step();
+      stmt.reset();
+      if (!referenced) this.blobs.delete(path);
+    }
+    stmt.free();
   }
 
   /**
    * Look up a cache entry by key. Returns metadata (no content) or null.
+   *
+   * A hit refreshes the entry's access time for LRU eviction.  Hit and miss
+   * counters are only updated by {@link lookupCacheEntry}.
    */
   getCacheEntryMeta(cacheKey: string): {
     cacheKey: string;
     queryName: string;
+    queryPath: string;
     databasePath: string;
     language: string;
     outputFormat: string;
     resultCount: number | null;
+    interpretedPath: string | null;
     ruleId: string | null;
     runId: string;
+    queryFingerprint: string | null;
+    databaseFingerprint: string | null;
+    contentBytes: number;
     createdAt: string;
+    lastAccessedAt: string;
   } | null {
     const db = this.ensureDb();
     const stmt = db.prepare(
-      `SELECT cache_key, query_name, database_path, language, output_format,
-              result_count, rule_id, run_id, created_at
+      `SELECT cache_key, query_name, query_path, database_path, language, output_format,
+              result_count, interpreted_path, rule_id, run_id,
+              query_fingerprint, database_fingerprint, content_bytes, created_at,
+              last_accessed_at
        FROM query_result_cache WHERE cache_key = $key`,
     );
     stmt.bind({ $key: cacheKey });
     if (stmt.step()) {
       const row = stmt.getAsObject();
       stmt.free();
+      const lastAccessedAt = this.touchCacheEntry(
+        cacheKey,
+        (row.last_accessed_at as string | null) ?? (row.created_at as string),
+      );
       return {
         cacheKey: row.cache_key as string,
         queryName: row.query_name as string,
+        queryPath: row.query_path as string,
         databasePath: row.database_path as string,
         language: row.language as string,
         outputFormat: row.output_format as string,
         resultCount: row.result_count as number | null,
+        interpretedPath: (row.interpreted_path as string | null) ?? null,
         ruleId: (row.rule_id as string | null) ?? null,
         runId: (row.run_id as string) ?? '',
+        queryFingerprint: (row.query_fingerprint as string | null) ?? null,
+        databaseFingerprint: (row.database_fingerprint as string | null) ?? null,
+        contentBytes: (row.content_bytes as number | null) ?? 0,
         createdAt: row.created_at as string,
+        lastAccessedAt,
       };
     }
-    stmt.free();
-    return null;
+    stmt.free();
+    return null;
+  }
+
+  /**
+   * Look up a cache entry to reuse its result: its metadata and content, or
+   * null if the entry or its content is missing.  Each call counts as a
+   * cache hit or miss in {@link getCacheStats}.
+   */
+  lookupCacheEntry(cacheKey: string): {
+    content: string;
+    meta: NonNullable<ReturnType<SqliteStore['getCacheEntryMeta']>>;
+  } | null {
+    const meta = this.getCacheEntryMeta(cacheKey);
+    const content = meta ? this.getCacheContent(cacheKey) : null;
+    if (!meta || content === null) {
+      this.cacheMisses++;
+      return null;
+    }
+    this.cacheHits++;
+    return { content, meta };
+  }
+
+  /**
+   * Record an access to a cache entry last accessed at `lastAccessedAt`.
+   * The row is only rewritten when the recorded time is more than
+   * `ACCESS_TOUCH_INTERVAL_MS` old, so repeated reads do not each cost a
+   * journaled write.  Returns the entry's access time.
+   */
+  private touchCacheEntry(cacheKey: string, lastAccessedAt: string): string {
+    const now = Date.now();
+    if (lastAccessedAt >= sqliteTime(now - SqliteStore.ACCESS_TOUCH_INTERVAL_MS)) {
+      return lastAccessedAt;
+    }
+    const accessed = sqliteTime(now);
+    this.exec(
+      'UPDATE query_result_cache SET last_accessed_at = $now WHERE cache_key = $key',
+      { $key: cacheKey, $now: accessed },
+    );
+    this.scheduleFlush();
+    return accessed;
   }
 
   /**
-   * Get the full cached result content by key.
+   * Get the full cached result content by key, read from the blob store.
    */
   getCacheContent(cacheKey: string): string | null {
+    const location = this.getCacheContentLocation(cacheKey);
+    if (!location) return null;
+    if (location.inline !== null) return location.inline;
+    return location.path ? this.blobs.read(location.path) : null;
+  }
+
+  /**
+   * Absolute path of the file holding a cache entry's content, or null if
+   * the entry has none.  Gzip-compressed blobs end in `.gz`.
+   */
+  getCacheContentFile(cacheKey: string): string | null {
+    const location = this.getCacheContentLocation(cacheKey);
+    return location?.path ? this.blobs.resolvePath(location.path) : null;
+  }
+
+  /**
+   * Where a cache entry's content lives: a blob path, or inline for rows
+   * written before the blob store existed (normally migrated at startup).
+   */
+  private getCacheContentLocation(cacheKey: string): { inline: string | null; path: string | null } | null {
     const db = this.ensureDb();
     const stmt = db.prepare(
-      'SELECT result_content FROM query_result_cache WHERE cache_key = $key',
+      'SELECT content_path, result_content FROM query_result_cache WHERE cache_key = $key',
     );
     stmt.bind({ $key: cacheKey });
     if (stmt.step()) {
       const row = stmt.getAsObject();
       stmt.free();
-      return row.result_content as string | null;
+      return {
+        inline: (row.result_content as string | null) ?? null,
+        path: (row.content_path as string | null) ?? null,
+      };
     }
     stmt.free();
     return null;
@@ -734,45 +2168,58 @@ export class SqliteStore {
       maxLines?: number;
     },
   ): { content: string; totalLines: number; returnedLines: number; truncated: boolean } | null {
-    const fullContent = this.getCacheContent(cacheKey);
-    if (fullContent === null) return null;
+    const location = this.getCacheContentLocation(cacheKey);
+    if (!location) return null;
 
-    const allLines = fullContent.split('\n');
-    const totalLines = allLines.length;
-    let selectedLines = allLines;
     const maxLines = options.maxLines ?? 500;
-
-    if (options.lineRange) {
-      const [start, end] = options.lineRange;
-      const startIdx = Math.max(0, start - 1);
-      const endIdx = Math.min(totalLines, end);
-      selectedLines = selectedLines.slice(startIdx, endIdx);
-    }
-
-    const truncated = selectedLines.length > maxLines;
-    if (truncated) {
-      selectedLines = selectedLines.slice(0, maxLines);
+    const [start, end] = options.lineRange ?? [1, Number.MAX_SAFE_INTEGER];
+
+    // Stream the requested window from disk rather than materializing the blob.
+    let window: { lines: string[]; selectedLines: number; totalLines: number } | null = null;
+    if (location.path) {
+      window = this.blobs.readLines(location.path, start, end, maxLines);
+    } else if (location.inline !== null) {
+      const allLines = location.inline.split('\n');
+      const selected = allLines.slice(Math.max(0, start - 1), Math.min(allLines.length, end));
+      window = { lines: selected.slice(0, maxLines), selectedLines: selected.length, totalLines: allLines.length };
     }
+    if (!window) return null;
 
     return {
-      content: selectedLines.join('\n'),
-      totalLines,
-      returnedLines: selectedLines.length,
-      truncated,
+      content: window.lines.join('\n'),
+      totalLines: window.totalLines,
+      returnedLines: window.lines.length,
+      truncated: window.selectedLines > maxLines,
     };
   }
 
   /**
-   * Retrieve a subset of cached SARIF results by index range or file filter.
+   * Retrieve a subset of cached SARIF results by index range, file filter
+   * or rule id.
+   *
+   * Blob-backed SARIF is served from the per-result side index: filters and
+   * ranges are resolved in SQL and only the selected result slices are read
+   * and parsed.  Other content falls back to parsing the whole document.
    */
   getCacheSarifSubset(
     cacheKey: string,
     options: {
       resultIndices?: [number, number];
       fileFilter?: string;
+      ruleId?: string;
       maxResults?: number;
     },
   ): { content: string; totalResults: number; returnedResults: number; truncated: boolean } | null {
+    const location = this.getCacheContentLocation(cacheKey);
+    if (!location) return null;
+    if (location.path) {
+      const header = this.ensureSarifIndex(cacheKey, location.path);
+      if (header) {
+        const indexed = this.getIndexedSarifSubset(cacheKey, location.path, header, options);
+        if (indexed) return indexed;
+      }
+    }
+
     const fullContent = this.getCacheContent(cacheKey);
     if (fullContent === null) return null;
 
@@ -793,6 +2240,13 @@ export class SqliteStore {
         });
       }
 
+      if (options.ruleId) {
+        selected = selected.filter((r: unknown) => {
+          const result = r as { rule?: { id?: string }; ruleId?: string };
+          return (result.ruleId ?? result.rule?.id) === options.ruleId;
+        });
+      }
+
       if (options.resultIndices) {
         const [rawStart, rawEnd] = options.resultIndices;
         const total = selected.length;
@@ -840,6 +2294,97 @@ export class SqliteStore {
     }
   }
 
+  /**
+   * Serve a SARIF subset from the side index.  Returns null if the blob
+   * could not be read, so the caller can fall back to a full parse.
+   */
+  private getIndexedSarifSubset(
+    cacheKey: string,
+    contentPath: string,
+    header: SarifIndexHeader,
+    options: {
+      resultIndices?: [number, number];
+      fileFilter?: string;
+      ruleId?: string;
+      maxResults?: number;
+    },
+  ): { content: string; totalResults: number; returnedResults: number; truncated: boolean } | null {
+    const db = this.ensureDb();
+    const maxResults = options.maxResults ?? 100;
+    const conditions = ['cache_key = $key'];
+    const params: Record<string, string | number> = { $key: cacheKey };
+    if (options.fileFilter) {
+      // Substring match against the file of any location, as in the
+      // full-parse path: each distinct file URI of the entry is tested once
+      // and its results are found through the sarif_result_files key.
+      conditions.push(`result_index IN (
+        SELECT rf.result_index FROM sarif_index_files f
+        JOIN sarif_result_files rf ON rf.cache_key = f.cache_key AND rf.file_id = f.file_id
+        WHERE f.cache_key = $key AND instr(f.file_uri, $file) > 0)`);
+      params.$file = options.fileFilter;
+    }
+    if (options.ruleId) {
+      conditions.push('rule_id = $rule');
+      params.$rule = options.ruleId;
+    }
+    const where = conditions.join(' AND ');
+
+    let filtered = header.resultCount;
+    if (conditions.length > 1) {
+      const countStmt = db.prepare(`SELECT COUNT(*) AS n FROM sarif_result_index WHERE ${where}`);
+      countStmt.bind(params);
+      countStmt.step();
+      filtered = countStmt.getAsObject().n as number;
+      countStmt.free();
+    }
+
+    // resultIndices is an inclusive [start, end] range over the filtered results.
+    let offset = 0;
+    let selectedCount = filtered;
+    if (options.resultIndices) {
+      const [rawStart, rawEnd] = options.resultIndices;
+      if (Number.isFinite(rawStart) && Number.isFinite(rawEnd) && filtered > 0) {
+        const start = Math.max(0, Math.min(filtered - 1, Math.floor(rawStart)));
+        const end = Math.max(0, Math.min(filtered - 1, Math.floor(rawEnd)));
+        offset = start;
+        selectedCount = end >= start ? end - start + 1 : 0;
+      } else {
+        selectedCount = 0;
+      }
+    }
+    const limit = Math.min(selectedCount, maxResults);
+
+    const ranges: Array<{ offset: number; length: number }> = [];
+    if (limit > 0) {
+      const stmt = db.prepare(
+        `SELECT byte_offset, byte_length FROM sarif_result_index WHERE ${where}
+         ORDER BY result_index LIMIT $limit OFFSET $offset`,
+      );
+      stmt.bind({ ...params, $limit: limit, $offset: offset });
+      while (stmt.step()) {
+        const row = stmt.getAsObject();
+        ranges.push({ length: row.byte_length as number, offset: row.byte_offset as number });
+      }
+      stmt.free();
+    }
+
+    const texts = this.blobs.readRanges(contentPath, header.tool ? [header.tool, ...ranges] : ranges);
+    if (!texts) return null;
+    const tool = header.tool ? JSON.parse(texts.shift()!) : undefined;
+    const results = texts.map(text => JSON.parse(text));
+
+    const subset = {
+      version: header.version ?? undefined,
+      runs: [{ tool, results }],
+    };
+    return {
+      content: JSON.stringify(subset, null, 2),
+      totalResults: header.resultCount,
+      returnedResults: results.length,
+      truncated: selectedCount > maxResults,
+    };
+  }
+
   /**
    * List cache entries, optionally filtered.
    */
@@ -848,10 +2393,12 @@ export class SqliteStore {
     databasePath?: string;
     language?: string;
     ruleId?: string;
+    databaseFingerprint?: string;
     limit?: number;
   }): Array<{
     cacheKey: string;
     queryName: string;
+    queryPath: string;
     databasePath: string;
     language: string;
     outputFormat: string;
@@ -859,7 +2406,11 @@ export class SqliteStore {
     executionTimeMs: number | null;
     ruleId: string | null;
     runId: string;
+    queryFingerprint: string | null;
+    databaseFingerprint: string | null;
+    contentBytes: number;
     createdAt: string;
+    lastAccessedAt: string;
   }> {
     const db = this.ensureDb();
     const conditions: string[] = [];
@@ -881,9 +2432,15 @@ export class SqliteStore {
       conditions.push('rule_id = $rule_id');
       params.$rule_id = filter.ruleId;
     }
+    if (filter?.databaseFingerprint) {
+      conditions.push('database_fingerprint = $database_fingerprint');
+      params.$database_fingerprint = filter.databaseFingerprint;
+    }
 
-    let sql = `SELECT cache_key, query_name, database_path, language, output_format,
-                      result_count, execution_time_ms, rule_id, run_id, created_at
+    let sql = `SELECT cache_key, query_name, query_path, database_path, language, output_format,
+                      result_count, execution_time_ms, rule_id, run_id,
+                      query_fingerprint, database_fingerprint, content_bytes, created_at,
+                      last_accessed_at
                FROM query_result_cache`;
     if (conditions.length > 0) {
       sql += ' WHERE ' + conditions.join(' AND ');
@@ -901,6 +2458,7 @@ export class SqliteStore {
     const results: Array<{
       cacheKey: string;
       queryName: string;
+      queryPath: string;
       databasePath: string;
       language: string;
       outputFormat: string;
@@ -908,13 +2466,18 @@ export class SqliteStore {
       executionTimeMs: number | null;
       ruleId: string | null;
       runId: string;
+      queryFingerprint: string | null;
+      databaseFingerprint: string | null;
+      contentBytes: number;
       createdAt: string;
+      lastAccessedAt: string;
     }> = [];
     while (stmt.step()) {
       const row = stmt.getAsObject();
       results.push({
         cacheKey: row.cache_key as string,
         queryName: row.query_name as string,
+        queryPath: row.query_path as string,
         databasePath: row.database_path as string,
         language: row.language as string,
         outputFormat: row.output_format as string,
@@ -922,7 +2485,11 @@ export class SqliteStore {
         executionTimeMs: row.execution_time_ms as number | null,
         ruleId: (row.rule_id as string | null) ?? null,
         runId: (row.run_id as string) ?? '',
+        queryFingerprint: (row.query_fingerprint as string | null) ?? null,
+        databaseFingerprint: (row.database_fingerprint as string | null) ?? null,
+        contentBytes: (row.content_bytes as number | null) ?? 0,
         createdAt: row.created_at as string,
+        lastAccessedAt: (row.last_accessed_at as string | null) ?? (row.created_at as string),
       });
     }
     stmt.free();
@@ -940,8 +2507,11 @@ export class SqliteStore {
     all?: boolean;
   }): number {
     if (filter?.all) {
+      const released = this.getCacheContentPaths('1 = 1');
       this.exec('DELETE FROM query_result_cache');
       const deleted = this.getRowsModified();
+      this.releaseBlobs(released);
+      this.pruneSarifIndex();
       this.scheduleFlush();
       return deleted;
     }
@@ -968,14 +2538,559 @@ export class SqliteStore {
 
     if (conditions.length === 0) return 0;
 
-    const db = this.ensureDb();
-    db.run(
+    const released = this.getCacheContentPaths(conditions.join(' AND '), params);
+    this.exec(
       `DELETE FROM query_result_cache WHERE ${conditions.join(' AND ')}`,
       params,
     );
     const deleted = this.getRowsModified();
-    this.dirty = true;
+    this.releaseBlobs(released);
+    this.pruneSarifIndex();
+    this.scheduleFlush();
+    return deleted;
+  }
+
+  /**
+   * Evict the cache entries that violate `policy`: first every entry cached
+   * longer ago than `maxAgeMs`, then, least recently used first, entries of
+   * databases over `maxBytesPerDatabase` and entries while the cache is over
+   * `maxBytes`.  Returns the number of entries and content bytes evicted.
+   */
+  evictCacheEntries(policy: QueryResultCachePolicy = this.resultCachePolicy): { bytes: number; entries: number } {
+    const db = this.ensureDb();
+    const stmt = db.prepare(
+      `SELECT cache_key, database_path, content_bytes, created_at FROM query_result_cache
+       ORDER BY COALESCE(last_accessed_at, created_at), id`,
+    );
+    const entries: Array<{ bytes: number; cacheKey: string; createdAt: string; databasePath: string }> = [];
+    while (stmt.step()) {
+      const row = stmt.getAsObject();
+      entries.push({
+        bytes: (row.content_bytes as number | null) ?? 0,
+        cacheKey: row.cache_key as string,
+        createdAt: row.created_at as string,
+        databasePath: row.database_path as string,
+      });
+    }
+    stmt.free();
+
+    const ageCutoff = policy.maxAgeMs > 0 ? sqliteTime(Date.now() - policy.maxAgeMs) : null;
+    const evicted = new Map<string, QueryResultCacheEvictionReason>();
+    const databaseBytes = new Map<string, number>();
+    let totalBytes = 0;
+    for (const entry of entries) {
+      if (ageCutoff && entry.createdAt < ageCutoff) {
+        evicted.set(entry.cacheKey, 'age');
+        continue;
+      }
+      totalBytes += entry.bytes;
+      databaseBytes.set(entry.databasePath, (databaseBytes.get(entry.databasePath) ?? 0) + entry.bytes);
+    }
+    for (const entry of entries) {
+      if (evicted.has(entry.cacheKey)) continue;
+      const inDatabase = databaseBytes.get(entry.databasePath)!;
+      let reason: QueryResultCacheEvictionReason;
+      if (policy.maxBytesPerDatabase > 0 && inDatabase > policy.maxBytesPerDatabase) {
+        reason = 'databaseQuota';
+      } else if (policy.maxBytes > 0 && totalBytes > policy.maxBytes) {
+        reason = 'size';
+      } else {
+        continue;
+      }
+      evicted.set(entry.cacheKey, reason);
+      totalBytes -= entry.bytes;
+      databaseBytes.set(entry.databasePath, inDatabase - entry.bytes);
+    }
+
+    this.cacheEvicted.lastRunAt = sqliteNow();
+    if (evicted.size === 0) return { bytes: 0, entries: 0 };
+
+    let bytes = 0;
+    for (const entry of entries) {
+      const reason = evicted.get(entry.cacheKey);
+      if (!reason) continue;
+      bytes += entry.bytes;
+      this.cacheEvicted.byReason[reason]++;
+    }
+    const keys = [...evicted.keys()];
+    for (let i = 0; i < keys.length; i += SqliteStore.SARIF_INDEX_BATCH_ROWS) {
+      const params: Record<string, string> = {};
+      const placeholders = keys.slice(i, i + SqliteStore.SARIF_INDEX_BATCH_ROWS).map((key, j) => {
+        params[`$k${j}`] = key;
+        return `$k${j}`;
+      });
+      const where = `cache_key IN (${placeholders.join(', ')})`;
+      const released = this.getCacheContentPaths(where, params);
+      this.exec(`DELETE FROM query_result_cache WHERE ${where}`, params);
+      this.exec(`DELETE FROM sarif_result_files WHERE ${where}`, params);
+      this.exec(`DELETE FROM sarif_index_files WHERE ${where}`, params);
+      this.exec(`DELETE FROM sarif_result_index WHERE ${where}`, params);
+      this.exec(`DELETE FROM sarif_index_entries WHERE ${where}`, params);
+      this.releaseBlobs(released);
+    }
+    this.cacheEvicted.bytes += bytes;
+    this.cacheEvicted.entries += keys.length;
+    this.scheduleFlush();
+    logger.info(`Evicted ${keys.length} query result cache entries (${bytes} bytes)`);
+    return { bytes, entries: keys.length };
+  }
+
+  /**
+   * Occupancy of the query result cache, with the lookup and eviction
+   * counters of this store instance.
+   */
+  getCacheStats(topDatabases = 10): QueryResultCacheStats {
+    const db = this.ensureDb();
+    const [entries, bytes] = db.exec(
+      'SELECT COUNT(*), COALESCE(SUM(content_bytes), 0) FROM query_result_cache',
+    )[0].values[0] as [number, number];
+
+    const stmt = db.prepare(
+      `SELECT database_path, COUNT(*) AS entries, COALESCE(SUM(content_bytes), 0) AS bytes
+       FROM query_result_cache GROUP BY database_path
+       ORDER BY bytes DESC, database_path LIMIT $limit`,
+    );
+    stmt.bind({ $limit: topDatabases });
+    const databases: QueryResultCacheStats['databases'] = [];
+    while (stmt.step()) {
+      const row = stmt.getAsObject();
+      databases.push({
+        bytes: row.bytes as number,
+        databasePath: row.database_path as string,
+        entries: row.entries as number,
+      });
+    }
+    stmt.free();
+
+    const lookups = this.cacheHits + this.cacheMisses;
+    return {
+      databases,
+      evicted: { ...this.cacheEvicted, byReason: { ...this.cacheEvicted.byReason } },
+      lookups: {
+        hitRatio: lookups > 0 ? this.cacheHits / lookups : null,
+        hits: this.cacheHits,
+        misses: this.cacheMisses,
+      },
+      occupancy: { bytes, entries },
+      policy: { ...this.resultCachePolicy },
+    };
+  }
+
+  // ---------------------------------------------------------------------------
+  // Evaluator profiles
+  // ---------------------------------------------------------------------------
+
+  /**
+   * Store a parsed evaluator log, replacing any profile of the same log,
+   * kind and detail level.  `content` (the serialized profile) is written to
+   * the blob store.
+   */
+  putEvaluatorProfile(entry: Omit<EvaluatorProfileMeta, 'createdAt'> & { content: string }): void {
+    const blob = this.blobs.put(entry.content);
+    const detailTopK = entry.detailTopK ?? -1;
+    const replaced = this.getEvaluatorProfileContentPaths(entry.logHash, entry.kind, detailTopK);
+    this.exec(
+      `INSERT OR REPLACE INTO evaluator_profiles
+       (log_hash, kind, detail_top_k, log_path, log_bytes, query_path, database_path,
+        query_fingerprint, database_fingerprint, content_path, content_digest, created_at)
+       VALUES ($log_hash, $kind, $detail_top_k, $log_path, $log_bytes, $query_path,
+        $database_path, $query_fingerprint, $database_fingerprint, $content_path,
+        $content_digest, $now)`,
+      {
+        $log_hash: entry.logHash,
+        $kind: entry.kind,
+        $detail_top_k: detailTopK,
+        $log_path: entry.logPath,
+        $log_bytes: entry.logBytes,
+        $query_path: entry.queryPath,
+        $database_path: entry.databasePath,
+        $query_fingerprint: entry.queryFingerprint,
+        $database_fingerprint: entry.databaseFingerprint,
+        $content_path: blob.path,
+        $content_digest: blob.digest,
+        $now: sqliteNow(),
+      },
+    );
+    this.releaseBlobs(replaced.filter(path => path !== blob.path));
+    this.scheduleFlush();
+  }
+
+  /**
+   * Look up a stored profile of the log with hash `logHash`.  A `profile`
+   * with RA detail for at least `detailTopK` predicates per query (any, when
+   * omitted) satisfies the lookup; the least detailed such profile wins.
+   *
+   * @returns The metadata and serialized profile, or null if none is stored
+   *   or its blob is gone.
+   */
+  getEvaluatorProfile(
+    logHash: string,
+    kind: EvaluatorProfileKind,
+    detailTopK: number | null = 0,
+  ): { content: string; meta: EvaluatorProfileMeta } | null {
+    const db = this.ensureDb();
+    const stmt = db.prepare(
+      `SELECT * FROM evaluator_profiles
+       WHERE log_hash = $log_hash AND kind = $kind
+         AND (detail_top_k = -1 OR detail_top_k >= $detail_top_k)
+       ORDER BY detail_top_k = -1, detail_top_k
+       LIMIT 1`,
+    );
+    stmt.bind({ $detail_top_k: detailTopK ?? Number.MAX_SAFE_INTEGER, $kind: kind, $log_hash: logHash });
+    const row = stmt.step() ? stmt.getAsObject() : null;
+    stmt.free();
+    if (!row) return null;
+    const content = this.blobs.read(row.content_path as string);
+    return content === null ? null : { content, meta: toEvaluatorProfileMeta(row) };
+  }
+
+  /**
+   * Most recently stored profile of a run of `queryPath` against
+   * `databasePath`, or null.
+   */
+  findEvaluatorProfileForRun(
+    kind: EvaluatorProfileKind,
+    queryPath: string,
+    databasePath: string,
+  ): EvaluatorProfileMeta | null {
+    const db = this.ensureDb();
+    const stmt = db.prepare(
+      `SELECT * FROM evaluator_profiles
+       WHERE query_path = $query_path AND database_path = $database_path AND kind = $kind
+       ORDER BY created_at DESC
+       LIMIT 1`,
+    );
+    stmt.bind({ $database_path: databasePath, $kind: kind, $query_path: queryPath });
+    const row = stmt.step() ? stmt.getAsObject() : null;
+    stmt.free();
+    return row ? toEvaluatorProfileMeta(row) : null;
+  }
+
+  /**
+   * Delete every stored profile of a log.  Returns the number deleted.
+   */
+  deleteEvaluatorProfiles(logHash: string): number {
+    const released = this.getEvaluatorProfileContentPaths(logHash);
+    this.exec('DELETE FROM evaluator_profiles WHERE log_hash = $log_hash', { $log_hash: logHash });
+    const deleted = this.getRowsModified();
+    this.releaseBlobs(released);
     this.scheduleFlush();
     return deleted;
   }
+
+  private getEvaluatorProfileContentPaths(logHash: string, kind?: EvaluatorProfileKind, detailTopK?: number): string[] {
+    const db = this.ensureDb();
+    const stmt = db.prepare(
+      `SELECT content_path FROM evaluator_profiles
+       WHERE log_hash = $log_hash
+         AND ($kind IS NULL OR kind = $kind)
+         AND ($detail_top_k IS NULL OR detail_top_k = $detail_top_k)`,
+    );
+    stmt.bind({ $detail_top_k: detailTopK ?? null, $kind: kind ?? null, $log_hash: logHash });
+    const paths: string[] = [];
+    while (stmt.step()) {
+      paths.push(stmt.getAsObject().content_path as string);
+    }
+    stmt.free();
+    return paths;
+  }
+
+  // ---------------------------------------------------------------------------
+  // Discovery catalog
+  // ---------------------------------------------------------------------------
+
+  /**
+   * All persisted catalog entries of `kind` under `baseDir`.
+   */
+  getDiscoveryEntries(kind: string, baseDir: string): DiscoveryCatalogRow[] {
+    const db = this.ensureDb();
+    const stmt = db.prepare(
+      `SELECT entry_name, signature, dependencies, data FROM discovery_catalog
+       WHERE kind = $kind AND base_dir = $base_dir`,
+    );
+    stmt.bind({ $base_dir: baseDir, $kind: kind });
+    const rows: DiscoveryCatalogRow[] = [];
+    while (stmt.step()) {
+      const row = stmt.getAsObject();
+      rows.push({
+        data: row.data as string,
+        dependencies: row.dependencies as string,
+        entryName: row.entry_name as string,
+        signature: row.signature as string,
+      });
+    }
+    stmt.free();
+    return rows;
+  }
+
+  /**
+   * Insert or replace catalog entries of `kind` under `baseDir`, and delete
+   * the entries named in `removed`.
+   */
+  updateDiscoveryEntries(
+    kind: string,
+    baseDir: string,
+    rows: DiscoveryCatalogRow[],
+    removed: string[] = [],
+  ): void {
+    if (rows.length === 0 && removed.length === 0) return;
+    const now = sqliteNow();
+    for (const row of rows) {
+      this.exec(
+        `INSERT OR REPLACE INTO discovery_catalog
+         (kind, base_dir, entry_name, signature, dependencies, data, updated_at)
+         VALUES ($kind, $base_dir, $entry_name, $signature, $dependencies, $data, $now)`,
+        {
+          $base_dir: baseDir,
+          $data: row.data,
+          $dependencies: row.dependencies,
+          $entry_name: row.entryName,
+          $kind: kind,
+          $now: now,
+          $signature: row.signature,
+        },
+      );
+    }
+    for (const entryName of removed) {
+      this.exec(
+        'DELETE FROM discovery_catalog WHERE kind = $kind AND base_dir = $base_dir AND entry_name = $entry_name',
+        { $base_dir: baseDir, $entry_name: entryName, $kind: kind },
+      );
+    }
+    this.scheduleFlush();
+  }
+
+  /**
+   * Delete every catalog entry of `kind` under `baseDir`.
+   */
+  deleteDiscoveryEntries(kind: string, baseDir: string): void {
+    this.exec(
+      'DELETE FROM discovery_catalog WHERE kind = $kind AND base_dir = $base_dir',
+      { $base_dir: baseDir, $kind: kind },
+    );
+    this.scheduleFlush();
+  }
+
+  // ---------------------------------------------------------------------------
+  // MRVA results
+  // ---------------------------------------------------------------------------
+
+  /**
+   * Ingestion state of every repository of an MRVA run.
+   */
+  getMrvaRepos(runPath: string): MrvaRepoIngestRow[] {
+    const db = this.ensureDb();
+    const stmt = db.prepare('SELECT * FROM mrva_repos WHERE run_path = $run_path ORDER BY full_name');
+    stmt.bind({ $run_path: runPath });
+    const rows: MrvaRepoIngestRow[] = [];
+    while (stmt.step()) {
+      const row = stmt.getAsObject();
+      rows.push({
+        error: (row.error as string | null) ?? null,
+        fullName: row.full_name as string,
+        ingestedAt: row.ingested_at as string,
+        resultCount: row.result_count as number,
+        sarifBytes: row.sarif_bytes as number,
+        sarifMtimeMs: row.sarif_mtime_ms as number,
+        sarifPath: row.sarif_path as string,
+      });
+    }
+    stmt.free();
+    return rows;
+  }
+
+  /**
+   * Replace the results of one repository of an MRVA run.
+   */
+  putMrvaRepoResults(runPath: string, repo: Omit<MrvaRepoIngestRow, 'ingestedAt' | 'resultCount'>, rows: MrvaResultRow[]): void {
+    this.exec(
+      'DELETE FROM mrva_results WHERE run_path = $run_path AND full_name = $full_name',
+      { $full_name: repo.fullName, $run_path: runPath },
+    );
+    for (let i = 0; i < rows.length; i += SqliteStore.SARIF_INDEX_BATCH_ROWS) {
+      const batch = rows.slice(i, i + SqliteStore.SARIF_INDEX_BATCH_ROWS);
+      const params: Record<string, string | number | null> = { $full_name: repo.fullName, $run_path: runPath };
+      const values = batch.map((row, j) => {
+        params[`$i${j}`] = row.resultIndex;
+        params[`$r${j}`] = row.ruleId;
+        params[`$f${j}`] = row.filePath;
+        params[`$l${j}`] = row.startLine;
+        params[`$v${j}`] = row.level;
+        params[`$p${j}`] = row.fingerprint;
+        params[`$m${j}`] = row.message;
+        return `($run_path, $full_name, $i${j}, $r${j}, $f${j}, $l${j}, $v${j}, $p${j}, $m${j})`;
+      });
+      this.exec(
+        `INSERT OR REPLACE INTO mrva_results
+         (run_path, full_name, result_index, rule_id, file_path, start_line, level, fingerprint, message)
+         VALUES ${values.join(', ')}`,
+        params,
+      );
+    }
+    this.exec(
+      `INSERT OR REPLACE INTO mrva_repos
+       (run_path, full_name, sarif_path, sarif_mtime_ms, sarif_bytes, result_count, error, ingested_at)
+       VALUES ($run_path, $full_name, $sarif_path, $sarif_mtime_ms, $sarif_bytes, $result_count, $error, $now)`,
+      {
+        $error: repo.error,
+        $full_name: repo.fullName,
+        $now: sqliteNow(),
+        $result_count: rows.length,
+        $run_path: runPath,
+        $sarif_bytes: repo.sarifBytes,
+        $sarif_mtime_ms: repo.sarifMtimeMs,
+        $sarif_path: repo.sarifPath,
+      },
+    );
+    this.scheduleFlush();
+  }
+
+  /**
+   * Delete the results of the named repositories of an MRVA run, or of the
+   * whole run when `fullNames` is omitted.
+   */
+  deleteMrvaResults(runPath: string, fullNames?: string[]): void {
+    if (fullNames === undefined) {
+      this.exec('DELETE FROM mrva_results WHERE run_path = $run_path', { $run_path: runPath });
+      this.exec('DELETE FROM mrva_repos WHERE run_path = $run_path', { $run_path: runPath });
+    } else {
+      for (const fullName of fullNames) {
+        const params = { $full_name: fullName, $run_path: runPath };
+        this.exec('DELETE FROM mrva_results WHERE run_path = $run_path AND full_name = $full_name', params);
+        this.exec('DELETE FROM mrva_repos WHERE run_path = $run_path AND full_name = $full_name', params);
+      }
+    }
+    this.scheduleFlush();
+  }
+
+  /**
+   * Page through the ingested results matching `filter`, ordered by
+   * repository and result index.
+   */
+  queryMrvaResults(
+    filter: MrvaResultFilter,
+    limit: number,
+    offset = 0,
+  ): { results: MrvaResultRow[]; total: number } {
+    const db = this.ensureDb();
+    const { params, where } = mrvaResultConditions(filter);
+
+    const countStmt = db.prepare(`SELECT COUNT(*) AS n FROM mrva_results WHERE ${where}`);
+    countStmt.bind(params);
+    countStmt.step();
+    const total = countStmt.getAsObject().n as number;
+    countStmt.free();
+
+    const stmt = db.prepare(
+      `SELECT * FROM mrva_results WHERE ${where}
+       ORDER BY full_name, result_index LIMIT $limit OFFSET $offset`,
+    );
+    stmt.bind({ ...params, $limit: limit, $offset: offset });
+    const results: MrvaResultRow[] = [];
+    while (stmt.step()) {
+      const row = stmt.getAsObject();
+      results.push({
+        filePath: (row.file_path as string | null) ?? null,
+        fingerprint: (row.fingerprint as string | null) ?? null,
+        fullName: row.full_name as string,
+        level: (row.level as string | null) ?? null,
+        message: row.message as string,
+        resultIndex: row.result_index as number,
+        ruleId: (row.rule_id as string | null) ?? null,
+        startLine: (row.start_line as number | null) ?? null,
+      });
+    }
+    stmt.free();
+    return { results, total };
+  }
+
+  /**
+   * Count the ingested results matching `filter` per rule, repository, file
+   * or fingerprint, most results first.
+   *
+   * @returns The top `limit` groups with their result and repository counts,
+   *   and the number of groups.
+   */
+  aggregateMrvaResults(
+    filter: MrvaResultFilter,
+    groupBy: MrvaResultGroupBy,
+    limit: number,
+  ): { groups: Array<{ key: string | null; repos: number; results: number }>; totalGroups: number } {
+    const db = this.ensureDb();
+    const column = { file: 'file_path', fingerprint: 'fingerprint', repo: 'full_name', rule: 'rule_id' }[groupBy];
+    const { params, where } = mrvaResultConditions(filter);
+
+    // Counted over the groups, so a NULL group counts too.
+    const countStmt = db.prepare(
+      `SELECT COUNT(*) AS n FROM (SELECT 1 FROM mrva_results WHERE ${where} GROUP BY ${column})`,
+    );
+    countStmt.bind(params);
+    countStmt.step();
+    const totalGroups = countStmt.getAsObject().n as number;
+    countStmt.free();
+
+    const stmt = db.prepare(
+      `SELECT ${column} AS key, COUNT(*) AS results, COUNT(DISTINCT full_name) AS repos
+       FROM mrva_results WHERE ${where}
+       GROUP BY ${column}
+       ORDER BY results DESC, key
+       LIMIT $limit`,
+    );
+    stmt.bind({ ...params, $limit: limit });
+    const groups: Array<{ key: string | null; repos: number; results: number }> = [];
+    while (stmt.step()) {
+      const row = stmt.getAsObject();
+      groups.push({
+        key: (row.key as string | null) ?? null,
+        repos: row.repos as number,
+        results: row.results as number,
+      });
+    }
+    stmt.free();
+    return { groups, totalGroups };
+  }
+}
+
+/**
+ * WHERE clause and parameters of an MRVA result filter.
+ */
+function mrvaResultConditions(filter: MrvaResultFilter): { params: Record<string, string>; where: string } {
+  const conditions = ['run_path = $run_path'];
+  const params: Record<string, string> = { $run_path: filter.runPath };
+  if (filter.ruleId) {
+    conditions.push('rule_id = $rule');
+    params.$rule = filter.ruleId;
+  }
+  if (filter.fullName) {
+    conditions.push('full_name = $repo');
+    params.$repo = filter.fullName;
+  }
+  if (filter.filePattern) {
+    conditions.push('file_path GLOB $file');
+    params.$file = filter.filePattern;
+  }
+  if (filter.fingerprint) {
+    conditions.push('fingerprint = $fingerprint');
+    params.$fingerprint = filter.fingerprint;
+  }
+  return { params, where: conditions.join(' AND ') };
+}
+
+/**
+ * Map an `evaluator_profiles` row to {@link EvaluatorProfileMeta}.
+ */
+function toEvaluatorProfileMeta(row: Record<string, unknown>): EvaluatorProfileMeta {
+  const detailTopK = row.detail_top_k as number;
+  return {
+    createdAt: row.created_at as string,
+    databaseFingerprint: (row.database_fingerprint as string | null) ?? null,
+    databasePath: (row.database_path as string | null) ?? null,
+    detailTopK: detailTopK < 0 ? null : detailTopK,
+    kind: row.kind as EvaluatorProfileKind,
+    logBytes: row.log_bytes as number,
+    logHash: row.log_hash as string,
+    logPath: row.log_path as string,
+    queryFingerprint: (row.query_fingerprint as string | null) ?? null,
+    queryPath: (row.query_path as string | null) ?? null,
+  };
 }
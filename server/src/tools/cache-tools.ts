@@ -1,12 +1,16 @@
 /**
  * Query Results Cache Tools — LLM-facing tools for cached query result
- * lookup, retrieval (with subset selection), clearing, and comparison.
+ * lookup, retrieval (with subset selection), clearing, comparison and
+ * statistics, plus usage statistics of the shared CodeQL
+ * compilation/evaluation cache.
  *
  * Enabled by default alongside annotation tools.
  */
 
 import { McpServer } from '@modelcontextprotocol/sdk/server/mcp.js';
 import { z } from 'zod';
+import { checkCacheEntryFreshness } from '../lib/cache-fingerprint';
+import { getServerManager } from '../lib/server-manager';
 import { sessionDataManager } from '../lib/session-data-manager';
 import { logger } from '../utils/logger';
 
@@ -18,6 +22,8 @@ export function registerCacheTools(server: McpServer): void {
   registerQueryResultsCacheRetrieveTool(server);
   registerQueryResultsCacheClearTool(server);
   registerQueryResultsCacheCompareTool(server);
+  registerQueryResultsCacheStatsTool(server);
+  registerCodeQLCacheStatsTool(server);
 
   logger.info('Registered query results cache tools');
 }
@@ -29,7 +35,7 @@ export function registerCacheTools(server: McpServer): void {
 function registerQueryResultsCacheLookupTool(server: McpServer): void {
   server.tool(
     'query_results_cache_lookup',
-    'Check whether cached query results exist for given parameters. Returns metadata about the cached entry without the full content.',
+    'Check whether cached query results exist for given parameters. Returns metadata about the cached entry without the full content, including its freshness: "fresh" when the query source and database still match the recorded fingerprints, "stale" when either changed, "unknown" when the entry has no fingerprints or its inputs are gone.',
     {
       cacheKey: z.string().optional().describe('Look up by exact cache key (if known).'),
       queryName: z.string().optional().describe('Query name to search for (e.g. "PrintAST", "CallGraphFrom").'),
@@ -37,21 +43,26 @@ function registerQueryResultsCacheLookupTool(server: McpServer): void {
       databasePath: z.string().optional().describe('Database path to search for.'),
       language: z.string().optional().describe('Filter by language (e.g. "cpp", "javascript").'),
       limit: z.number().int().positive().max(500).optional().describe('Maximum number of cache entries to return when listing by filter (default: 50, max: 500).'),
+      excludeStale: z.boolean().optional().describe('Omit entries whose query source or database changed since they were cached.'),
     },
-    async ({ cacheKey, queryName, ruleId, databasePath, language, limit }) => {
+    async ({ cacheKey, queryName, ruleId, databasePath, language, limit, excludeStale }) => {
       const store = sessionDataManager.getStore();
+      const fingerprintMemo = new Map<string, string>();
 
       // Exact lookup by cache key
       if (cacheKey) {
         const meta = store.getCacheEntryMeta(cacheKey);
         if (meta) {
-          return { content: [{ type: 'text' as const, text: JSON.stringify({ cached: true, ...meta }, null, 2) }] };
+          const freshness = checkCacheEntryFreshness(meta, fingerprintMemo);
+          return { content: [{ type: 'text' as const, text: JSON.stringify({ cached: true, ...meta, freshness }, null, 2) }] };
         }
         return { content: [{ type: 'text' as const, text: JSON.stringify({ cached: false, cacheKey }) }] };
       }
 
       // List matching entries
-      const entries = store.listCacheEntries({ queryName, ruleId, databasePath, language, limit: limit ?? 50 });
+      const entries = store.listCacheEntries({ queryName, ruleId, databasePath, language, limit: limit ?? 50 })
+        .map(entry => ({ ...entry, freshness: checkCacheEntryFreshness(entry, fingerprintMemo) }))
+        .filter(entry => !excludeStale || entry.freshness !== 'stale');
       if (entries.length === 0) {
         return { content: [{ type: 'text' as const, text: JSON.stringify({ cached: false, queryName, ruleId, databasePath, language }) }] };
       }
@@ -73,7 +84,7 @@ function registerQueryResultsCacheLookupTool(server: McpServer): void {
 function registerQueryResultsCacheRetrieveTool(server: McpServer): void {
   server.tool(
     'query_results_cache_retrieve',
-    'Retrieve cached query results with optional subset selection. Supports line ranges (for graphtext/CSV) and SARIF result indices and file filtering to return only the relevant portion.',
+    'Retrieve cached query results with optional subset selection. Supports line ranges (for graphtext/CSV) and SARIF result indices, file and rule filtering to return only the relevant portion. SARIF subsets are served from a per-result index, so paging through large result sets does not re-parse the document.',
     {
       cacheKey: z.string().describe('The cache key of the result to retrieve.'),
       lineRange: z
@@ -92,11 +103,12 @@ function registerQueryResultsCacheRetrieveTool(server: McpServer): void {
         .refine(({ start, end }) => start <= end, { message: 'resultIndices.start must be <= resultIndices.end' })
         .optional()
         .describe('SARIF result index range {start, end} (0-indexed, inclusive). For SARIF output only.'),
-      fileFilter: z.string().optional().describe('For SARIF: only include results whose file path contains this string.'),
+      fileFilter: z.string().optional().describe('For SARIF: only include results with a location whose file path contains this string.'),
+      ruleFilter: z.string().optional().describe('For SARIF: only include results with this ruleId.'),
       maxLines: z.number().int().positive().optional().describe('Maximum number of lines to return for line-based formats (default: 500).'),
       maxResults: z.number().int().positive().optional().describe('Maximum number of SARIF results to return (default: 100).'),
     },
-    async ({ cacheKey, lineRange, resultIndices, fileFilter, maxLines, maxResults }) => {
+    async ({ cacheKey, lineRange, resultIndices, fileFilter, ruleFilter, maxLines, maxResults }) => {
       const store = sessionDataManager.getStore();
       const meta = store.getCacheEntryMeta(cacheKey);
 
@@ -111,6 +123,7 @@ function registerQueryResultsCacheRetrieveTool(server: McpServer): void {
         const subset = store.getCacheSarifSubset(cacheKey, {
           resultIndices: resultIndices ? [resultIndices.start, resultIndices.end] : undefined,
           fileFilter,
+          ruleId: ruleFilter,
           maxResults,
         });
         if (!subset) {
@@ -197,7 +210,7 @@ function registerQueryResultsCacheClearTool(server: McpServer): void {
 function registerQueryResultsCacheCompareTool(server: McpServer): void {
   server.tool(
     'query_results_cache_compare',
-    'Compare cached query results across multiple databases for the same query. Useful for MRVA-style cross-repository analysis.',
+    'Compare cached query results across multiple databases for the same query. Useful for MRVA-style cross-repository analysis. For each database, the latest entry that still matches the current query source and database contents is used; stale entries are only counted.',
     {
       queryName: z.string().optional().describe('The query name to compare across databases.'),
       ruleId: z.string().optional().describe('The CodeQL query @id to compare across databases (preferred over queryName).'),
@@ -223,13 +236,17 @@ function registerQueryResultsCacheCompareTool(server: McpServer): void {
         byDatabase.get(key)!.push(entry);
       }
 
+      const fingerprintMemo = new Map<string, string>();
       const comparison = Array.from(byDatabase.entries()).map(([db, dbEntries]) => {
-        // Use the latest entry's result count (entries are sorted by createdAt DESC).
-        // When multiple cache entries exist for the same ruleId on the same database
-        // (e.g. one from query_run and another from database_analyze decomposition),
-        // the latest entry is the most representative.
-        const latestEntry = dbEntries[0];
-        const resultCount = latestEntry.resultCount ?? 0;
+        // Use the latest non-stale entry's result count (entries are sorted by
+        // createdAt DESC). When multiple cache entries exist for the same ruleId
+        // on the same database (e.g. one from query_run and another from
+        // database_analyze decomposition), the latest entry is the most
+        // representative — unless the database or query changed since, in
+        // which case its counts describe a database that no longer exists.
+        const withFreshness = dbEntries.map(e => ({ entry: e, freshness: checkCacheEntryFreshness(e, fingerprintMemo) }));
+        const selected = withFreshness.find(e => e.freshness !== 'stale') ?? withFreshness[0];
+        const resultCount = selected.entry.resultCount ?? 0;
         return {
           database: db,
           languages: [...new Set(dbEntries.map(e => e.language))],
@@ -237,7 +254,11 @@ function registerQueryResultsCacheCompareTool(server: McpServer): void {
           resultCount,
           totalResultCount: resultCount,
           cachedRuns: dbEntries.length,
-          latestCachedAt: dbEntries[0].createdAt,
+          staleRuns: withFreshness.filter(e => e.freshness === 'stale').length,
+          freshness: selected.freshness,
+          databaseFingerprint: selected.entry.databaseFingerprint,
+          cacheKey: selected.entry.cacheKey,
+          latestCachedAt: selected.entry.createdAt,
         };
       });
 
@@ -255,3 +276,37 @@ function registerQueryResultsCacheCompareTool(server: McpServer): void {
     },
   );
 }
+
+// ---------------------------------------------------------------------------
+// query_results_cache_stats
+// ---------------------------------------------------------------------------
+
+function registerQueryResultsCacheStatsTool(server: McpServer): void {
+  server.tool(
+    'query_results_cache_stats',
+    'Report the occupancy of the query results cache (entries and content bytes, overall and for the largest databases), its eviction policy, the hit ratio of codeql_query_run read-through lookups, and the entries and bytes evicted by age, per-database quota or total size since the server started.',
+    {
+      topDatabases: z.number().int().positive().max(100).optional().describe('Number of databases with the most cached content to list (default: 10, max: 100).'),
+    },
+    async ({ topDatabases }) => {
+      const stats = sessionDataManager.getStore().getCacheStats(topDatabases ?? 10);
+      return { content: [{ type: 'text' as const, text: JSON.stringify(stats, null, 2) }] };
+    },
+  );
+}
+
+// ---------------------------------------------------------------------------
+// codeql_cache_stats
+// ---------------------------------------------------------------------------
+
+function registerCodeQLCacheStatsTool(server: McpServer): void {
+  server.tool(
+    'codeql_cache_stats',
+    'Report the size and hit rates of the shared CodeQL compilation/evaluation cache that persists across server restarts. Lists one generation per CodeQL CLI version with its size, last use, active server leases, and the fraction of predicates served from the cache in recorded query runs.',
+    {},
+    async () => {
+      const stats = await getServerManager().getSharedCache().getStats();
+      return { content: [{ type: 'text' as const, text: JSON.stringify(stats, null, 2) }] };
+    },
+  );
+}
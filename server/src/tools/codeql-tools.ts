@@ -39,6 +39,9 @@ import {
   registerListDatabasesTool,
   registerListMrvaRunResultsTool,
   registerListQueryRunResultsTool,
+  registerMrvaResultsIngestTool,
+  registerMrvaResultsQueryTool,
+  registerProfileCodeQLQueryDiffTool,
   registerProfileCodeQLQueryFromLogsTool,
   registerProfileCodeQLQueryTool,
   registerQuickEvaluateTool,
@@ -171,6 +174,9 @@ export function registerCodeQLTools(server: McpServer): void {
   registerListDatabasesTool(server);
   registerListMrvaRunResultsTool(server);
   registerListQueryRunResultsTool(server);
+  registerMrvaResultsIngestTool(server);
+  registerMrvaResultsQueryTool(server);
+  registerProfileCodeQLQueryDiffTool(server);
   registerProfileCodeQLQueryFromLogsTool(server);
   registerProfileCodeQLQueryTool(server);
   registerQuickEvaluateTool(server);
@@ -16,8 +16,10 @@ export { codeqlGenerateQueryHelpTool } from './generate-query-help';
 export { registerListDatabasesTool } from './list-databases';
 export { registerListMrvaRunResultsTool } from './list-mrva-run-results';
 export { registerListQueryRunResultsTool } from './list-query-run-results';
+export { registerMrvaResultsIngestTool, registerMrvaResultsQueryTool } from './mrva-results';
 export { codeqlPackInstallTool } from './pack-install';
 export { codeqlPackLsTool } from './pack-ls';
+export { registerProfileCodeQLQueryDiffTool } from './profile-codeql-query-diff';
 export { registerProfileCodeQLQueryFromLogsTool } from './profile-codeql-query-from-logs';
 export { registerProfileCodeQLQueryTool } from './profile-codeql-query';
 export { codeqlQueryCompileTool } from './query-compile';
@@ -4,14 +4,16 @@
  * Discovers CodeQL databases in configured base directories.
  * Scans each directory in `CODEQL_DATABASES_BASE_DIRS` for subdirectories
  * containing `codeql-database.yml`, extracts metadata (language, CLI version,
- * creation time), and returns the list.
+ * creation time), and returns the list.  Scans are incremental: see
+ * `discovery-catalog.ts`.
  */
 
 import { McpServer } from '@modelcontextprotocol/sdk/server/mcp.js';
-import { existsSync, readdirSync, statSync } from 'fs';
+import { readdir, readFile, stat } from 'fs/promises';
 import { join } from 'path';
 import { z } from 'zod';
-import { readDatabaseMetadata } from '../../lib/database-resolver';
+import { type DatabaseMetadata, parseDatabaseYmlContent } from '../../lib/database-resolver';
+import { type CatalogEntryLoad, DiscoveryCatalog } from '../../lib/discovery-catalog';
 import { getDatabaseBaseDirs } from '../../lib/discovery-config';
 import { logger } from '../../utils/logger';
 
@@ -23,6 +25,58 @@ export interface DatabaseInfo {
   path: string;
 }
 
+/**
+ * Read one subdirectory of a database base directory.  Directories without
+ * `codeql-database.yml` or `codeql-database.yaml` are not databases.
+ */
+async function loadDatabase(entryPath: string, entry: string): Promise<CatalogEntryLoad<DatabaseInfo>> {
+  let children: string[];
+  try {
+    // Skip non-directories
+    if (!(await stat(entryPath)).isDirectory()) {
+      return { directories: [], files: [entryPath], value: null };
+    }
+    children = await readdir(entryPath);
+  } catch {
+    return { directories: [], files: [entryPath], value: null };
+  }
+
+  const metadataFile = ['codeql-database.yml', 'codeql-database.yaml']
+    .find((name) => children.includes(name));
+  if (!metadataFile) {
+    return { directories: [entryPath], files: [], value: null };
+  }
+
+  let metadata: DatabaseMetadata = {};
+  try {
+    metadata = parseDatabaseYmlContent(await readFile(join(entryPath, metadataFile), 'utf8'));
+  } catch {
+    // Unreadable metadata: list the database without it
+  }
+
+  return {
+    directories: [entryPath],
+    files: [join(entryPath, metadataFile)],
+    value: {
+      cliVersion: metadata.cliVersion,
+      creationTime: metadata.creationTime,
+      language: metadata.language,
+      name: entry,
+      path: entryPath,
+    },
+  };
+}
+
+/**
+ * Databases of the configured base directories, kept up to date by watching
+ * them (see `discovery-catalog.ts`).
+ */
+const databaseCatalog = new DiscoveryCatalog<DatabaseInfo>({
+  baseDirs: getDatabaseBaseDirs,
+  load: loadDatabase,
+  name: 'databases',
+});
+
 /**
  * Discover CodeQL databases in the given base directories.
  *
@@ -34,56 +88,10 @@ export async function discoverDatabases(
   baseDirs: string[],
   language?: string,
 ): Promise<DatabaseInfo[]> {
-  const databases: DatabaseInfo[] = [];
-
-  for (const baseDir of baseDirs) {
-    if (!existsSync(baseDir)) {
-      continue;
-    }
-
-    let entries: string[];
-    try {
-      entries = readdirSync(baseDir);
-    } catch {
-      continue;
-    }
-
-    for (const entry of entries) {
-      const entryPath = join(baseDir, entry);
-
-      // Skip non-directories
-      try {
-        if (!statSync(entryPath).isDirectory()) {
-          continue;
-        }
-      } catch {
-        continue;
-      }
-
-      // Check for codeql-database.yml or codeql-database.yaml
-      if (!existsSync(join(entryPath, 'codeql-database.yml')) &&
-          !existsSync(join(entryPath, 'codeql-database.yaml'))) {
-        continue;
-      }
-
-      const metadata = readDatabaseMetadata(entryPath);
-
-      // Apply language filter
-      if (language && metadata.language !== language) {
-        continue;
-      }
-
-      databases.push({
-        cliVersion: metadata.cliVersion,
-        creationTime: metadata.creationTime,
-        language: metadata.language,
-        name: entry,
-        path: entryPath,
-      });
-    }
-  }
+  const databases = await databaseCatalog.list(baseDirs);
 
-  return databases;
+  // Apply language filter
+  return language ? databases.filter((db) => db.language === language) : databases;
 }
 
 /**
@@ -6,13 +6,15 @@
  * Scans each directory in `CODEQL_MRVA_RUN_RESULTS_DIRS` for numeric
  * subdirectories representing variant analysis runs created by vscode-codeql.
  * Reports run ID, timestamp, repositories scanned, analysis status, and
- * available artifacts for each run.
+ * available artifacts for each run.  Scans are incremental: see
+ * `discovery-catalog.ts`.
  */
 
 import { McpServer } from '@modelcontextprotocol/sdk/server/mcp.js';
-import { existsSync, readdirSync, readFileSync, statSync } from 'fs';
+import { readdir, readFile, stat } from 'fs/promises';
 import { join } from 'path';
 import { z } from 'zod';
+import { type CatalogEntryLoad, DiscoveryCatalog, mapConcurrent } from '../../lib/discovery-catalog';
 import { getMrvaRunResultsDirs } from '../../lib/discovery-config';
 import { logger } from '../../utils/logger';
 
@@ -41,6 +43,66 @@ const NUMERIC_DIR_PATTERN = /^\d+$/;
  */
 const SKIP_DIRS = new Set(['.DS_Store', 'exported-results']);
 
+/**
+ * Repositories of a run read concurrently.
+ */
+const REPO_CONCURRENCY = 16;
+
+/**
+ * Read one subdirectory of an MRVA results directory.  Only numeric
+ * directories are MRVA runs.
+ */
+async function loadMrvaRun(entryPath: string, entry: string): Promise<CatalogEntryLoad<MrvaRunResult>> {
+  // Match numeric directory names (no I/O needed; names never change)
+  if (!NUMERIC_DIR_PATTERN.test(entry)) {
+    return { directories: [], files: [], value: null };
+  }
+
+  // Skip non-directories
+  try {
+    if (!(await stat(entryPath)).isDirectory()) {
+      return { directories: [], files: [entryPath], value: null };
+    }
+  } catch {
+    return { directories: [], files: [entryPath], value: null };
+  }
+
+  // Read timestamp if available
+  let timestamp: string | undefined;
+  const timestampPath = join(entryPath, 'timestamp');
+  try {
+    timestamp = (await readFile(timestampPath, 'utf-8')).trim();
+  } catch {
+    // Missing or unreadable
+  }
+
+  // Discover repository subdirectories
+  const directories = [entryPath];
+  const files = [timestampPath];
+  const repositories = await discoverRepoResults(entryPath, directories, files);
+
+  return {
+    directories,
+    files,
+    value: {
+      path: entryPath,
+      repositories,
+      runId: entry,
+      timestamp,
+    },
+  };
+}
+
+/**
+ * MRVA runs of the configured results directories, kept up to date by
+ * watching them (see `discovery-catalog.ts`).
+ */
+const mrvaRunCatalog = new DiscoveryCatalog<MrvaRunResult>({
+  baseDirs: getMrvaRunResultsDirs,
+  load: loadMrvaRun,
+  name: 'mrva-runs',
+});
+
 /**
  * Discover MRVA run result directories in the given search paths.
  *
@@ -52,66 +114,30 @@ export async function discoverMrvaRunResults(
   resultsDirs: string[],
   runId?: string,
 ): Promise<MrvaRunResult[]> {
-  const results: MrvaRunResult[] = [];
-
-  for (const dir of resultsDirs) {
-    if (!existsSync(dir)) {
-      continue;
-    }
-
-    let entries: string[];
-    try {
-      entries = readdirSync(dir);
-    } catch {
-      continue;
-    }
+  const runs = await mrvaRunCatalog.list(resultsDirs);
 
-    for (const entry of entries) {
-      const entryPath = join(dir, entry);
+  // Apply run ID filter
+  return runId ? runs.filter((run) => run.runId === runId) : runs;
+}
 
-      // Skip non-directories
+/**
+ * Subdirectories of `dir`, in listing order; empty if it cannot be read.
+ */
+async function listSubdirectories(dir: string): Promise<string[]> {
+  try {
+    const entries = await readdir(dir, { withFileTypes: true });
+    const isDirectory = await Promise.all(entries.map(async (e) => {
+      if (!e.isSymbolicLink()) return e.isDirectory();
       try {
-        if (!statSync(entryPath).isDirectory()) {
-          continue;
-        }
+        return (await stat(join(dir, e.name))).isDirectory();
       } catch {
-        continue;
+        return false;
       }
-
-      // Match numeric directory names
-      if (!NUMERIC_DIR_PATTERN.test(entry)) {
-        continue;
-      }
-
-      // Apply run ID filter
-      if (runId && entry !== runId) {
-        continue;
-      }
-
-      // Read timestamp if available
-      let timestamp: string | undefined;
-      const timestampPath = join(entryPath, 'timestamp');
-      if (existsSync(timestampPath)) {
-        try {
-          timestamp = readFileSync(timestampPath, 'utf-8').trim();
-        } catch {
-          // Ignore read errors
-        }
-      }
-
-      // Discover repository subdirectories
-      const repositories = discoverRepoResults(entryPath);
-
-      results.push({
-        path: entryPath,
-        repositories,
-        runId: entry,
-        timestamp,
-      });
-    }
+    }));
+    return entries.filter((_e, i) => isDirectory[i]).map((e) => e.name);
+  } catch {
+    return [];
   }
-
-  return results;
 }
 
 /**
@@ -119,85 +145,59 @@ export async function discoverMrvaRunResults(
  *
  * The directory structure is `<owner>/<repo>/` containing `repo_task.json`
  * and optionally `results/results.sarif` and `results/results.bqrs`.
+ * Directories and files read are appended to `directories` and `files`.
  */
-function discoverRepoResults(runPath: string): MrvaRepoResult[] {
-  const repos: MrvaRepoResult[] = [];
-
-  let ownerEntries: string[];
-  try {
-    ownerEntries = readdirSync(runPath);
-  } catch {
-    return repos;
-  }
-
-  for (const ownerEntry of ownerEntries) {
-    if (SKIP_DIRS.has(ownerEntry)) {
-      continue;
-    }
-
-    // Skip non-directory entries (timestamp, repo_states.json, etc.)
-    const ownerPath = join(runPath, ownerEntry);
+async function discoverRepoResults(
+  runPath: string,
+  directories: string[],
+  files: string[],
+): Promise<MrvaRepoResult[]> {
+  // Non-directory entries (timestamp, repo_states.json, etc.) are skipped
+  const owners = (await listSubdirectories(runPath)).filter((name) => !SKIP_DIRS.has(name));
+  const repoPaths = await mapConcurrent(owners, REPO_CONCURRENCY, async (owner) => {
+    const ownerPath = join(runPath, owner);
+    directories.push(ownerPath);
+    return (await listSubdirectories(ownerPath)).map((repo) => ({ fullName: `${owner}/${repo}`, repoPath: join(ownerPath, repo) }));
+  });
+
+  return mapConcurrent(repoPaths.flat(), REPO_CONCURRENCY, async ({ fullName, repoPath }) => {
+    const repoTaskPath = join(repoPath, 'repo_task.json');
+    const resultsPath = join(repoPath, 'results');
+    directories.push(repoPath);
+    files.push(repoTaskPath);
+
+    // Parse repo_task.json if present
+    let analysisStatus: string | undefined;
+    let resultCount: number | undefined;
     try {
-      if (!statSync(ownerPath).isDirectory()) {
-        continue;
+      const task = JSON.parse(await readFile(repoTaskPath, 'utf-8'));
+      if (typeof task.analysisStatus === 'string') {
+        analysisStatus = task.analysisStatus;
+      }
+      if (typeof task.resultCount === 'number') {
+        resultCount = task.resultCount;
       }
     } catch {
-      continue;
+      // Missing file or parse error
     }
 
-    let repoEntries: string[];
+    // Check for SARIF and BQRS artifacts
+    let artifacts: string[] = [];
     try {
-      repoEntries = readdirSync(ownerPath);
+      artifacts = await readdir(resultsPath);
+      directories.push(resultsPath);
     } catch {
-      continue;
-    }
-
-    for (const repoEntry of repoEntries) {
-      const repoPath = join(ownerPath, repoEntry);
-      try {
-        if (!statSync(repoPath).isDirectory()) {
-          continue;
-        }
-      } catch {
-        continue;
-      }
-
-      const fullName = `${ownerEntry}/${repoEntry}`;
-
-      // Parse repo_task.json if present
-      let analysisStatus: string | undefined;
-      let resultCount: number | undefined;
-      const repoTaskPath = join(repoPath, 'repo_task.json');
-      if (existsSync(repoTaskPath)) {
-        try {
-          const raw = readFileSync(repoTaskPath, 'utf-8');
-          const task = JSON.parse(raw);
-          if (typeof task.analysisStatus === 'string') {
-            analysisStatus = task.analysisStatus;
-          }
-          if (typeof task.resultCount === 'number') {
-            resultCount = task.resultCount;
-          }
-        } catch {
-          // Ignore parse errors
-        }
-      }
-
-      // Check for SARIF and BQRS artifacts
-      const hasSarif = existsSync(join(repoPath, 'results', 'results.sarif'));
-      const hasBqrs = existsSync(join(repoPath, 'results', 'results.bqrs'));
-
-      repos.push({
-        analysisStatus,
-        fullName,
-        hasBqrs,
-        hasSarif,
-        resultCount,
-      });
+      // No results yet
     }
-  }
 
-  return repos;
+    return {
+      analysisStatus,
+      fullName,
+      hasBqrs: artifacts.includes('results.bqrs'),
+      hasSarif: artifacts.includes('results.sarif'),
+      resultCount,
+    };
+  });
 }
 
 /**
@@ -5,6 +5,7 @@
  * Scans each directory in `CODEQL_QUERY_RUN_RESULTS_DIRS` for subdirectories
  * matching the `<QueryName>.ql-<nanoid>` naming convention used by vscode-codeql.
  * Reports which artifacts (evaluator logs, BQRS, SARIF) are present in each run.
+ * Scans are incremental: see `discovery-catalog.ts`.
  *
  * Supports filtering by:
  * - `queryName` — exact match on the query file name (e.g., "UI5Xss.ql")
@@ -13,9 +14,10 @@
  */
 
 import { McpServer } from '@modelcontextprotocol/sdk/server/mcp.js';
-import { existsSync, readdirSync, readFileSync, statSync } from 'fs';
+import { readdir, readFile, stat } from 'fs/promises';
 import { join } from 'path';
 import { z } from 'zod';
+import { type CatalogEntryLoad, DiscoveryCatalog } from '../../lib/discovery-catalog';
 import { getQueryRunResultsDirs } from '../../lib/discovery-config';
 import { logger } from '../../utils/logger';
 
@@ -137,6 +139,85 @@ export function parseQueryLogMetadata(logContent: string): QueryLogMetadata {
   return metadata;
 }
 
+/**
+ * Read one subdirectory of a query run results directory.  Only directories
+ * named like `<QueryName>.ql-<nanoid>` are query runs.
+ */
+async function loadQueryRun(entryPath: string, entry: string): Promise<CatalogEntryLoad<QueryRunResult>> {
+  // Match the naming pattern (cheap, no I/O needed; names never change)
+  const match = QUERY_RUN_DIR_PATTERN.exec(entry);
+  if (!match) {
+    return { directories: [], files: [], value: null };
+  }
+
+  let children: Set<string>;
+  try {
+    // Skip non-directories
+    if (!(await stat(entryPath)).isDirectory()) {
+      return { directories: [], files: [entryPath], value: null };
+    }
+    children = new Set(await readdir(entryPath));
+  } catch {
+    return { directories: [], files: [entryPath], value: null };
+  }
+
+  const [, name, runId] = match;
+  const timestampPath = join(entryPath, 'timestamp');
+  const queryLogPath = join(entryPath, 'query.log');
+
+  // Check which artifacts are present
+  const hasQueryLog = children.has('query.log');
+
+  // Read timestamp if available
+  let timestamp: string | undefined;
+  if (children.has('timestamp')) {
+    try {
+      timestamp = (await readFile(timestampPath, 'utf-8')).trim();
+    } catch {
+      // Ignore read errors
+    }
+  }
+
+  // Parse query.log for metadata (queryPath, language, databasePath)
+  let metadata: QueryLogMetadata = {};
+  if (hasQueryLog) {
+    try {
+      metadata = parseQueryLogMetadata(await readFile(queryLogPath, 'utf-8'));
+    } catch {
+      // Ignore read errors
+    }
+  }
+
+  return {
+    directories: [entryPath],
+    files: [queryLogPath, timestampPath],
+    value: {
+      databasePath: metadata.databasePath,
+      hasBqrs: children.has('results.bqrs'),
+      hasEvaluatorLog: children.has('evaluator-log.jsonl'),
+      hasQueryLog,
+      hasSarif: children.has('results-interpreted.sarif'),
+      hasSummaryLog: children.has('evaluator-log.summary.jsonl'),
+      language: metadata.language,
+      path: entryPath,
+      queryName: name,
+      queryPath: metadata.queryPath,
+      runId,
+      timestamp,
+    },
+  };
+}
+
+/**
+ * Query runs of the configured results directories, kept up to date by
+ * watching them (see `discovery-catalog.ts`).
+ */
+const queryRunCatalog = new DiscoveryCatalog<QueryRunResult>({
+  baseDirs: getQueryRunResultsDirs,
+  load: loadQueryRun,
+  name: 'query-runs',
+});
+
 /**
  * Discover query run result directories in the given search paths.
  *
@@ -152,115 +233,34 @@ export async function discoverQueryRunResults(
   const normalizedFilter: QueryRunResultsFilter | undefined =
     typeof filter === 'string' ? { queryName: filter } : filter;
 
-  const results: QueryRunResult[] = [];
+  const runs = await queryRunCatalog.list(resultsDirs);
 
-  for (const dir of resultsDirs) {
-    if (!existsSync(dir)) {
-      continue;
+  return runs.filter((run) => {
+    // Apply query name filter
+    if (normalizedFilter?.queryName && run.queryName !== normalizedFilter.queryName) {
+      return false;
     }
 
-    let entries: string[];
-    try {
-      entries = readdirSync(dir);
-    } catch {
-      continue;
+    // Apply language filter (requires metadata from query.log)
+    if (normalizedFilter?.language && run.language !== normalizedFilter.language) {
+      return false;
     }
 
-    for (const entry of entries) {
-      const entryPath = join(dir, entry);
-
-      // Skip non-directories
-      try {
-        if (!statSync(entryPath).isDirectory()) {
-          continue;
-        }
-      } catch {
-        continue;
-      }
-
-      // Match the naming pattern
-      const match = QUERY_RUN_DIR_PATTERN.exec(entry);
-      if (!match) {
-        continue;
-      }
-
-      const [, name, runId] = match;
-
-      // Apply query name filter (cheap, no I/O needed)
-      if (normalizedFilter?.queryName && name !== normalizedFilter.queryName) {
-        continue;
-      }
-
-      // Check which artifacts are present
-      const hasEvaluatorLog = existsSync(join(entryPath, 'evaluator-log.jsonl'));
-      const hasBqrs = existsSync(join(entryPath, 'results.bqrs'));
-      const hasSarif = existsSync(join(entryPath, 'results-interpreted.sarif'));
-      const hasQueryLog = existsSync(join(entryPath, 'query.log'));
-      const hasSummaryLog = existsSync(join(entryPath, 'evaluator-log.summary.jsonl'));
-
-      // Read timestamp if available
-      let timestamp: string | undefined;
-      const timestampPath = join(entryPath, 'timestamp');
-      if (existsSync(timestampPath)) {
-        try {
-          timestamp = readFileSync(timestampPath, 'utf-8').trim();
-        } catch {
-          // Ignore read errors
-        }
-      }
-
-      // Parse query.log for metadata (queryPath, language, databasePath)
-      let metadata: QueryLogMetadata = {};
-      if (hasQueryLog) {
-        try {
-          const logContent = readFileSync(join(entryPath, 'query.log'), 'utf-8');
-          metadata = parseQueryLogMetadata(logContent);
-        } catch {
-          // Ignore read errors
-        }
-      }
-
-      // Apply language filter (requires metadata from query.log)
-      if (normalizedFilter?.language && metadata.language !== normalizedFilter.language) {
-        continue;
+    // Apply queryPath filter (substring or exact match)
+    if (normalizedFilter?.queryPath) {
+      if (!run.queryPath) {
+        return false;
       }
-
-      // Apply queryPath filter (substring or exact match)
-      if (normalizedFilter?.queryPath) {
-        if (!metadata.queryPath) {
-          continue;
-        }
-        const filterPath = normalizedFilter.queryPath;
-        const isExact = filterPath.startsWith('/');
-        if (isExact) {
-          if (metadata.queryPath !== filterPath) {
-            continue;
-          }
-        } else {
-          if (!metadata.queryPath.toLowerCase().includes(filterPath.toLowerCase())) {
-            continue;
-          }
-        }
+      const filterPath = normalizedFilter.queryPath;
+      const isExact = filterPath.startsWith('/');
+      if (isExact) {
+        return run.queryPath === filterPath;
       }
-
-      results.push({
-        databasePath: metadata.databasePath,
-        hasBqrs,
-        hasEvaluatorLog,
-        hasQueryLog,
-        hasSarif,
-        hasSummaryLog,
-        language: metadata.language,
-        path: entryPath,
-        queryName: name,
-        queryPath: metadata.queryPath,
-        runId,
-        timestamp,
-      });
+      return run.queryPath.toLowerCase().includes(filterPath.toLowerCase());
     }
-  }
 
-  return results;
+    return true;
+  });
 }
 
 /**
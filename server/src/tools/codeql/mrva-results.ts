@@ -0,0 +1,149 @@
+/**
+ * mrva_results_ingest and mrva_results_query tools
+ *
+ * Ingest the per-repository SARIF of an MRVA (Multi-Repository Variant
+ * Analysis) run into the SQLite store (see `lib/mrva-ingest.ts`), then answer
+ * cross-repository questions — top rules by hit count, repositories where a
+ * rule fires in matching files, repositories sharing a fingerprint — with
+ * indexed queries instead of loading every SARIF.
+ */
+
+import { McpServer } from '@modelcontextprotocol/sdk/server/mcp.js';
+import { join } from 'path';
+import { z } from 'zod';
+import { getMrvaRunResultsDirs } from '../../lib/discovery-config';
+import { ingestMrvaRun } from '../../lib/mrva-ingest';
+import { sessionDataManager } from '../../lib/session-data-manager';
+import { discoverMrvaRunResults, type MrvaRunResult } from './list-mrva-run-results';
+import { logger } from '../../utils/logger';
+
+/**
+ * Find an MRVA run by ID in the configured results directories.
+ *
+ * @throws If no directories are configured or the run is not found.
+ */
+async function findMrvaRun(runId: string): Promise<MrvaRunResult> {
+  const resultsDirs = getMrvaRunResultsDirs();
+  if (resultsDirs.length === 0) {
+    throw new Error('No MRVA run results directories configured. Set the CODEQL_MRVA_RUN_RESULTS_DIRS environment variable.');
+  }
+  const [run] = await discoverMrvaRunResults(resultsDirs, runId);
+  if (!run) {
+    throw new Error(`MRVA run "${runId}" not found in: ${resultsDirs.join(', ')}`);
+  }
+  return run;
+}
+
+function errorResult(message: string) {
+  return {
+    content: [{ type: 'text' as const, text: `Error: ${message}` }],
+    isError: true,
+  };
+}
+
+/**
+ * Register the mrva_results_ingest tool with the MCP server.
+ */
+export function registerMrvaResultsIngestTool(server: McpServer): void {
+  server.tool(
+    'mrva_results_ingest',
+    'Ingest the SARIF results of every repository of an MRVA run (found via CODEQL_MRVA_RUN_RESULTS_DIRS) into an indexed store, parsing the files in parallel. Repositories whose SARIF did not change since the last ingestion are skipped. Run this before mrva_results_query.',
+    {
+      force: z
+        .boolean()
+        .optional()
+        .describe('Re-ingest repositories whose SARIF did not change (default: false)'),
+      runId: z.string().describe('MRVA run ID (e.g., "20442")'),
+    },
+    async ({ force, runId }) => {
+      try {
+        const run = await findMrvaRun(runId);
+        const repos = run.repositories
+          .filter((repo) => repo.hasSarif)
+          .map((repo) => ({
+            fullName: repo.fullName,
+            sarifPath: join(run.path, ...repo.fullName.split('/'), 'results', 'results.sarif'),
+          }));
+        const summary = await ingestMrvaRun(run.path, repos, { force });
+        return {
+          content: [{
+            type: 'text' as const,
+            text: JSON.stringify({
+              ...summary,
+              repositoriesWithoutSarif: run.repositories.length - repos.length,
+              runId,
+              runPath: run.path,
+            }, null, 2),
+          }],
+        };
+      } catch (error) {
+        logger.error('Error ingesting MRVA run results:', error);
+        return errorResult(error instanceof Error ? error.message : String(error));
+      }
+    },
+  );
+}
+
+/**
+ * Register the mrva_results_query tool with the MCP server.
+ */
+export function registerMrvaResultsQueryTool(server: McpServer): void {
+  server.tool(
+    'mrva_results_query',
+    'Query the results of an MRVA run ingested with mrva_results_ingest across all repositories. With groupBy, returns result and repository counts per rule, repo, file or fingerprint, most results first (e.g. groupBy "rule" for the top rules by hit count; ruleId plus filePattern with groupBy "repo" for the repositories where a rule fires in matching files). Without groupBy, returns a page of matching results.',
+    {
+      filePattern: z
+        .string()
+        .optional()
+        .describe('Glob matched against the file URI of each result\'s primary location (SQLite GLOB: "*" also matches "/"), e.g. "*/test/*" or "*.js"'),
+      fingerprint: z.string().optional().describe('Only results with this primaryLocationLineHash fingerprint'),
+      groupBy: z
+        .enum(['file', 'fingerprint', 'repo', 'rule'])
+        .optional()
+        .describe('Aggregate matching results per group instead of listing them'),
+      limit: z
+        .number()
+        .int()
+        .min(1)
+        .max(1000)
+        .optional()
+        .describe('Maximum results or groups to return (default: 50)'),
+      offset: z.number().int().min(0).optional().describe('Results to skip when listing results (default: 0)'),
+      repo: z.string().optional().describe('Only results of this repository ("owner/repo")'),
+      ruleId: z.string().optional().describe('Only results of this rule'),
+      runId: z.string().describe('MRVA run ID (e.g., "20442")'),
+    },
+    async ({ filePattern, fingerprint, groupBy, limit = 50, offset = 0, repo, ruleId, runId }) => {
+      try {
+        const run = await findMrvaRun(runId);
+        const store = sessionDataManager.getStore();
+        const ingested = store.getMrvaRepos(run.path);
+        if (ingested.length === 0) {
+          return errorResult(`MRVA run "${runId}" has not been ingested. Call mrva_results_ingest first.`);
+        }
+
+        const filter = { filePattern, fingerprint, fullName: repo, ruleId, runPath: run.path };
+        const header = {
+          failedRepos: ingested.filter((r) => r.error).length,
+          ingestedRepos: ingested.length,
+          runId,
+        };
+        let response: object;
+        if (groupBy) {
+          response = { ...header, groupBy, ...store.aggregateMrvaResults(filter, groupBy, limit) };
+        } else {
+          const page = store.queryMrvaResults(filter, limit, offset);
+          const next = offset + page.results.length;
+          response = { ...header, ...page, nextOffset: next < page.total ? next : undefined };
+        }
+
+        return {
+          content: [{ type: 'text' as const, text: JSON.stringify(response, null, 2) }],
+        };
+      } catch (error) {
+        logger.error('Error querying MRVA run results:', error);
+        return errorResult(error instanceof Error ? error.message : String(error));
+      }
+    },
+  );
+}
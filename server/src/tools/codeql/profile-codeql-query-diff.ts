@@ -0,0 +1,220 @@
+/**
+ * MCP tool: profile_codeql_query_diff
+ *
+ * Diffs the evaluator logs of two runs of a query — typically before and
+ * after a query or library change — and reports the predicates whose
+ * evaluation time, tuple counts or duplication changed the most, plus the
+ * predicates that appear in only one run.  Both logs go through the
+ * persisted profile store, so diffing against a baseline that was profiled
+ * before does not parse it again.
+ */
+
+import { McpServer } from '@modelcontextprotocol/sdk/server/mcp.js';
+import { existsSync } from 'fs';
+import { z } from 'zod';
+import {
+  diffProfiles,
+  type PredicateChange,
+  type PredicateTotals,
+  type QueryProfileDiff,
+} from '../../lib/evaluator-profile-diff';
+import { loadEvaluatorProfile } from '../../lib/evaluator-profile-store';
+import { logger } from '../../utils/logger';
+
+/** Compact entry for a predicate present in both runs. */
+interface InlineChange {
+  name: string;
+  /** Candidate name, when matched to a differently named predicate. */
+  candidateName?: string;
+  match: PredicateChange['match'];
+  baselineMs: number;
+  candidateMs: number;
+  deltaMs: number;
+  ratio: number | null;
+  baselineTuples?: number;
+  candidateTuples?: number;
+  baselineDuplication?: number;
+  candidateDuplication?: number;
+  raChanged: boolean;
+}
+
+/** Compact entry for a predicate present in only one run. */
+interface InlineOnly {
+  name: string;
+  durationMs: number;
+  tupleCount?: number;
+}
+
+/** Per-query section of the inline response. */
+interface InlineQueryDiff {
+  baselineQuery: string;
+  candidateQuery: string;
+  baselineDurationMs: number;
+  candidateDurationMs: number;
+  matchedPredicates: number;
+  /** Matched predicates that slowed down by at least the regression thresholds. */
+  regressions: InlineChange[];
+  largestTimeChanges: InlineChange[];
+  largestTupleChanges: InlineChange[];
+  largestDuplicationChanges: InlineChange[];
+  addedPredicates: { count: number; slowest: InlineOnly[] };
+  removedPredicates: { count: number; slowest: InlineOnly[] };
+}
+
+/** Top-level response returned by the tool. */
+export interface ProfileDiffResponse {
+  baselineLog: string;
+  candidateLog: string;
+  queries: InlineQueryDiff[];
+  unmatchedQueries: { baseline: string[]; candidate: string[] };
+}
+
+function toInlineChange(change: PredicateChange): InlineChange {
+  const { baseline, candidate } = change;
+  return {
+    name: baseline.predicateName,
+    candidateName: candidate.predicateName !== baseline.predicateName ? candidate.predicateName : undefined,
+    match: change.match,
+    baselineMs: baseline.durationMs,
+    candidateMs: candidate.durationMs,
+    deltaMs: change.durationDeltaMs,
+    ratio: change.durationRatio,
+    baselineTuples: baseline.tupleCount ?? baseline.resultSize,
+    candidateTuples: candidate.tupleCount ?? candidate.resultSize,
+    baselineDuplication: baseline.maxDuplicationPercentage,
+    candidateDuplication: candidate.maxDuplicationPercentage,
+    raChanged: change.raChanged,
+  };
+}
+
+function toInlineOnly(totals: PredicateTotals): InlineOnly {
+  return {
+    name: totals.predicateName,
+    durationMs: totals.durationMs,
+    tupleCount: totals.tupleCount ?? totals.resultSize,
+  };
+}
+
+/** Return the `topN` changes with the largest non-zero absolute `metric`. */
+function largestBy(
+  changes: PredicateChange[],
+  metric: (_change: PredicateChange) => number | null,
+  topN: number
+): InlineChange[] {
+  return changes
+    .filter(c => (metric(c) ?? 0) !== 0)
+    .sort((a, b) => Math.abs(metric(b) ?? 0) - Math.abs(metric(a) ?? 0))
+    .slice(0, topN)
+    .map(toInlineChange);
+}
+
+function summarizeQueryDiff(
+  diff: QueryProfileDiff,
+  topN: number,
+  regressionPercent: number,
+  minDeltaMs: number
+): InlineQueryDiff {
+  const tupleDelta = (c: PredicateChange): number | null => c.tupleCountDelta ?? c.resultSizeDelta;
+  return {
+    baselineQuery: diff.baselineQuery,
+    candidateQuery: diff.candidateQuery,
+    baselineDurationMs: diff.baselineDurationMs,
+    candidateDurationMs: diff.candidateDurationMs,
+    matchedPredicates: diff.changes.length,
+    regressions: diff.changes
+      .filter(c => c.durationDeltaMs >= minDeltaMs
+        && c.durationDeltaMs >= c.baseline.durationMs * regressionPercent / 100)
+      .slice(0, topN)
+      .map(toInlineChange),
+    largestTimeChanges: largestBy(diff.changes, c => c.durationDeltaMs, topN),
+    largestTupleChanges: largestBy(diff.changes, tupleDelta, topN),
+    largestDuplicationChanges: largestBy(diff.changes, c => c.duplicationDelta, topN),
+    addedPredicates: { count: diff.added.length, slowest: diff.added.slice(0, topN).map(toInlineOnly) },
+    removedPredicates: { count: diff.removed.length, slowest: diff.removed.slice(0, topN).map(toInlineOnly) },
+  };
+}
+
+/**
+ * Register the `profile_codeql_query_diff` tool with the MCP server.
+ */
+export function registerProfileCodeQLQueryDiffTool(server: McpServer): void {
+  server.tool(
+    'profile_codeql_query_diff',
+    'Diff the evaluator logs of two runs of a CodeQL query (e.g. before and after a change) to find performance regressions. Predicates are matched by name, then by RA hash, then by name without hash suffixes. Returns per-query totals, regressed predicates, the largest changes in evaluation time, tuple counts and duplication, and predicates only present in one run. Parsed profiles are stored, so re-diffing against the same baseline log does not parse it again.',
+    {
+      baselineLog: z
+        .string()
+        .describe('Path to the evaluator log (evaluator-log.jsonl or evaluator-log.summary.jsonl) of the baseline run'),
+      candidateLog: z
+        .string()
+        .describe('Path to the evaluator log of the candidate run'),
+      topN: z
+        .number()
+        .int()
+        .min(1)
+        .optional()
+        .describe('Number of predicates to list per category and query (default: 20)'),
+      regressionPercent: z
+        .number()
+        .min(0)
+        .optional()
+        .describe('Minimum slowdown, as a percentage of the baseline time, for a predicate to be reported as a regression (default: 20)'),
+      minDeltaMs: z
+        .number()
+        .min(0)
+        .optional()
+        .describe('Minimum slowdown in milliseconds for a predicate to be reported as a regression (default: 10)'),
+    },
+    async (params) => {
+      try {
+        const { baselineLog, candidateLog } = params;
+        for (const log of [baselineLog, candidateLog]) {
+          if (!existsSync(log)) {
+            return {
+              content: [
+                { type: 'text' as const, text: JSON.stringify({ error: `Evaluator log not found at: ${log}` }) },
+              ],
+              isError: true,
+            };
+          }
+        }
+
+        // Only summary metrics are compared, so no RA detail is needed.
+        const [baseline, candidate] = await Promise.all([
+          loadEvaluatorProfile(baselineLog, { detailTopK: 0 }),
+          loadEvaluatorProfile(candidateLog, { detailTopK: 0 }),
+        ]);
+
+        const diff = diffProfiles(baseline.profile, candidate.profile);
+        const response: ProfileDiffResponse = {
+          baselineLog,
+          candidateLog,
+          queries: diff.queries.map(q => summarizeQueryDiff(
+            q,
+            params.topN ?? 20,
+            params.regressionPercent ?? 20,
+            params.minDeltaMs ?? 10,
+          )),
+          unmatchedQueries: diff.unmatchedQueries,
+        };
+
+        return {
+          content: [{ type: 'text' as const, text: JSON.stringify(response) }],
+        };
+      } catch (error) {
+        logger.error('Error diffing CodeQL query profiles:', error);
+        return {
+          content: [
+            {
+              type: 'text' as const,
+              text: JSON.stringify({
+                error: `Failed to diff query profiles: ${error instanceof Error ? error.message : String(error)}`,
+              }),
+            },
+          ],
+          isError: true,
+        };
+      }
+    }
+  );
+}
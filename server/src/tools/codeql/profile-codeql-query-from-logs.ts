@@ -17,17 +17,22 @@
  * and drills into any predicate's RA analysis with a single `read_file`
  * call using the line numbers from the inline response. No shell access.
  * No grep. No guessing.
+ *
+ * RA steps and pipeline stages are kept in memory only for the slowest
+ * `detailTopK` predicates per query while the log is streamed, so logs far
+ * larger than the heap can be profiled.  Parsed profiles are persisted
+ * keyed by a hash of the log, so profiling the same log again skips parsing.
  */
 
 import { McpServer } from '@modelcontextprotocol/sdk/server/mcp.js';
-import { existsSync, mkdirSync, writeFileSync } from 'fs';
+import { closeSync, existsSync, mkdirSync, openSync, writeFileSync, writeSync } from 'fs';
 import { basename, dirname, join } from 'path';
 import { z } from 'zod';
 import {
-  parseEvaluatorLog,
   type PredicateProfile,
   type ProfileData,
 } from '../../lib/evaluator-log-parser';
+import { loadEvaluatorProfile } from '../../lib/evaluator-profile-store';
 import { logger } from '../../utils/logger';
 
 // ---------------------------------------------------------------------------
@@ -66,10 +71,14 @@ export interface ProfileResponse {
   queries: InlineQuerySummary[];
   /** Path to line-indexed detail file. Use read_file with detailLines ranges. */
   detailFile: string;
-  /** Path to the full profile JSON (all predicates, unbounded). */
+  /** Path to the full profile JSON (all predicates; RA and pipeline detail for the slowest `detailTopK`). */
   fullProfileJson: string;
   /** Path to the original evaluator log. */
   evaluatorLog: string;
+  /** SHA-256 of the evaluator log, the key of its stored profile. */
+  logHash: string;
+  /** Whether the profile was loaded from the profile store instead of parsed. */
+  profileCached: boolean;
 }
 
 // ---------------------------------------------------------------------------
@@ -86,6 +95,32 @@ function getTopPredicates(
     .slice(0, topN);
 }
 
+/**
+ * Write the full profile as JSON, one predicate per line.  Unlike a single
+ * `JSON.stringify` of the whole profile this never builds one string for
+ * millions of predicates, which would exceed the maximum string length.
+ */
+function writeProfileJson(path: string, profile: ProfileData): void {
+  const fd = openSync(path, 'w');
+  try {
+    const { queries, ...header } = profile;
+    const headerJson = JSON.stringify(header, null, 2);
+    writeSync(fd, `${headerJson.substring(0, headerJson.length - 2)},\n  "queries": [`);
+    queries.forEach((query, qIdx) => {
+      const { predicates, ...summary } = query;
+      const summaryJson = JSON.stringify(summary);
+      writeSync(fd, `${qIdx > 0 ? ',' : ''}\n    ${summaryJson.substring(0, summaryJson.length - 1)},"predicates":[`);
+      predicates.forEach((pred, pIdx) => {
+        writeSync(fd, `${pIdx > 0 ? ',' : ''}\n      ${JSON.stringify(pred)}`);
+      });
+      writeSync(fd, predicates.length > 0 ? '\n    ]}' : ']}');
+    });
+    writeSync(fd, queries.length > 0 ? '\n  ]\n}\n' : ']\n}\n');
+  } finally {
+    closeSync(fd);
+  }
+}
+
 // ---------------------------------------------------------------------------
 // Tier 2: Detail file builder (structured, line-indexed)
 // ---------------------------------------------------------------------------
@@ -190,7 +225,8 @@ function buildInlineResponse(
   profile: ProfileData,
   topN: number,
   detailLineIndex: Map<string, { start: number; end: number }>,
-  files: { detailFile: string; fullProfileJson: string; evaluatorLog: string }
+  files: { detailFile: string; fullProfileJson: string; evaluatorLog: string },
+  stored: { logHash: string; profileCached: boolean }
 ): ProfileResponse {
   const queries: InlineQuerySummary[] = profile.queries.map((query, qIdx) => {
     const evalOrderMap = new Map<PredicateProfile, number>();
@@ -230,6 +266,8 @@ function buildInlineResponse(
     detailFile: files.detailFile,
     fullProfileJson: files.fullProfileJson,
     evaluatorLog: files.evaluatorLog,
+    logHash: stored.logHash,
+    profileCached: stored.profileCached,
   };
 }
 
@@ -264,11 +302,21 @@ export function registerProfileCodeQLQueryFromLogsTool(
         .describe(
           'Number of slowest predicates to include per query (default: 20)'
         ),
+      detailTopK: z
+        .number()
+        .int()
+        .min(0)
+        .optional()
+        .describe(
+          'Number of slowest predicates per query whose RA steps and pipeline stages are kept while parsing and written to the full profile JSON (default and minimum: topN). Other predicates keep only their metrics, which bounds memory on very large logs.'
+        ),
     },
     async (params) => {
       try {
-        const { evaluatorLog, outputDir, topN } = params;
+        const { detailTopK, evaluatorLog, outputDir, topN } = params;
         const effectiveTopN = topN ?? 20;
+        // The detail file needs the RA of every predicate it lists.
+        const effectiveDetailTopK = Math.max(effectiveTopN, detailTopK ?? 0);
 
         if (!existsSync(evaluatorLog)) {
           return {
@@ -283,14 +331,14 @@ export function registerProfileCodeQLQueryFromLogsTool(
         }
 
         logger.info(`Parsing evaluator log from: ${evaluatorLog}`);
-        const profile = await parseEvaluatorLog(evaluatorLog);
+        const { cached, logHash, profile } = await loadEvaluatorProfile(evaluatorLog, { detailTopK: effectiveDetailTopK });
 
         const profileOutputDir = outputDir ?? dirname(evaluatorLog);
         mkdirSync(profileOutputDir, { recursive: true });
 
         // Tier 2a: Write full profile JSON (all predicates, unbounded)
         const jsonPath = join(profileOutputDir, 'query-evaluation-profile.json');
-        writeFileSync(jsonPath, JSON.stringify(profile, null, 2));
+        writeProfileJson(jsonPath, profile);
         logger.info(`Full profile JSON written to: ${jsonPath}`);
 
         // Tier 2b: Write line-indexed detail file (top-N with full RA/pipeline)
@@ -304,7 +352,7 @@ export function registerProfileCodeQLQueryFromLogsTool(
           detailFile: detailPath,
           fullProfileJson: jsonPath,
           evaluatorLog,
-        });
+        }, { logHash, profileCached: cached });
 
         return {
           content: [
@@ -1,14 +1,27 @@
 /**
  * CodeQL query profiling tool
+ *
+ * Parsed profiles are persisted keyed by a hash of the evaluator log (see
+ * `evaluator-profile-store.ts`).  A repeated request for the same query
+ * source and database reuses the log of the earlier run instead of running
+ * the query again.
  */
 
 import { McpServer } from '@modelcontextprotocol/sdk/server/mcp.js';
 import { z } from 'zod';
+import { computeDatabaseFingerprint, computeQueryFingerprint } from '../../lib/cache-fingerprint';
 import { executeCodeQLCommand } from '../../lib/cli-executor';
+import { resolveDatabasePath } from '../../lib/database-resolver';
+import { runCliOnDatabase } from '../../lib/query-server-evaluation';
+import {
+  type EvaluatorProfileRun,
+  findProfiledRun,
+  loadStoredProfile,
+} from '../../lib/evaluator-profile-store';
 import { logger } from '../../utils/logger';
 import { writeFileSync, existsSync } from 'fs';
 import { createReadStream } from 'fs';
-import { join, dirname, basename } from 'path';
+import { join, dirname, basename, resolve } from 'path';
 import { mkdirSync } from 'fs';
 import { createInterface } from 'readline';
 
@@ -180,6 +193,30 @@ async function parseEvaluatorLog(logPath: string): Promise<ProfileData> {
   };
 }
 
+/**
+ * Identify the run of `query` against `database` by their content
+ * fingerprints, or return undefined if they cannot be computed (including
+ * when the query imports libraries whose source is unknown).
+ */
+function identifyRun(query: string, database: string): EvaluatorProfileRun | undefined {
+  try {
+    const queryFingerprint = computeQueryFingerprint(query);
+    if (!queryFingerprint) {
+      logger.debug(`Cannot fingerprint every library imported by ${query}`);
+      return undefined;
+    }
+    return {
+      databaseFingerprint: computeDatabaseFingerprint(resolveDatabasePath(database)),
+      databasePath: resolve(database),
+      queryFingerprint,
+      queryPath: resolve(query),
+    };
+  } catch (error) {
+    logger.debug(`Cannot fingerprint query run: ${error instanceof Error ? error.message : String(error)}`);
+    return undefined;
+  }
+}
+
 /**
  * Format profile data as JSON
  */
@@ -261,13 +298,33 @@ export function registerProfileCodeQLQueryTool(server: McpServer): void {
         .string()
         .optional()
         .describe('Directory to write profiling data files (defaults to same directory as evaluator log)'),
+      forceRerun: z
+        .boolean()
+        .optional()
+        .describe('Run the query even if an earlier profiled run of the same query source against the same database can be reused (default: false)'),
     },
     async (params) => {
       try {
-        const { query, database, evaluatorLog, outputDir } = params;
+        const { query, database, evaluatorLog, outputDir, forceRerun } = params;
         let logPath = evaluatorLog;
         let bqrsPath: string | undefined;
         let sarifPath: string | undefined;
+        let run: EvaluatorProfileRun | undefined;
+        let reusedRun = false;
+
+        if (!logPath) {
+          run = identifyRun(query as string, database as string);
+          const previous = run && !forceRerun ? await findProfiledRun('pipelines', run) : null;
+          if (previous) {
+            logger.info(`Reusing evaluator log of an earlier run: ${previous.logPath}`);
+            logPath = previous.logPath;
+            reusedRun = true;
+            // The earlier run wrote its results next to its log.
+            const previousBqrs = join(dirname(previous.logPath), 'query-results.bqrs');
+            if (existsSync(previousBqrs)) bqrsPath = previousBqrs;
+            sarifPath = join(dirname(previous.logPath), 'query-results.sarif');
+          }
+        }
 
         // If evaluator log not provided, run the query to generate one
         if (!logPath) {
@@ -282,7 +339,7 @@ export function registerProfileCodeQLQueryTool(server: McpServer): void {
           sarifPath = join(defaultOutputDir, 'query-results.sarif');
 
           // Run query with evaluator logging and tuple counting
-          const queryResult = await executeCodeQLCommand(
+          const queryResult = await runCliOnDatabase(database as string, () => executeCodeQLCommand(
             'query run',
             {
               database: database as string,
@@ -292,7 +349,7 @@ export function registerProfileCodeQLQueryTool(server: McpServer): void {
               'evaluator-log-level': 5,
             },
             [query as string]
-          );
+          ));
 
           if (!queryResult.success) {
             return {
@@ -306,6 +363,10 @@ export function registerProfileCodeQLQueryTool(server: McpServer): void {
             };
           }
 
+          // Identify the run by the database as the run left it, which is
+          // what the next request for the same run will see.
+          run = identifyRun(query as string, database as string);
+
           // Generate SARIF interpretation
           if (existsSync(bqrsPath)) {
             try {
@@ -339,7 +400,14 @@ export function registerProfileCodeQLQueryTool(server: McpServer): void {
 
         // Parse the evaluator log
         logger.info(`Parsing evaluator log from: ${logPath}`);
-        const profile = await parseEvaluatorLog(logPath);
+        const resolvedLogPath = logPath;
+        const { cached, profile } = await loadStoredProfile(
+          logPath,
+          'pipelines',
+          null,
+          () => parseEvaluatorLog(resolvedLogPath),
+          run,
+        );
 
         // Determine output directory for profile
         const profileOutputDir = outputDir || dirname(logPath);
@@ -374,6 +442,8 @@ export function registerProfileCodeQLQueryTool(server: McpServer): void {
 
         const responseText = [
           'Query profiling completed successfully!',
+          ...(reusedRun ? ['Reused the evaluator log of an earlier run of the same query and database (set forceRerun to run again).'] : []),
+          ...(cached ? ['Profile loaded from the profile store.'] : []),
           '',
           'Output Files:',
           ...outputFiles.map((f) => `  - ${f}`),
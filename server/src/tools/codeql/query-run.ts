@@ -43,6 +43,10 @@ export const codeqlQueryRunTool: CLIToolDefinition = {
       .describe('[DEPRECATED - use format parameter instead] Built-in function for query results evaluation (e.g., "mermaid-graph", "json-decode", "csv-decode") or path to custom evaluation script'),
     evaluationOutput: z.string().optional()
       .describe('[DEPRECATED - use interpretedOutput parameter instead] Output file for evaluation results'),
+    useCachedResults: z.boolean().optional()
+      .describe('Return a previously cached interpreted result instead of re-running the query when the query source (including imported libraries) and the database are unchanged. Queries importing libraries that are neither on the pack search path nor pinned by a pack lock file always miss. The response reports a cache hit or miss.'),
+    executionMode: z.enum(['cli', 'query-server']).optional()
+      .describe('How to evaluate the query: "cli" starts a one-off codeql query run process; "query-server" uses the persistent query server, which keeps the database open and compiled queries and evaluated predicates cached in memory, so repeated runs against the same database are much faster. Defaults to CODEQL_MCP_QUERY_EXECUTION_MODE, or "cli". Falls back to the CLI when additionalArgs are given or the query server is unavailable.'),
     verbose: createCodeQLSchemas.verbose(),
     additionalArgs: createCodeQLSchemas.additionalArgs()
   },
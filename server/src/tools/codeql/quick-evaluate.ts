@@ -1,6 +1,6 @@
 /**
  * CodeQL quick evaluate tool
- * 
+ *
  * Inspired by JordyZomer/codeql-mcp repository:
  * - https://github.com/JordyZomer/codeql-mcp/blob/main/server.py
  * - https://github.com/JordyZomer/codeql-mcp/blob/main/codeqlclient.py
@@ -8,47 +8,169 @@
 
 import { McpServer } from '@modelcontextprotocol/sdk/server/mcp.js';
 import { z } from 'zod';
-import { join, resolve } from 'path';
+import { existsSync, mkdirSync, mkdtempSync } from 'fs';
+import { dirname, join, resolve } from 'path';
 import { findClassPosition } from './find-class-position';
 import { findPredicatePosition } from './find-predicate-position';
+import { executeCodeQLCommand } from '../../lib/cli-executor';
+import { resolveDatabasePath } from '../../lib/database-resolver';
+import { QuickEvalPosition, runQueryOnQueryServer } from '../../lib/query-server-evaluation';
 import { logger } from '../../utils/logger';
 import { getProjectTmpDir } from '../../utils/temp-dir';
 
+/** Default number of result rows returned per page. */
+const DEFAULT_PAGE_SIZE = 100;
+
 export interface QuickEvaluateParams {
   file: string;
   db: string;
   symbol: string;
   output_path?: string;
+  /** Maximum number of rows to return. */
+  page_size?: number;
+  /** Result set to return (defaults to the first one). */
+  result_set?: string;
+  /**
+   * Byte offset of the page to return, from a previous call's `next`.
+   * The existing BQRS at `output_path` (the previous call's `bqrsPath`)
+   * is paged without re-evaluating.
+   */
+  start_at?: number;
+}
+
+/**
+ * One page of quick-evaluation results.
+ */
+export interface QuickEvaluateResult {
+  bqrsPath: string;
+  columns: Array<{ kind?: string; name?: string }>;
+  /** Byte offset of the next page, if there are more rows. */
+  next?: number;
+  position: QuickEvalPosition;
+  resultSet: string;
+  totalRows: number;
+  tuples: unknown[][];
+}
+
+interface BqrsInfo {
+  resultSets: Array<{ columns: Array<{ kind?: string; name?: string }>; name: string; rows: number }>;
+}
+
+/**
+ * Locate `symbol` as a class or predicate in `file` and return its
+ * quick-evaluation range.
+ */
+async function findSymbolPosition(file: string, symbol: string): Promise<QuickEvalPosition> {
+  let position;
+  try {
+    position = await findClassPosition(file, symbol);
+  } catch {
+    try {
+      position = await findPredicatePosition(file, symbol);
+    } catch {
+      throw new Error(`Symbol '${symbol}' not found as class or predicate in file: ${file}`);
+    }
+  }
+  return {
+    column: position.start_col,
+    endColumn: position.end_col,
+    endLine: position.end_line,
+    fileName: file,
+    line: position.start_line,
+  };
+}
+
+/**
+ * Decode one page of a BQRS result set with `codeql bqrs decode --rows`.
+ */
+async function decodeResultPage(
+  bqrsPath: string,
+  requestedResultSet: string | undefined,
+  pageSize: number,
+  startAt: number | undefined,
+): Promise<Pick<QuickEvaluateResult, 'columns' | 'next' | 'resultSet' | 'totalRows' | 'tuples'>> {
+  const info = await executeCodeQLCommand('bqrs info', { format: 'json' }, [bqrsPath]);
+  if (!info.success) {
+    throw new Error(`Failed to read result sets: ${info.error || info.stderr}`);
+  }
+  const { resultSets } = JSON.parse(info.stdout) as BqrsInfo;
+  const resultSet = requestedResultSet
+    ? resultSets.find(rs => rs.name === requestedResultSet)
+    : resultSets[0];
+  if (!resultSet) {
+    throw new Error(requestedResultSet
+      ? `Result set '${requestedResultSet}' not found; available: ${resultSets.map(rs => rs.name).join(', ')}`
+      : 'Quick evaluation produced no result sets');
+  }
+
+  const decoded = await executeCodeQLCommand('bqrs decode', {
+    entities: 'url,string',
+    format: 'json',
+    'result-set': resultSet.name,
+    rows: pageSize,
+    'start-at': startAt,
+  }, [bqrsPath]);
+  if (!decoded.success) {
+    throw new Error(`Failed to decode results: ${decoded.error || decoded.stderr}`);
+  }
+  const chunk = JSON.parse(decoded.stdout) as { next?: number; tuples?: unknown[][] };
+
+  return {
+    columns: resultSet.columns,
+    next: chunk.next,
+    resultSet: resultSet.name,
+    totalRows: resultSet.rows,
+    tuples: chunk.tuples ?? [],
+  };
 }
 
 /**
  * Quick evaluate either a class or a predicate in a CodeQL query.
  * This allows debugging a select portion of QL code without running the whole query.
+ *
+ * The selection is evaluated on the persistent query server, which keeps the
+ * database open and reuses compilation and predicate caches from earlier
+ * evaluations.  Without `output_path`, every evaluation writes to a fresh
+ * directory under `.tmp/quickeval/`, so concurrent evaluations never share a
+ * BQRS file.  The first page of the selected result set is returned; pass
+ * the returned `next` offset as `start_at` and `bqrsPath` as `output_path`
+ * to read further pages from the same BQRS file without evaluating again.
  */
 export async function quickEvaluate({
   file,
-  db: _db,
+  db,
   symbol,
-  output_path
-}: QuickEvaluateParams): Promise<string> {
+  output_path,
+  page_size = DEFAULT_PAGE_SIZE,
+  result_set,
+  start_at,
+}: QuickEvaluateParams): Promise<QuickEvaluateResult> {
   try {
-    // Try to find as a class first, then as a predicate
-    try {
-      await findClassPosition(file, symbol);
-    } catch {
-      try {
-        await findPredicatePosition(file, symbol);
-      } catch {
-        throw new Error(`Symbol '${symbol}' not found as class or predicate in file: ${file}`);
+    const queryPath = resolve(file);
+    const position = await findSymbolPosition(queryPath, symbol);
+    if (start_at !== undefined && !output_path) {
+      throw new Error('Paging with start_at requires output_path; pass the bqrsPath of the call that evaluated the results');
+    }
+    const resolvedOutput = resolve(output_path || join(mkdtempSync(join(getProjectTmpDir('quickeval'), 'eval-')), 'quickeval.bqrs'));
+
+    if (start_at === undefined) {
+      mkdirSync(dirname(resolvedOutput), { recursive: true });
+      const evaluation = await runQueryOnQueryServer({
+        database: resolveDatabasePath(db),
+        outputPath: resolvedOutput,
+        queryPath,
+        quickEvalPosition: position,
+      });
+      if (!evaluation.success) {
+        throw new Error(evaluation.error || evaluation.stderr);
       }
+      logger.info(evaluation.stdout);
+    } else if (!existsSync(resolvedOutput)) {
+      throw new Error(`No results to page through at ${resolvedOutput}; call without start_at first`);
     }
-    
-    const resolvedOutput = resolve(output_path || join(getProjectTmpDir('quickeval'), 'quickeval.bqrs'));
-    
-    // For now, return the resolved output path
-    // In a full implementation, this would use the CodeQL CLI or query server
-    // to perform the actual quick evaluation with the position parameters
-    return resolvedOutput;
+
+    const page = await decodeResultPage(resolvedOutput, result_set, page_size, start_at);
+    return { bqrsPath: resolvedOutput, position, ...page };
   } catch (error) {
     throw new Error(`CodeQL evaluation failed: ${error instanceof Error ? error.message : 'Unknown error'}`, { cause: error });
   }
@@ -65,13 +187,16 @@ export function registerQuickEvaluateTool(server: McpServer): void {
       file: z.string().describe('Path to the .ql file containing the symbol'),
       db: z.string().describe('Path to the CodeQL database'),
       symbol: z.string().describe('Name of the class or predicate to evaluate'),
-      output_path: z.string().optional().describe('Output path for results (defaults to project-local .tmp/quickeval/)'),
+      output_path: z.string().optional().describe('Output path for results (defaults to a new directory under project-local .tmp/quickeval/); required with start_at'),
+      page_size: z.number().int().positive().optional().describe(`Maximum number of result rows to return (default ${DEFAULT_PAGE_SIZE})`),
+      result_set: z.string().optional().describe('Result set to return (defaults to the first result set)'),
+      start_at: z.number().int().nonnegative().optional().describe('Byte offset of the page to return, from the "next" field of a previous call; pages the existing output at output_path (the previous call\'s bqrsPath) without re-evaluating'),
     },
-    async ({ file, db, symbol, output_path }) => {
+    async ({ file, db, symbol, output_path, page_size, result_set, start_at }) => {
       try {
-        const result = await quickEvaluate({ file, db, symbol, output_path });
+        const result = await quickEvaluate({ file, db, symbol, output_path, page_size, result_set, start_at });
         return {
-          content: [{ type: 'text', text: result }],
+          content: [{ type: 'text', text: JSON.stringify(result, null, 2) }],
         };
       } catch (error) {
         logger.error('Error in quick evaluate:', error);
@@ -87,4 +212,4 @@ export function registerQuickEvaluateTool(server: McpServer): void {
       }
     }
   );
-}
\ No newline at end of file
+}
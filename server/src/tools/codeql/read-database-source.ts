@@ -15,14 +15,19 @@
  * Path normalization: accepts raw file paths, `file://`-prefixed URIs (as found
  * in SARIF), or paths relative to the archive root.  Falls back to suffix
  * matching against archive entry names when an exact match is not found.
+ *
+ * src.zip archives are read through the indexed reader in
+ * `lib/source-archive.ts`, which keeps the central directory and an open
+ * handle per archive across calls and extracts only the requested entry.
+ * src/ directories share its path resolution and line slicing.
  */
 
 import { McpServer } from '@modelcontextprotocol/sdk/server/mcp.js';
-import AdmZip from 'adm-zip';
 import { existsSync, readdirSync, readFileSync, statSync } from 'fs';
 import { join, resolve } from 'path';
 import { fileURLToPath } from 'url';
 import { z } from 'zod';
+import { getSourceArchive, LineRangeCollector, SourcePathIndex } from '../../lib/source-archive';
 import { logger } from '../../utils/logger';
 
 // ---------------------------------------------------------------------------
@@ -38,9 +43,9 @@ import { logger } from '../../utils/logger';
 const DEFAULT_MAX_LISTING_ENTRIES = 1000;
 
 /**
- * Maximum uncompressed size (in bytes) for a single zip entry that the tool
- * will decompress into memory.  Prevents runaway memory usage when a src.zip
- * contains unexpectedly large files.  10 MB.
+ * Maximum uncompressed size (in bytes) of a zip entry read without a line
+ * range, and of the lines returned from any source file.  Prevents runaway memory
+ * usage when a src.zip contains unexpectedly large files.  10 MB.
  */
 const MAX_UNCOMPRESSED_BYTES = 10 * 1024 * 1024;
 
@@ -107,95 +112,6 @@ function* walkDirectory(dir: string, base: string = dir): Generator<string> {
   }
 }
 
-/**
- * Find the best-matching entry for a requested path within a list of available
- * entry names.  Resolution order:
- *  1. Exact match (with or without leading slash)
- *  2. Case-insensitive exact match
- *  3. Suffix match — entry ends with the requested path (handles absolute SARIF
- *     URIs stored as relative paths inside the archive)
- */
-function resolveEntryPath(requested: string, available: string[]): string | undefined {
-  const normalised = toFilesystemPath(requested).replace(/\\/g, '/');
-  // Strip leading slash for comparison
-  const withoutLeading = normalised.replace(/^\//, '');
-
-  // 1. Exact match
-  for (const entry of available) {
-    const entryNorm = entry.replace(/^\//, '');
-    if (entryNorm === withoutLeading) {
-      return entry;
-    }
-  }
-
-  // 2. Case-insensitive exact
-  const lower = withoutLeading.toLowerCase();
-  for (const entry of available) {
-    if (entry.replace(/^\//, '').toLowerCase() === lower) {
-      return entry;
-    }
-  }
-
-  // 3. Suffix match — collect all candidates, prefer the longest (most specific)
-  const candidates: { entry: string; length: number }[] = [];
-  for (const entry of available) {
-    const entryNorm = entry.replace(/^\//, '');
-    if (entryNorm.endsWith(withoutLeading) || withoutLeading.endsWith(entryNorm)) {
-      candidates.push({ entry, length: entryNorm.length });
-    }
-  }
-
-  if (candidates.length === 0) {
-    return undefined;
-  }
-
-  if (candidates.length === 1) {
-    return candidates[0].entry;
-  }
-
-  // Sort by path length descending (most specific first), then alphabetically
-  candidates.sort((a, b) => {
-    if (b.length !== a.length) {
-      return b.length - a.length;
-    }
-    return a.entry.localeCompare(b.entry);
-  });
-
-  const chosen = candidates[0];
-  logger.warn(
-    `resolveEntryPath: ambiguous suffix match for "${requested}". ` +
-      `Candidates: ${candidates.map((c) => c.entry).join(', ')}. ` +
-      `Using "${chosen.entry}".`,
-  );
-
-  return chosen.entry;
-}
-
-/**
- * Slice text content to the requested line range (1-based, inclusive).
- * Returns the sliced content and the effective bounds.
- */
-function applyLineRange(
-  content: string,
-  startLine?: number,
-  endLine?: number,
-): { content: string; effectiveEnd: number; effectiveStart: number; totalLines: number } {
-  const lines = content.split(/\r?\n/);
-  const totalLines = lines.length;
-  const effectiveStart = Math.max(1, startLine ?? 1);
-  const effectiveEnd = Math.min(totalLines, endLine ?? totalLines);
-
-  if (effectiveStart > effectiveEnd) {
-    throw new Error(
-      `Invalid line range: startLine (${effectiveStart}) is greater than endLine (${effectiveEnd}). ` +
-        `File has ${totalLines} line(s).`,
-    );
-  }
-
-  const sliced = lines.slice(effectiveStart - 1, effectiveEnd).join('\n');
-  return { content: sliced, effectiveEnd, effectiveStart, totalLines };
-}
-
 /**
  * Read the contents of a file from a CodeQL database source archive or source
  * directory.  When `filePath` is omitted, returns a listing of all entries.
@@ -229,12 +145,7 @@ export async function readDatabaseSource(
   if (!filePath) {
     let allEntries: string[];
     if (hasSrcZip) {
-      const zip = new AdmZip(srcZipPath);
-      allEntries = zip
-        .getEntries()
-        .filter((e) => !e.isDirectory)
-        .map((e) => e.entryName)
-        .sort();
+      allEntries = (await getSourceArchive(srcZipPath)).names;
     } else {
       allEntries = [...walkDirectory(srcDirPath)].sort();
     }
@@ -262,53 +173,36 @@ export async function readDatabaseSource(
   // File read mode
   // ------------------------------------------------------------------
   if (hasSrcZip) {
-    const zip = new AdmZip(srcZipPath);
-    const availableEntries = zip
-      .getEntries()
-      .filter((e) => !e.isDirectory)
-      .map((e) => e.entryName);
-
-    const matchedEntry = resolveEntryPath(filePath, availableEntries);
-    if (!matchedEntry) {
+    const archive = await getSourceArchive(srcZipPath);
+    const entry = archive.resolve(toFilesystemPath(filePath));
+    if (!entry) {
       throw new Error(
         `File not found in src.zip: ${filePath}\n` +
-          `Archive contains ${availableEntries.length} entries. ` +
+          `Archive contains ${archive.entries.length} entries. ` +
           `Use read_database_source without filePath to list available entries.`,
       );
     }
 
-    const entry = zip.getEntry(matchedEntry);
-    if (!entry) {
-      throw new Error(`Failed to read entry from src.zip: ${matchedEntry}`);
-    }
-
-    const rawSize = entry.header.size;
-    if (rawSize > MAX_UNCOMPRESSED_BYTES) {
+    if (entry.size > MAX_UNCOMPRESSED_BYTES && endLine === undefined) {
       throw new Error(
-        `Entry "${matchedEntry}" is too large to read (${rawSize} bytes, limit ${MAX_UNCOMPRESSED_BYTES}). ` +
-          `Use startLine/endLine on a smaller file, or increase the limit.`,
+        `Entry "${entry.name}" is too large to read (${entry.size} bytes, limit ${MAX_UNCOMPRESSED_BYTES}). ` +
+          `Use startLine/endLine to read part of it.`,
       );
     }
 
-    const rawContent = entry.getData().toString('utf-8');
-    const { content, effectiveEnd, effectiveStart, totalLines } = applyLineRange(
-      rawContent,
-      startLine,
-      endLine,
-    );
-
+    const lines = await archive.readLines(entry, startLine, endLine, MAX_UNCOMPRESSED_BYTES);
     return {
-      content,
-      endLine: effectiveEnd,
-      entryPath: matchedEntry,
+      content: lines.content,
+      endLine: lines.endLine,
+      entryPath: entry.name,
       sourceType,
-      startLine: effectiveStart,
-      totalLines,
+      startLine: lines.startLine,
+      totalLines: lines.totalLines,
     };
   } else {
     // src/ directory fallback (test databases)
     const availableEntries = [...walkDirectory(srcDirPath)];
-    const matchedRelative = resolveEntryPath(filePath, availableEntries);
+    const matchedRelative = new SourcePathIndex(availableEntries).resolve(toFilesystemPath(filePath));
     if (!matchedRelative) {
       throw new Error(
         `File not found in src/: ${filePath}\n` +
@@ -317,21 +211,16 @@ export async function readDatabaseSource(
       );
     }
 
-    const fullPath = join(srcDirPath, matchedRelative);
-    const rawContent = readFileSync(fullPath, 'utf-8');
-    const { content, effectiveEnd, effectiveStart, totalLines } = applyLineRange(
-      rawContent,
-      startLine,
-      endLine,
-    );
-
+    const collector = new LineRangeCollector(startLine ?? 1, endLine ?? Infinity, MAX_UNCOMPRESSED_BYTES);
+    collector.push(readFileSync(join(srcDirPath, matchedRelative)));
+    const lines = collector.finish(collector.totalLines);
     return {
-      content,
-      endLine: effectiveEnd,
+      content: lines.content,
+      endLine: lines.endLine,
       entryPath: matchedRelative,
       sourceType,
-      startLine: effectiveStart,
-      totalLines,
+      startLine: lines.startLine,
+      totalLines: lines.totalLines,
     };
   }
 }
@@ -5,13 +5,36 @@
  * grep-like experience purpose-built for CodeQL development workflows.
  * Returns structured JSON results with file paths, line numbers, matching
  * lines, and optional context.
+ *
+ * Directories are walked with concurrent asynchronous `readdir` calls and
+ * the files are searched in batches on a bounded worker pool (see
+ * `line-search.ts`), so searching a whole package cache neither blocks the
+ * event loop nor runs one file at a time.  Results are merged in sorted
+ * path order, which keeps them deterministic.
+ *
+ * A persistent trigram index (see `ql-search-index.ts`) narrows the files
+ * to read: files whose indexed signature lacks a literal trigram of the
+ * pattern are skipped, and new or changed files are indexed while they are
+ * searched.  The result reports how fresh the index was.
  */
 
 import { McpServer } from '@modelcontextprotocol/sdk/server/mcp.js';
-import { closeSync, createReadStream, fstatSync, lstatSync, openSync, readdirSync, readFileSync, realpathSync } from 'fs';
+import type { Dirent } from 'fs';
+import { lstat, readdir, realpath, stat } from 'fs/promises';
 import { basename, extname, join, resolve } from 'path';
-import { createInterface } from 'readline';
 import { z } from 'zod';
+import {
+  type FileSearchResult,
+  getLineSearchPool,
+  type LineSearchTask,
+  searchFileOnCurrentThread,
+} from '../../lib/line-search';
+import {
+  getSearchIndex,
+  patternTrigrams,
+  type QlSearchIndex,
+  signatureMayMatch,
+} from '../../lib/ql-search-index';
 import { getScanExcludeDirs } from '../../lib/scan-exclude';
 import { logger } from '../../utils/logger';
 
@@ -19,11 +42,23 @@ import { logger } from '../../utils/logger';
 // Constants
 // ---------------------------------------------------------------------------
 
-/** Maximum file size in bytes to read (5 MB). */
-const MAX_FILE_SIZE_BYTES = 5 * 1024 * 1024;
-
 /** Maximum total files to traverse before stopping. */
-const MAX_FILES_TRAVERSED = 10_000;
+const MAX_FILES_TRAVERSED = 1_000_000;
+
+/** Directories read concurrently while collecting files. */
+const TRAVERSAL_CONCURRENCY = 16;
+
+/** Files per task handed to a search worker. */
+const SEARCH_BATCH_FILES = 32;
+
+/** Searches over fewer files run on the main thread (no worker start-up). */
+const WORKER_MIN_FILES = 64;
+
+/** Batches in flight on the main thread when not using workers. */
+const CURRENT_THREAD_IN_FLIGHT = 4;
+
+/** Files stat-ed concurrently to check their index entries. */
+const STAT_CONCURRENCY = 64;
 
 /** Maximum allowed value for `contextLines`. */
 const MAX_CONTEXT_LINES = 50;
@@ -58,6 +93,36 @@ export interface SearchResult {
   returnedMatches: number;
   truncated: boolean;
   filesSearched: number;
+  /**
+   * Set when the search stopped once more than `maxResults` lines matched
+   * (`countAllMatches: false`); `totalMatches` is then a lower bound.
+   */
+  stoppedEarly?: boolean;
+  /** Set when traversal stopped at the file limit. */
+  fileLimitReached?: boolean;
+  /** Freshness and effect of the trigram index, when it was used. */
+  index?: SearchIndexReport;
+}
+
+export interface SearchIndexReport {
+  /** Files whose index entry was current when the search started. */
+  freshFiles: number;
+  /** New or changed files indexed by this search. */
+  refreshedFiles: number;
+  /** Files ruled out by the index without being read. */
+  skippedFiles: number;
+  /** Whether the pattern has literal trigrams to narrow the files with. */
+  narrowed: boolean;
+}
+
+/** A file to read, with its position among all files in scope. */
+interface Candidate {
+  /** Build the file's trigram signature while reading it. */
+  index: boolean;
+  mtimeMs?: number;
+  path: string;
+  position: number;
+  size?: number;
 }
 
 // ---------------------------------------------------------------------------
@@ -65,230 +130,156 @@ export interface SearchResult {
 // ---------------------------------------------------------------------------
 
 /**
- * Collect files recursively from the given paths, filtered by extension.
- * Respects the global file-count limit. Uses lstatSync to avoid following
- * symlinks and tracks visited real paths to prevent cycles.
+ * Collect files recursively from the given paths, filtered by extension,
+ * reading up to {@link TRAVERSAL_CONCURRENCY} directories at a time.
+ * Symlinks are not followed, and visited directories are tracked by real
+ * path to prevent cycles.  Returns the files in sorted order.
  */
-function collectFiles(
+async function collectFiles(
   paths: string[],
-  extensions: string[],
-  fileCount: { value: number }
-): string[] {
+  extensions: string[]
+): Promise<{ files: string[]; limitReached: boolean }> {
   const files: string[] = [];
   const visitedDirs = new Set<string>();
   const skipDirs = getSkipDirs();
+  const pendingDirs: string[] = [];
+  let fileCount = 0;
 
-  function walk(p: string): void {
-    if (fileCount.value >= MAX_FILES_TRAVERSED) return;
-
-    let stat;
-    try {
-      stat = lstatSync(p);
-    } catch {
-      // Skip inaccessible paths
-      return;
+  const addFile = (p: string): void => {
+    if (extensions.length === 0 || extensions.includes(extname(p))) {
+      files.push(p);
     }
+    fileCount++;
+  };
 
-    // Skip symlinks to avoid cycles and symlink-following issues
-    if (stat.isSymbolicLink()) return;
-
-    if (stat.isFile()) {
-      if (extensions.length === 0 || extensions.includes(extname(p))) {
-        files.push(p);
-      }
-      fileCount.value++;
-    } else if (stat.isDirectory()) {
-      // Skip well-known directories that mirror source or contain deps
-      if (skipDirs.has(basename(p))) return;
-
-      // Track visited directories by real path to prevent cycles
-      let realPath: string;
-      try {
-        realPath = realpathSync(p);
-      } catch {
-        return;
-      }
-      if (visitedDirs.has(realPath)) return;
-      visitedDirs.add(realPath);
-
-      let entries: string[];
+  const addPath = async (p: string, entry?: Dirent): Promise<void> => {
+    let isFile = entry?.isFile();
+    let isDirectory = entry?.isDirectory();
+    if (entry?.isSymbolicLink()) return;
+    // Root paths, and entries whose type the file system does not report
+    if (!isFile && !isDirectory) {
+      let stat;
       try {
-        entries = readdirSync(p);
+        stat = await lstat(p);
       } catch {
+        // Skip inaccessible paths
         return;
       }
-      for (const entry of entries) {
-        if (fileCount.value >= MAX_FILES_TRAVERSED) return;
-        walk(join(p, entry));
-      }
+      // Skip symlinks to avoid cycles and symlink-following issues
+      if (stat.isSymbolicLink()) return;
+      isFile = stat.isFile();
+      isDirectory = stat.isDirectory();
     }
-  }
-
-  for (const p of paths) {
-    if (fileCount.value >= MAX_FILES_TRAVERSED) break;
-    walk(resolve(p));
-  }
-
-  return files;
-}
+    if (isFile) {
+      addFile(p);
+    } else if (isDirectory && !skipDirs.has(basename(p))) {
+      // Skip well-known directories that mirror source or contain deps
+      pendingDirs.push(p);
+    }
+  };
 
-/**
- * Search a file for matches. Returns up to `maxCollect` full match objects
- * (with context) and a `totalCount` of all regex hits in the file.
- *
- * Opens a single file descriptor, uses fstatSync(fd) to check size, then
- * either reads in-memory (small files) or streams (large files) — all via
- * the same fd. This avoids both TOCTOU races and reading huge files into
- * memory before the size check.
- */
-async function searchFile(
-  filePath: string,
-  regex: RegExp,
-  contextLines: number,
-  maxCollect: number
-): Promise<{ matches: SearchMatch[]; totalCount: number }> {
-  // Open once; fstatSync(fd) is safe — it operates on the handle, not the path.
-  let fd: number;
-  try {
-    fd = openSync(filePath, 'r');
-  } catch {
-    return { matches: [], totalCount: 0 };
-  }
+  const walkDir = async (dir: string): Promise<void> => {
+    // Track visited directories by real path to prevent cycles
+    let realDir: string;
+    try {
+      realDir = await realpath(dir);
+    } catch {
+      return;
+    }
+    if (visitedDirs.has(realDir)) return;
+    visitedDirs.add(realDir);
 
-  let size: number;
-  try {
-    size = fstatSync(fd).size;
-  } catch {
-    try { closeSync(fd); } catch { /* ignore */ }
-    return { matches: [], totalCount: 0 };
-  }
+    let entries: Dirent[];
+    try {
+      entries = await readdir(dir, { withFileTypes: true });
+    } catch {
+      return;
+    }
+    for (const entry of entries) {
+      if (fileCount >= MAX_FILES_TRAVERSED) return;
+      await addPath(join(dir, entry.name), entry);
+    }
+  };
 
-  // Large files: stream directly from the open fd
-  if (size > MAX_FILE_SIZE_BYTES) {
-    return searchFileStreaming(filePath, regex, contextLines, maxCollect, fd);
+  for (const p of paths) {
+    await addPath(resolve(p));
   }
 
-  // Small files: read entirely into memory from the open fd, then close
-  let content: string;
-  try {
-    content = readFileSync(fd, 'utf-8');
-  } catch {
-    try { closeSync(fd); } catch { /* ignore */ }
-    return { matches: [], totalCount: 0 };
-  }
-  try { closeSync(fd); } catch { /* ignore */ }
-
-  // In-memory search
-  const lines = content.replace(/\r\n/g, '\n').split('\n');
-  const matches: SearchMatch[] = [];
-  let totalCount = 0;
-
-  for (let i = 0; i < lines.length; i++) {
-    if (regex.test(lines[i])) {
-      totalCount++;
-      if (matches.length < maxCollect) {
-        const match: SearchMatch = {
-          filePath,
-          lineNumber: i + 1,
-          lineContent: lines[i]
-        };
-        if (contextLines > 0) {
-          const beforeStart = Math.max(0, i - contextLines);
-          const afterEnd = Math.min(lines.length - 1, i + contextLines);
-          match.contextBefore = lines.slice(beforeStart, i);
-          match.contextAfter = lines.slice(i + 1, afterEnd + 1);
-        }
-        matches.push(match);
+  await new Promise<void>((done) => {
+    let active = 0;
+    const pump = (): void => {
+      while (active < TRAVERSAL_CONCURRENCY && pendingDirs.length > 0 && fileCount < MAX_FILES_TRAVERSED) {
+        active++;
+        void walkDir(pendingDirs.pop()!).finally(() => {
+          active--;
+          pump();
+        });
       }
-    }
-  }
+      if (active === 0) done();
+    };
+    pump();
+  });
 
-  return { matches, totalCount };
+  files.sort();
+  return { files, limitReached: fileCount >= MAX_FILES_TRAVERSED };
 }
 
 /**
- * Stream a file line-by-line, collecting up to `maxCollect` matches with
- * context and counting all hits. Used for files exceeding MAX_FILE_SIZE_BYTES.
- *
- * When `fd` is provided the stream is created from the already-open file
- * descriptor (autoClose: true) so the fd is closed when the stream ends.
+ * Narrow `files` to the ones that need reading, using the search index.
+ * Files with a current index entry are kept only if their signature may
+ * contain the pattern's trigrams; every other file is kept and marked for
+ * (re)indexing.
  */
-async function searchFileStreaming(
-  filePath: string,
-  regex: RegExp,
-  contextLines: number,
-  maxCollect: number,
-  fd?: number
-): Promise<{ matches: SearchMatch[]; totalCount: number }> {
-  const matches: SearchMatch[] = [];
-  const recentLines: string[] = [];
-  const pending: { match: SearchMatch; afterNeeded: number }[] = [];
-  let lineNumber = 0;
-  let totalCount = 0;
-
-  let rl: ReturnType<typeof createInterface>;
-  try {
-    const streamOpts: Record<string, unknown> = { encoding: 'utf-8' };
-    if (fd !== undefined) {
-      streamOpts.fd = fd;
-      streamOpts.autoClose = true;
-      streamOpts.start = 0;
-    }
-    rl = createInterface({
-      input: createReadStream(filePath, streamOpts as Parameters<typeof createReadStream>[1]),
-      crlfDelay: Infinity
-    });
-  } catch {
-    if (fd !== undefined) {
-      try { closeSync(fd); } catch { /* ignore */ }
-    }
-    return { matches: [], totalCount: 0 };
-  }
-
-  for await (const line of rl) {
-    lineNumber++;
-
-    // Feed contextAfter to pending matches
-    for (const p of pending) {
-      if (p.afterNeeded > 0) {
-        p.match.contextAfter!.push(line);
-        p.afterNeeded--;
+async function selectCandidates(
+  index: QlSearchIndex,
+  files: string[],
+  pattern: string,
+  flags: string
+): Promise<{ candidates: Candidate[]; report: SearchIndexReport }> {
+  await index.load();
+  const trigrams = patternTrigrams(pattern, flags);
+  const report: SearchIndexReport = { freshFiles: 0, refreshedFiles: 0, skippedFiles: 0, narrowed: trigrams !== null };
+  const candidates: Array<Candidate | undefined> = new Array(files.length);
+
+  let next = 0;
+  const statNext = async (): Promise<void> => {
+    while (next < files.length) {
+      const position = next++;
+      const path = files[position];
+      let st;
+      try {
+        st = await stat(path);
+      } catch {
+        // Let the read skip it.
+        candidates[position] = { index: false, path, position };
+        continue;
       }
-    }
-    while (pending.length > 0 && pending[0].afterNeeded === 0) {
-      pending.shift();
-    }
-
-    if (regex.test(line)) {
-      totalCount++;
-      if (matches.length < maxCollect) {
-        const match: SearchMatch = {
-          filePath,
-          lineNumber,
-          lineContent: line
-        };
-        if (contextLines > 0) {
-          match.contextBefore = recentLines.slice(-contextLines);
-          match.contextAfter = [];
-          pending.push({ match, afterNeeded: contextLines });
-        }
-        matches.push(match);
+      const entry = index.getFresh(path, st.mtimeMs, st.size);
+      if (!entry) {
+        candidates[position] = { index: true, mtimeMs: st.mtimeMs, path, position, size: st.size };
+        continue;
       }
-    }
-
-    if (contextLines > 0) {
-      recentLines.push(line);
-      if (recentLines.length > contextLines) {
-        recentLines.shift();
+      report.freshFiles++;
+      if (!trigrams || signatureMayMatch(entry.signature, trigrams)) {
+        candidates[position] = { index: false, path, position };
+      } else {
+        report.skippedFiles++;
       }
     }
-  }
+  };
+  await Promise.all(Array.from({ length: Math.min(STAT_CONCURRENCY, files.length) }, statNext));
 
-  return { matches, totalCount };
+  return { candidates: candidates.filter((c): c is Candidate => c !== undefined), report };
 }
 
 /**
  * Search QL source files for a text or regex pattern.
+ *
+ * Files are searched in batches, on the worker pool when there are at
+ * least {@link WORKER_MIN_FILES} of them, and merged in path order.  By
+ * default every file is searched so that `totalMatches` is exact; with
+ * `countAllMatches: false` the search stops as soon as more than
+ * `maxResults` lines matched.
  */
 export async function searchQlCode(params: {
   pattern: string;
@@ -297,6 +288,11 @@ export async function searchQlCode(params: {
   caseSensitive?: boolean;
   contextLines?: number;
   maxResults?: number;
+  countAllMatches?: boolean;
+  /** Narrow and refresh files with the trigram index (default: true). */
+  useIndex?: boolean;
+  /** Search on the worker pool; defaults to the file-count heuristic. */
+  useWorkers?: boolean;
 }): Promise<SearchResult> {
   const {
     pattern,
@@ -304,7 +300,9 @@ export async function searchQlCode(params: {
     includeExtensions = ['.ql', '.qll'],
     caseSensitive = true,
     contextLines: rawContextLines = 0,
-    maxResults: rawMaxResults = 100
+    maxResults: rawMaxResults = 100,
+    countAllMatches = true,
+    useIndex = true
   } = params;
 
   // Clamp to valid ranges
@@ -315,28 +313,104 @@ export async function searchQlCode(params: {
   const flags = caseSensitive ? '' : 'i';
   const regex = new RegExp(pattern, flags);
 
-  const fileCount = { value: 0 };
-  const filesToSearch = collectFiles(paths, includeExtensions, fileCount);
+  const { files, limitReached } = await collectFiles(paths, includeExtensions);
+
+  const index = useIndex ? getSearchIndex() : undefined;
+  let candidates: Candidate[];
+  let report: SearchIndexReport | undefined;
+  if (index) {
+    ({ candidates, report } = await selectCandidates(index, files, pattern, flags));
+  } else {
+    candidates = files.map((path, position) => ({ index: false, path, position }));
+  }
+  const useWorkers = params.useWorkers ?? candidates.length >= WORKER_MIN_FILES;
+
+  const runOnCurrentThread = async (task: LineSearchTask): Promise<FileSearchResult[]> => {
+    const results: FileSearchResult[] = [];
+    for (let i = 0; i < task.files.length; i++) {
+      results.push(await searchFileOnCurrentThread(task.files[i], regex, task, task.signatures?.[i]));
+    }
+    return results;
+  };
+  let runBatch = runOnCurrentThread;
+  let maxInFlight = CURRENT_THREAD_IN_FLIGHT;
+  if (useWorkers) {
+    const pool = getLineSearchPool();
+    maxInFlight = pool.size * 2;
+    runBatch = task => pool.run(task).catch((error) => {
+      logger.warn('Search worker failed; searching the batch on the main thread:', error);
+      return runOnCurrentThread(task);
+    });
+  }
 
   const allMatches: SearchMatch[] = [];
   let totalMatches = 0;
+  let filesSearched = files.length;
+  let stoppedEarly = false;
+
+  const batchCount = Math.ceil(candidates.length / SEARCH_BATCH_FILES);
+  const inFlight = new Map<number, Promise<FileSearchResult[]>>();
+  let dispatched = 0;
+  for (let next = 0; next < batchCount && !stoppedEarly; next++) {
+    while (dispatched < batchCount && inFlight.size < maxInFlight) {
+      const batch = candidates.slice(dispatched * SEARCH_BATCH_FILES, (dispatched + 1) * SEARCH_BATCH_FILES);
+      // Matches already merged only grow, so this never collects too few.
+      const remainingSlots = maxResults - allMatches.length;
+      inFlight.set(dispatched, runBatch({
+        contextLines,
+        files: batch.map(c => c.path),
+        flags,
+        maxCollect: remainingSlots,
+        pattern,
+        signatures: batch.map(c => c.index),
+        stopAfter: countAllMatches ? Infinity : remainingSlots + 1,
+      }));
+      dispatched++;
+    }
 
-  for (const file of filesToSearch) {
-    const remainingSlots = Math.max(0, maxResults - allMatches.length);
-    const { matches: fileMatches, totalCount } = await searchFile(
-      file, regex, contextLines, remainingSlots
-    );
-    totalMatches += totalCount;
-    allMatches.push(...fileMatches);
+    const batch = candidates.slice(next * SEARCH_BATCH_FILES, (next + 1) * SEARCH_BATCH_FILES);
+    const results = await inFlight.get(next)!;
+    inFlight.delete(next);
+    for (let i = 0; i < results.length; i++) {
+      const { matches, signature, totalCount } = results[i];
+      const candidate = batch[i];
+      if (signature && index && report) {
+        index.set(candidate.path, { mtimeMs: candidate.mtimeMs!, signature, size: candidate.size! });
+        report.refreshedFiles++;
+      }
+      totalMatches += totalCount;
+      allMatches.push(...matches.slice(0, maxResults - allMatches.length));
+      if (!countAllMatches && totalMatches > maxResults) {
+        stoppedEarly = true;
+        // Files after the stopping point were not considered.
+        filesSearched = candidate.position + 1;
+        break;
+      }
+    }
+  }
+  // Results of abandoned batches are not needed.
+  for (const pending of inFlight.values()) {
+    pending.catch(() => { /* ignore */ });
+  }
+
+  if (index) {
+    if (!limitReached && !stoppedEarly) {
+      index.prune(paths.map(p => resolve(p)), includeExtensions, new Set(files));
+    }
+    void index.save();
   }
 
-  return {
+  const result: SearchResult = {
     results: allMatches,
     totalMatches,
     returnedMatches: allMatches.length,
     truncated: totalMatches > maxResults,
-    filesSearched: filesToSearch.length
+    filesSearched
   };
+  if (stoppedEarly) result.stoppedEarly = true;
+  if (limitReached) result.fileLimitReached = true;
+  if (report) result.index = report;
+  return result;
 }
 
 // ---------------------------------------------------------------------------
@@ -360,9 +434,11 @@ export function registerSearchQlCodeTool(server: McpServer): void {
       contextLines: z.number().int().min(0).max(MAX_CONTEXT_LINES).optional().default(0)
         .describe('Lines of context before and after each match (default: 0, max: 50)'),
       maxResults: z.number().int().min(1).max(MAX_MAX_RESULTS).optional().default(100)
-        .describe('Maximum number of matching lines to return (default: 100, max: 10000)')
+        .describe('Maximum number of matching lines to return (default: 100, max: 10000)'),
+      countAllMatches: z.boolean().optional().default(true)
+        .describe('Search every file so that totalMatches is exact (default: true). Set to false to stop as soon as more than maxResults lines match, which is much faster for common patterns over large library trees')
     },
-    async ({ pattern, paths, includeExtensions, caseSensitive, contextLines, maxResults }) => {
+    async ({ pattern, paths, includeExtensions, caseSensitive, contextLines, maxResults, countAllMatches }) => {
       try {
         const result = await searchQlCode({
           pattern,
@@ -370,7 +446,8 @@ export function registerSearchQlCodeTool(server: McpServer): void {
           includeExtensions,
           caseSensitive,
           contextLines,
-          maxResults
+          maxResults,
+          countAllMatches
         });
         return {
           content: [{ type: 'text', text: JSON.stringify(result, null, 2) }]
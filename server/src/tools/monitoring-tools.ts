@@ -9,7 +9,9 @@ import { randomUUID } from 'crypto';
 import { sessionDataManager } from '../lib/session-data-manager';
 import {
   QueryDevelopmentSession,
+  SessionAggregateStats,
   SessionFilter,
+  SessionListEntry,
   QualityScoreRecord,
   ComparisonReport,
   AggregateReport,
@@ -18,6 +20,9 @@ import {
 } from '../types/monitoring';
 import { logger } from '../utils/logger';
 
+/** Default number of entries returned per page by the session history tools. */
+const DEFAULT_HISTORY_PAGE_SIZE = 100;
+
 /**
  * Register all monitoring and reporting tools with the MCP server
  * Note: These tools are opt-in and disabled by default for end-users.
@@ -177,7 +182,7 @@ function registerSessionListTool(server: McpServer): void {
         if (language) filters.language = language;
         if (queryType) filters.queryType = queryType;
 
-        const sessions = await sessionDataManager.listSessions(
+        const sessions = await sessionDataManager.listSessionEntries(
           Object.keys(filters).length > 0 ? filters : undefined
         );
 
@@ -190,11 +195,9 @@ function registerSessionListTool(server: McpServer): void {
             status: s.status,
             startTime: s.startTime,
             endTime: s.endTime,
-            mcpCallsCount: s.mcpCalls.length,
-            testExecutionsCount: s.testExecutions.length,
-            currentScore: s.qualityScores.length > 0 
-              ? s.qualityScores[s.qualityScores.length - 1].overallScore 
-              : null,
+            mcpCallsCount: s.mcpCallsCount,
+            testExecutionsCount: s.testExecutionsCount,
+            currentScore: s.currentScore,
           })),
         };
 
@@ -263,7 +266,10 @@ function registerSessionUpdateStateTool(server: McpServer): void {
               text: JSON.stringify(session, null, 2),
             },
           ],
-          recommendations: generateRecommendations(session, 'session_update_state'),
+          recommendations: generateRecommendations(
+            await sessionDataManager.getSession(sessionId),
+            'session_update_state',
+          ),
         };
       } catch (error) {
         logger.error('Error updating session state:', error);
@@ -291,13 +297,17 @@ function registerSessionGetCallHistoryTool(server: McpServer): void {
     'Get MCP call history for a specific session',
     {
       sessionId: z.string().describe('ID of the session'),
-      limit: z.number().optional().describe('Maximum number of calls to return (most recent first)'),
+      limit: z.number().optional().describe(`Maximum number of calls to return (most recent first, default ${DEFAULT_HISTORY_PAGE_SIZE})`),
+      cursor: z.number().int().optional().describe('Cursor from the "nextCursor" field of a previous call, to continue with older entries'),
     },
-    async ({ sessionId, limit }) => {
+    async ({ sessionId, limit, cursor }) => {
       try {
-        const session = await sessionDataManager.getSession(sessionId);
+        const page = await sessionDataManager.getSessionHistory(sessionId, 'mcpCalls', {
+          before: cursor,
+          limit: limit && limit > 0 ? limit : DEFAULT_HISTORY_PAGE_SIZE,
+        });
         
-        if (!session) {
+        if (!page) {
           return {
             content: [
               {
@@ -309,19 +319,15 @@ function registerSessionGetCallHistoryTool(server: McpServer): void {
           };
         }
 
-        let calls = [...session.mcpCalls].reverse(); // Most recent first
-        if (limit && limit > 0) {
-          calls = calls.slice(0, limit);
-        }
-
         return {
           content: [
             {
               type: 'text',
               text: JSON.stringify({
                 sessionId,
-                totalCalls: session.mcpCalls.length,
-                callHistory: calls,
+                totalCalls: page.total,
+                callHistory: page.records,
+                nextCursor: page.nextCursor,
               }, null, 2),
             },
           ],
@@ -348,13 +354,17 @@ function registerSessionGetTestHistoryTool(server: McpServer): void {
     'Get test execution history for a specific session',
     {
       sessionId: z.string().describe('ID of the session'),
-      limit: z.number().optional().describe('Maximum number of test executions to return (most recent first)'),
+      limit: z.number().optional().describe(`Maximum number of test executions to return (most recent first, default ${DEFAULT_HISTORY_PAGE_SIZE})`),
+      cursor: z.number().int().optional().describe('Cursor from the "nextCursor" field of a previous call, to continue with older entries'),
     },
-    async ({ sessionId, limit }) => {
+    async ({ sessionId, limit, cursor }) => {
       try {
-        const session = await sessionDataManager.getSession(sessionId);
+        const page = await sessionDataManager.getSessionHistory(sessionId, 'testExecutions', {
+          before: cursor,
+          limit: limit && limit > 0 ? limit : DEFAULT_HISTORY_PAGE_SIZE,
+        });
         
-        if (!session) {
+        if (!page) {
           return {
             content: [
               {
@@ -366,19 +376,15 @@ function registerSessionGetTestHistoryTool(server: McpServer): void {
           };
         }
 
-        let tests = [...session.testExecutions].reverse(); // Most recent first
-        if (limit && limit > 0) {
-          tests = tests.slice(0, limit);
-        }
-
         return {
           content: [
             {
               type: 'text',
               text: JSON.stringify({
                 sessionId,
-                totalTests: session.testExecutions.length,
-                testHistory: tests,
+                totalTests: page.total,
+                testHistory: page.records,
+                nextCursor: page.nextCursor,
               }, null, 2),
             },
           ],
@@ -405,13 +411,17 @@ function registerSessionGetScoreHistoryTool(server: McpServer): void {
     'Get quality score history for a specific session',
     {
       sessionId: z.string().describe('ID of the session'),
-      limit: z.number().optional().describe('Maximum number of scores to return (most recent first)'),
+      limit: z.number().optional().describe(`Maximum number of scores to return (most recent first, default ${DEFAULT_HISTORY_PAGE_SIZE})`),
+      cursor: z.number().int().optional().describe('Cursor from the "nextCursor" field of a previous call, to continue with older entries'),
     },
-    async ({ sessionId, limit }) => {
+    async ({ sessionId, limit, cursor }) => {
       try {
-        const session = await sessionDataManager.getSession(sessionId);
+        const page = await sessionDataManager.getSessionHistory(sessionId, 'qualityScores', {
+          before: cursor,
+          limit: limit && limit > 0 ? limit : DEFAULT_HISTORY_PAGE_SIZE,
+        });
         
-        if (!session) {
+        if (!page) {
           return {
             content: [
               {
@@ -423,19 +433,15 @@ function registerSessionGetScoreHistoryTool(server: McpServer): void {
           };
         }
 
-        let scores = [...session.qualityScores].reverse(); // Most recent first
-        if (limit && limit > 0) {
-          scores = scores.slice(0, limit);
-        }
-
         return {
           content: [
             {
               type: 'text',
               text: JSON.stringify({
                 sessionId,
-                totalScores: session.qualityScores.length,
-                scoreHistory: scores,
+                totalScores: page.total,
+                scoreHistory: page.records,
+                nextCursor: page.nextCursor,
               }, null, 2),
             },
           ],
@@ -527,11 +533,7 @@ function registerSessionsCompareTool(server: McpServer): void {
     },
     async ({ sessionIds, dimensions }) => {
       try {
-        const sessions = await Promise.all(
-          sessionIds.map(id => sessionDataManager.getSession(id))
-        );
-
-        const validSessions = sessions.filter(s => s !== null) as QueryDevelopmentSession[];
+        const validSessions = await sessionDataManager.listSessionEntries(undefined, sessionIds);
         
         if (validSessions.length === 0) {
           return {
@@ -591,11 +593,11 @@ function registerSessionsAggregateTool(server: McpServer): void {
         if (language) filters.language = language;
         if (queryType) filters.queryType = queryType;
 
-        const sessions = await sessionDataManager.listSessions(
+        const stats = await sessionDataManager.aggregateSessions(
           Object.keys(filters).length > 0 ? filters : undefined
         );
 
-        const aggregate = await aggregateSessions(sessions, filters);
+        const aggregate = buildAggregateReport(stats, filters);
 
         return {
           content: [
@@ -752,7 +754,7 @@ function calculateQualityScore(session: QueryDevelopmentSession): QualityScoreRe
  * Compare multiple sessions
  */
 async function compareSessions(
-  sessions: QueryDevelopmentSession[],
+  sessions: SessionListEntry[],
   dimensions?: string[]
 ): Promise<ComparisonReport> {
   const timestamp = new Date().toISOString();
@@ -764,35 +766,33 @@ async function compareSessions(
       sessionId: s.sessionId,
       queryPath: s.queryPath,
       status: s.status,
-      mcpCallsCount: s.mcpCalls.length,
+      mcpCallsCount: s.mcpCallsCount,
       duration: s.endTime ? 
         new Date(s.endTime).getTime() - new Date(s.startTime).getTime() : 
         new Date().getTime() - new Date(s.startTime).getTime(),
-      currentScore: s.qualityScores.length > 0 ? 
-        s.qualityScores[s.qualityScores.length - 1].overallScore : null,
+      currentScore: s.currentScore,
     })),
   };
 
   if (!dimensions || dimensions.includes('quality')) {
-    const qualityScores = sessions.map(s => 
-      s.qualityScores.length > 0 ? s.qualityScores[s.qualityScores.length - 1] : null
-    );
+    const qualityScores = sessions
+      .map(s => s.currentScore)
+      .filter(score => score !== null) as number[];
     results.qualityComparison = {
-      averageScore: qualityScores
-        .filter(q => q !== null)
-        .reduce((sum, q) => sum + q!.overallScore, 0) / qualityScores.filter(q => q !== null).length,
+      averageScore: qualityScores.reduce((sum, score) => sum + score, 0) / qualityScores.length,
       scoreRange: {
-        min: Math.min(...qualityScores.filter(q => q !== null).map(q => q!.overallScore)),
-        max: Math.max(...qualityScores.filter(q => q !== null).map(q => q!.overallScore)),
+        min: Math.min(...qualityScores),
+        max: Math.max(...qualityScores),
       },
     };
   }
 
   if (!dimensions || dimensions.includes('activity')) {
+    const stats = await sessionDataManager.aggregateSessions(undefined, sessionIds);
     results.activityComparison = {
-      totalMCPCalls: sessions.reduce((sum, s) => sum + s.mcpCalls.length, 0),
-      averageCallsPerSession: sessions.reduce((sum, s) => sum + s.mcpCalls.length, 0) / sessions.length,
-      mostActiveTool: getMostUsedTool(sessions),
+      totalMCPCalls: stats.totalMcpCalls,
+      averageCallsPerSession: stats.totalMcpCalls / sessions.length,
+      mostActiveTool: stats.mostUsedTool ?? 'none',
     };
   }
 
@@ -805,31 +805,24 @@ async function compareSessions(
 }
 
 /**
- * Aggregate insights from multiple sessions
+ * Build an aggregate report from SQL-computed session statistics
  */
-async function aggregateSessions(
-  sessions: QueryDevelopmentSession[],
+function buildAggregateReport(
+  stats: SessionAggregateStats,
   filters: SessionFilter
-): Promise<AggregateReport> {
+): AggregateReport {
   const timestamp = new Date().toISOString();
   
-  const completedSessions = sessions.filter(s => s.status === 'completed');
-  const successRate = sessions.length > 0 ? completedSessions.length / sessions.length : 0;
-  
-  const qualityScores = sessions
-    .map(s => s.qualityScores.length > 0 ? s.qualityScores[s.qualityScores.length - 1].overallScore : null)
-    .filter(score => score !== null) as number[];
-  
-  const averageQualityScore = qualityScores.length > 0 ? 
-    qualityScores.reduce((sum, score) => sum + score, 0) / qualityScores.length : 0;
+  const successRate = stats.totalSessions > 0 ? stats.completedSessions / stats.totalSessions : 0;
+  const averageQualityScore = stats.averageQualityScore ?? 0;
 
-  const commonPatterns = identifyCommonPatterns(sessions);
-  const recommendations = generateAggregateRecommendations(sessions);
+  const commonPatterns = identifyCommonPatterns(stats);
+  const recommendations = generateAggregateRecommendations(stats);
 
   return {
     filters,
     timestamp,
-    totalSessions: sessions.length,
+    totalSessions: stats.totalSessions,
     successRate,
     averageQualityScore,
     commonPatterns,
@@ -873,28 +866,14 @@ async function exportSessions(
  * Utility functions
  */
 
-function getMostUsedTool(sessions: QueryDevelopmentSession[]): string {
-  const toolCounts: Record<string, number> = {};
-  
-  sessions.forEach(session => {
-    session.mcpCalls.forEach(call => {
-      toolCounts[call.toolName] = (toolCounts[call.toolName] || 0) + 1;
-    });
-  });
-
-  return Object.entries(toolCounts)
-    .sort(([, a], [, b]) => b - a)[0]?.[0] || 'none';
-}
-
-function identifyCommonPatterns(sessions: QueryDevelopmentSession[]): string[] {
+function identifyCommonPatterns(stats: SessionAggregateStats): string[] {
   const patterns: string[] = [];
   
-  const commonTools = getMostUsedTool(sessions);
-  if (commonTools && commonTools !== 'none') {
-    patterns.push(`Most commonly used tool: ${commonTools}`);
+  if (stats.mostUsedTool) {
+    patterns.push(`Most commonly used tool: ${stats.mostUsedTool}`);
   }
 
-  const completionRate = sessions.filter(s => s.status === 'completed').length / sessions.length;
+  const completionRate = stats.completedSessions / stats.totalSessions;
   if (completionRate > 0.8) {
     patterns.push('High completion rate indicates effective workflow');
   } else if (completionRate < 0.5) {
@@ -904,15 +883,14 @@ function identifyCommonPatterns(sessions: QueryDevelopmentSession[]): string[] {
   return patterns;
 }
 
-function generateAggregateRecommendations(sessions: QueryDevelopmentSession[]): string[] {
+function generateAggregateRecommendations(stats: SessionAggregateStats): string[] {
   const recommendations: string[] = [];
   
-  const failedSessions = sessions.filter(s => s.status === 'failed');
-  if (failedSessions.length > sessions.length * 0.3) {
+  if (stats.failedSessions > stats.totalSessions * 0.3) {
     recommendations.push('High failure rate - consider improving error handling and guidance');
   }
 
-  const averageCallsPerSession = sessions.reduce((sum, s) => sum + s.mcpCalls.length, 0) / sessions.length;
+  const averageCallsPerSession = stats.totalMcpCalls / stats.totalSessions;
   if (averageCallsPerSession > 20) {
     recommendations.push('High number of MCP calls per session - consider workflow optimization');
   }
@@ -1089,7 +1067,7 @@ function generateRecommendations(
 /**
  * Generate recommendations for session list results
  */
-function generateListRecommendations(sessions: QueryDevelopmentSession[]): Record<string, string> {
+function generateListRecommendations(sessions: SessionListEntry[]): Record<string, string> {
   const recommendations: Record<string, string> = {};
 
   const activeSessions = sessions.filter(s => s.status === 'active');
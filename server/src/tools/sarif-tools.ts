@@ -6,19 +6,23 @@
  */
 
 import { McpServer } from '@modelcontextprotocol/sdk/server/mcp.js';
-import { readFileSync } from 'fs';
+import { existsSync, readFileSync, statSync } from 'fs';
+import { resolve } from 'path';
 import { z } from 'zod';
+import { extractAlertContext } from '../lib/alert-context';
 import {
-  computeFingerprintOverlap,
   computeLocationOverlap,
   diffSarifByCommits,
+  diffSarifResults,
   diffSarifRules,
   extractRuleFromSarif,
   findOverlappingAlerts,
   listSarifRules,
+  matchResultsByFingerprint,
   sarifRuleToMarkdown,
 } from '../lib/sarif-utils';
 import type { DiffFileEntry, DiffGranularity } from '../lib/sarif-utils';
+import { sarifDocumentCache } from '../lib/sarif-document-cache';
 import { sessionDataManager } from '../lib/session-data-manager';
 import type { SarifResult, SarifRule } from '../types/sarif';
 import type { SarifDocument } from '../types/sarif';
@@ -28,6 +32,7 @@ import { logger } from '../utils/logger';
  * Register all SARIF analysis tools with the MCP server.
  */
 export function registerSarifTools(server: McpServer): void {
+  registerSarifAlertContextTool(server);
   registerSarifCompareAlertsTool(server);
   registerSarifDeduplicateRulesTool(server);
   registerSarifDiffByCommitsTool(server);
@@ -36,6 +41,7 @@ export function registerSarifTools(server: McpServer): void {
   registerSarifListRulesTool(server);
   registerSarifRuleToMarkdownTool(server);
   registerSarifStoreTool(server);
+  registerSarifCacheStatsTool(server);
 
   logger.info('Registered SARIF analysis tools');
 }
@@ -54,6 +60,13 @@ interface LoadSarifOptions {
   sarifPath?: string;
 }
 
+/**
+ * Load and validate a SARIF document.
+ *
+ * File and cache-key sources go through the process-wide parsed-document
+ * cache, so consecutive tools working on the same SARIF parse it once.
+ * Returned documents may be shared and must not be mutated.
+ */
 function loadSarif(
   opts: LoadSarifOptions,
 ): { error?: string; sarif?: SarifDocument } {
@@ -63,12 +76,25 @@ function loadSarif(
     return { error: 'No SARIF source provided.' };
   }
 
+  if (inlineContent) {
+    return parseSarifContent(inlineContent);
+  }
+
   let content: string;
+  let documentKey: string | null = null;
+  let documentVersion = '';
 
-  if (inlineContent) {
-    content = inlineContent;
-  } else if (cacheKey) {
+  if (cacheKey) {
     const store = sessionDataManager.getStore();
+    // Cached content lives in a content-addressed blob, so its path
+    // identifies the exact content version.
+    const blobPath = store.getCacheContentFile(cacheKey);
+    if (blobPath) {
+      documentKey = `cache:${cacheKey}`;
+      documentVersion = blobPath;
+      const hit = sarifDocumentCache.get(documentKey, documentVersion);
+      if (hit) return { sarif: hit };
+    }
     const cached = store.getCacheContent(cacheKey);
     if (!cached) {
       return { error: `No cached content found for key: ${cacheKey}` };
@@ -76,12 +102,28 @@ function loadSarif(
     content = cached;
   } else {
     try {
+      const st = statSync(sarifPath!);
+      documentKey = `file:${resolve(sarifPath!)}`;
+      documentVersion = `${st.mtimeMs}:${st.size}`;
+      const hit = sarifDocumentCache.get(documentKey, documentVersion);
+      if (hit) return { sarif: hit };
       content = readFileSync(sarifPath!, 'utf8');
     } catch {
       return { error: `Failed to read SARIF file: ${sarifPath}` };
     }
   }
 
+  const loaded = parseSarifContent(content);
+  if (loaded.sarif && documentKey) {
+    sarifDocumentCache.set(documentKey, documentVersion, loaded.sarif, Buffer.byteLength(content, 'utf8'));
+  }
+  return loaded;
+}
+
+/**
+ * Parse SARIF JSON text and validate its basic structure.
+ */
+function parseSarifContent(content: string): { error?: string; sarif?: SarifDocument } {
   try {
     const parsed = JSON.parse(content);
     if (!parsed || typeof parsed !== 'object') {
@@ -435,10 +477,12 @@ function registerSarifDiffRunsTool(server: McpServer): void {
       cacheKeyB: z.string().optional().describe('Cache key for the second (comparison) SARIF.'),
       labelA: z.string().optional().describe('Label for the first run (e.g. "v2.20.3", "main-branch", "database-A").'),
       labelB: z.string().optional().describe('Label for the second run (e.g. "v2.20.4", "feature-branch", "database-B").'),
+      matchResults: z.boolean().optional().default(false)
+        .describe('Also match individual results across the runs (by partialFingerprints, then by location) and report per-rule new and absent result indices. Default: false.'),
       sarifPathA: z.string().optional().describe('Path to the first (baseline) SARIF file.'),
       sarifPathB: z.string().optional().describe('Path to the second (comparison) SARIF file.'),
     },
-    async ({ sarifPathA, sarifPathB, cacheKeyA, cacheKeyB, labelA, labelB }) => {
+    async ({ sarifPathA, sarifPathB, cacheKeyA, cacheKeyB, labelA, labelB, matchResults }) => {
       const loadedA = loadSarif({ sarifPath: sarifPathA, cacheKey: cacheKeyA });
       if (loadedA.error) {
         return { content: [{ type: 'text' as const, text: `Run A: ${loadedA.error}` }] };
@@ -450,6 +494,7 @@ function registerSarifDiffRunsTool(server: McpServer): void {
       }
 
       const diff = diffSarifRules(loadedA.sarif!, loadedB.sarif!);
+      const resultDiff = matchResults ? diffSarifResults(loadedA.sarif!, loadedB.sarif!) : undefined;
 
       return {
         content: [{
@@ -458,6 +503,7 @@ function registerSarifDiffRunsTool(server: McpServer): void {
             labelA: labelA ?? 'Run A',
             labelB: labelB ?? 'Run B',
             ...diff,
+            ...(resultDiff ? { resultDiff } : {}),
           }, null, 2),
         }],
       };
@@ -620,16 +666,7 @@ function registerSarifDeduplicateRulesTool(server: McpServer): void {
           const overlaps = findOverlappingAlerts(resultsA, ruleObjA, resultsB, ruleObjB, 'full-path');
 
           // Fingerprint matching — count unique A-side results that match any B-side result
-          const matchedAIndices = new Set<number>();
-          for (let ai = 0; ai < resultsA.length; ai++) {
-            for (const rResultB of resultsB) {
-              const fpResult = computeFingerprintOverlap(resultsA[ai], rResultB);
-              if (fpResult.fingerprintMatch) {
-                matchedAIndices.add(ai);
-                break; // one match per A result is enough
-              }
-            }
-          }
+          const matchedAIndices = new Set(matchResultsByFingerprint(resultsA, resultsB).map(([ai]) => ai));
 
           // Overlap scoring: We use the higher of two matching strategies:
           // 1. Location-based: `overlaps.length` from full-path structural comparison
@@ -702,3 +739,90 @@ export function findOverlappingAlertsBetweenRules(
 
   return findOverlappingAlerts(resultsA, ruleA, resultsB, ruleB, mode);
 }
+
+// ---------------------------------------------------------------------------
+// sarif_alert_context
+// ---------------------------------------------------------------------------
+
+function registerSarifAlertContextTool(server: McpServer): void {
+  server.tool(
+    'sarif_alert_context',
+    'Extract the source code around every alert of a SARIF in one call: primary locations and code-flow steps, grouped by file with overlapping context merged, read from the CodeQL database source archive (each file is read once). Use instead of calling read_database_source per alert. Paged by alert: pass nextCursor to continue.',
+    {
+      cacheKey: z.string().optional().describe('Cache key to read SARIF from (alternative to sarifPath).'),
+      contextLines: z.number().int().min(0).max(50).optional().default(3)
+        .describe('Lines of context before and after each location. Default: 3.'),
+      cursor: z.number().int().min(0).optional()
+        .describe('Cursor from the "nextCursor" field of a previous call, to continue with the next alerts.'),
+      databasePath: z.string().optional()
+        .describe('Path to the CodeQL database. Defaults to the database recorded for cacheKey.'),
+      includeCodeFlows: z.boolean().optional().default(true)
+        .describe('Include code-flow steps, not only primary locations. Default: true.'),
+      maxAlerts: z.number().int().min(1).max(1000).optional().default(100)
+        .describe('Maximum number of alerts per call. Default: 100.'),
+      sarifPath: z.string().optional().describe('Path to the SARIF file.'),
+    },
+    async ({ sarifPath, cacheKey, contextLines, cursor, databasePath, includeCodeFlows, maxAlerts }) => {
+      const loaded = loadSarif({ sarifPath, cacheKey });
+      if (loaded.error) {
+        return { content: [{ type: 'text' as const, text: loaded.error }] };
+      }
+
+      let dbPath = databasePath;
+      if (!dbPath && cacheKey) {
+        const recorded = sessionDataManager.getStore().getCacheEntryMeta(cacheKey)?.databasePath;
+        if (recorded && existsSync(recorded)) dbPath = recorded;
+      }
+      if (!dbPath) {
+        return {
+          content: [{
+            type: 'text' as const,
+            text: 'No databasePath provided, and none is recorded for the SARIF source.',
+          }],
+        };
+      }
+
+      try {
+        const page = await extractAlertContext(loaded.sarif!, dbPath, {
+          contextLines: contextLines ?? 3,
+          cursor: cursor ?? 0,
+          includeCodeFlows: includeCodeFlows ?? true,
+          maxAlerts: maxAlerts ?? 100,
+        });
+        return {
+          content: [{
+            type: 'text' as const,
+            text: JSON.stringify({ databasePath: dbPath, ...page }),
+          }],
+        };
+      } catch (error) {
+        logger.error('Error extracting alert context:', error);
+        return {
+          content: [{
+            type: 'text' as const,
+            text: `Failed to extract alert context: ${error instanceof Error ? error.message : String(error)}`,
+          }],
+          isError: true,
+        };
+      }
+    },
+  );
+}
+
+// ---------------------------------------------------------------------------
+// sarif_cache_stats
+// ---------------------------------------------------------------------------
+
+function registerSarifCacheStatsTool(server: McpServer): void {
+  server.tool(
+    'sarif_cache_stats',
+    'Report occupancy and hit/miss/eviction counters of the in-memory cache of parsed SARIF documents shared by the sarif_* tools.',
+    {},
+    async () => ({
+      content: [{
+        type: 'text' as const,
+        text: JSON.stringify(sarifDocumentCache.getStats(), null, 2),
+      }],
+    }),
+  );
+}
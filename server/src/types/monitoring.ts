@@ -102,6 +102,49 @@ export const QueryDevelopmentSessionSchema = z.object({
 
 export type QueryDevelopmentSession = z.infer<typeof QueryDevelopmentSessionSchema>;
 
+/**
+ * Session metadata and state without the call, test and score history,
+ * which is stored separately and can be read page by page.
+ */
+export type QueryDevelopmentSessionSummary = Omit<
+  QueryDevelopmentSession,
+  'mcpCalls' | 'qualityScores' | 'testExecutions'
+>;
+
+/**
+ * A session listed with counts derived from its history.
+ */
+export interface SessionListEntry extends QueryDevelopmentSessionSummary {
+  /** Overall score of the most recent quality score, if any. */
+  currentScore: number | null;
+  mcpCallsCount: number;
+  testExecutionsCount: number;
+}
+
+/**
+ * Aggregates over a filtered set of sessions.
+ */
+export interface SessionAggregateStats {
+  /** Mean of each scored session's most recent overall score. */
+  averageQualityScore: number | null;
+  completedSessions: number;
+  failedSessions: number;
+  mostUsedTool: string | null;
+  totalMcpCalls: number;
+  totalSessions: number;
+}
+
+/**
+ * One page of a session's history, most recent record first.
+ */
+export interface SessionHistoryPage<T> {
+  /** Cursor for the next (older) page, if there is one. */
+  nextCursor?: number;
+  records: T[];
+  /** Total number of records in the session's history. */
+  total: number;
+}
+
 /**
  * Session Filter for listing and searching
  */
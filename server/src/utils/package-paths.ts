@@ -86,6 +86,19 @@ export function resolveToolQueryPackPath(language: string, packageRoot?: string)
   return resolve(pkgRoot, 'ql', language, 'tools', 'src');
 }
 
+/**
+ * The pack search path added as `--additional-packs` to query commands:
+ * `CODEQL_ADDITIONAL_PACKS` when set, otherwise the bundled
+ * `ql/javascript/examples` packs when they exist (they are not included in
+ * npm-installed layouts).
+ *
+ * @param packageRoot - Override the package root (for testing)
+ */
+export function getDefaultAdditionalPacksPath(packageRoot?: string): string | undefined {
+  const examplesPath = resolve(packageRoot ?? getPackageRootDir(), 'ql', 'javascript', 'examples');
+  return process.env.CODEQL_ADDITIONAL_PACKS || (existsSync(examplesPath) ? examplesPath : undefined);
+}
+
 /**
  * Read the package version from the nearest package.json.
  *
@@ -0,0 +1,137 @@
+/**
+ * Benchmarks for evaluator log parsing on a synthetic 2 GB raw log.
+ *
+ * Each case parses the whole log with `parseRawEvaluatorLog`-equivalent
+ * event processing.  The readline baseline (the previous implementation)
+ * decodes every line, walks it character by character and parses on the
+ * main thread.  The byte scanner splits objects on raw bytes; on a worker
+ * thread it also parses there and posts compact events back.
+ *
+ * Alongside the timings, each case records how busy the main thread was
+ * (event loop utilization) and the worst event loop delay while parsing,
+ * printed after the run.  A main thread kept free by the worker shows a low
+ * utilization and a delay close to the timer resolution.
+ *
+ * Run with: `npm run bench -w server`
+ */
+
+import { closeSync, createReadStream, openSync, rmSync, writeSync } from 'fs';
+import { join } from 'path';
+import { monitorEventLoopDelay, performance } from 'perf_hooks';
+import { createInterface } from 'readline';
+import { afterAll, bench, describe } from 'vitest';
+import { parseRawEvaluatorLog } from '../../src/lib/evaluator-log-parser';
+import { streamEvaluatorEvents } from '../../src/lib/evaluator-log-scanner';
+import { createProjectTempDir } from '../../src/utils/temp-dir';
+
+const LOG_BYTES = 2 * 1024 * 1024 * 1024;
+
+/** Write a raw evaluator log of at least `bytes` bytes of predicate events. */
+function writeSyntheticLog(path: string, bytes: number): void {
+  const fd = openSync(path, 'w');
+  let written = 0;
+  let eventId = 0;
+  try {
+    while (written < bytes) {
+      let block = '';
+      for (let i = 0; i < 500; i++, eventId++) {
+        block += JSON.stringify({
+          dependencies: { [`Dep#${eventId}`]: 'a1b2c3', [`Other#${eventId}`]: 'd4e5f6' },
+          eventId,
+          nanoTime: eventId * 1000,
+          position: 'Query.ql:5:1:10:1',
+          predicateName: `Predicate#${eventId}`,
+          predicateType: 'COMPUTED',
+          queryCausingWork: 1,
+          ra: {
+            pipeline: Array.from({ length: 8 }, (_, step) =>
+              `    {${step}} r${step} = JOIN r${step - 1} WITH \`Module::table#${eventId}\` ON FIRST 1 OUTPUT Lhs.0, "é{}"`),
+          },
+          raHash: 'abc123',
+          time: '2026-02-17T00:00:02Z',
+          type: 'PREDICATE_STARTED',
+        }, null, 2) + '\n\n';
+      }
+      writeSync(fd, block);
+      written += Buffer.byteLength(block);
+    }
+  } finally {
+    closeSync(fd);
+  }
+}
+
+/** The previous readline-based object splitter. */
+async function* readlineBaseline(logPath: string): AsyncGenerator<Record<string, unknown>> {
+  const rl = createInterface({ crlfDelay: Infinity, input: createReadStream(logPath, { encoding: 'utf-8' }) });
+  let depth = 0;
+  let inString = false;
+  let escape = false;
+  const lines: string[] = [];
+  for await (const line of rl) {
+    for (const ch of line) {
+      if (escape) { escape = false; continue; }
+      if (ch === '\\' && inString) { escape = true; continue; }
+      if (ch === '"') { inString = !inString; continue; }
+      if (inString) continue;
+      if (ch === '{') depth++;
+      if (ch === '}') depth--;
+    }
+    if (line.trim().length > 0 || depth > 0) lines.push(line);
+    if (depth === 0 && lines.length > 0) {
+      const text = lines.join('\n');
+      lines.length = 0;
+      yield JSON.parse(text) as Record<string, unknown>;
+    }
+  }
+}
+
+const dir = createProjectTempDir('evaluator-log-bench-');
+const logPath = join(dir, 'evaluator-log.jsonl');
+writeSyntheticLog(logPath, LOG_BYTES);
+
+const mainThreadStats: Record<string, string> = {};
+
+afterAll(() => {
+  console.log('\nMain thread while parsing (event loop utilization, max delay):');
+  for (const [name, stats] of Object.entries(mainThreadStats)) {
+    console.log(`  ${name}: ${stats}`);
+  }
+  rmSync(dir, { force: true, recursive: true });
+});
+
+/** Run `parse`, recording main-thread utilization and event loop delay. */
+async function measured(name: string, parse: () => Promise<number>): Promise<void> {
+  const delay = monitorEventLoopDelay({ resolution: 10 });
+  delay.enable();
+  const before = performance.eventLoopUtilization();
+  const events = await parse();
+  const utilization = performance.eventLoopUtilization(before);
+  delay.disable();
+  if (events === 0) throw new Error('no events parsed');
+  mainThreadStats[name] =
+    `${(utilization.utilization * 100).toFixed(0)}% busy, max delay ${(delay.max / 1e6).toFixed(1)} ms`;
+}
+
+async function count(events: AsyncIterable<unknown>): Promise<number> {
+  let n = 0;
+  for await (const _event of events) n++;
+  return n;
+}
+
+describe(`${LOG_BYTES / (1024 * 1024 * 1024)} GB raw evaluator log`, () => {
+  bench('readline (previous implementation)', async () => {
+    await measured('readline', () => count(readlineBaseline(logPath)));
+  }, { iterations: 1, time: 0, warmupIterations: 0, warmupTime: 0 });
+
+  bench('byte scanner, main thread', async () => {
+    await measured('byte scanner, main thread', () => count(streamEvaluatorEvents(logPath, { useWorker: false })));
+  }, { iterations: 1, time: 0, warmupIterations: 0, warmupTime: 0 });
+
+  bench('byte scanner, worker thread', async () => {
+    await measured('byte scanner, worker thread', () => count(streamEvaluatorEvents(logPath, { useWorker: true })));
+  }, { iterations: 1, time: 0, warmupIterations: 0, warmupTime: 0 });
+
+  bench('parseRawEvaluatorLog', async () => {
+    await measured('parseRawEvaluatorLog', async () => (await parseRawEvaluatorLog(logPath)).totalEvents);
+  }, { iterations: 1, time: 0, warmupIterations: 0, warmupTime: 0 });
+});
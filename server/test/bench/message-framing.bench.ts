@@ -0,0 +1,77 @@
+/**
+ * Benchmarks for server stdout framing on large replies.
+ *
+ * Each case feeds a 100 MB response in 64 KB chunks, the way a child
+ * process delivers a `bqrs decode --format=json` reply.  The framers scan
+ * each byte once and decode the message once; the string-concatenation
+ * baseline (the previous implementation) re-scans and re-copies the
+ * accumulated text on every chunk, so it is measured on a smaller reply.
+ *
+ * Run with: `npm run bench -w server`
+ */
+
+import { bench, describe } from 'vitest';
+import { ContentLengthFramer, NulDelimitedFramer } from '../../src/lib/message-framing';
+
+const CHUNK_BYTES = 64 * 1024;
+const RESPONSE_BYTES = 100 * 1024 * 1024;
+const BASELINE_RESPONSE_BYTES = 8 * 1024 * 1024;
+
+/** JSON-like text of roughly `bytes` bytes, without NUL bytes. */
+function jsonPayload(bytes: number): Buffer {
+  const row = '["file:///src/app/module.js",42,"é alert message"],';
+  return Buffer.from(row.repeat(Math.ceil(bytes / Buffer.byteLength(row))), 'utf8');
+}
+
+function toChunks(data: Buffer): Buffer[] {
+  const chunks: Buffer[] = [];
+  for (let i = 0; i < data.length; i += CHUNK_BYTES) {
+    chunks.push(data.subarray(i, i + CHUNK_BYTES));
+  }
+  return chunks;
+}
+
+const payload = jsonPayload(RESPONSE_BYTES);
+const nulChunks = toChunks(Buffer.concat([payload, Buffer.from([0])]));
+const lspChunks = toChunks(Buffer.concat([Buffer.from(`Content-Length: ${payload.length}\r\n\r\n`), payload]));
+const baselineChunks = toChunks(Buffer.concat([jsonPayload(BASELINE_RESPONSE_BYTES), Buffer.from([0])]));
+
+describe('100 MB reply in 64 KB chunks', () => {
+  bench('NulDelimitedFramer', () => {
+    let received = 0;
+    const framer = new NulDelimitedFramer(m => { received += m.length; });
+    for (const chunk of nulChunks) framer.push(chunk);
+    if (received === 0) throw new Error('no message framed');
+  }, { iterations: 3, time: 0 });
+
+  bench('ContentLengthFramer', () => {
+    let received = 0;
+    const framer = new ContentLengthFramer(m => { received += m.length; }, () => undefined);
+    for (const chunk of lspChunks) framer.push(chunk);
+    if (received === 0) throw new Error('no message framed');
+  }, { iterations: 3, time: 0 });
+});
+
+describe(`${BASELINE_RESPONSE_BYTES / (1024 * 1024)} MB reply in 64 KB chunks`, () => {
+  bench('NulDelimitedFramer', () => {
+    let received = 0;
+    const framer = new NulDelimitedFramer(m => { received += m.length; });
+    for (const chunk of baselineChunks) framer.push(chunk);
+    if (received === 0) throw new Error('no message framed');
+  }, { iterations: 3, time: 0 });
+
+  bench('string concatenation (previous implementation)', () => {
+    let buffer = '';
+    let received = 0;
+    for (const chunk of baselineChunks) {
+      buffer += chunk.toString();
+      let nulIndex = buffer.indexOf('\0');
+      while (nulIndex !== -1) {
+        received += buffer.substring(0, nulIndex).length;
+        buffer = buffer.substring(nulIndex + 1);
+        nulIndex = buffer.indexOf('\0');
+      }
+    }
+    if (received === 0) throw new Error('no message framed');
+  }, { iterations: 3, time: 0 });
+});
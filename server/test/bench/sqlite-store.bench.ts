@@ -0,0 +1,70 @@
+/**
+ * Benchmarks for SqliteStore flush cost under the two persistence modes.
+ *
+ * Each case performs one small mutation (an annotation update) and a flush
+ * against a database pre-populated with large cached SARIF blobs.  In
+ * `snapshot` mode the flush cost grows with the size of the database; in
+ * `journal` mode it stays proportional to the size of the mutation.
+ *
+ * Run with: `npm run bench -w server`
+ */
+
+import { rmSync } from 'fs';
+import { afterAll, bench, describe } from 'vitest';
+import { SqliteStore, StorePersistenceMode } from '../../src/lib/sqlite-store';
+import { createProjectTempDir } from '../../src/utils/temp-dir';
+
+const BLOB_BYTES = 512 * 1024;
+
+async function createPopulatedStore(
+  mode: StorePersistenceMode,
+  blobCount: number,
+): Promise<{ annotationId: number; dir: string; store: SqliteStore }> {
+  const dir = createProjectTempDir(`sqlite-store-bench-${mode}-${blobCount}-`);
+  // A large compaction threshold keeps the journal cases measuring appends.
+  const store = new SqliteStore(dir, { journalCompactionBytes: 1024 * 1024 * 1024, persistence: mode });
+  await store.initialize();
+
+  const blob = JSON.stringify({ runs: [{ results: [], tool: { driver: { name: 'x'.repeat(BLOB_BYTES) } } }] });
+  for (let i = 0; i < blobCount; i++) {
+    store.putCacheEntry({
+      cacheKey: `bench-${i}`,
+      codeqlVersion: '2.25.4',
+      databasePath: '/db',
+      language: 'javascript',
+      outputFormat: 'sarif-latest',
+      queryName: `Q${i}`,
+      queryPath: `/q${i}.ql`,
+      resultContent: blob,
+    });
+  }
+  const annotationId = store.createAnnotation('note', 'bench-key', 'initial');
+  store.flush();
+  if (mode === 'journal') store.compact();
+
+  return { annotationId, dir, store };
+}
+
+const cleanups: Array<() => void> = [];
+
+afterAll(() => {
+  for (const cleanup of cleanups) cleanup();
+});
+
+for (const blobCount of [8, 64]) {
+  describe(`flush after a single annotation update (${blobCount} x ${BLOB_BYTES / 1024} KiB cached blobs)`, async () => {
+    for (const mode of ['snapshot', 'journal'] as const) {
+      const { annotationId, dir, store } = await createPopulatedStore(mode, blobCount);
+      cleanups.push(() => {
+        store.close();
+        rmSync(dir, { force: true, recursive: true });
+      });
+
+      let counter = 0;
+      bench(mode, () => {
+        store.updateAnnotation(annotationId, { content: `update ${counter++}` });
+        store.flush();
+      });
+    }
+  });
+}
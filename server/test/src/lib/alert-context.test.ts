@@ -0,0 +1,165 @@
+/**
+ * Tests for batch alert-context extraction
+ */
+
+import AdmZip from 'adm-zip';
+import { writeFileSync } from 'fs';
+import { join } from 'path';
+import { afterEach, beforeEach, describe, expect, it } from 'vitest';
+import {
+  type AlertLocationRef,
+  extractAlertContext,
+  mergeContextWindows,
+} from '../../../src/lib/alert-context';
+import { clearSourceArchiveCache } from '../../../src/lib/source-archive';
+import type { SarifDocument } from '../../../src/types/sarif';
+import { cleanupTestTempDir, createTestTempDir } from '../../utils/temp-dir';
+
+function numbered(prefix: string, count: number): string {
+  return Array.from({ length: count }, (_, i) => `${prefix} ${i + 1}`).join('\n');
+}
+
+function location(uri: string, startLine?: number, extra: Record<string, unknown> = {}) {
+  return {
+    physicalLocation: {
+      artifactLocation: { uri, ...extra },
+      ...(startLine ? { region: { startLine } } : {}),
+    },
+  };
+}
+
+function createSarif(): SarifDocument {
+  return {
+    version: '2.1.0',
+    runs: [{
+      tool: { driver: { name: 'CodeQL' } },
+      originalUriBaseIds: { '%SRCROOT%': { uri: 'file:///home/user/repo/' } },
+      results: [
+        {
+          ruleId: 'js/sql-injection',
+          message: { text: 'first' },
+          locations: [location('src/db.js', 20, { uriBaseId: '%SRCROOT%' })],
+          codeFlows: [{ threadFlows: [{ locations: [
+            { location: { ...location('src/handler.js', 5), message: { text: 'source' } } },
+            { location: { ...location('src/db.js', 22), message: { text: 'sink' } } },
+          ] }] }],
+        },
+        {
+          ruleId: 'js/sql-injection',
+          message: { text: 'second' },
+          locations: [location('src/db.js', 80)],
+        },
+        {
+          ruleId: 'js/xss',
+          message: { text: 'third' },
+          locations: [location('src/missing.js', 1), location('src/db.js'), location('src/db.js', 500)],
+        },
+      ],
+    }],
+  } as unknown as SarifDocument;
+}
+
+describe('mergeContextWindows', () => {
+  const ref = (startLine: number, endLine = startLine): AlertLocationRef =>
+    ({ alert: 0, endLine, kind: 'primary', startLine });
+
+  it('merges overlapping and adjacent windows and keeps separate ones apart', () => {
+    const snippets = mergeContextWindows([ref(40), ref(10), ref(14), ref(21, 22)], 3);
+    expect(snippets.map(s => [s.startLine, s.endLine, s.locations.length])).toEqual([
+      [7, 25, 3],
+      [37, 43, 1],
+    ]);
+  });
+
+  it('clamps windows at the first line', () => {
+    expect(mergeContextWindows([ref(2)], 5)[0]).toMatchObject({ endLine: 7, startLine: 1 });
+  });
+});
+
+describe('extractAlertContext', () => {
+  let dir: string;
+
+  beforeEach(() => {
+    dir = createTestTempDir('alert-context');
+    writeFileSync(join(dir, 'codeql-database.yml'), 'primaryLanguage: javascript\n');
+    const zip = new AdmZip();
+    zip.addFile('home/user/repo/src/db.js', Buffer.from(numbered('db', 100)));
+    zip.addFile('home/user/repo/src/handler.js', Buffer.from(numbered('handler', 10)));
+    zip.writeZip(join(dir, 'src.zip'));
+  });
+
+  afterEach(() => {
+    clearSourceArchiveCache();
+    cleanupTestTempDir(dir);
+  });
+
+  it('groups primary and code-flow locations by file with merged context', async () => {
+    const page = await extractAlertContext(createSarif(), dir, {
+      contextLines: 2,
+      cursor: 0,
+      includeCodeFlows: true,
+      maxAlerts: 100,
+    });
+
+    expect(page.sourceType).toBe('src.zip');
+    expect(page.totalAlerts).toBe(3);
+    expect(page.nextCursor).toBeUndefined();
+    expect(page.unlocatedLocations).toBe(1);
+    expect(page.alerts.map(a => [a.index, a.ruleId, a.locations])).toEqual([
+      [0, 'js/sql-injection', 3],
+      [1, 'js/sql-injection', 1],
+      [2, 'js/xss', 3],
+    ]);
+
+    // The %SRCROOT%-based URI and the relative URIs reach the same entry.
+    const paths = page.files.map(f => [f.path, f.entryPath]);
+    expect(paths).toEqual([
+      ['/home/user/repo/src/db.js', 'home/user/repo/src/db.js'],
+      ['src/handler.js', 'home/user/repo/src/handler.js'],
+      ['src/db.js', 'home/user/repo/src/db.js'],
+      ['src/missing.js', undefined],
+    ]);
+
+    const [dbRoot, handler, dbRelative, missing] = page.files;
+    expect(dbRoot.snippets).toEqual([{
+      endLine: 22,
+      locations: [{ alert: 0, endLine: 20, kind: 'primary', startLine: 20 }],
+      startLine: 18,
+      text: 'db 18\ndb 19\ndb 20\ndb 21\ndb 22',
+    }]);
+    expect(handler.snippets[0]).toMatchObject({ endLine: 7, startLine: 3, text: numbered('handler', 7).split('\n').slice(2).join('\n') });
+    expect(handler.snippets[0].locations[0]).toMatchObject({ kind: 'flow', message: 'source', step: [0, 0, 0] });
+
+    expect(dbRelative.totalLines).toBe(100);
+    expect(dbRelative.snippets.map(s => [s.startLine, s.endLine, s.locations.map(l => l.alert)])).toEqual([
+      [20, 24, [0]],
+      [78, 82, [1]],
+    ]);
+    expect(dbRelative.error).toBe('1 location(s) are past the end of the file');
+
+    expect(missing.error).toContain('File not found');
+  });
+
+  it('pages by alert', async () => {
+    const options = { contextLines: 0, includeCodeFlows: false, maxAlerts: 2 };
+    const first = await extractAlertContext(createSarif(), dir, { ...options, cursor: 0 });
+    expect(first.alerts.map(a => a.index)).toEqual([0, 1]);
+    expect(first.nextCursor).toBe(2);
+    expect(first.files.map(f => f.path)).toEqual(['/home/user/repo/src/db.js', 'src/db.js']);
+
+    const second = await extractAlertContext(createSarif(), dir, { ...options, cursor: first.nextCursor! });
+    expect(second.alerts.map(a => a.index)).toEqual([2]);
+    expect(second.nextCursor).toBeUndefined();
+  });
+
+  it('rejects databases without sources', async () => {
+    const empty = createTestTempDir('alert-context-empty');
+    try {
+      await expect(extractAlertContext(createSarif(), empty, {
+        contextLines: 0, cursor: 0, includeCodeFlows: false, maxAlerts: 1,
+      })).rejects.toThrow('No source archive found');
+    } finally {
+      cleanupTestTempDir(empty);
+    }
+  });
+});
@@ -0,0 +1,85 @@
+/**
+ * Tests for BlobStore — content-addressed storage for cached results.
+ */
+
+import { existsSync, readFileSync, rmSync } from 'fs';
+import { afterEach, beforeEach, describe, expect, it } from 'vitest';
+import { BlobStore } from '../../../src/lib/blob-store';
+import { createProjectTempDir } from '../../../src/utils/temp-dir';
+
+describe('BlobStore', () => {
+  let testDir: string;
+
+  beforeEach(() => {
+    testDir = createProjectTempDir('blob-store-test-');
+  });
+
+  afterEach(() => {
+    if (existsSync(testDir)) {
+      rmSync(testDir, { recursive: true, force: true });
+    }
+  });
+
+  it('should store content under its digest and deduplicate', () => {
+    const blobs = new BlobStore(testDir);
+    const a = blobs.put('hello');
+    const b = blobs.put('hello');
+    expect(a).toEqual(b);
+    expect(a.path).toBe(`${a.digest.substring(0, 2)}/${a.digest}`);
+    expect(a.bytes).toBe(5);
+    expect(readFileSync(blobs.resolvePath(a.path), 'utf8')).toBe('hello');
+    expect(blobs.read(a.path)).toBe('hello');
+  });
+
+  it('should round-trip gzip-compressed blobs', () => {
+    const blobs = new BlobStore(testDir, 'gzip');
+    const content = '{"runs":[]}\n'.repeat(1000);
+    const ref = blobs.put(content);
+    expect(ref.path.endsWith('.gz')).toBe(true);
+    expect(readFileSync(blobs.resolvePath(ref.path)).length).toBeLessThan(content.length);
+    expect(blobs.read(ref.path)).toBe(content);
+    expect(blobs.readLines(ref.path, 2, 3, 10)).toEqual({
+      lines: ['{"runs":[]}', '{"runs":[]}'],
+      selectedLines: 2,
+      totalLines: 1001,
+    });
+  });
+
+  it('should return null for missing blobs', () => {
+    const blobs = new BlobStore(testDir);
+    expect(blobs.read('ab/missing')).toBeNull();
+    expect(blobs.readLines('ab/missing', 1, 1, 1)).toBeNull();
+  });
+
+  it('should stream line ranges that span read chunks', () => {
+    const blobs = new BlobStore(testDir);
+    // Lines longer than the 64 KiB read chunk force lines to span chunks.
+    const lines = Array.from({ length: 8 }, (_, i) => String(i).repeat(40_000 + i));
+    const content = lines.join('\n');
+    const ref = blobs.put(content);
+
+    const window = blobs.readLines(ref.path, 3, 6, 2)!;
+    expect(window.totalLines).toBe(8);
+    expect(window.selectedLines).toBe(4);
+    expect(window.lines).toEqual([lines[2], lines[3]]);
+  });
+
+  it('should count lines the same way as String.split', () => {
+    const blobs = new BlobStore(testDir);
+    for (const content of ['', 'a', 'a\n', 'a\nb', '\n\n']) {
+      const ref = blobs.put(content);
+      const expected = content.split('\n');
+      const window = blobs.readLines(ref.path, 1, Number.MAX_SAFE_INTEGER, 100)!;
+      expect(window.totalLines).toBe(expected.length);
+      expect(window.lines).toEqual(expected);
+    }
+  });
+
+  it('should delete blobs idempotently', () => {
+    const blobs = new BlobStore(testDir);
+    const ref = blobs.put('bye');
+    blobs.delete(ref.path);
+    blobs.delete(ref.path);
+    expect(blobs.read(ref.path)).toBeNull();
+  });
+});
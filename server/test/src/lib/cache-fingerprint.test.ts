@@ -0,0 +1,224 @@
+/**
+ * Tests for cache-fingerprint — query source and database fingerprints.
+ */
+
+import { existsSync, mkdirSync, rmSync, utimesSync, writeFileSync } from 'fs';
+import { join } from 'path';
+import { afterEach, beforeEach, describe, expect, it } from 'vitest';
+import {
+  checkCacheEntryFreshness,
+  clearFingerprintMemo,
+  collectQuerySourceFiles,
+  computeDatabaseFingerprint,
+  computeQueryFingerprint,
+  findPackRoot,
+  parseQlImports,
+} from '../../../src/lib/cache-fingerprint';
+import { createProjectTempDir } from '../../../src/utils/temp-dir';
+
+describe('cache-fingerprint', () => {
+  let testDir: string;
+
+  beforeEach(() => {
+    testDir = createProjectTempDir('cache-fingerprint-test-');
+  });
+
+  afterEach(() => {
+    clearFingerprintMemo();
+    if (existsSync(testDir)) {
+      rmSync(testDir, { recursive: true, force: true });
+    }
+  });
+
+  describe('parseQlImports', () => {
+    it('should extract plain, private, aliased and parameterized imports', () => {
+      const source = [
+        'import javascript',
+        'private import semmle.javascript.dataflow.DataFlow as DF',
+        '  import DataFlow::PathGraph',
+        '// import Commented',
+        'from int x select x',
+      ].join('\n');
+      expect(parseQlImports(source)).toEqual([
+        { module: 'javascript', qualified: false },
+        { module: 'semmle.javascript.dataflow.DataFlow', qualified: false },
+        { module: 'DataFlow', qualified: true },
+      ]);
+    });
+  });
+
+  describe('query fingerprints', () => {
+    function writePack(): { libPath: string; queryPath: string } {
+      writeFileSync(join(testDir, 'qlpack.yml'), 'name: test/pack\nversion: 0.0.1\n');
+      writeFileSync(join(testDir, 'codeql-pack.lock.yml'), 'dependencies: {}\n');
+      mkdirSync(join(testDir, 'lib', 'util'), { recursive: true });
+      mkdirSync(join(testDir, 'queries'), { recursive: true });
+      const libPath = join(testDir, 'lib', 'util', 'Helpers.qll');
+      writeFileSync(libPath, 'import javascript\npredicate helper(int x) { x = 1 }\n');
+      writeFileSync(join(testDir, 'lib', 'Top.qll'), 'import lib.util.Helpers\n');
+      const queryPath = join(testDir, 'queries', 'Q.ql');
+      writeFileSync(queryPath, 'import lib.Top\nfrom int x where helper(x) select x\n');
+      return { libPath, queryPath };
+    }
+
+    it('should find the enclosing pack root', () => {
+      const { queryPath } = writePack();
+      expect(findPackRoot(queryPath)).toBe(testDir);
+    });
+
+    it('should collect the transitive local import closure', () => {
+      const { libPath, queryPath } = writePack();
+      const { files, unpinnedImports, unresolvedImports } = collectQuerySourceFiles(queryPath, []);
+      expect(files).toContain(libPath);
+      expect(files).toContain(join(testDir, 'lib', 'Top.qll'));
+      expect(unresolvedImports).toEqual(['javascript']);
+      expect(unpinnedImports).toEqual([]);
+    });
+
+    it('should hash libraries from packs on the additional packs search path', () => {
+      const { queryPath } = writePack();
+      const packsDir = join(testDir, 'additional');
+      mkdirSync(join(packsDir, 'shared', 'util'), { recursive: true });
+      writeFileSync(join(packsDir, 'shared', 'qlpack.yml'), 'name: test/shared\nversion: 0.0.1\n');
+      const sharedLib = join(packsDir, 'shared', 'util', 'Shared.qll');
+      writeFileSync(sharedLib, 'predicate shared() { any() }\n');
+      writeFileSync(queryPath, 'import lib.Top\nimport util.Shared\nimport Shared::Inner\nfrom int x where helper(x) select x\n');
+
+      const { files, unresolvedImports } = collectQuerySourceFiles(queryPath, [packsDir]);
+      expect(files).toContain(sharedLib);
+      expect(unresolvedImports).toEqual(['javascript']);
+
+      const before = computeQueryFingerprint(queryPath, [packsDir]);
+      writeFileSync(sharedLib, 'predicate shared() { none() }\n');
+      expect(computeQueryFingerprint(queryPath, [packsDir])).not.toBe(before);
+    });
+
+    it('should hash libraries from other packs of the enclosing workspace', () => {
+      writeFileSync(join(testDir, 'codeql-workspace.yml'), 'provide:\n  - "*/qlpack.yml"\n');
+      mkdirSync(join(testDir, 'lib-pack', 'mylib'), { recursive: true });
+      writeFileSync(join(testDir, 'lib-pack', 'qlpack.yml'), 'name: test/lib\nversion: 0.0.1\n');
+      const libPath = join(testDir, 'lib-pack', 'mylib', 'Lib.qll');
+      writeFileSync(libPath, 'predicate lib() { any() }\n');
+      mkdirSync(join(testDir, 'query-pack'), { recursive: true });
+      writeFileSync(join(testDir, 'query-pack', 'qlpack.yml'), 'name: test/queries\nversion: 0.0.1\n');
+      const queryPath = join(testDir, 'query-pack', 'Q.ql');
+      writeFileSync(queryPath, 'import mylib.Lib\nselect 1\n');
+
+      const before = computeQueryFingerprint(queryPath, []);
+      expect(before).toBeDefined();
+      writeFileSync(libPath, 'predicate lib() { none() }\n');
+      expect(computeQueryFingerprint(queryPath, [])).not.toBe(before);
+    });
+
+    it('should not fingerprint queries importing libraries that no lock file pins', () => {
+      const { queryPath } = writePack();
+      rmSync(join(testDir, 'codeql-pack.lock.yml'));
+
+      expect(collectQuerySourceFiles(queryPath, []).unpinnedImports).toEqual(['javascript']);
+      expect(computeQueryFingerprint(queryPath, [])).toBeUndefined();
+    });
+
+    it('should change when a transitively imported library changes', () => {
+      const { libPath, queryPath } = writePack();
+      const before = computeQueryFingerprint(queryPath);
+      expect(computeQueryFingerprint(queryPath)).toBe(before);
+
+      writeFileSync(libPath, 'import javascript\npredicate helper(int x) { x = 2 }\n');
+      expect(computeQueryFingerprint(queryPath)).not.toBe(before);
+    });
+
+    it('should change when the pack lock file changes', () => {
+      const { queryPath } = writePack();
+      writeFileSync(join(testDir, 'codeql-pack.lock.yml'), 'dependencies: {}\n');
+      const before = computeQueryFingerprint(queryPath);
+      writeFileSync(join(testDir, 'codeql-pack.lock.yml'), 'dependencies:\n  codeql/javascript-all:\n    version: 2.0.0\n');
+      expect(computeQueryFingerprint(queryPath)).not.toBe(before);
+    });
+
+    it('should re-hash a memoized file when its size or mtime changes', () => {
+      const { libPath, queryPath } = writePack();
+      const before = computeQueryFingerprint(queryPath);
+      // Same size, different content and mtime.
+      writeFileSync(libPath, 'import javascript\npredicate helper(int x) { x = 3 }\n');
+      utimesSync(libPath, 2_000, 2_000);
+      expect(computeQueryFingerprint(queryPath)).not.toBe(before);
+    });
+  });
+
+  describe('computeDatabaseFingerprint', () => {
+    it('should not change when a query run writes the evaluation cache', () => {
+      writeFileSync(join(testDir, 'codeql-database.yml'), 'primaryLanguage: javascript\n');
+      const cacheDir = join(testDir, 'db-javascript', 'default', 'cache', 'pages');
+      mkdirSync(cacheDir, { recursive: true });
+      const page = join(cacheDir, 'page-0001');
+      writeFileSync(page, 'x');
+      utimesSync(page, 1_000, 1_000);
+      const before = computeDatabaseFingerprint(testDir);
+
+      writeFileSync(page, 'xyz');
+      utimesSync(page, 3_000, 3_000);
+      writeFileSync(join(cacheDir, 'page-0002'), 'y');
+      expect(computeDatabaseFingerprint(testDir)).toBe(before);
+    });
+
+    it('should change when a relation file changes', () => {
+      writeFileSync(join(testDir, 'codeql-database.yml'), 'primaryLanguage: javascript\n');
+      mkdirSync(join(testDir, 'db-javascript', 'default'), { recursive: true });
+      const relation = join(testDir, 'db-javascript', 'default', 'files.rel');
+      writeFileSync(relation, 'a');
+      utimesSync(relation, 1_000, 1_000);
+      const before = computeDatabaseFingerprint(testDir);
+      expect(computeDatabaseFingerprint(testDir)).toBe(before);
+
+      writeFileSync(relation, 'ab');
+      expect(computeDatabaseFingerprint(testDir)).not.toBe(before);
+    });
+
+    it('should change when the dbscheme or source archive changes', () => {
+      writeFileSync(join(testDir, 'codeql-database.yml'), 'primaryLanguage: javascript\n');
+      mkdirSync(join(testDir, 'db-javascript'), { recursive: true });
+      const dbscheme = join(testDir, 'db-javascript', 'semmlecode.javascript.dbscheme');
+      const srcZip = join(testDir, 'src.zip');
+      writeFileSync(dbscheme, 'a');
+      writeFileSync(srcZip, 'z');
+      utimesSync(dbscheme, 1_000, 1_000);
+      utimesSync(srcZip, 1_000, 1_000);
+      const before = computeDatabaseFingerprint(testDir);
+
+      writeFileSync(dbscheme, 'ab');
+      const afterDbscheme = computeDatabaseFingerprint(testDir);
+      expect(afterDbscheme).not.toBe(before);
+
+      writeFileSync(srcZip, 'zz');
+      expect(computeDatabaseFingerprint(testDir)).not.toBe(afterDbscheme);
+    });
+
+    it('should change when codeql-database.yml changes', () => {
+      writeFileSync(join(testDir, 'codeql-database.yml'), 'primaryLanguage: javascript\n');
+      const before = computeDatabaseFingerprint(testDir);
+      writeFileSync(join(testDir, 'codeql-database.yml'), 'primaryLanguage: javascript\ncreationTime: now\n');
+      expect(computeDatabaseFingerprint(testDir)).not.toBe(before);
+    });
+  });
+
+  describe('checkCacheEntryFreshness', () => {
+    it('should classify entries as fresh, stale or unknown', () => {
+      writeFileSync(join(testDir, 'codeql-database.yml'), 'primaryLanguage: javascript\n');
+      const queryPath = join(testDir, 'Q.ql');
+      writeFileSync(queryPath, 'select 1\n');
+      const entry = {
+        databaseFingerprint: computeDatabaseFingerprint(testDir),
+        databasePath: testDir,
+        queryFingerprint: computeQueryFingerprint(queryPath),
+        queryPath,
+      };
+      expect(checkCacheEntryFreshness(entry)).toBe('fresh');
+
+      writeFileSync(queryPath, 'select 2\n');
+      expect(checkCacheEntryFreshness(entry)).toBe('stale');
+
+      expect(checkCacheEntryFreshness({ ...entry, databaseFingerprint: null, queryFingerprint: null })).toBe('unknown');
+      expect(checkCacheEntryFreshness({ ...entry, databasePath: join(testDir, 'missing') })).toBe('unknown');
+    });
+  });
+});
@@ -0,0 +1,190 @@
+/**
+ * Tests for CodeQLCLIServerPool — least-busy dispatch across cli-servers.
+ */
+
+import { afterEach, beforeEach, describe, expect, it, vi } from 'vitest';
+
+const { FakeCLIServer } = vi.hoisted(() => {
+  /** Controllable stand-in for a cli-server process. */
+  class FakeCLIServer {
+    static instances: FakeCLIServer[] = [];
+    static failStart = false;
+
+    readonly index: number;
+    received: string[][] = [];
+    running = false;
+    private pending: Array<() => void> = [];
+    private completed = 0;
+
+    constructor() {
+      this.index = FakeCLIServer.instances.length;
+      FakeCLIServer.instances.push(this);
+    }
+
+    async start(): Promise<void> {
+      if (FakeCLIServer.failStart && this.index === 1) {
+        throw new Error('failed to start');
+      }
+      this.running = true;
+    }
+
+    async shutdown(): Promise<void> {
+      this.running = false;
+    }
+
+    isRunning(): boolean {
+      return this.running;
+    }
+
+    runCommand(args: string[]): Promise<string> {
+      this.received.push(args);
+      return new Promise(resolve => {
+        this.pending.push(() => {
+          this.completed++;
+          resolve(args.join(' '));
+        });
+      });
+    }
+
+    /** Answer the oldest pending command. */
+    answer(): void {
+      this.pending.shift()?.();
+    }
+
+    getPendingCount(): number {
+      return this.pending.length;
+    }
+
+    getCompletedCount(): number {
+      return this.completed;
+    }
+  }
+
+  return { FakeCLIServer };
+});
+
+vi.mock('../../../src/lib/cli-server', () => ({ CodeQLCLIServer: FakeCLIServer }));
+
+import {
+  classifyCLICommand,
+  CodeQLCLIServerPool,
+  getCLIServerPoolSize,
+} from '../../../src/lib/cli-server-pool';
+
+describe('classifyCLICommand', () => {
+  it('should classify evaluation and decoding commands as heavy', () => {
+    expect(classifyCLICommand(['bqrs', 'interpret', '--format=sarif-latest'])).toBe('heavy');
+    expect(classifyCLICommand(['bqrs decode', '--format=json'])).toBe('heavy');
+    expect(classifyCLICommand(['query', 'run'])).toBe('heavy');
+  });
+
+  it('should classify everything else as light', () => {
+    expect(classifyCLICommand(['resolve', 'qlpacks'])).toBe('light');
+    expect(classifyCLICommand(['bqrs', 'info'])).toBe('light');
+    expect(classifyCLICommand(['version'])).toBe('light');
+  });
+});
+
+describe('getCLIServerPoolSize', () => {
+  const originalEnv = process.env.CODEQL_MCP_CLI_SERVER_POOL_SIZE;
+
+  afterEach(() => {
+    if (originalEnv === undefined) delete process.env.CODEQL_MCP_CLI_SERVER_POOL_SIZE;
+    else process.env.CODEQL_MCP_CLI_SERVER_POOL_SIZE = originalEnv;
+  });
+
+  it('should default to 2 and clamp to the supported range', () => {
+    delete process.env.CODEQL_MCP_CLI_SERVER_POOL_SIZE;
+    expect(getCLIServerPoolSize()).toBe(2);
+    process.env.CODEQL_MCP_CLI_SERVER_POOL_SIZE = '1';
+    expect(getCLIServerPoolSize()).toBe(1);
+    process.env.CODEQL_MCP_CLI_SERVER_POOL_SIZE = '100';
+    expect(getCLIServerPoolSize()).toBe(8);
+    process.env.CODEQL_MCP_CLI_SERVER_POOL_SIZE = '0';
+    expect(getCLIServerPoolSize()).toBe(2);
+  });
+});
+
+describe('CodeQLCLIServerPool', () => {
+  beforeEach(() => {
+    FakeCLIServer.instances = [];
+    FakeCLIServer.failStart = false;
+  });
+
+  it('should start every member and report running', async () => {
+    const pool = new CodeQLCLIServerPool({}, 3);
+    expect(pool.isRunning()).toBe(false);
+    await pool.start();
+    expect(FakeCLIServer.instances).toHaveLength(3);
+    expect(pool.isRunning()).toBe(true);
+    await pool.shutdown();
+    expect(pool.isRunning()).toBe(false);
+  });
+
+  it('should shut down started members if one fails to start', async () => {
+    FakeCLIServer.failStart = true;
+    const pool = new CodeQLCLIServerPool({}, 3);
+    await expect(pool.start()).rejects.toThrow('failed to start');
+    expect(FakeCLIServer.instances.every(s => !s.running)).toBe(true);
+    expect(pool.isRunning()).toBe(false);
+  });
+
+  it('should keep light commands off members busy with heavy work', async () => {
+    const pool = new CodeQLCLIServerPool({}, 3);
+    await pool.start();
+    const [lightLane, any1, any2] = FakeCLIServer.instances;
+
+    // Heavy commands never use the light lane and spread across the rest.
+    void pool.runCommand(['bqrs', 'interpret']);
+    void pool.runCommand(['bqrs', 'interpret']);
+    expect(lightLane.received).toHaveLength(0);
+    expect(any1.received).toHaveLength(1);
+    expect(any2.received).toHaveLength(1);
+
+    // Light commands go to the light lane even though its queue grows.
+    void pool.runCommand(['resolve', 'qlpacks']);
+    void pool.runCommand(['resolve', 'languages']);
+    expect(lightLane.received).toHaveLength(2);
+
+    const metrics = pool.getMetrics();
+    expect(metrics.size).toBe(3);
+    expect(metrics.totalPending).toBe(4);
+    expect(metrics.members.map(m => [m.lane, m.pending, m.heavyPending])).toEqual([
+      ['light', 2, 0],
+      ['any', 1, 1],
+      ['any', 1, 1],
+    ]);
+  });
+
+  it('should dispatch light commands to the least busy idle member', async () => {
+    const pool = new CodeQLCLIServerPool({}, 2);
+    await pool.start();
+    const [lightLane, any1] = FakeCLIServer.instances;
+
+    void pool.runCommand(['resolve', 'qlpacks']);
+    void pool.runCommand(['resolve', 'languages']);
+    expect(lightLane.received).toHaveLength(1);
+    expect(any1.received).toHaveLength(1);
+  });
+
+  it('should resolve with the member output and release heavy accounting', async () => {
+    const pool = new CodeQLCLIServerPool({}, 2);
+    await pool.start();
+    const heavy = pool.runCommand(['query', 'run']);
+    FakeCLIServer.instances[1].answer();
+    await expect(heavy).resolves.toBe('query run');
+    expect(pool.getMetrics().members[1]).toMatchObject({ completed: 1, heavyPending: 0, pending: 0 });
+  });
+
+  it('should fall back to surviving members and reject when none run', async () => {
+    const pool = new CodeQLCLIServerPool({}, 2);
+    await pool.start();
+    FakeCLIServer.instances[1].running = false;
+
+    void pool.runCommand(['bqrs', 'decode']);
+    expect(FakeCLIServer.instances[0].received).toHaveLength(1);
+
+    FakeCLIServer.instances[0].running = false;
+    await expect(pool.runCommand(['resolve', 'qlpacks'])).rejects.toThrow('CLI server is not running');
+  });
+});
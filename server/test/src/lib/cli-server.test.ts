@@ -183,6 +183,21 @@ describe('CodeQLCLIServer', () => {
       expect(result2).toBe('result2');
     });
 
+    it('should report pending and completed command counts', async () => {
+      const server = new CodeQLCLIServer({});
+      await server.start();
+      expect(server.getPendingCount()).toBe(0);
+
+      const cmd1Promise = server.runCommand(['cmd1']);
+      const cmd2Promise = server.runCommand(['cmd2']);
+      expect(server.getPendingCount()).toBe(2);
+
+      mockProc.stdout.emit('data', Buffer.from('result1\0result2\0'));
+      await Promise.all([cmd1Promise, cmd2Promise]);
+      expect(server.getPendingCount()).toBe(0);
+      expect(server.getCompletedCount()).toBe(2);
+    });
+
     it('should reject current command on process error event', async () => {
       const server = new CodeQLCLIServer({});
       await server.start();
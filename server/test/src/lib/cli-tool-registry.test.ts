@@ -25,6 +25,13 @@ vi.mock('../../../src/lib/cli-executor', () => ({
   executeQLTCommand: vi.fn()
 }));
 
+// Mock query-server evaluation (CLI mode unless a test selects the query server)
+vi.mock('../../../src/lib/query-server-evaluation', () => ({
+  getDefaultQueryExecutionMode: vi.fn(() => 'cli'),
+  runCliOnDatabase: vi.fn((_database: string, operation: () => Promise<unknown>) => operation()),
+  runQueryOnQueryServer: vi.fn(),
+}));
+
 describe('defaultCLIResultProcessor', () => {
   it('should format successful results with stdout', () => {
     const result: CLIExecutionResult = {
@@ -2009,4 +2016,119 @@ describe('registerCLITool handler behavior', () => {
     expect(result.isError).toBe(true);
     expect(result.content[0].text).toContain('The "database" parameter must be a non-empty path to a CodeQL database.');
   });
-});
\ No newline at end of file
+});
+describe('registerCLITool codeql_query_run execution mode', () => {
+  let mockServer: McpServer;
+  let executeCodeQLCommand: ReturnType<typeof vi.fn>;
+  let runQueryOnQueryServer: ReturnType<typeof vi.fn>;
+  let runCliOnDatabase: ReturnType<typeof vi.fn>;
+
+  const definition: CLIToolDefinition = {
+    name: 'codeql_query_run',
+    description: 'Run query',
+    command: 'codeql',
+    subcommand: 'query run',
+    inputSchema: {
+      additionalArgs: z.array(z.string()).optional(),
+      database: z.string(),
+      executionMode: z.enum(['cli', 'query-server']).optional(),
+      external: z.array(z.string()).optional(),
+      query: z.string(),
+      timeout: z.number().optional(),
+    }
+  };
+
+  beforeEach(async () => {
+    vi.clearAllMocks();
+    mockServer = {
+      registerTool: vi.fn()
+    } as unknown as McpServer;
+
+    const cliExecutor = await import('../../../src/lib/cli-executor');
+    executeCodeQLCommand = cliExecutor.executeCodeQLCommand as ReturnType<typeof vi.fn>;
+    const evaluation = await import('../../../src/lib/query-server-evaluation');
+    runQueryOnQueryServer = evaluation.runQueryOnQueryServer as ReturnType<typeof vi.fn>;
+    runCliOnDatabase = evaluation.runCliOnDatabase as ReturnType<typeof vi.fn>;
+  });
+
+  it('should evaluate on the query server instead of the CLI', async () => {
+    registerCLITool(mockServer, definition);
+    const handler = (mockServer.registerTool as ReturnType<typeof vi.fn>).mock.calls[0][2];
+
+    runQueryOnQueryServer.mockResolvedValueOnce({
+      stdout: 'Evaluated query on the query server',
+      stderr: '',
+      success: true
+    });
+
+    const result = await handler({
+      database: '/path/to/db',
+      executionMode: 'query-server',
+      external: ['selectedSourceFiles=/tmp/files.csv'],
+      query: '/path/to/query.ql',
+      timeout: 60,
+    });
+
+    expect(executeCodeQLCommand.mock.calls.map(call => call[0])).not.toContain('query run');
+    expect(runQueryOnQueryServer).toHaveBeenCalledTimes(1);
+    const runOptions = runQueryOnQueryServer.mock.calls[0][0];
+    expect(runOptions.database).toBe('/path/to/db');
+    expect(runOptions.queryPath).toContain('query.ql');
+    expect(runOptions.outputPath).toMatch(/results\.bqrs$/);
+    expect(runOptions.externalInputs).toEqual({ selectedSourceFiles: '/tmp/files.csv' });
+    expect(runOptions.timeoutMs).toBe(60_000);
+    expect(runOptions.logPath).toMatch(/evaluator-log\.jsonl$/);
+    expect(result.content[0].text).toContain('Evaluated query on the query server');
+  });
+
+  it('should use the CLI by default', async () => {
+    registerCLITool(mockServer, definition);
+    const handler = (mockServer.registerTool as ReturnType<typeof vi.fn>).mock.calls[0][2];
+
+    executeCodeQLCommand.mockResolvedValueOnce({ stdout: 'Query completed', stderr: '', success: true });
+
+    await handler({ database: '/path/to/db', query: '/path/to/query.ql' });
+
+    expect(runQueryOnQueryServer).not.toHaveBeenCalled();
+    expect(executeCodeQLCommand.mock.calls[0][0]).toBe('query run');
+    expect(executeCodeQLCommand.mock.calls[0][1]).not.toHaveProperty('executionMode');
+    expect(runCliOnDatabase).toHaveBeenCalledTimes(1);
+    expect(runCliOnDatabase.mock.calls[0][0]).toContain('db');
+  });
+
+  it('should fall back to the CLI when additionalArgs are given', async () => {
+    registerCLITool(mockServer, definition);
+    const handler = (mockServer.registerTool as ReturnType<typeof vi.fn>).mock.calls[0][2];
+
+    executeCodeQLCommand.mockResolvedValueOnce({ stdout: 'Query completed', stderr: '', success: true });
+
+    await handler({
+      additionalArgs: ['--warnings=error'],
+      database: '/path/to/db',
+      executionMode: 'query-server',
+      query: '/path/to/query.ql',
+    });
+
+    expect(runQueryOnQueryServer).not.toHaveBeenCalled();
+    expect(executeCodeQLCommand.mock.calls[0][0]).toBe('query run');
+  });
+
+  it('should fall back to the CLI when the query server is unavailable', async () => {
+    registerCLITool(mockServer, definition);
+    const handler = (mockServer.registerTool as ReturnType<typeof vi.fn>).mock.calls[0][2];
+
+    runQueryOnQueryServer.mockRejectedValueOnce(new Error('Query server is not running'));
+    executeCodeQLCommand.mockResolvedValueOnce({ stdout: 'Query completed', stderr: '', success: true });
+
+    const result = await handler({
+      database: '/path/to/db',
+      executionMode: 'query-server',
+      query: '/path/to/query.ql',
+    });
+
+    expect(runQueryOnQueryServer).toHaveBeenCalledTimes(1);
+    expect(executeCodeQLCommand.mock.calls[0][0]).toBe('query run');
+    expect(runCliOnDatabase).toHaveBeenCalledTimes(1);
+    expect(result.content[0].text).toContain('Query completed');
+  });
+});
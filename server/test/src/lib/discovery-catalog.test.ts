@@ -0,0 +1,169 @@
+/**
+ * Tests for the incremental discovery catalog.
+ */
+
+import { afterEach, beforeEach, describe, expect, it, vi } from 'vitest';
+import { existsSync, mkdirSync, rmSync, writeFileSync } from 'fs';
+import { readdir, readFile, stat } from 'fs/promises';
+import { join } from 'path';
+import {
+  type CatalogEntryLoad,
+  closeDiscoveryCatalogs,
+  DiscoveryCatalog,
+  mapConcurrent,
+} from '../../../src/lib/discovery-catalog';
+import { sessionDataManager } from '../../../src/lib/session-data-manager';
+import { SqliteStore } from '../../../src/lib/sqlite-store';
+import { createProjectTempDir } from '../../../src/utils/temp-dir';
+
+interface Run {
+  artifacts: string[];
+  name: string;
+  timestamp?: string;
+}
+
+describe('mapConcurrent', () => {
+  it('keeps the order of the items and bounds concurrency', async () => {
+    let active = 0;
+    let peak = 0;
+    const results = await mapConcurrent([5, 1, 4, 2, 3], 2, async (n) => {
+      peak = Math.max(peak, ++active);
+      await new Promise(resolve => setTimeout(resolve, n));
+      active--;
+      return n * 10;
+    });
+    expect(results).toEqual([50, 10, 40, 20, 30]);
+    expect(peak).toBe(2);
+  });
+});
+
+describe('DiscoveryCatalog', () => {
+  let testDir: string;
+  let baseDir: string;
+  let store: SqliteStore;
+  let loads: string[];
+
+  const load = async (entryPath: string, entry: string): Promise<CatalogEntryLoad<Run>> => {
+    loads.push(entry);
+    if (!entry.startsWith('run-')) return { directories: [], files: [], value: null };
+    try {
+      if (!(await stat(entryPath)).isDirectory()) return { directories: [], files: [entryPath], value: null };
+    } catch {
+      return { directories: [], files: [entryPath], value: null };
+    }
+    let timestamp: string | undefined;
+    try {
+      timestamp = (await readFile(join(entryPath, 'timestamp'), 'utf-8')).trim();
+    } catch {
+      // No timestamp yet
+    }
+    return {
+      directories: [entryPath],
+      files: [join(entryPath, 'timestamp')],
+      value: { artifacts: (await readdir(entryPath)).sort(), name: entry, timestamp },
+    };
+  };
+
+  const createCatalog = () => new DiscoveryCatalog<Run>({ baseDirs: () => [baseDir], load, name: 'test-runs' });
+
+  const names = (runs: Run[]) => runs.map(r => r.name).sort();
+
+  beforeEach(async () => {
+    testDir = createProjectTempDir('discovery-catalog-test-');
+    baseDir = join(testDir, 'runs');
+    for (const name of ['run-a', 'run-b', 'notes']) {
+      mkdirSync(join(baseDir, name), { recursive: true });
+      writeFileSync(join(baseDir, name, 'timestamp'), name);
+    }
+    writeFileSync(join(baseDir, 'run-file'), 'not a directory');
+    store = new SqliteStore(join(testDir, 'store'));
+    await store.initialize();
+    vi.spyOn(sessionDataManager, 'getStore').mockReturnValue(store);
+    loads = [];
+  });
+
+  afterEach(() => {
+    closeDiscoveryCatalogs();
+    vi.restoreAllMocks();
+    store.close();
+    if (existsSync(testDir)) {
+      rmSync(testDir, { recursive: true, force: true });
+    }
+  });
+
+  it('should read every entry once and then answer from memory', async () => {
+    const catalog = createCatalog();
+    expect(names(await catalog.list([baseDir]))).toEqual(['run-a', 'run-b']);
+    expect(loads.sort()).toEqual(['notes', 'run-a', 'run-b', 'run-file']);
+
+    loads = [];
+    expect(names(await catalog.list([baseDir]))).toEqual(['run-a', 'run-b']);
+    expect(loads).toEqual([]);
+  });
+
+  it('should skip base directories that do not exist', async () => {
+    const catalog = createCatalog();
+    expect(names(await catalog.list([join(testDir, 'missing'), baseDir]))).toEqual(['run-a', 'run-b']);
+  });
+
+  it('should re-read only the entries that changed', async () => {
+    const catalog = createCatalog();
+    await catalog.list([baseDir]);
+    loads = [];
+
+    writeFileSync(join(baseDir, 'run-a', 'timestamp'), 'updated');
+    writeFileSync(join(baseDir, 'run-a', 'results.bqrs'), '');
+    const runs = await catalog.list([baseDir]);
+    expect(loads).toEqual(['run-a']);
+    expect(runs.find(r => r.name === 'run-a')).toEqual({
+      artifacts: ['results.bqrs', 'timestamp'],
+      name: 'run-a',
+      timestamp: 'updated',
+    });
+  });
+
+  it('should pick up added and removed entries', async () => {
+    const catalog = createCatalog();
+    await catalog.list([baseDir]);
+    loads = [];
+
+    mkdirSync(join(baseDir, 'run-c'));
+    rmSync(join(baseDir, 'run-b'), { recursive: true });
+    expect(names(await catalog.list([baseDir]))).toEqual(['run-a', 'run-c']);
+    expect(loads).toEqual(['run-c']);
+  });
+
+  it('should restore entries from the store and revalidate them by their stats', async () => {
+    await createCatalog().list([baseDir]);
+    closeDiscoveryCatalogs();
+    loads = [];
+
+    const restored = createCatalog();
+    expect(names(await restored.list([baseDir]))).toEqual(['run-a', 'run-b']);
+    expect(loads).toEqual([]);
+    closeDiscoveryCatalogs();
+
+    writeFileSync(join(baseDir, 'run-b', 'timestamp'), 'changed while not watched');
+    const revalidated = createCatalog();
+    const runs = await revalidated.list([baseDir]);
+    expect(loads).toEqual(['run-b']);
+    expect(runs.find(r => r.name === 'run-b')?.timestamp).toBe('changed while not watched');
+  });
+
+  it('should drop persisted entries of a removed base directory', async () => {
+    const catalog = createCatalog();
+    await catalog.list([baseDir]);
+    expect(store.getDiscoveryEntries('test-runs', baseDir)).toHaveLength(4);
+
+    rmSync(baseDir, { recursive: true });
+    expect(await catalog.list([baseDir])).toEqual([]);
+    expect(store.getDiscoveryEntries('test-runs', baseDir)).toEqual([]);
+  });
+
+  it('should work without a store', async () => {
+    vi.spyOn(sessionDataManager, 'getStore').mockImplementation(() => {
+      throw new Error('not initialized');
+    });
+    expect(names(await createCatalog().list([baseDir]))).toEqual(['run-a', 'run-b']);
+  });
+});
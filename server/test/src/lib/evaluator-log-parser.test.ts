@@ -343,6 +343,29 @@ function multiQuerySummaryLog(): string {
   return events.map((e) => JSON.stringify(e, null, 2)).join('\n\n');
 }
 
+/** Raw log of one query whose predicates run for the given milliseconds. */
+function rawLogWithDurations(durationsMs: number[]): string {
+  const events: Record<string, unknown>[] = [
+    { type: 'LOG_HEADER', eventId: 1, nanoTime: 0, codeqlVersion: '2.24.1' },
+    { type: 'QUERY_STARTED', eventId: 2, nanoTime: 0, queryName: 'Big.ql' },
+  ];
+  let eventId = 3;
+  let nanoTime = 0;
+  durationsMs.forEach((ms, i) => {
+    const start = eventId++;
+    const pipeline = eventId++;
+    events.push(
+      { type: 'PREDICATE_STARTED', eventId: start, nanoTime, predicateName: `P#${i}`, queryCausingWork: 2, ra: { pipeline: [`{1} r${i} = SCAN t${i}`] } },
+      { type: 'PIPELINE_STARTED', eventId: pipeline, nanoTime, predicateStartEvent: start },
+      { type: 'PIPELINE_COMPLETED', eventId: eventId++, nanoTime: nanoTime + ms * 1_000_000, startEvent: pipeline, counts: [i], resultSize: i },
+      { type: 'PREDICATE_COMPLETED', eventId: eventId++, nanoTime: nanoTime + ms * 1_000_000, startEvent: start, resultSize: i },
+    );
+    nanoTime += ms * 1_000_000;
+  });
+  events.push({ type: 'QUERY_COMPLETED', eventId: eventId++, nanoTime, startEvent: 2 });
+  return events.map((e) => JSON.stringify(e, null, 2)).join('\n\n');
+}
+
 // ---------------------------------------------------------------------------
 // Tests
 // ---------------------------------------------------------------------------
@@ -876,4 +899,55 @@ describe('Evaluator Log Parser', () => {
       expect(result.queries[0].predicateCount).toBe(2);
     });
   });
+
+  // -----------------------------------------------------------------------
+  // detailTopK
+  // -----------------------------------------------------------------------
+
+  describe('detailTopK', () => {
+    it('should keep RA steps and pipeline stages only for the slowest predicates', async () => {
+      const durations = [5, 1, 9, 3, 9, 7, 2, 8, 4, 6];
+      const logPath = writeTempLog('big.jsonl', rawLogWithDurations(durations));
+      const result = await parseRawEvaluatorLog(logPath, { detailTopK: 3 });
+
+      const predicates = result.queries[0].predicates;
+      expect(predicates).toHaveLength(10);
+      const detailed = predicates.filter((p) => p.raSteps !== undefined).map((p) => p.predicateName);
+      expect(detailed).toEqual(['P#2', 'P#4', 'P#7']);
+      for (const pred of predicates) {
+        expect(pred.pipelineStages !== undefined).toBe(detailed.includes(pred.predicateName));
+        expect(pred.resultSize).toBeDefined();
+        expect(pred.pipelineCount).toBe(1);
+      }
+    });
+
+    it('should break ties by evaluation order', async () => {
+      const logPath = writeTempLog('ties.jsonl', rawLogWithDurations([4, 4, 4, 4]));
+      const result = await parseEvaluatorLog(logPath, { detailTopK: 2 });
+
+      const detailed = result.queries[0].predicates.filter((p) => p.raSteps).map((p) => p.predicateName);
+      expect(detailed).toEqual(['P#0', 'P#1']);
+    });
+
+    it('should keep every detail when omitted', async () => {
+      const logPath = writeTempLog('all.jsonl', rawLogWithDurations([1, 2, 3]));
+      const result = await parseEvaluatorLog(logPath);
+
+      expect(result.queries[0].predicates.every((p) => p.raSteps && p.pipelineStages)).toBe(true);
+    });
+
+    it('should apply to summary logs per query', async () => {
+      const events = [
+        { summaryLogVersion: '0.4.0', codeqlVersion: '2.24.1' },
+        ...[3, 1, 2].map((millis, i) => ({
+          predicateName: `S#${i}`, millis, queryCausingWork: 'Q.ql', evaluationStrategy: 'COMPUTE_SIMPLE', ra: `{1} r${i} = SCAN t`,
+        })),
+      ];
+      const logPath = writeTempLog('summary.jsonl', events.map((e) => JSON.stringify(e, null, 2)).join('\n\n'));
+      const result = await parseSummaryLog(logPath, { detailTopK: 1 });
+
+      const detailed = result.queries[0].predicates.filter((p) => p.raSteps).map((p) => p.predicateName);
+      expect(detailed).toEqual(['S#0']);
+    });
+  });
 });
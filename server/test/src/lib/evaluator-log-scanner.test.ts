@@ -0,0 +1,142 @@
+/**
+ * Tests for the byte-level evaluator log scanner.
+ */
+
+import { afterEach, beforeEach, describe, expect, it } from 'vitest';
+import { join } from 'path';
+import { writeFileSync } from 'fs';
+import {
+  createTestTempDir,
+  cleanupTestTempDir,
+} from '../../utils/temp-dir';
+import {
+  decodeEvaluatorEvent,
+  JsonObjectSplitter,
+  streamEvaluatorEvents,
+} from '../../../src/lib/evaluator-log-scanner';
+
+const TRICKY_OBJECTS = [
+  { type: 'LOG_HEADER', eventId: 1, codeqlVersion: '2.24.1' },
+  { type: 'PREDICATE_STARTED', eventId: 2, predicateName: 'braces{in}"strings"', ra: { pipeline: ['{0} r1 = }}}'] } },
+  { type: 'PREDICATE_COMPLETED', eventId: 3, predicateName: 'escaped\\', message: 'tail\\\\"quote' },
+  { type: 'QUERY_COMPLETED', eventId: 4, queryName: 'Ünïcödé 🎉 {}.ql', nested: { a: { b: { c: 1 } } } },
+];
+
+function prettyLog(objects: object[]): Buffer {
+  return Buffer.from(objects.map(o => JSON.stringify(o, null, 2)).join('\n\n') + '\n');
+}
+
+function splitInChunks(bytes: Buffer, chunkSize: number): string[] {
+  const splitter = new JsonObjectSplitter();
+  const objects: string[] = [];
+  for (let offset = 0; offset < bytes.length; offset += chunkSize) {
+    for (const object of splitter.push(bytes.subarray(offset, offset + chunkSize))) {
+      objects.push(object.toString('utf8'));
+    }
+  }
+  const rest = splitter.finish();
+  if (rest) objects.push(rest.toString('utf8'));
+  return objects;
+}
+
+async function collect(events: AsyncIterable<Record<string, unknown>>): Promise<Record<string, unknown>[]> {
+  const result: Record<string, unknown>[] = [];
+  for await (const event of events) result.push(event);
+  return result;
+}
+
+describe('JsonObjectSplitter', () => {
+  it('should split objects at every chunk boundary', () => {
+    const bytes = prettyLog(TRICKY_OBJECTS);
+    for (const chunkSize of [1, 2, 3, 7, 64, bytes.length]) {
+      const objects = splitInChunks(bytes, chunkSize).map(text => JSON.parse(text));
+      expect(objects).toEqual(TRICKY_OBJECTS);
+    }
+  });
+
+  it('should split compact objects on a single line', () => {
+    const bytes = Buffer.from(TRICKY_OBJECTS.map(o => JSON.stringify(o)).join(''));
+    expect(splitInChunks(bytes, 5).map(text => JSON.parse(text))).toEqual(TRICKY_OBJECTS);
+  });
+
+  it('should return an unterminated trailing object from finish', () => {
+    const splitter = new JsonObjectSplitter();
+    expect(splitter.push(Buffer.from('{"a": 1}\n{"b": {"c": '))).toHaveLength(1);
+    expect(splitter.finish()?.toString('utf8')).toBe('{"b": {"c": ');
+    expect(splitter.finish()).toBeNull();
+  });
+});
+
+describe('decodeEvaluatorEvent', () => {
+  it('should keep only profile fields and compact dependencies and RA', () => {
+    const event = decodeEvaluatorEvent(Buffer.from(JSON.stringify({
+      dependencies: { 'A#1': 'hash1', 'B#2': 'hash2' },
+      eventId: 7,
+      predicateName: 'P#7',
+      ra: { pipeline: ['{1} r1 = SCAN A'], other: ['dropped'] },
+      raHash: 'abc123',
+      time: '2026-02-17T00:00:00Z',
+      type: 'PREDICATE_STARTED',
+    })));
+    expect(event).toEqual({
+      dependencies: ['A#1', 'B#2'],
+      eventId: 7,
+      predicateName: 'P#7',
+      ra: { pipeline: ['{1} r1 = SCAN A'] },
+      raHash: 'abc123',
+      type: 'PREDICATE_STARTED',
+    });
+  });
+
+  it('should throw on invalid JSON', () => {
+    expect(() => decodeEvaluatorEvent(Buffer.from('{"a": }'))).toThrow();
+  });
+});
+
+describe('streamEvaluatorEvents', () => {
+  let tmpDir: string;
+
+  beforeEach(() => {
+    tmpDir = createTestTempDir('evaluator-log-scanner');
+  });
+
+  afterEach(() => {
+    cleanupTestTempDir(tmpDir);
+  });
+
+  it('should yield the same events on the main thread and on a worker', async () => {
+    const objects = Array.from({ length: 1000 }, (_, i) => ({
+      dependencies: { [`Dep#${i}`]: 'hash' },
+      eventId: i,
+      predicateName: `P#${i} {"}`,
+      type: 'PREDICATE_STARTED',
+    }));
+    const logPath = join(tmpDir, 'evaluator-log.jsonl');
+    writeFileSync(logPath, Buffer.concat([prettyLog(objects), Buffer.from('{"type": "broken", }\n')]));
+
+    const inline = await collect(streamEvaluatorEvents(logPath, { useWorker: false }));
+    const worker = await collect(streamEvaluatorEvents(logPath, { useWorker: true }));
+
+    expect(inline).toHaveLength(1000);
+    expect(inline[999]).toEqual({ dependencies: ['Dep#999'], eventId: 999, predicateName: 'P#999 {"}', type: 'PREDICATE_STARTED' });
+    expect(worker).toEqual(inline);
+  });
+
+  it('should stop the worker when the consumer stops early', async () => {
+    const logPath = join(tmpDir, 'evaluator-log.jsonl');
+    writeFileSync(logPath, prettyLog(Array.from({ length: 5000 }, (_, i) => ({ eventId: i, type: 'X' }))));
+
+    const seen: unknown[] = [];
+    for await (const event of streamEvaluatorEvents(logPath, { useWorker: true })) {
+      seen.push(event.eventId);
+      if (seen.length === 3) break;
+    }
+    expect(seen).toEqual([0, 1, 2]);
+  });
+
+  it('should reject for a missing log', async () => {
+    const logPath = join(tmpDir, 'missing.jsonl');
+    await expect(collect(streamEvaluatorEvents(logPath, { useWorker: false }))).rejects.toThrow(/ENOENT/);
+    await expect(collect(streamEvaluatorEvents(logPath, { useWorker: true }))).rejects.toThrow(/ENOENT/);
+  });
+});
@@ -0,0 +1,100 @@
+/**
+ * Tests for diffing evaluator log profiles.
+ */
+
+import { describe, expect, it } from 'vitest';
+import type { PredicateProfile, ProfileData, QueryProfile } from '../../../src/lib/evaluator-log-parser';
+import {
+  diffProfiles,
+  diffQueryProfiles,
+  normalizePredicateName,
+} from '../../../src/lib/evaluator-profile-diff';
+
+function pred(predicateName: string, durationMs: number, extra: Partial<PredicateProfile> = {}): PredicateProfile {
+  return { dependencies: [], durationMs, predicateName, ...extra };
+}
+
+function query(queryName: string, predicates: PredicateProfile[]): QueryProfile {
+  return {
+    cacheHits: 0,
+    predicateCount: predicates.length,
+    predicates,
+    queryName,
+    totalDurationMs: predicates.reduce((sum, p) => sum + p.durationMs, 0),
+  };
+}
+
+function profile(...queries: QueryProfile[]): ProfileData {
+  return { logFormat: 'raw', queries, totalEvents: 0 };
+}
+
+describe('normalizePredicateName', () => {
+  it('should strip trailing hash suffixes only', () => {
+    expect(normalizePredicateName('Foo::bar/1#a1b2c3d4')).toBe('Foo::bar/1');
+    expect(normalizePredicateName('Foo::bar/1#dispred#a1b2c3d4#ff00ff00')).toBe('Foo::bar/1#dispred');
+    expect(normalizePredicateName('Foo::bar/1#dispred')).toBe('Foo::bar/1#dispred');
+  });
+});
+
+describe('diffQueryProfiles', () => {
+  it('should match by name, then RA hash, then normalized name', () => {
+    const diff = diffQueryProfiles(
+      query('Q.ql', [
+        pred('Same', 10, { raHash: 'h1', tupleCount: 100 }),
+        pred('Renamed#11111111', 5, { raHash: 'h2' }),
+        pred('Changed#22222222', 8, { raHash: 'h3' }),
+        pred('Gone', 3),
+      ]),
+      query('Q.ql', [
+        pred('Same', 40, { raHash: 'h1', tupleCount: 400 }),
+        pred('NewName#33333333', 5, { raHash: 'h2' }),
+        pred('Changed#44444444', 2, { raHash: 'h4' }),
+        pred('Fresh', 7),
+      ]),
+    );
+
+    const byName = new Map(diff.changes.map(c => [c.baseline.predicateName, c]));
+    expect(byName.get('Same')).toMatchObject({ durationDeltaMs: 30, durationRatio: 4, match: 'name', raChanged: false, tupleCountDelta: 300 });
+    expect(byName.get('Renamed#11111111')).toMatchObject({ match: 'raHash', candidate: { predicateName: 'NewName#33333333' } });
+    expect(byName.get('Changed#22222222')).toMatchObject({ durationDeltaMs: -6, match: 'normalizedName', raChanged: true });
+    expect(diff.changes.map(c => c.baseline.predicateName)).toEqual(['Same', 'Changed#22222222', 'Renamed#11111111']);
+    expect(diff.added.map(p => p.predicateName)).toEqual(['Fresh']);
+    expect(diff.removed.map(p => p.predicateName)).toEqual(['Gone']);
+  });
+
+  it('should not match ambiguous RA hashes or normalized names', () => {
+    const diff = diffQueryProfiles(
+      query('Q.ql', [pred('A#11111111', 1, { raHash: 'h' }), pred('A#22222222', 1, { raHash: 'h' })]),
+      query('Q.ql', [pred('A#33333333', 1, { raHash: 'h' })]),
+    );
+    expect(diff.changes).toEqual([]);
+    expect(diff.removed).toHaveLength(2);
+    expect(diff.added).toHaveLength(1);
+  });
+
+  it('should sum repeated evaluations of a predicate', () => {
+    const diff = diffQueryProfiles(
+      query('Q.ql', [pred('P', 2, { tupleCount: 10, maxDuplicationPercentage: 50 }), pred('P', 3, { tupleCount: 5, maxDuplicationPercentage: 80 })]),
+      query('Q.ql', [pred('P', 1, { tupleCount: 1, maxDuplicationPercentage: 20 })]),
+    );
+    expect(diff.changes[0].baseline).toMatchObject({ durationMs: 5, evaluations: 2, maxDuplicationPercentage: 80, tupleCount: 15 });
+    expect(diff.changes[0]).toMatchObject({ duplicationDelta: -60, tupleCountDelta: -14 });
+  });
+});
+
+describe('diffProfiles', () => {
+  it('should always pair two single-query profiles', () => {
+    const diff = diffProfiles(profile(query('/old/Q.ql', [pred('P', 1)])), profile(query('/new/R.ql', [pred('P', 2)])));
+    expect(diff.queries).toHaveLength(1);
+    expect(diff.queries[0].changes[0].durationDeltaMs).toBe(1);
+  });
+
+  it('should pair multiple queries by file name', () => {
+    const diff = diffProfiles(
+      profile(query('/a/A.ql', []), query('/a/B.ql', [])),
+      profile(query('/b/B.ql', []), query('/b/C.ql', [])),
+    );
+    expect(diff.queries.map(q => [q.baselineQuery, q.candidateQuery])).toEqual([['/a/B.ql', '/b/B.ql']]);
+    expect(diff.unmatchedQueries).toEqual({ baseline: ['/a/A.ql'], candidate: ['/b/C.ql'] });
+  });
+});
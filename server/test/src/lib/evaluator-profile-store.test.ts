@@ -0,0 +1,102 @@
+/**
+ * Tests for persisted evaluator log profiles.
+ */
+
+import { afterEach, beforeEach, describe, expect, it, vi } from 'vitest';
+import { createHash } from 'crypto';
+import { existsSync, rmSync, writeFileSync } from 'fs';
+import { join } from 'path';
+import {
+  findProfiledRun,
+  hashEvaluatorLog,
+  loadEvaluatorProfile,
+  loadStoredProfile,
+} from '../../../src/lib/evaluator-profile-store';
+import { sessionDataManager } from '../../../src/lib/session-data-manager';
+import { SqliteStore } from '../../../src/lib/sqlite-store';
+import { createProjectTempDir } from '../../../src/utils/temp-dir';
+
+function rawLog(queryName: string): string {
+  return [
+    { type: 'LOG_HEADER', eventId: 1, nanoTime: 0, codeqlVersion: '2.24.1', logVersion: '0.5.0' },
+    { type: 'QUERY_STARTED', eventId: 2, nanoTime: 0, queryName },
+    { type: 'PREDICATE_STARTED', eventId: 3, nanoTime: 1_000_000, predicateName: 'P#abcdef12', raHash: 'ra-p', queryCausingWork: 2, dependencies: {} },
+    { type: 'PREDICATE_COMPLETED', eventId: 4, nanoTime: 6_000_000, startEvent: 3, resultSize: 7 },
+    { type: 'QUERY_COMPLETED', eventId: 5, nanoTime: 9_000_000, startEvent: 2, terminationType: 'NORMAL' },
+  ].map(e => JSON.stringify(e, null, 2)).join('\n\n');
+}
+
+describe('evaluator-profile-store', () => {
+  let testDir: string;
+  let store: SqliteStore;
+  let logPath: string;
+
+  beforeEach(async () => {
+    testDir = createProjectTempDir('evaluator-profile-store-test-');
+    store = new SqliteStore(join(testDir, 'store'));
+    await store.initialize();
+    vi.spyOn(sessionDataManager, 'getStore').mockReturnValue(store);
+    logPath = join(testDir, 'evaluator-log.jsonl');
+    writeFileSync(logPath, rawLog('Q.ql'));
+  });
+
+  afterEach(() => {
+    vi.restoreAllMocks();
+    store.close();
+    if (existsSync(testDir)) {
+      rmSync(testDir, { recursive: true, force: true });
+    }
+  });
+
+  it('should hash a log with SHA-256 and rehash it after a change', async () => {
+    const first = await hashEvaluatorLog(logPath);
+    expect(first.hash).toBe(createHash('sha256').update(rawLog('Q.ql')).digest('hex'));
+    expect(first.bytes).toBe(rawLog('Q.ql').length);
+
+    writeFileSync(logPath, rawLog('Other.ql'));
+    expect((await hashEvaluatorLog(logPath)).hash).not.toBe(first.hash);
+  });
+
+  it('should parse a log once and load it from the store afterwards', async () => {
+    const first = await loadEvaluatorProfile(logPath, { detailTopK: 5 });
+    expect(first.cached).toBe(false);
+    expect(first.profile.queries[0].predicates[0]).toMatchObject({ predicateName: 'P#abcdef12', raHash: 'ra-p', resultSize: 7 });
+
+    const second = await loadEvaluatorProfile(logPath, { detailTopK: 0 });
+    expect(second.cached).toBe(true);
+    expect(second.logHash).toBe(first.logHash);
+    expect(second.profile).toEqual(first.profile);
+
+    // A stored profile with less RA detail than requested is not reused.
+    expect((await loadEvaluatorProfile(logPath)).cached).toBe(false);
+  });
+
+  it('should parse the log when the store is unavailable', async () => {
+    vi.spyOn(sessionDataManager, 'getStore').mockImplementation(() => {
+      throw new Error('not initialized');
+    });
+    const loaded = await loadEvaluatorProfile(logPath);
+    expect(loaded.cached).toBe(false);
+    expect(loaded.profile.queries).toHaveLength(1);
+  });
+
+  it('should find an earlier run only while its fingerprints and log are unchanged', async () => {
+    const run = {
+      databaseFingerprint: 'db-fp',
+      databasePath: '/db',
+      queryFingerprint: 'q-fp',
+      queryPath: '/q.ql',
+    };
+    await loadStoredProfile(logPath, 'pipelines', null, async () => ({ pipelines: [] }), run);
+
+    expect((await findProfiledRun('pipelines', run))!.logPath).toBe(logPath);
+    expect(await findProfiledRun('pipelines', { ...run, queryFingerprint: 'edited' })).toBeNull();
+    expect(await findProfiledRun('pipelines', { ...run, databaseFingerprint: 'rebuilt' })).toBeNull();
+
+    writeFileSync(logPath, rawLog('Overwritten.ql'));
+    expect(await findProfiledRun('pipelines', run)).toBeNull();
+
+    rmSync(logPath);
+    expect(await findProfiledRun('pipelines', run)).toBeNull();
+  });
+});
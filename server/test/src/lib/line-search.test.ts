@@ -0,0 +1,90 @@
+/**
+ * Tests for line-oriented file search.
+ */
+
+import { afterEach, beforeEach, describe, expect, it } from 'vitest';
+import { writeFileSync } from 'fs';
+import { join } from 'path';
+import { cleanupTestTempDir, createTestTempDir } from '../../utils/temp-dir';
+import {
+  LineMatcher,
+  LineSearchPool,
+  searchFileOnCurrentThread,
+} from '../../../src/lib/line-search';
+
+const TEXT = 'a\r\nb\nMATCH1\nc\r\nd\nMATCH2\nMATCH3\ne';
+
+function matchInChunks(chunkSize: number, contextLines: number, maxCollect: number, stopAfter?: number) {
+  const matcher = new LineMatcher('f.qll', /MATCH/, contextLines, maxCollect, stopAfter);
+  for (let offset = 0; offset < TEXT.length && !matcher.done; offset += chunkSize) {
+    matcher.push(TEXT.substring(offset, offset + chunkSize));
+  }
+  return matcher.finish();
+}
+
+describe('LineMatcher', () => {
+  it('should give the same matches and context at every chunk boundary', () => {
+    const expected = matchInChunks(TEXT.length, 2, 2);
+    expect(expected.totalCount).toBe(3);
+    expect(expected.matches).toEqual([
+      { filePath: 'f.qll', lineNumber: 3, lineContent: 'MATCH1', contextBefore: ['a', 'b'], contextAfter: ['c', 'd'] },
+      { filePath: 'f.qll', lineNumber: 6, lineContent: 'MATCH2', contextBefore: ['c', 'd'], contextAfter: ['MATCH3', 'e'] },
+    ]);
+    for (const chunkSize of [1, 2, 3, 5]) {
+      expect(matchInChunks(chunkSize, 2, 2)).toEqual(expected);
+    }
+  });
+
+  it('should stop after stopAfter matching lines', () => {
+    const result = matchInChunks(4, 0, 1, 2);
+    expect(result.totalCount).toBe(2);
+    expect(result.matches.map(m => m.lineNumber)).toEqual([3]);
+  });
+});
+
+describe('line search on a worker pool', () => {
+  let tempDir: string;
+  let pool: LineSearchPool;
+
+  beforeEach(() => {
+    tempDir = createTestTempDir('line-search');
+    pool = new LineSearchPool(2);
+  });
+
+  afterEach(() => {
+    pool.close();
+    cleanupTestTempDir(tempDir);
+  });
+
+  it('should return the same results as the current thread', async () => {
+    const files = Array.from({ length: 10 }, (_, i) => {
+      const file = join(tempDir, `F${i}.qll`);
+      writeFileSync(file, `${'x\n'.repeat(i)}MATCH ${i}\nü🎉\n${TEXT}\n`);
+      return file;
+    });
+    files.push(join(tempDir, 'missing.qll'));
+    const task = { contextLines: 1, flags: 'i', maxCollect: 3, pattern: 'match', stopAfter: Infinity };
+
+    const [first, second] = await Promise.all([
+      pool.run({ ...task, files: files.slice(0, 6), signatures: files.slice(0, 6).map(() => true) }),
+      pool.run({ ...task, files: files.slice(6), signatures: files.slice(6).map(() => true) }),
+    ]);
+    const third = await pool.run({ ...task, files: files.slice(0, 1) });
+    const inline = await Promise.all(files.map(f => searchFileOnCurrentThread(f, /match/i, task, true)));
+
+    expect([...first, ...second]).toEqual(inline);
+    expect(inline[0].signature).toBeInstanceOf(Uint8Array);
+    expect(third).toEqual([{ matches: inline[0].matches, totalCount: 4 }]);
+    expect(inline[10]).toEqual({ matches: [], totalCount: 0 });
+  });
+
+  it('should reject when the worker fails', async () => {
+    await expect(pool.run({
+      contextLines: 0, files: [], flags: '', maxCollect: 1, pattern: '[', stopAfter: Infinity,
+    })).rejects.toThrow();
+    // The pool replaces the failed worker.
+    await expect(pool.run({
+      contextLines: 0, files: [], flags: '', maxCollect: 1, pattern: 'x', stopAfter: Infinity,
+    })).resolves.toEqual([]);
+  });
+});
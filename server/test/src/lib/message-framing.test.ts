@@ -0,0 +1,112 @@
+/**
+ * Tests for message-framing — byte-level NUL and Content-Length framing.
+ */
+
+import { describe, expect, it, vi } from 'vitest';
+import { ChunkList, ContentLengthFramer, NulDelimitedFramer } from '../../../src/lib/message-framing';
+
+/** Split `data` into chunks of `size` bytes (possibly mid-character). */
+function chunked(data: Buffer, size: number): Buffer[] {
+  const chunks: Buffer[] = [];
+  for (let i = 0; i < data.length; i += size) {
+    chunks.push(data.subarray(i, i + size));
+  }
+  return chunks;
+}
+
+function lspFrame(body: string): Buffer {
+  const bytes = Buffer.from(body, 'utf8');
+  return Buffer.concat([Buffer.from(`Content-Length: ${bytes.length}\r\n\r\n`, 'ascii'), bytes]);
+}
+
+describe('ChunkList', () => {
+  it('should find patterns spanning chunk boundaries', () => {
+    const list = new ChunkList();
+    list.append(Buffer.from('ab\r'));
+    list.append(Buffer.from('\n'));
+    list.append(Buffer.from('\r\ncd'));
+    expect(list.length).toBe(8);
+    expect(list.indexOf(Buffer.from('\r\n\r\n'))).toBe(2);
+    expect(list.indexOf(Buffer.from('\r\n\r\n'), 3)).toBe(-1);
+  });
+
+  it('should take and skip across chunks', () => {
+    const list = new ChunkList();
+    list.append(Buffer.from('hello '));
+    list.append(Buffer.from('wor'));
+    list.append(Buffer.from('ld!'));
+    expect(list.take(3).toString()).toBe('hel');
+    list.skip(3);
+    expect(list.indexOf(Buffer.from('!'))).toBe(5);
+    expect(list.take(5).toString()).toBe('world');
+    expect(list.length).toBe(1);
+    expect(() => list.take(2)).toThrow(RangeError);
+  });
+});
+
+describe('NulDelimitedFramer', () => {
+  it('should emit each NUL-terminated message once, whatever the chunking', () => {
+    const messages = ['{"a":1}', '', 'é—😀 multi-byte', 'x'.repeat(5000)];
+    const stream = Buffer.from(messages.map(m => `${m}\0`).join('') + 'partial', 'utf8');
+
+    for (const size of [1, 2, 7, 64, stream.length]) {
+      const received: string[] = [];
+      const framer = new NulDelimitedFramer(m => received.push(m));
+      for (const chunk of chunked(stream, size)) framer.push(chunk);
+      expect(received).toEqual(messages);
+    }
+  });
+
+  it('should keep the incomplete tail for the next chunk', () => {
+    const received: string[] = [];
+    const framer = new NulDelimitedFramer(m => received.push(m));
+    framer.push(Buffer.from('result1\0partial'));
+    expect(received).toEqual(['result1']);
+    framer.push(Buffer.from('_more\0'));
+    expect(received).toEqual(['result1', 'partial_more']);
+  });
+});
+
+describe('ContentLengthFramer', () => {
+  it('should emit each framed message once, whatever the chunking', () => {
+    const bodies = [
+      JSON.stringify({ id: 1, result: 'ok' }),
+      JSON.stringify({ method: 'note', params: { text: 'é—😀 multi-byte' } }),
+      JSON.stringify({ id: 2, result: 'y'.repeat(5000) }),
+    ];
+    const stream = Buffer.concat(bodies.map(lspFrame));
+
+    for (const size of [1, 3, 13, 64, stream.length]) {
+      const received: string[] = [];
+      const framer = new ContentLengthFramer(b => received.push(b), () => undefined);
+      for (const chunk of chunked(stream, size)) framer.push(chunk);
+      expect(received).toEqual(bodies);
+    }
+  });
+
+  it('should count Content-Length in bytes', () => {
+    const received: string[] = [];
+    const framer = new ContentLengthFramer(b => received.push(b), () => undefined);
+    framer.push(Buffer.concat([lspFrame('"ü"'), lspFrame('"next"')]));
+    expect(received).toEqual(['"ü"', '"next"']);
+  });
+
+  it('should accept additional header fields', () => {
+    const received: string[] = [];
+    const framer = new ContentLengthFramer(b => received.push(b), () => undefined);
+    framer.push(Buffer.from('Content-Length: 2\r\nContent-Type: application/vscode-jsonrpc\r\n\r\n{}'));
+    expect(received).toEqual(['{}']);
+  });
+
+  it('should report an invalid header and discard buffered data', () => {
+    const received: string[] = [];
+    const onInvalidHeader = vi.fn();
+    const framer = new ContentLengthFramer(b => received.push(b), onInvalidHeader);
+    framer.push(Buffer.from('Bogus: 1\r\n\r\n{}Content-Length: 2\r\n\r\n{}'));
+    expect(onInvalidHeader).toHaveBeenCalledWith('Bogus: 1');
+    expect(received).toEqual([]);
+
+    framer.push(lspFrame('{}'));
+    expect(received).toEqual(['{}']);
+  });
+});
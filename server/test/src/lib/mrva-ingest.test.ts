@@ -0,0 +1,127 @@
+/**
+ * Tests for MRVA result ingestion.
+ */
+
+import { afterEach, beforeEach, describe, expect, it, vi } from 'vitest';
+import { existsSync, mkdirSync, rmSync, utimesSync, writeFileSync } from 'fs';
+import { join } from 'path';
+import { extractMrvaResultRows, ingestMrvaRun, type MrvaRepoSarif } from '../../../src/lib/mrva-ingest';
+import { sessionDataManager } from '../../../src/lib/session-data-manager';
+import { SqliteStore } from '../../../src/lib/sqlite-store';
+import { createProjectTempDir } from '../../../src/utils/temp-dir';
+
+function result(ruleId: string, uri: string, line: number, hash: string) {
+  return {
+    ruleId,
+    level: 'error',
+    message: { text: `${ruleId} in ${uri}` },
+    locations: [{ physicalLocation: { artifactLocation: { uri }, region: { startLine: line } } }],
+    partialFingerprints: { primaryLocationLineHash: hash },
+  };
+}
+
+function sarif(results: object[]) {
+  return { version: '2.1.0', runs: [{ tool: { driver: { name: 'CodeQL' } }, results }] };
+}
+
+describe('extractMrvaResultRows', () => {
+  it('extracts rule, primary location, level and fingerprint of every result', () => {
+    const rows = extractMrvaResultRows({
+      runs: [
+        {
+          tool: { driver: { rules: [{ id: 'js/xss' }, { id: 'js/sql-injection' }] } },
+          results: [
+            result('js/xss', 'src/a.js', 3, 'h1'),
+            { ruleIndex: 1, message: { text: 'x'.repeat(20) }, fingerprints: { other: 'f2' } },
+          ],
+        },
+        { results: [{ rule: { id: 'js/eval' }, message: { text: 'm' } }] },
+      ],
+    }, 10);
+
+    expect(rows).toEqual([
+      { filePath: 'src/a.js', fingerprint: 'h1', level: 'error', message: 'js/xss in …', resultIndex: 0, ruleId: 'js/xss', startLine: 3 },
+      { filePath: null, fingerprint: 'f2', level: null, message: 'xxxxxxxxxx…', resultIndex: 1, ruleId: 'js/sql-injection', startLine: null },
+      { filePath: null, fingerprint: null, level: null, message: 'm', resultIndex: 2, ruleId: 'js/eval', startLine: null },
+    ]);
+  });
+
+  it('returns no rows for documents without runs', () => {
+    expect(extractMrvaResultRows({}, 10)).toEqual([]);
+    expect(extractMrvaResultRows(null, 10)).toEqual([]);
+  });
+});
+
+describe('ingestMrvaRun', () => {
+  let testDir: string;
+  let runPath: string;
+  let store: SqliteStore;
+
+  const writeRepo = (fullName: string, results: object[]): MrvaRepoSarif => {
+    const dir = join(runPath, ...fullName.split('/'), 'results');
+    mkdirSync(dir, { recursive: true });
+    const sarifPath = join(dir, 'results.sarif');
+    writeFileSync(sarifPath, JSON.stringify(sarif(results)));
+    return { fullName, sarifPath };
+  };
+
+  beforeEach(async () => {
+    testDir = createProjectTempDir('mrva-ingest-test-');
+    runPath = join(testDir, '20442');
+    store = new SqliteStore(join(testDir, 'store'));
+    await store.initialize();
+    vi.spyOn(sessionDataManager, 'getStore').mockReturnValue(store);
+  });
+
+  afterEach(() => {
+    vi.restoreAllMocks();
+    store.close();
+    if (existsSync(testDir)) {
+      rmSync(testDir, { recursive: true, force: true });
+    }
+  });
+
+  it.each([false, true])('ingests every repository (workers: %s)', async (useWorkers) => {
+    const repos = Array.from({ length: 20 }, (_, i) => writeRepo(`owner${i % 3}/repo${i}`, [
+      result('js/xss', `src/file${i}.js`, 1, `xss-${i % 2}`),
+      ...(i % 4 === 0 ? [result('js/sql-injection', 'test/db.js', 9, 'sql')] : []),
+    ]));
+    writeFileSync(join(runPath, 'owner0', 'repo0', 'results', 'results.sarif'), '{ not json');
+
+    const summary = await ingestMrvaRun(runPath, repos, { useWorkers });
+    expect(summary).toMatchObject({ ingestedRepos: 19, removedRepos: 0, results: 19 + 4, unchangedRepos: 0 });
+    expect(summary.workers > 0).toBe(useWorkers);
+    expect(summary.failedRepos).toHaveLength(1);
+    expect(summary.failedRepos[0].fullName).toBe('owner0/repo0');
+
+    const rules = store.aggregateMrvaResults({ runPath }, 'rule', 10);
+    expect(rules.groups).toEqual([
+      { key: 'js/xss', repos: 19, results: 19 },
+      { key: 'js/sql-injection', repos: 4, results: 4 },
+    ]);
+  });
+
+  it('skips unchanged repositories and drops removed ones', async () => {
+    const a = writeRepo('o/a', [result('r1', 'a.js', 1, 'h')]);
+    const b = writeRepo('o/b', [result('r1', 'b.js', 1, 'h')]);
+    await ingestMrvaRun(runPath, [a, b]);
+
+    writeFileSync(a.sarifPath, JSON.stringify(sarif([result('r2', 'a.js', 2, 'h'), result('r2', 'a.js', 3, 'h')])));
+    const future = new Date(Date.now() + 5000);
+    utimesSync(a.sarifPath, future, future);
+
+    const summary = await ingestMrvaRun(runPath, [a]);
+    expect(summary).toMatchObject({ ingestedRepos: 1, removedRepos: 1, results: 2, unchangedRepos: 0 });
+    expect(store.getMrvaRepos(runPath).map(r => [r.fullName, r.resultCount])).toEqual([['o/a', 2]]);
+    expect(store.aggregateMrvaResults({ runPath }, 'rule', 10).groups.map(g => g.key)).toEqual(['r2']);
+
+    expect(await ingestMrvaRun(runPath, [a])).toMatchObject({ ingestedRepos: 0, unchangedRepos: 1 });
+    expect(await ingestMrvaRun(runPath, [a], { force: true })).toMatchObject({ ingestedRepos: 1, unchangedRepos: 0 });
+  });
+
+  it('records repositories whose SARIF is missing as failed', async () => {
+    const summary = await ingestMrvaRun(runPath, [{ fullName: 'o/gone', sarifPath: join(runPath, 'missing.sarif') }]);
+    expect(summary.failedRepos).toEqual([{ error: 'SARIF file not found', fullName: 'o/gone' }]);
+    expect(store.getMrvaRepos(runPath)[0]).toMatchObject({ error: 'SARIF file not found', resultCount: 0 });
+  });
+});
@@ -0,0 +1,132 @@
+/**
+ * Tests for the search_ql_code trigram index.
+ */
+
+import { afterEach, beforeEach, describe, expect, it } from 'vitest';
+import { existsSync, mkdirSync, writeFileSync } from 'fs';
+import { join } from 'path';
+import { cleanupTestTempDir, createTestTempDir } from '../../utils/temp-dir';
+import {
+  patternTrigrams,
+  QlSearchIndex,
+  signatureMayMatch,
+  TrigramSignatureBuilder,
+} from '../../../src/lib/ql-search-index';
+
+function signatureOf(...chunks: string[]): Uint8Array {
+  const builder = new TrigramSignatureBuilder();
+  for (const chunk of chunks) builder.push(chunk);
+  return builder.finish();
+}
+
+/** The pattern's trigrams as strings, for readable assertions. */
+function trigramStrings(pattern: string, flags = ''): string[][] | null {
+  const keys = patternTrigrams(pattern, flags);
+  return keys && keys.map(alt => alt.map(key => String.fromCharCode(
+    Math.floor(key / 4294967296), Math.floor(key / 65536) % 65536, key % 65536,
+  )));
+}
+
+describe('patternTrigrams', () => {
+  it('should take trigrams from literal runs', () => {
+    expect(trigramStrings('findme')).toEqual([['fin', 'ind', 'ndm', 'dme']]);
+    expect(trigramStrings('class\\s+Foo\\w*Bar')).toEqual([['cla', 'las', 'ass', 'foo', 'bar']]);
+    expect(trigramStrings('predicate\\(')).toEqual([['pre', 'red', 'edi', 'dic', 'ica', 'cat', 'ate', 'te(']]);
+  });
+
+  it('should leave out optional atoms, groups, classes and escapes', () => {
+    expect(trigramStrings('colou?r')).toEqual([['col', 'olo']]);
+    expect(trigramStrings('ab+cde')).toEqual([['cde']]);
+    expect(trigramStrings('[A-Z]xyz(abc)?')).toEqual([['xyz']]);
+    expect(trigramStrings('\\x41BC')).toBeNull();
+    expect(trigramStrings('a{0,2}bc')).toBeNull();
+  });
+
+  it('should skip named backreferences and braced escapes as a whole', () => {
+    const pattern = '(?<q>[\'"])foo\\k<q>';
+    expect(trigramStrings(pattern)).toEqual([['foo']]);
+    expect(signatureMayMatch(signatureOf('name = "foo"'), patternTrigrams(pattern, '')!)).toBe(true);
+    expect(trigramStrings('\\p{Lu}abc')).toEqual([['abc']]);
+    expect(trigramStrings('\\u{1F600}xyz')).toEqual([['xyz']]);
+  });
+
+  it('should require one trigram set per top-level alternative', () => {
+    expect(trigramStrings('foo|bar')).toEqual([['foo'], ['bar']]);
+    expect(trigramStrings('(x|y)foo')).toEqual([['foo']]);
+    expect(trigramStrings('foo|.*')).toBeNull();
+  });
+
+  it('should drop non-ASCII characters when case-insensitive', () => {
+    expect(trigramStrings('caféine', 'i')).toEqual([['caf', 'ine']]);
+    expect(trigramStrings('caféine')).toEqual([['caf', 'afé', 'féi', 'éin', 'ine']]);
+  });
+});
+
+describe('TrigramSignatureBuilder', () => {
+  it('should contain every trigram of the text regardless of chunking and case', () => {
+    const text = 'module Foo {\n  predicate isSource(DataFlow::Node n) { any() }\n}\n';
+    const whole = signatureOf(text);
+    expect(signatureOf(...text.split(''))).toEqual(whole);
+    for (const pattern of ['isSource', 'DATAFLOW::node', 'predicate|nothing', 'Foo \\{']) {
+      expect(signatureMayMatch(whole, patternTrigrams(pattern, 'i')!)).toBe(true);
+    }
+  });
+
+  it('should rule out most absent literals', () => {
+    const signature = signatureOf(Array.from({ length: 200 }, (_, i) => `predicate p${i}() { none() }`).join('\n'));
+    const absent = Array.from({ length: 200 }, (_, i) => `missingLiteral${i}`)
+      .filter(literal => signatureMayMatch(signature, patternTrigrams(literal, '')!));
+    expect(absent.length).toBeLessThan(10);
+  });
+});
+
+describe('QlSearchIndex', () => {
+  let tempDir: string;
+
+  beforeEach(() => {
+    tempDir = createTestTempDir('ql-search-index');
+  });
+
+  afterEach(() => {
+    cleanupTestTempDir(tempDir);
+  });
+
+  it('should persist entries and validate them by mtime and size', async () => {
+    const index = new QlSearchIndex(join(tempDir, 'index'));
+    await index.load();
+    index.set('/pkg/A.qll', { mtimeMs: 1, signature: signatureOf('abc'), size: 3 });
+    await index.save();
+    expect(existsSync(join(tempDir, 'index', 'index.bin'))).toBe(true);
+
+    const reloaded = new QlSearchIndex(join(tempDir, 'index'));
+    await reloaded.load();
+    expect(reloaded.size).toBe(1);
+    expect(reloaded.getFresh('/pkg/A.qll', 1, 3)!.signature).toEqual(signatureOf('abc'));
+    expect(reloaded.getFresh('/pkg/A.qll', 2, 3)).toBeUndefined();
+    expect(reloaded.getFresh('/pkg/A.qll', 1, 4)).toBeUndefined();
+  });
+
+  it('should prune entries of files no longer found below a searched root', () => {
+    const index = new QlSearchIndex(join(tempDir, 'index'));
+    const entry = { mtimeMs: 1, signature: signatureOf(''), size: 0 };
+    index.set('/pkg/A.qll', entry);
+    index.set('/pkg/B.qll', entry);
+    index.set('/pkg/C.txt', entry);
+    index.set('/other/D.qll', entry);
+
+    index.prune(['/pkg'], ['.ql', '.qll'], new Set(['/pkg/A.qll']));
+
+    expect(index.getFresh('/pkg/A.qll', 1, 0)).toBeDefined();
+    expect(index.getFresh('/pkg/B.qll', 1, 0)).toBeUndefined();
+    expect(index.getFresh('/pkg/C.txt', 1, 0)).toBeDefined();
+    expect(index.getFresh('/other/D.qll', 1, 0)).toBeDefined();
+  });
+
+  it('should start empty from a corrupt index file', async () => {
+    mkdirSync(join(tempDir, 'index'));
+    writeFileSync(join(tempDir, 'index', 'index.bin'), 'garbage');
+    const index = new QlSearchIndex(join(tempDir, 'index'));
+    await index.load();
+    expect(index.size).toBe(0);
+  });
+});
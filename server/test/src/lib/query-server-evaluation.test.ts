@@ -0,0 +1,213 @@
+/**
+ * Tests for query-server-evaluation — query runs on the persistent query server.
+ */
+
+import { afterEach, beforeEach, describe, expect, it, vi } from 'vitest';
+
+const { fakeManager, fakeServer } = vi.hoisted(() => {
+  const fakeServer = {
+    sendRequest: vi.fn(),
+  };
+  const fakeManager = {
+    getQueryServer: vi.fn(async () => fakeServer),
+    isRunning: vi.fn(() => true),
+  };
+  return { fakeManager, fakeServer };
+});
+
+vi.mock('../../../src/lib/server-manager', () => ({
+  getServerManager: () => fakeManager,
+}));
+
+import {
+  getDefaultQueryExecutionMode,
+  QueryResultType,
+  releaseQueryServerDatabase,
+  runCliOnDatabase,
+  runQueryOnQueryServer,
+} from '../../../src/lib/query-server-evaluation';
+
+describe('getDefaultQueryExecutionMode', () => {
+  const originalEnv = process.env.CODEQL_MCP_QUERY_EXECUTION_MODE;
+
+  afterEach(() => {
+    if (originalEnv === undefined) delete process.env.CODEQL_MCP_QUERY_EXECUTION_MODE;
+    else process.env.CODEQL_MCP_QUERY_EXECUTION_MODE = originalEnv;
+  });
+
+  it('should default to the CLI', () => {
+    delete process.env.CODEQL_MCP_QUERY_EXECUTION_MODE;
+    expect(getDefaultQueryExecutionMode()).toBe('cli');
+    process.env.CODEQL_MCP_QUERY_EXECUTION_MODE = 'bogus';
+    expect(getDefaultQueryExecutionMode()).toBe('cli');
+    process.env.CODEQL_MCP_QUERY_EXECUTION_MODE = 'query-server';
+    expect(getDefaultQueryExecutionMode()).toBe('query-server');
+  });
+});
+
+describe('runQueryOnQueryServer', () => {
+  beforeEach(() => {
+    vi.clearAllMocks();
+    fakeServer.sendRequest.mockImplementation(async (method: string) =>
+      method === 'evaluation/runQuery'
+        ? { evaluationTime: 12, resultType: QueryResultType.SUCCESS }
+        : { registeredDatabases: [] });
+  });
+
+  it('should register the database once and reuse it across runs', async () => {
+    const options = { database: '/dbs/reuse-db', outputPath: '/out/results.bqrs', queryPath: '/q/Query.ql' };
+
+    const first = await runQueryOnQueryServer(options);
+    const second = await runQueryOnQueryServer(options);
+
+    expect(first.success).toBe(true);
+    expect(second.stdout).toContain('/out/results.bqrs');
+    const methods = fakeServer.sendRequest.mock.calls.map(call => call[0]);
+    expect(methods).toEqual(['evaluation/registerDatabases', 'evaluation/runQuery', 'evaluation/runQuery']);
+    const registerParams = fakeServer.sendRequest.mock.calls[0][1];
+    expect(registerParams.body).toEqual({ databases: ['/dbs/reuse-db'] });
+    expect(typeof registerParams.progressId).toBe('number');
+  });
+
+  it('should send a whole-query target with the run parameters', async () => {
+    await runQueryOnQueryServer({
+      additionalPacks: ['/packs'],
+      database: '/dbs/params-db',
+      externalInputs: { pred: '/in.csv' },
+      outputPath: '/out/results.bqrs',
+      queryPath: '/q/Query.ql',
+      timeoutMs: 1000,
+    });
+
+    const [method, params, timeout] = fakeServer.sendRequest.mock.calls[1];
+    expect(method).toBe('evaluation/runQuery');
+    expect(timeout).toBe(1000);
+    expect(params.body).toMatchObject({
+      additionalPacks: ['/packs'],
+      db: '/dbs/params-db',
+      externalInputs: { pred: '/in.csv' },
+      outputPath: '/out/results.bqrs',
+      queryPath: '/q/Query.ql',
+      target: { query: {} },
+    });
+    expect(typeof params.progressId).toBe('number');
+  });
+
+  it('should send a quick-evaluation target when a position is given', async () => {
+    const quickEvalPosition = { column: 11, endColumn: 20, endLine: 4, fileName: '/q/Query.ql', line: 4 };
+    await runQueryOnQueryServer({
+      database: '/dbs/quickeval-db',
+      outputPath: '/out/quickeval.bqrs',
+      queryPath: '/q/Query.ql',
+      quickEvalPosition,
+    });
+
+    const params = fakeServer.sendRequest.mock.calls[1][1];
+    expect(params.body.target).toEqual({ quickEval: { quickEvalPos: quickEvalPosition } });
+  });
+
+  it('should report evaluation failures as an unsuccessful result', async () => {
+    fakeServer.sendRequest.mockImplementation(async (method: string) =>
+      method === 'evaluation/runQuery'
+        ? { evaluationTime: 0, message: 'ERROR: could not resolve type Foo', resultType: QueryResultType.COMPILATION_ERROR }
+        : {});
+
+    const result = await runQueryOnQueryServer({
+      database: '/dbs/failing-db',
+      outputPath: '/out/results.bqrs',
+      queryPath: '/q/Broken.ql',
+    });
+
+    expect(result.success).toBe(false);
+    expect(result.error).toContain('compilation error');
+    expect(result.error).toContain('could not resolve type Foo');
+  });
+
+  it('should propagate transport failures', async () => {
+    fakeServer.sendRequest.mockRejectedValue(new Error('Query server is not running'));
+    await expect(runQueryOnQueryServer({
+      database: '/dbs/transport-db',
+      outputPath: '/out/results.bqrs',
+      queryPath: '/q/Query.ql',
+    })).rejects.toThrow('Query server is not running');
+  });
+});
+
+describe('releaseQueryServerDatabase', () => {
+  beforeEach(() => {
+    vi.clearAllMocks();
+    fakeServer.sendRequest.mockResolvedValue({ evaluationTime: 1, resultType: QueryResultType.SUCCESS });
+  });
+
+  it('should deregister a registered database so the next run registers it again', async () => {
+    const options = { database: '/dbs/release-db', outputPath: '/out/results.bqrs', queryPath: '/q/Query.ql' };
+    await runQueryOnQueryServer(options);
+    await releaseQueryServerDatabase('/dbs/release-db');
+    await runQueryOnQueryServer(options);
+
+    const methods = fakeServer.sendRequest.mock.calls.map(call => call[0]);
+    expect(methods).toEqual([
+      'evaluation/registerDatabases',
+      'evaluation/runQuery',
+      'evaluation/deregisterDatabases',
+      'evaluation/registerDatabases',
+      'evaluation/runQuery',
+    ]);
+    const deregisterParams = fakeServer.sendRequest.mock.calls[2][1];
+    expect(deregisterParams.body).toEqual({ databases: ['/dbs/release-db'] });
+    expect(typeof deregisterParams.progressId).toBe('number');
+  });
+
+  it('should do nothing for databases the query server has not opened', async () => {
+    await releaseQueryServerDatabase('/dbs/never-registered');
+    expect(fakeServer.sendRequest).not.toHaveBeenCalled();
+  });
+
+  it('should do nothing when the query server is not running', async () => {
+    fakeManager.isRunning.mockReturnValueOnce(false);
+    await releaseQueryServerDatabase('/dbs/release-db');
+    expect(fakeManager.getQueryServer).not.toHaveBeenCalled();
+  });
+});
+
+describe('runCliOnDatabase', () => {
+  beforeEach(() => {
+    vi.clearAllMocks();
+    fakeServer.sendRequest.mockResolvedValue({ evaluationTime: 1, resultType: QueryResultType.SUCCESS });
+  });
+
+  it('should close the database in the query server before running the CLI command', async () => {
+    await runQueryOnQueryServer({ database: '/dbs/cli-db', outputPath: '/out/results.bqrs', queryPath: '/q/Query.ql' });
+
+    const seen: string[] = [];
+    const result = await runCliOnDatabase('/dbs/cli-db', async () => {
+      seen.push(...fakeServer.sendRequest.mock.calls.map(call => call[0]));
+      return 'done';
+    });
+
+    expect(result).toBe('done');
+    expect(seen[seen.length - 1]).toBe('evaluation/deregisterDatabases');
+  });
+
+  it('should wait for an in-flight query server evaluation on the same database', async () => {
+    const order: string[] = [];
+    let finishRun: (() => void) | undefined;
+    fakeServer.sendRequest.mockImplementation(async (method: string) => {
+      if (method !== 'evaluation/runQuery') return {};
+      await new Promise<void>(resolveRun => { finishRun = resolveRun; });
+      order.push('query-server');
+      return { evaluationTime: 1, resultType: QueryResultType.SUCCESS };
+    });
+
+    const evaluation = runQueryOnQueryServer({ database: '/dbs/busy-db', outputPath: '/out/results.bqrs', queryPath: '/q/Query.ql' });
+    await vi.waitFor(() => expect(finishRun).toBeDefined());
+    const cli = runCliOnDatabase('/dbs/busy-db', async () => { order.push('cli'); });
+
+    await new Promise(resolveTick => setTimeout(resolveTick, 10));
+    expect(order).toEqual([]);
+    finishRun!();
+    await Promise.all([evaluation, cli]);
+
+    expect(order).toEqual(['query-server', 'cli']);
+  });
+});
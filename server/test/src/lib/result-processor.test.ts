@@ -2,7 +2,7 @@
  * Tests for result-processor — query result caching behavior.
  */
 
-import { existsSync, rmSync, writeFileSync } from 'fs';
+import { existsSync, mkdirSync, readFileSync, rmSync, writeFileSync } from 'fs';
 import { join } from 'path';
 import { afterEach, beforeEach, describe, expect, it, vi } from 'vitest';
 
@@ -25,8 +25,14 @@ vi.mock('../../../src/lib/query-results-evaluator', async (importOriginal) => {
   };
 });
 
-import { computeQueryCacheKey, processQueryRunResults } from '../../../src/lib/result-processor';
+import {
+  computeQueryCacheKey,
+  computeQueryRunCacheKey,
+  lookupCachedQueryRunResults,
+  processQueryRunResults,
+} from '../../../src/lib/result-processor';
 import { readDatabaseMetadata } from '../../../src/lib/database-resolver';
+import { sessionDataManager } from '../../../src/lib/session-data-manager';
 import { createProjectTempDir } from '../../../src/utils/temp-dir';
 
 // We can't easily test processQueryRunResults end-to-end because it
@@ -266,3 +272,104 @@ describe('processQueryRunResults format inference from @kind', () => {
     expect(spyExtractQueryMetadata).toHaveBeenCalledTimes(1);
   });
 });
+
+describe('lookupCachedQueryRunResults (read-through cache)', () => {
+  let testDir: string;
+  let dbPath: string;
+  let queryPath: string;
+  const noopLogger = { error: () => {}, info: () => {} };
+
+  beforeEach(async () => {
+    testDir = createProjectTempDir('read-through-test-');
+    vi.spyOn(sessionDataManager, 'getConfig').mockReturnValue({
+      ...sessionDataManager.getConfig(),
+      enableAnnotationTools: true,
+      storageLocation: join(testDir, 'storage'),
+    });
+    await sessionDataManager.initialize();
+
+    dbPath = join(testDir, 'db');
+    mkdirSync(join(dbPath, 'db-javascript'), { recursive: true });
+    writeFileSync(join(dbPath, 'codeql-database.yml'), 'primaryLanguage: javascript\n');
+    queryPath = join(testDir, 'q.ql');
+    writeFileSync(queryPath, '/**\n * @id test/q\n * @kind problem\n */\nfrom int x select x\n');
+  });
+
+  afterEach(() => {
+    sessionDataManager.getStore().close();
+    vi.restoreAllMocks();
+    if (existsSync(testDir)) {
+      rmSync(testDir, { recursive: true, force: true });
+    }
+  });
+
+  function seedCache(params: Record<string, unknown>): string {
+    const { cacheKey } = computeQueryRunCacheKey(params, queryPath, 'sarif-latest');
+    sessionDataManager.getStore().putCacheEntry({
+      cacheKey,
+      codeqlVersion: '2.25.0',
+      databasePath: dbPath,
+      language: 'javascript',
+      outputFormat: 'sarif-latest',
+      queryName: 'q',
+      queryPath,
+      resultContent: '{"runs":[]}',
+      resultCount: 0,
+    });
+    return cacheKey;
+  }
+
+  it('reports a miss when nothing is cached', async () => {
+    const lookup = await lookupCachedQueryRunResults({ database: dbPath, query: queryPath }, queryPath, noopLogger);
+    expect(lookup.hit).toBe(false);
+  });
+
+  it('returns the cached result on a hit and writes interpretedOutput', async () => {
+    const params = { database: dbPath, query: queryPath };
+    const cacheKey = seedCache(params);
+    const interpretedOutput = join(testDir, 'out', 'results.sarif');
+
+    const lookup = await lookupCachedQueryRunResults({ ...params, interpretedOutput }, queryPath, noopLogger);
+    expect(lookup.hit).toBe(true);
+    expect(lookup.cacheKey).toBe(cacheKey);
+    if (lookup.hit) expect(lookup.output).toContain('Query result cache: hit');
+    expect(readFileSync(interpretedOutput, 'utf8')).toBe('{"runs":[]}');
+  });
+
+  it('misses after the query source is edited', async () => {
+    const params = { database: dbPath, query: queryPath };
+    seedCache(params);
+    writeFileSync(queryPath, '/**\n * @id test/q\n * @kind problem\n */\nfrom int x where x = 1 select x\n');
+
+    const lookup = await lookupCachedQueryRunResults(params, queryPath, noopLogger);
+    expect(lookup.hit).toBe(false);
+  });
+
+  it('misses after the database is re-created', async () => {
+    const params = { database: dbPath, query: queryPath };
+    seedCache(params);
+    writeFileSync(join(dbPath, 'codeql-database.yml'), 'primaryLanguage: javascript\ncreationTime: later\n');
+
+    const lookup = await lookupCachedQueryRunResults(params, queryPath, noopLogger);
+    expect(lookup.hit).toBe(false);
+  });
+
+  it('never hits when the query imports libraries no lock file pins', async () => {
+    writeFileSync(queryPath, '/**\n * @id test/q\n * @kind problem\n */\nimport javascript\nfrom int x select x\n');
+    const params = { database: dbPath, query: queryPath };
+    seedCache(params);
+
+    const lookup = await lookupCachedQueryRunResults(params, queryPath, noopLogger);
+    expect(lookup.hit).toBe(false);
+    if (!lookup.hit) expect(lookup.reason).toContain('pinned by a pack lock file');
+  });
+
+  it('never hits when external predicate files are supplied', async () => {
+    const params = { database: dbPath, external: ['p=data.csv'], query: queryPath };
+    seedCache(params);
+
+    const lookup = await lookupCachedQueryRunResults(params, queryPath, noopLogger);
+    expect(lookup.hit).toBe(false);
+    if (!lookup.hit) expect(lookup.reason).toContain('external');
+  });
+});
@@ -0,0 +1,69 @@
+/**
+ * Tests for SarifDocumentCache — byte-bounded LRU of parsed SARIF.
+ */
+
+import { afterEach, describe, expect, it } from 'vitest';
+import { getSarifDocumentCacheMaxBytes, SarifDocumentCache } from '../../../src/lib/sarif-document-cache';
+import type { SarifDocument } from '../../../src/types/sarif';
+
+function doc(name: string): SarifDocument {
+  return { version: '2.1.0', runs: [{ tool: { driver: { name } }, results: [] }] } as SarifDocument;
+}
+
+describe('SarifDocumentCache', () => {
+  const originalEnv = process.env.CODEQL_MCP_SARIF_CACHE_BYTES;
+
+  afterEach(() => {
+    if (originalEnv === undefined) delete process.env.CODEQL_MCP_SARIF_CACHE_BYTES;
+    else process.env.CODEQL_MCP_SARIF_CACHE_BYTES = originalEnv;
+  });
+
+  it('should return cached documents only for a matching version', () => {
+    const cache = new SarifDocumentCache(1000);
+    const a = doc('a');
+    cache.set('k', 'v1', a, 10);
+    expect(cache.get('k', 'v1')).toBe(a);
+    expect(cache.get('k', 'v2')).toBeUndefined();
+    // The stale entry is dropped on mismatch.
+    expect(cache.get('k', 'v1')).toBeUndefined();
+    expect(cache.getStats()).toMatchObject({ entries: 0, bytes: 0, hits: 1, misses: 2 });
+  });
+
+  it('should evict least recently used entries to stay within the byte budget', () => {
+    const cache = new SarifDocumentCache(100);
+    cache.set('a', 'v', doc('a'), 40);
+    cache.set('b', 'v', doc('b'), 40);
+    cache.get('a', 'v'); // a is now most recent
+    cache.set('c', 'v', doc('c'), 40);
+
+    expect(cache.get('b', 'v')).toBeUndefined();
+    expect(cache.get('a', 'v')).toBeDefined();
+    expect(cache.get('c', 'v')).toBeDefined();
+    expect(cache.getStats()).toMatchObject({ entries: 2, bytes: 80, evictions: 1 });
+  });
+
+  it('should not cache documents larger than the whole budget', () => {
+    const cache = new SarifDocumentCache(100);
+    cache.set('small', 'v', doc('small'), 10);
+    cache.set('huge', 'v', doc('huge'), 101);
+    expect(cache.get('huge', 'v')).toBeUndefined();
+    expect(cache.get('small', 'v')).toBeDefined();
+    expect(cache.getStats().evictions).toBe(0);
+  });
+
+  it('should replace an entry stored under the same key', () => {
+    const cache = new SarifDocumentCache(100);
+    cache.set('k', 'v1', doc('old'), 30);
+    const fresh = doc('new');
+    cache.set('k', 'v2', fresh, 50);
+    expect(cache.get('k', 'v2')).toBe(fresh);
+    expect(cache.getStats().bytes).toBe(50);
+  });
+
+  it('should read the budget from CODEQL_MCP_SARIF_CACHE_BYTES', () => {
+    process.env.CODEQL_MCP_SARIF_CACHE_BYTES = '1024';
+    expect(getSarifDocumentCacheMaxBytes()).toBe(1024);
+    process.env.CODEQL_MCP_SARIF_CACHE_BYTES = 'bogus';
+    expect(getSarifDocumentCacheMaxBytes()).toBe(64 * 1024 * 1024);
+  });
+});
@@ -0,0 +1,86 @@
+/**
+ * Tests for sarif-index — byte-level SARIF layout scanning.
+ */
+
+import { describe, expect, it } from 'vitest';
+import { buildSarifResultIndex, scanSarifLayout } from '../../../src/lib/sarif-index';
+
+const sarif = {
+  version: '2.1.0',
+  $schema: 'https://json.schemastore.org/sarif-2.1.0.json',
+  runs: [{
+    tool: { driver: { name: 'CodeQL', rules: [{ id: 'js/xss' }] } },
+    results: [
+      {
+        ruleId: 'js/xss',
+        message: { text: 'tricky "quotes" and ] brackets } and \\u00e9 é' },
+        locations: [{ physicalLocation: { artifactLocation: { uri: 'src/a.ts' }, region: { startLine: 3 } } }],
+      },
+      {
+        ruleId: 'js/sql-injection',
+        message: { text: 'second' },
+        locations: [{ physicalLocation: { artifactLocation: { uri: 'src/ü/b.ts' }, region: { startLine: 10 } } }],
+      },
+      { ruleId: 'js/xss', message: { text: 'no location' } },
+    ],
+  }],
+};
+
+describe('sarif-index', () => {
+  for (const [label, text] of [
+    ['compact', JSON.stringify(sarif)],
+    ['pretty-printed', JSON.stringify(sarif, null, 2)],
+  ] as const) {
+    it(`should locate each result in ${label} SARIF`, () => {
+      const buf = Buffer.from(text, 'utf8');
+      const layout = scanSarifLayout(buf)!;
+      expect(layout.version).toBe('2.1.0');
+      expect(layout.results).toHaveLength(3);
+      layout.results.forEach((range, i) => {
+        const slice = buf.toString('utf8', range.offset, range.offset + range.length);
+        expect(JSON.parse(slice)).toEqual(sarif.runs[0].results[i]);
+      });
+      const tool = buf.toString('utf8', layout.tool!.offset, layout.tool!.offset + layout.tool!.length);
+      expect(JSON.parse(tool)).toEqual(sarif.runs[0].tool);
+    });
+  }
+
+  it('should build index rows with rule, primary file and start line', () => {
+    const buf = Buffer.from(JSON.stringify(sarif), 'utf8');
+    const rows = buildSarifResultIndex(buf, scanSarifLayout(buf)!);
+    expect(rows.map(r => [r.resultIndex, r.ruleId, r.fileUri, r.startLine])).toEqual([
+      [0, 'js/xss', 'src/a.ts', 3],
+      [1, 'js/sql-injection', 'src/ü/b.ts', 10],
+      [2, 'js/xss', null, null],
+    ]);
+  });
+
+  it('should record the distinct files of every location', () => {
+    const buf = Buffer.from(JSON.stringify({
+      runs: [{
+        results: [{
+          rule: { id: 'js/xss' },
+          locations: ['src/a.ts', 'src/b.ts', 'src/a.ts'].map(uri => ({ physicalLocation: { artifactLocation: { uri } } })),
+        }],
+      }],
+    }), 'utf8');
+    const [row] = buildSarifResultIndex(buf, scanSarifLayout(buf)!);
+    expect(row.ruleId).toBe('js/xss');
+    expect(row.fileUri).toBe('src/a.ts');
+    expect(row.fileUris).toEqual(['src/a.ts', 'src/b.ts']);
+  });
+
+  it('should accept a run without results', () => {
+    const layout = scanSarifLayout(Buffer.from('{"runs":[{"tool":{"driver":{"name":"x"}}}]}'));
+    expect(layout).not.toBeNull();
+    expect(layout!.results).toEqual([]);
+  });
+
+  it('should reject content that is not a SARIF-shaped JSON object', () => {
+    expect(scanSarifLayout(Buffer.from('This is not valid JSON'))).toBeNull();
+    expect(scanSarifLayout(Buffer.from('{}'))).toBeNull();
+    expect(scanSarifLayout(Buffer.from('{"runs":[]}'))).toBeNull();
+    expect(scanSarifLayout(Buffer.from('{"runs":[{"results":[{}'))).toBeNull();
+    expect(scanSarifLayout(Buffer.from('{"runs":[{"results":[]}]} trailing'))).toBeNull();
+  });
+});
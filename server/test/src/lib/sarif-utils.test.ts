@@ -8,11 +8,13 @@ import {
   computeLocationOverlap,
   decomposeSarifByRule,
   diffSarifByCommits,
+  diffSarifResults,
   diffSarifRules,
   extractRuleFromSarif,
   findOverlappingAlerts,
   getRuleDisplayName,
   listSarifRules,
+  matchResultsByFingerprint,
   sarifResultToMermaid,
   sarifRuleToMarkdown,
 } from '../../../src/lib/sarif-utils';
@@ -1007,6 +1009,142 @@ describe('findOverlappingAlerts', () => {
     const sourceOverlaps = findOverlappingAlerts(resultA, ruleA, resultB, ruleB, 'source');
     expect(sourceOverlaps).toHaveLength(1);
   });
+
+  it('should match pairwise computeLocationOverlap for every mode', () => {
+    // Deterministic pseudo-random generator so failures are reproducible.
+    let seed = 12345;
+    const rand = (n: number): number => {
+      seed = (seed * 1103515245 + 12345) % 2147483648;
+      return seed % n;
+    };
+    const uris = ['src/a.js', 'file:///repo/src/a.js', 'lib/b.js', 'b.js', 'src\\c.js', 'other-c.js'];
+    const physical = () => {
+      const startLine = rand(5) === 0 ? undefined : 1 + rand(30);
+      const multiLine = rand(3) === 0;
+      return {
+        artifactLocation: { uri: uris[rand(uris.length)] },
+        region: startLine === undefined ? undefined : {
+          startLine,
+          endLine: multiLine ? startLine + rand(4) : undefined,
+          startColumn: rand(2) === 0 ? 1 + rand(20) : undefined,
+          endColumn: rand(2) === 0 ? 10 + rand(20) : undefined,
+        },
+      };
+    };
+    const makeResults = (count: number): SarifResult[] =>
+      Array.from({ length: count }, (_, i) => ({
+        ruleId: 'r',
+        message: { text: `result ${i}` },
+        locations: [{ physicalLocation: physical() }],
+        relatedLocations: rand(2) === 0 ? [{ physicalLocation: physical() }] : undefined,
+        partialFingerprints: rand(3) === 0 ? undefined : { primaryLocationLineHash: `h${rand(40)}` },
+        codeFlows: [{
+          threadFlows: [{
+            locations: Array.from({ length: 1 + rand(3) }, () => ({ location: { physicalLocation: physical() } })),
+          }],
+        }],
+      }));
+    const resultsA = makeResults(60);
+    const resultsB = makeResults(50);
+    const ruleA: SarifRule = { id: 'ra' };
+    const ruleB: SarifRule = { id: 'rb' };
+
+    for (const mode of ['sink', 'source', 'any-location', 'full-path', 'fingerprint'] as const) {
+      const expected = [];
+      for (let i = 0; i < resultsA.length; i++) {
+        for (let j = 0; j < resultsB.length; j++) {
+          const overlapDetails = computeLocationOverlap(resultsA[i], resultsB[j], mode);
+          if (overlapDetails.overlaps) {
+            expected.push({ overlapDetails, resultAIndex: i, resultBIndex: j });
+          }
+        }
+      }
+      const actual = findOverlappingAlerts(resultsA, ruleA, resultsB, ruleB, mode);
+      expect(expected.length).toBeGreaterThan(0);
+      expect(actual.map(o => ({
+        overlapDetails: o.overlapDetails,
+        resultAIndex: o.resultAIndex,
+        resultBIndex: o.resultBIndex,
+      }))).toEqual(expected);
+    }
+  });
+});
+
+// ---------------------------------------------------------------------------
+// matchResultsByFingerprint / diffSarifResults
+// ---------------------------------------------------------------------------
+
+function fpResult(ruleId: string, hash: string | undefined, uri: string, line: number): SarifResult {
+  return {
+    ruleId,
+    message: { text: `${ruleId} at ${uri}:${line}` },
+    locations: [{ physicalLocation: { artifactLocation: { uri }, region: { startLine: line } } }],
+    partialFingerprints: hash === undefined ? undefined : { primaryLocationLineHash: hash },
+  };
+}
+
+describe('matchResultsByFingerprint', () => {
+  it('should return the same pairs as pairwise computeFingerprintOverlap', () => {
+    const resultsA = [
+      fpResult('r', 'a', 'x.js', 1),
+      fpResult('r', undefined, 'x.js', 2),
+      { ...fpResult('r', 'b', 'x.js', 3), partialFingerprints: { primaryLocationLineHash: 'b', other: 'z' } },
+      fpResult('r', 'c', 'x.js', 4),
+    ];
+    const resultsB = [
+      fpResult('r', 'b', 'y.js', 1),
+      { ...fpResult('r', 'q', 'y.js', 2), partialFingerprints: { primaryLocationLineHash: 'q', other: 'z' } },
+      fpResult('r', 'a', 'y.js', 3),
+      fpResult('r', 'a', 'y.js', 4),
+    ];
+
+    const expected: Array<[number, number]> = [];
+    resultsA.forEach((a, i) => resultsB.forEach((b, j) => {
+      if (computeFingerprintOverlap(a, b).fingerprintMatch) expected.push([i, j]);
+    }));
+
+    expect(matchResultsByFingerprint(resultsA, resultsB)).toEqual(expected);
+    expect(expected).toEqual([[0, 2], [0, 3], [2, 0], [2, 1]]);
+  });
+});
+
+function runOf(results: SarifResult[]): SarifDocument {
+  return { version: '2.1.0', runs: [{ tool: { driver: { name: 'CodeQL' } }, results }] };
+}
+
+describe('diffSarifResults', () => {
+  it('should match by fingerprint first, then by location, one-to-one', () => {
+    const runA = runOf([
+      fpResult('js/xss', 'h1', 'src/a.js', 10),
+      fpResult('js/xss', 'h2', 'src/a.js', 20),
+      fpResult('js/xss', undefined, 'src/b.js', 5),
+      fpResult('js/sql-injection', 'h3', 'src/db.js', 7),
+    ]);
+    const runB = runOf([
+      // Moved but same fingerprint.
+      fpResult('js/xss', 'h1', 'src/a.js', 12),
+      // No fingerprint, same location as A[2].
+      fpResult('js/xss', undefined, 'src/b.js', 5),
+      // A second alert at the same place only matches once.
+      fpResult('js/xss', undefined, 'src/b.js', 5),
+      fpResult('js/path-injection', 'h4', 'src/fs.js', 1),
+    ]);
+
+    const diff = diffSarifResults(runA, runB);
+
+    expect(diff.summary).toEqual({ absentResults: 2, matchedByFingerprint: 1, matchedByLocation: 1, newResults: 2 });
+    expect(diff.rules).toEqual([
+      { absentIndicesA: [], matchedByFingerprint: 0, matchedByLocation: 0, newIndicesB: [0], ruleId: 'js/path-injection' },
+      { absentIndicesA: [0], matchedByFingerprint: 0, matchedByLocation: 0, newIndicesB: [], ruleId: 'js/sql-injection' },
+      { absentIndicesA: [1], matchedByFingerprint: 1, matchedByLocation: 1, newIndicesB: [2], ruleId: 'js/xss' },
+    ]);
+  });
+
+  it('should report no differences for identical runs', () => {
+    const run = runOf([fpResult('r', 'h1', 'a.js', 1), fpResult('r', undefined, 'b.js', 2)]);
+    const diff = diffSarifResults(run, run);
+    expect(diff.summary).toEqual({ absentResults: 0, matchedByFingerprint: 1, matchedByLocation: 1, newResults: 0 });
+  });
 });
 
 // ---------------------------------------------------------------------------
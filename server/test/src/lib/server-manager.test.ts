@@ -2,9 +2,10 @@
  * Tests for CodeQLServerManager.
  */
 
-import { describe, expect, it, vi, beforeEach, afterEach } from 'vitest';
+import { describe, expect, it, vi, afterAll, beforeAll, beforeEach, afterEach } from 'vitest';
 import { EventEmitter } from 'events';
 import { existsSync } from 'fs';
+import { join } from 'path';
 import {
   CodeQLServerManager,
   getServerManager,
@@ -12,6 +13,7 @@ import {
   resetServerManager,
   shutdownServerManager,
 } from '../../../src/lib/server-manager';
+import { cleanupTestTempDir, createTestTempDir } from '../../utils/temp-dir';
 
 // Mock waitForProcessReady so server start() resolves immediately in tests
 vi.mock('../../../src/utils/process-ready', () => ({
@@ -45,6 +47,21 @@ vi.mock('child_process', async (importOriginal) => {
   };
 });
 
+// Keep the leases of test sessions out of the real shared cache
+let sharedCacheDir: string;
+const originalSharedCacheDir = process.env.CODEQL_MCP_SHARED_CACHE_DIR;
+
+beforeAll(() => {
+  sharedCacheDir = createTestTempDir('server-manager-shared-cache');
+  process.env.CODEQL_MCP_SHARED_CACHE_DIR = sharedCacheDir;
+});
+
+afterAll(() => {
+  if (originalSharedCacheDir === undefined) delete process.env.CODEQL_MCP_SHARED_CACHE_DIR;
+  else process.env.CODEQL_MCP_SHARED_CACHE_DIR = originalSharedCacheDir;
+  cleanupTestTempDir(sharedCacheDir);
+});
+
 describe('CodeQLServerManager', () => {
   beforeEach(() => {
     resetServerManager();
@@ -260,6 +277,18 @@ describe('CodeQLServerManager', () => {
       expect(server.isRunning()).toBe(true);
       expect(manager.isRunning('cli')).toBe(true);
     });
+
+    it('should expose pool queue metrics once running', async () => {
+      const manager = new CodeQLServerManager({ sessionId: 'cli-metrics-test' });
+      expect(manager.getCLIServerPoolMetrics()).toBeNull();
+
+      await manager.getCLIServer({});
+      const metrics = manager.getCLIServerPoolMetrics();
+
+      expect(metrics).not.toBeNull();
+      expect(metrics!.members.length).toBe(metrics!.size);
+      expect(metrics!.totalPending).toBe(0);
+    });
   });
 
   describe('enrichConfig', () => {
@@ -274,6 +303,25 @@ describe('CodeQLServerManager', () => {
     });
   });
 
+  describe('getSharedCache', () => {
+    it('should lease a shared cache generation once a server starts, until shutdown', async () => {
+      const manager = new CodeQLServerManager({ sessionId: 'shared-cache-test' });
+      const sharedCache = manager.getSharedCache();
+      const leasePath = join(sharedCache.directory, 'leases', `${process.pid}-shared-cache-test.json`);
+
+      expect(sharedCache.root).toBe(sharedCacheDir);
+      expect(sharedCache.directory).toContain('generations');
+      expect(existsSync(leasePath)).toBe(false);
+
+      await manager.getCLIServer({});
+      expect(existsSync(leasePath)).toBe(true);
+      expect(existsSync(join(manager.getCacheDir(), 'compilation-cache'))).toBe(false);
+
+      await manager.shutdownAll();
+      expect(existsSync(leasePath)).toBe(false);
+    });
+  });
+
   describe('getStatus after construction', () => {
     it('should return consistent status structure', () => {
       const manager = new CodeQLServerManager({ sessionId: 'status-test' });
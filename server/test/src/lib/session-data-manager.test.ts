@@ -191,6 +191,83 @@ describe('SessionDataManager', () => {
     });
   });
 
+  describe('Session History', () => {
+    it('should page through MCP calls most recent first', async () => {
+      const sessionId = await sessionManager.startSession('/test/query.ql', 'javascript');
+      for (let i = 0; i < 3; i++) {
+        await sessionManager.addMCPCall(sessionId, {
+          callId: `call-${i}`,
+          timestamp: new Date().toISOString(),
+          toolName: 'codeql_query_compile',
+          parameters: {},
+          result: null,
+          success: true,
+          duration: 10,
+          nextSuggestedTool: `tool-${i}`,
+        });
+      }
+
+      const first = await sessionManager.getSessionHistory(sessionId, 'mcpCalls', { limit: 2 });
+      expect(first?.total).toBe(3);
+      expect(first?.records.map(r => r.callId)).toEqual(['call-2', 'call-1']);
+
+      const second = await sessionManager.getSessionHistory(sessionId, 'mcpCalls', {
+        before: first?.nextCursor,
+        limit: 2,
+      });
+      expect(second?.records.map(r => r.callId)).toEqual(['call-0']);
+      expect(second?.nextCursor).toBeUndefined();
+
+      const summary = await sessionManager.getSessionSummary(sessionId);
+      expect(summary?.nextSuggestedTool).toBe('tool-2');
+      expect(summary).not.toHaveProperty('mcpCalls');
+    });
+
+    it('should return null history for a non-existent session', async () => {
+      expect(await sessionManager.getSessionHistory('missing', 'qualityScores', { limit: 10 })).toBeNull();
+    });
+  });
+
+  describe('Session Queries', () => {
+    it('should list entries with history counts without loading history', async () => {
+      const sessionId = await sessionManager.startSession('/test/query.ql', 'javascript');
+      await sessionManager.startSession('/test/other.ql', 'python');
+      await sessionManager.addTestExecution(sessionId, {
+        executionId: 'test-1',
+        timestamp: new Date().toISOString(),
+        type: 'compilation',
+        success: true,
+        details: {},
+      });
+
+      const entries = await sessionManager.listSessionEntries({ language: 'javascript' });
+
+      expect(entries).toHaveLength(1);
+      expect(entries[0]).toMatchObject({
+        currentScore: null,
+        mcpCallsCount: 0,
+        sessionId,
+        testExecutionsCount: 1,
+      });
+      expect(entries[0]).not.toHaveProperty('testExecutions');
+    });
+
+    it('should aggregate sessions and clean up expired ones in SQL', async () => {
+      const done = await sessionManager.startSession('/test/query.ql', 'javascript');
+      await sessionManager.startSession('/test/query.ql', 'javascript');
+      await sessionManager.updateConfig({ archiveCompletedSessions: false, retentionDays: -1 });
+      await sessionManager.endSession(done, 'completed');
+
+      const stats = await sessionManager.aggregateSessions({ queryPath: 'query.ql' });
+      expect(stats.totalSessions).toBe(2);
+      expect(stats.completedSessions).toBe(1);
+
+      await sessionManager.cleanupOldSessions();
+      expect(await sessionManager.getSession(done)).toBeNull();
+      expect((await sessionManager.aggregateSessions()).totalSessions).toBe(1);
+    });
+  });
+
   describe('Configuration Management', () => {
     it('should return current configuration', () => {
       const config = sessionManager.getConfig();
@@ -0,0 +1,196 @@
+/**
+ * Tests for SharedCodeQLCache — version-keyed generations, leases and eviction.
+ */
+
+import { afterEach, beforeEach, describe, expect, it, vi } from 'vitest';
+import { spawnSync } from 'child_process';
+import { existsSync, mkdirSync, readFileSync, readdirSync, rmSync, statSync, utimesSync, writeFileSync } from 'fs';
+import { hostname } from 'os';
+import { join } from 'path';
+import {
+  DEFAULT_SHARED_CACHE_MAX_BYTES,
+  generationKey,
+  GenerationManifest,
+  getSharedCacheMaxBytes,
+  SharedCodeQLCache,
+} from '../../../src/lib/shared-cache';
+import { createProjectTempDir } from '../../../src/utils/temp-dir';
+
+/** PID of a process that has already exited. */
+function deadPid(): number {
+  return spawnSync(process.execPath, ['-e', '']).pid!;
+}
+
+/** Create a generation directory as another process would have left it. */
+function writeGeneration(root: string, cliVersion: string, lastUsedAt: string, bytes: number, leasePid?: number): string {
+  const key = generationKey(cliVersion);
+  const dir = join(root, 'generations', key);
+  mkdirSync(join(dir, 'leases'), { recursive: true });
+  const manifest: GenerationManifest = {
+    cliVersion,
+    createdAt: lastUsedAt,
+    key,
+    lastUsedAt,
+    stats: { coldStarts: 1, evaluations: 0, predicateCacheHits: 0, predicateLookups: 0, warmStarts: 0 },
+  };
+  writeFileSync(join(dir, 'generation.json'), JSON.stringify(manifest));
+  writeFileSync(join(dir, 'payload.bin'), Buffer.alloc(bytes));
+  if (leasePid !== undefined) {
+    writeFileSync(join(dir, 'leases', `${leasePid}-other.json`), JSON.stringify({ host: hostname(), pid: leasePid }));
+  }
+  return dir;
+}
+
+function readManifest(dir: string): GenerationManifest {
+  return JSON.parse(readFileSync(join(dir, 'generation.json'), 'utf8'));
+}
+
+describe('generationKey', () => {
+  it('should be stable per version and distinct across versions', () => {
+    expect(generationKey('2.25.0')).toBe(generationKey('2.25.0'));
+    expect(generationKey('2.25.0')).not.toBe(generationKey('2.25.1'));
+    expect(generationKey('2.25.0')).toMatch(/^2\.25\.0-[0-9a-f]{12}$/);
+    expect(generationKey('../../etc')).not.toContain('/');
+  });
+});
+
+describe('getSharedCacheMaxBytes', () => {
+  const originalEnv = process.env.CODEQL_MCP_SHARED_CACHE_MAX_BYTES;
+
+  afterEach(() => {
+    if (originalEnv === undefined) delete process.env.CODEQL_MCP_SHARED_CACHE_MAX_BYTES;
+    else process.env.CODEQL_MCP_SHARED_CACHE_MAX_BYTES = originalEnv;
+  });
+
+  it('should parse the environment variable and fall back on invalid values', () => {
+    delete process.env.CODEQL_MCP_SHARED_CACHE_MAX_BYTES;
+    expect(getSharedCacheMaxBytes()).toBe(DEFAULT_SHARED_CACHE_MAX_BYTES);
+    process.env.CODEQL_MCP_SHARED_CACHE_MAX_BYTES = '1048576';
+    expect(getSharedCacheMaxBytes()).toBe(1048576);
+    process.env.CODEQL_MCP_SHARED_CACHE_MAX_BYTES = '-5';
+    expect(getSharedCacheMaxBytes()).toBe(DEFAULT_SHARED_CACHE_MAX_BYTES);
+  });
+});
+
+describe('SharedCodeQLCache', () => {
+  let root: string;
+
+  beforeEach(() => {
+    root = join(createProjectTempDir('shared-cache-test-'), 'root');
+  });
+
+  afterEach(() => {
+    rmSync(join(root, '..'), { force: true, recursive: true });
+  });
+
+  it('should reuse the generation of the same CLI version across instances', async () => {
+    const first = new SharedCodeQLCache({ cliVersion: '2.25.0', leaseId: 'first', root });
+    const dir = await first.acquire();
+    await first.recordEvaluation(0, 0);
+    first.release();
+
+    const second = new SharedCodeQLCache({ cliVersion: '2.25.0', leaseId: 'second', root });
+    expect(await second.acquire()).toBe(dir);
+    await second.recordEvaluation(20, 15);
+
+    const manifest = readManifest(dir);
+    expect(manifest.cliVersion).toBe('2.25.0');
+    expect(manifest.stats).toEqual({
+      coldStarts: 1,
+      evaluations: 2,
+      predicateCacheHits: 15,
+      predicateLookups: 20,
+      warmStarts: 1,
+    });
+
+    const other = new SharedCodeQLCache({ cliVersion: '2.26.0', leaseId: 'third', root });
+    expect(await other.acquire()).not.toBe(dir);
+  });
+
+  it('should hold a lease until released', async () => {
+    const cache = new SharedCodeQLCache({ cliVersion: '2.25.0', leaseId: 'lease', root });
+    await cache.acquire();
+    expect((await cache.getStats()).generations[0].activeLeases).toBe(1);
+    cache.release();
+    expect((await cache.getStats()).generations[0].activeLeases).toBe(0);
+  });
+
+  it('should refresh its lease until released', async () => {
+    vi.useFakeTimers({ toFake: ['setInterval', 'clearInterval'] });
+    try {
+      const cache = new SharedCodeQLCache({ cliVersion: '2.25.0', leaseId: 'refresh', root });
+      await cache.acquire();
+      const leasesDir = join(cache.directory, 'leases');
+      const leasePath = join(leasesDir, readdirSync(leasesDir)[0]);
+      const longAgo = new Date(Date.now() - 30 * 24 * 60 * 60 * 1000);
+      utimesSync(leasePath, longAgo, longAgo);
+
+      await vi.advanceTimersByTimeAsync(60 * 60 * 1000);
+
+      expect(Date.now() - statSync(leasePath).mtimeMs).toBeLessThan(60_000);
+      expect(existsSync(join(root, '.lock'))).toBe(false);
+
+      cache.release();
+      await vi.advanceTimersByTimeAsync(60 * 60 * 1000);
+      expect(existsSync(leasePath)).toBe(false);
+    } finally {
+      vi.useRealTimers();
+    }
+  });
+
+  it('should evict least recently used generations until within budget', async () => {
+    const oldest = writeGeneration(root, '2.20.0', '2026-01-01T00:00:00.000Z', 4000);
+    const middle = writeGeneration(root, '2.21.0', '2026-02-01T00:00:00.000Z', 4000);
+    const newest = writeGeneration(root, '2.22.0', '2026-03-01T00:00:00.000Z', 4000);
+    const cache = new SharedCodeQLCache({ cliVersion: '2.25.0', leaseId: 'evict', maxBytes: 9000, root });
+    await cache.acquire();
+
+    const evicted = await cache.enforceBudget();
+
+    expect(evicted).toEqual([generationKey('2.20.0')]);
+    expect(existsSync(oldest)).toBe(false);
+    expect(existsSync(middle)).toBe(true);
+    expect(existsSync(newest)).toBe(true);
+    const stats = await cache.getStats();
+    expect(stats.evictedGenerations).toBe(1);
+    expect(stats.totalBytes).toBeLessThanOrEqual(9000);
+  });
+
+  it('should never evict generations leased by a running process', async () => {
+    const leased = writeGeneration(root, '2.20.0', '2026-01-01T00:00:00.000Z', 4000, process.pid);
+    const abandoned = writeGeneration(root, '2.21.0', '2026-02-01T00:00:00.000Z', 4000, deadPid());
+    const cache = new SharedCodeQLCache({ cliVersion: '2.25.0', leaseId: 'leased', maxBytes: 1000, root });
+    await cache.acquire();
+
+    const evicted = await cache.enforceBudget();
+
+    expect(evicted).toEqual([generationKey('2.21.0')]);
+    expect(existsSync(leased)).toBe(true);
+    expect(existsSync(abandoned)).toBe(false);
+    expect(existsSync(cache.directory)).toBe(true);
+  });
+
+  it('should break a lock left behind by a dead process', async () => {
+    mkdirSync(root, { recursive: true });
+    writeFileSync(join(root, '.lock'), JSON.stringify({ host: hostname(), pid: deadPid() }));
+
+    const cache = new SharedCodeQLCache({ cliVersion: '2.25.0', leaseId: 'lock', root });
+    await cache.acquire();
+    await cache.recordEvaluation(1, 1);
+
+    expect(readManifest(cache.directory).stats.evaluations).toBe(1);
+    expect(existsSync(join(root, '.lock'))).toBe(false);
+  });
+
+  it('should break a stale lock', async () => {
+    mkdirSync(root, { recursive: true });
+    const lockPath = join(root, '.lock');
+    writeFileSync(lockPath, JSON.stringify({ host: 'another-host', pid: 1 }));
+    const longAgo = new Date(Date.now() - 10 * 60 * 1000);
+    utimesSync(lockPath, longAgo, longAgo);
+
+    const cache = new SharedCodeQLCache({ cliVersion: '2.25.0', leaseId: 'stale', root });
+    await cache.acquire();
+    await expect(cache.recordEvaluation(1, 0)).resolves.toBeUndefined();
+  });
+});
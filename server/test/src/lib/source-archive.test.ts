@@ -0,0 +1,221 @@
+/**
+ * Tests for the indexed source-archive reader
+ */
+
+import AdmZip from 'adm-zip';
+import { promises as fs } from 'fs';
+import { join } from 'path';
+import { afterEach, beforeEach, describe, expect, it } from 'vitest';
+import {
+  ArchiveHandlePool,
+  clearSourceArchiveCache,
+  getSourceArchive,
+  LineRangeCollector,
+} from '../../../src/lib/source-archive';
+import { cleanupTestTempDir, createTestTempDir } from '../../utils/temp-dir';
+
+const BIG_LINES = 50_000;
+
+function writeArchive(path: string, files: Record<string, string>): void {
+  const zip = new AdmZip();
+  for (const [entry, content] of Object.entries(files)) {
+    zip.addFile(entry, Buffer.from(content, 'utf-8'));
+  }
+  zip.writeZip(path);
+}
+
+function collect(content: string, chunkSize: number, startLine: number, endLine: number): string {
+  const collector = new LineRangeCollector(startLine, endLine);
+  const bytes = Buffer.from(content, 'utf-8');
+  for (let i = 0; i < bytes.length; i += chunkSize) {
+    collector.push(bytes.subarray(i, i + chunkSize));
+  }
+  return collector.finish(content.split(/\r?\n/).length).content;
+}
+
+describe('LineRangeCollector', () => {
+  const content = 'one\r\ntwo\nthree\r\n\r\nfive\n';
+
+  it('matches split(/\\r?\\n/) for every range and chunk size', () => {
+    const lines = content.split(/\r?\n/);
+    for (const chunkSize of [1, 2, 3, 7, 1024]) {
+      for (let start = 1; start <= lines.length; start++) {
+        for (let end = start; end <= lines.length; end++) {
+          expect(collect(content, chunkSize, start, end)).toBe(lines.slice(start - 1, end).join('\n'));
+        }
+      }
+    }
+  });
+
+  it('counts lines and reports when the range is complete', () => {
+    const collector = new LineRangeCollector(1, 2);
+    collector.push(Buffer.from('a\nb'));
+    expect(collector.complete).toBe(false);
+    collector.push(Buffer.from('\nc\n'));
+    expect(collector.complete).toBe(true);
+    expect(collector.totalLines).toBe(4);
+  });
+
+  it('rejects ranges past the end', () => {
+    const collector = new LineRangeCollector(5, 6);
+    collector.push(Buffer.from('a\nb'));
+    expect(() => collector.finish(2)).toThrow('Invalid line range');
+  });
+
+  it('enforces the byte limit on collected lines only', () => {
+    const collector = new LineRangeCollector(2, 2, 4);
+    collector.push(Buffer.from('a long first line\nok\n'));
+    expect(collector.finish(3).content).toBe('ok');
+
+    const tooMany = new LineRangeCollector(1, 1, 4);
+    expect(() => tooMany.push(Buffer.from('a long first line\n'))).toThrow('exceed 4 bytes');
+  });
+});
+
+describe('SourceArchive', () => {
+  let dir: string;
+  let zipPath: string;
+  const big = Array.from({ length: BIG_LINES }, (_, i) => `line ${i + 1}`).join('\n');
+
+  beforeEach(() => {
+    dir = createTestTempDir('source-archive');
+    zipPath = join(dir, 'src.zip');
+    writeArchive(zipPath, {
+      'home/user/repo/src/Foo.java': 'package a;\r\n\r\nclass Foo {}\r\n',
+      'home/user/repo/src/Big.java': big,
+      'src/Foo.java': 'short',
+      'empty.txt': '',
+    });
+  });
+
+  afterEach(() => {
+    clearSourceArchiveCache();
+    cleanupTestTempDir(dir);
+  });
+
+  it('indexes file entries and lists them sorted', async () => {
+    const archive = await getSourceArchive(zipPath);
+    expect(archive.names).toEqual([
+      'empty.txt',
+      'home/user/repo/src/Big.java',
+      'home/user/repo/src/Foo.java',
+      'src/Foo.java',
+    ]);
+  });
+
+  it('resolves exact, case-insensitive and suffix paths', async () => {
+    const archive = await getSourceArchive(zipPath);
+    expect(archive.resolve('src/Foo.java')?.name).toBe('src/Foo.java');
+    expect(archive.resolve('/home/user/repo/src/Foo.java')?.name).toBe('home/user/repo/src/Foo.java');
+    expect(archive.resolve('HOME/USER/repo/src/foo.java')?.name).toBe('home/user/repo/src/Foo.java');
+    expect(archive.resolve('repo/src/Big.java')?.name).toBe('home/user/repo/src/Big.java');
+    expect(archive.resolve('/ci/checkout/home/user/repo/src/Big.java')?.name).toBe('home/user/repo/src/Big.java');
+    expect(archive.resolve('ig.java')?.name).toBe('home/user/repo/src/Big.java');
+    expect(archive.resolve('Missing.java')).toBeUndefined();
+  });
+
+  it('prefers the longest entry for ambiguous suffixes', async () => {
+    const archive = await getSourceArchive(zipPath);
+    expect(archive.resolve('Foo.java')?.name).toBe('home/user/repo/src/Foo.java');
+  });
+
+  it('reads line ranges like split(/\\r?\\n/)', async () => {
+    const archive = await getSourceArchive(zipPath);
+    const foo = archive.resolve('repo/src/Foo.java')!;
+    expect(await archive.readLines(foo)).toEqual({
+      content: 'package a;\n\nclass Foo {}\n',
+      endLine: 4,
+      startLine: 1,
+      totalLines: 4,
+    });
+    expect((await archive.readLines(foo, 2, 3)).content).toBe('\nclass Foo {}');
+    expect(await archive.readLines(archive.resolve('empty.txt')!)).toEqual({
+      content: '',
+      endLine: 1,
+      startLine: 1,
+      totalLines: 1,
+    });
+  });
+
+  it('learns the line count and then stops extracting early', async () => {
+    const archive = await getSourceArchive(zipPath);
+    const entry = archive.resolve('Big.java')!;
+    expect(entry.totalLines).toBeUndefined();
+
+    const first = await archive.readLines(entry, 100, 102);
+    expect(first).toEqual({ content: 'line 100\nline 101\nline 102', endLine: 102, startLine: 100, totalLines: BIG_LINES });
+    expect(entry.totalLines).toBe(BIG_LINES);
+
+    const second = await archive.readLines(entry, 5, 6);
+    expect(second).toEqual({ content: 'line 5\nline 6', endLine: 6, startLine: 5, totalLines: BIG_LINES });
+
+    const last = await archive.readLines(entry, BIG_LINES - 1, BIG_LINES + 10);
+    expect(last.content).toBe(`line ${BIG_LINES - 1}\nline ${BIG_LINES}`);
+
+    await expect(archive.readLines(entry, BIG_LINES + 1, BIG_LINES + 2)).rejects.toThrow('Invalid line range');
+  });
+
+  it('serves concurrent reads from one pooled handle', async () => {
+    const archive = await getSourceArchive(zipPath);
+    const entry = archive.resolve('Big.java')!;
+    const results = await Promise.all(
+      [1, 1000, 20_000, 40_000].map(line => archive.readLines(entry, line, line)),
+    );
+    expect(results.map(r => r.content)).toEqual(['line 1', 'line 1000', 'line 20000', 'line 40000']);
+  });
+
+  it('reuses the index until the archive changes', async () => {
+    const first = await getSourceArchive(zipPath);
+    expect(await getSourceArchive(zipPath)).toBe(first);
+
+    writeArchive(zipPath, { 'only/Changed.java': 'changed' });
+    const future = new Date(Date.now() + 5000);
+    await fs.utimes(zipPath, future, future);
+
+    const second = await getSourceArchive(zipPath);
+    expect(second).not.toBe(first);
+    expect(second.names).toEqual(['only/Changed.java']);
+    expect((await second.readLines(second.resolve('Changed.java')!)).content).toBe('changed');
+  });
+
+  it('rejects files that are not zip archives', async () => {
+    const notZip = join(dir, 'not.zip');
+    await fs.writeFile(notZip, 'plain text');
+    await expect(getSourceArchive(notZip)).rejects.toThrow('Not a zip archive');
+  });
+});
+
+describe('ArchiveHandlePool', () => {
+  let dir: string;
+
+  beforeEach(() => {
+    dir = createTestTempDir('archive-handle-pool');
+  });
+
+  afterEach(() => {
+    cleanupTestTempDir(dir);
+  });
+
+  it('keeps at most maxOpen unused handles', async () => {
+    const pool = new ArchiveHandlePool(2);
+    const paths = await Promise.all(['a', 'b', 'c'].map(async name => {
+      const path = join(dir, name);
+      await fs.writeFile(path, name);
+      return path;
+    }));
+
+    for (const path of paths) {
+      await pool.use(path, async handle => (await handle.readFile('utf-8')));
+    }
+    expect(pool.openCount).toBe(2);
+
+    pool.closeAll();
+    expect(pool.openCount).toBe(0);
+  });
+
+  it('does not keep a handle that failed to open', async () => {
+    const pool = new ArchiveHandlePool(2);
+    await expect(pool.use(join(dir, 'missing'), async () => 1)).rejects.toThrow();
+    expect(pool.openCount).toBe(0);
+  });
+});
@@ -2,9 +2,10 @@
  * Tests for SqliteStore — the unified sql.js persistence backend.
  */
 
-import { existsSync, rmSync } from 'fs';
-import { afterEach, beforeEach, describe, expect, it } from 'vitest';
-import { SqliteStore } from '../../../src/lib/sqlite-store';
+import { appendFileSync, existsSync, readFileSync, rmSync } from 'fs';
+import { join } from 'path';
+import { afterEach, beforeEach, describe, expect, it, vi } from 'vitest';
+import { getQueryResultCachePolicy, SqliteStore } from '../../../src/lib/sqlite-store';
 import { createProjectTempDir } from '../../../src/utils/temp-dir';
 
 describe('SqliteStore', () => {
@@ -72,6 +73,149 @@ describe('SqliteStore', () => {
     });
   });
 
+  describe('Session Queries', () => {
+    function putSession(id: string, fields: Record<string, unknown>): void {
+      store.putSession(id, { sessionId: id, ...fields });
+    }
+
+    beforeEach(() => {
+      putSession('a', { language: 'java', queryPath: '/q/java/A.ql', startTime: '2026-01-01', status: 'completed', endTime: '2026-01-02' });
+      putSession('b', { language: 'java', queryPath: '/q/java/B.ql', startTime: '2026-02-01', status: 'failed', endTime: '2026-02-02' });
+      putSession('c', { language: 'python', queryPath: '/q/py/C.ql', queryType: 'security', startTime: '2026-03-01', status: 'active' });
+      store.appendSessionHistory('mcpCalls', 'a', { toolName: 'codeql_query_compile' });
+      store.appendSessionHistory('mcpCalls', 'a', { toolName: 'codeql_test_run' });
+      store.appendSessionHistory('mcpCalls', 'b', { toolName: 'codeql_query_compile' });
+      store.appendSessionHistory('qualityScores', 'a', { overallScore: 60 });
+      store.appendSessionHistory('qualityScores', 'a', { overallScore: 80 });
+      store.appendSessionHistory('qualityScores', 'c', { overallScore: 40 });
+    });
+
+    it('should filter sessions on indexed columns', () => {
+      const ids = (filter: Parameters<SqliteStore['listSessionRows']>[0]) =>
+        store.listSessionRows(filter).map(row => (row.data as { sessionId: string }).sessionId);
+
+      expect(ids({})).toEqual(['a', 'b', 'c']);
+      expect(ids({ language: 'java' })).toEqual(['a', 'b']);
+      expect(ids({ queryPath: '/java/' })).toEqual(['a', 'b']);
+      expect(ids({ queryPathEquals: '/q/py/C.ql', status: 'active' })).toEqual(['c']);
+      expect(ids({ queryType: 'security' })).toEqual(['c']);
+      expect(ids({ dateRange: ['2026-01-15', '2026-03-01'] })).toEqual(['b', 'c']);
+      expect(ids({ sessionIds: ['c', 'a', 'missing'] })).toEqual(['a', 'c']);
+      expect(ids({ sessionIds: [] })).toEqual([]);
+    });
+
+    it('should report history counts and the latest score per session', () => {
+      const [a, b] = store.listSessionRows({ language: 'java' });
+      expect(a).toMatchObject({ currentScore: 80, mcpCallCount: 2, testExecutionCount: 0 });
+      expect(b).toMatchObject({ currentScore: null, mcpCallCount: 1 });
+    });
+
+    it('should aggregate matching sessions in SQL', () => {
+      expect(store.aggregateSessions()).toEqual({
+        averageQualityScore: 60,
+        completedSessions: 1,
+        failedSessions: 1,
+        mostUsedTool: 'codeql_query_compile',
+        totalMcpCalls: 3,
+        totalSessions: 3,
+      });
+      expect(store.aggregateSessions({ language: 'rust' })).toEqual({
+        averageQualityScore: null,
+        completedSessions: 0,
+        failedSessions: 0,
+        mostUsedTool: null,
+        totalMcpCalls: 0,
+        totalSessions: 0,
+      });
+    });
+
+    it('should delete matching sessions with their history', () => {
+      expect(store.deleteSessions({ endedBefore: '2026-01-15' })).toBe(1);
+      expect(store.getSession('a')).toBeNull();
+      expect(store.countSessionHistory('mcpCalls', 'a')).toBe(0);
+      expect(store.countSessionHistory('mcpCalls', 'b')).toBe(1);
+      expect(store.countSessions()).toBe(2);
+    });
+
+    it('should backfill indexed columns for rows written without them', async () => {
+      // Simulate a row written by an older version (data only).
+      const db = (store as unknown as { db: { run(sql: string): void } }).db;
+      db.run(`INSERT INTO sessions (session_id, data) VALUES ('old', '{"sessionId":"old","status":"active","startTime":"2026-04-01"}')`);
+      store.close();
+
+      const reopened = new SqliteStore(testDir);
+      await reopened.initialize();
+      expect(reopened.listSessionRows({ status: 'active' }).map(row => (row.data as { sessionId: string }).sessionId))
+        .toEqual(['c', 'old']);
+      reopened.close();
+    });
+  });
+
+  describe('Session History', () => {
+    it('should append and read history in insertion order', () => {
+      store.putSession('s-1', { sessionId: 's-1' });
+      store.appendSessionHistory('mcpCalls', 's-1', { callId: 'a', timestamp: '2026-01-01T00:00:00Z' });
+      store.appendSessionHistory('mcpCalls', 's-1', { callId: 'b', timestamp: '2026-01-01T00:00:01Z' });
+      store.appendSessionHistory('mcpCalls', 's-2', { callId: 'other' });
+      store.appendSessionHistory('qualityScores', 's-1', { scoreId: 'q' });
+
+      expect(store.getSessionHistory('mcpCalls', 's-1')).toEqual([
+        { callId: 'a', timestamp: '2026-01-01T00:00:00Z' },
+        { callId: 'b', timestamp: '2026-01-01T00:00:01Z' },
+      ]);
+      expect(store.countSessionHistory('mcpCalls', 's-1')).toBe(2);
+      expect(store.countSessionHistory('testExecutions', 's-1')).toBe(0);
+      expect((store.getSession('s-1') as Record<string, unknown>).mcpCalls).toBeUndefined();
+    });
+
+    it('should page through history most recent first with a stable cursor', () => {
+      for (let i = 0; i < 5; i++) {
+        store.appendSessionHistory('testExecutions', 's-1', { executionId: `t${i}` });
+      }
+
+      const first = store.getSessionHistoryPage('testExecutions', 's-1', { limit: 2 });
+      expect(first.records).toEqual([{ executionId: 't4' }, { executionId: 't3' }]);
+      expect(first.nextCursor).toBeDefined();
+
+      // A record appended between pages does not shift the next page.
+      store.appendSessionHistory('testExecutions', 's-1', { executionId: 't5' });
+
+      const second = store.getSessionHistoryPage('testExecutions', 's-1', { before: first.nextCursor, limit: 2 });
+      expect(second.records).toEqual([{ executionId: 't2' }, { executionId: 't1' }]);
+
+      const last = store.getSessionHistoryPage('testExecutions', 's-1', { before: second.nextCursor, limit: 2 });
+      expect(last.records).toEqual([{ executionId: 't0' }]);
+      expect(last.nextCursor).toBeUndefined();
+    });
+
+    it('should delete history with its session', () => {
+      store.putSession('s-1', { sessionId: 's-1' });
+      store.appendSessionHistory('mcpCalls', 's-1', { callId: 'a' });
+      store.deleteSession('s-1');
+
+      expect(store.countSessionHistory('mcpCalls', 's-1')).toBe(0);
+    });
+
+    it('should move history embedded in existing session rows into the history tables', async () => {
+      store.putSession('legacy', {
+        mcpCalls: [{ callId: 'c1' }, { callId: 'c2' }],
+        qualityScores: [],
+        sessionId: 'legacy',
+        status: 'active',
+        testExecutions: [{ executionId: 't1' }],
+      });
+      store.close();
+
+      const reopened = new SqliteStore(testDir);
+      await reopened.initialize();
+
+      expect(reopened.getSession('legacy')).toEqual({ sessionId: 'legacy', status: 'active' });
+      expect(reopened.getSessionHistory('mcpCalls', 'legacy')).toEqual([{ callId: 'c1' }, { callId: 'c2' }]);
+      expect(reopened.getSessionHistory('testExecutions', 'legacy')).toEqual([{ executionId: 't1' }]);
+      reopened.close();
+    });
+  });
+
   describe('Annotation Storage', () => {
     it('should create and retrieve an annotation', () => {
       const id = store.createAnnotation('note', 'file:/test.ql:L5', 'Test note', 'label1', '{"key":"val"}');
@@ -245,6 +389,96 @@ describe('SqliteStore', () => {
     });
   });
 
+  describe('Journal Persistence', () => {
+    let journalStore: SqliteStore;
+
+    beforeEach(async () => {
+      store.close();
+      journalStore = new SqliteStore(testDir, { persistence: 'journal' });
+      await journalStore.initialize();
+    });
+
+    afterEach(() => {
+      journalStore.close();
+    });
+
+    it('should report the journal persistence mode', () => {
+      expect(journalStore.getPersistenceMode()).toBe('journal');
+    });
+
+    it('should append mutations to the journal without rewriting the snapshot', () => {
+      const before = journalStore.getStorageSize();
+      journalStore.putSession('j-1', { val: 1 });
+      journalStore.flush();
+
+      const after = journalStore.getStorageSize();
+      expect(after.snapshotBytes).toBe(before.snapshotBytes);
+      expect(after.journalBytes).toBeGreaterThan(before.journalBytes);
+      expect(readFileSync(join(testDir, 'ql-mcp.db.journal'), 'utf8')).toContain('j-1');
+    });
+
+    it('should replay journaled mutations on reopen', async () => {
+      journalStore.putSession('j-1', { val: 1 });
+      const id = journalStore.createAnnotation('note', 'j-key', 'journal content');
+      journalStore.updateAnnotation(id, { label: 'updated' });
+      journalStore.close();
+
+      journalStore = new SqliteStore(testDir, { persistence: 'journal' });
+      await journalStore.initialize();
+
+      expect((journalStore.getSession('j-1') as Record<string, unknown>).val).toBe(1);
+      const annotation = journalStore.getAnnotation(id);
+      expect(annotation?.content).toBe('journal content');
+      expect(annotation?.label).toBe('updated');
+    });
+
+    it('should preserve original timestamps across replay', async () => {
+      const id = journalStore.createAnnotation('note', 'ts-key', 'c');
+      const createdAt = journalStore.getAnnotation(id)!.created_at;
+      journalStore.close();
+
+      journalStore = new SqliteStore(testDir, { persistence: 'journal' });
+      await journalStore.initialize();
+      expect(journalStore.getAnnotation(id)!.created_at).toBe(createdAt);
+    });
+
+    it('should compact the journal once it exceeds the threshold', async () => {
+      journalStore.close();
+      journalStore = new SqliteStore(testDir, { persistence: 'journal', journalCompactionBytes: 1 });
+      await journalStore.initialize();
+
+      journalStore.putSession('big', { payload: 'x'.repeat(200_000) });
+      journalStore.flush();
+
+      // Compaction folds the journal into the snapshot and resets it to a header.
+      const size = journalStore.getStorageSize();
+      expect(size.snapshotBytes).toBeGreaterThan(200_000);
+      expect(size.journalBytes).toBeLessThan(100);
+    });
+
+    it('should discard a torn trailing journal record', async () => {
+      journalStore.putSession('ok', { val: 1 });
+      journalStore.close();
+      appendFileSync(join(testDir, 'ql-mcp.db.journal'), '{"p":{"$id":"torn"');
+
+      journalStore = new SqliteStore(testDir, { persistence: 'journal' });
+      await journalStore.initialize();
+      expect(journalStore.getSession('ok')).not.toBeNull();
+      expect(journalStore.countSessions()).toBe(1);
+    });
+
+    it('should be readable by a snapshot-mode store after close', async () => {
+      journalStore.putSession('cross', { val: 7 });
+      journalStore.compact();
+      journalStore.close();
+
+      const snapshotStore = new SqliteStore(testDir);
+      await snapshotStore.initialize();
+      expect((snapshotStore.getSession('cross') as Record<string, unknown>).val).toBe(7);
+      snapshotStore.close();
+    });
+  });
+
   describe('Query Result Cache', () => {
     it('should store and retrieve a cache entry', () => {
       store.putCacheEntry({
@@ -416,6 +650,133 @@ describe('SqliteStore', () => {
       expect(subset!.returnedResults).toBe(2);
     });
 
+    describe('SARIF result index', () => {
+      function putSarif(cacheKey: string, resultCount: number): void {
+        const results = Array.from({ length: resultCount }, (_, i) => ({
+          ruleId: i % 2 === 0 ? 'js/xss' : 'js/sql-injection',
+          message: { text: `result ${i}` },
+          locations: [{ physicalLocation: { artifactLocation: { uri: `src/file${i % 5}.ts` }, region: { startLine: i + 1 } } }],
+        }));
+        store.putCacheEntry({
+          cacheKey,
+          queryName: 'Q',
+          queryPath: '/q.ql',
+          databasePath: '/db',
+          language: 'javascript',
+          codeqlVersion: '2.25.0',
+          outputFormat: 'sarif-latest',
+          resultContent: JSON.stringify({ version: '2.1.0', runs: [{ tool: { driver: { name: 'CodeQL' } }, results }] }, null, 2),
+          resultCount,
+        });
+      }
+
+      function countIndexRows(cacheKey: string): number {
+        const db = (store as unknown as { db: { exec: (_sql: string) => Array<{ values: unknown[][] }> } }).db;
+        const result = db.exec(`SELECT COUNT(*) FROM sarif_result_index WHERE cache_key = '${cacheKey}'`);
+        return result[0].values[0][0] as number;
+      }
+
+      it('should index every result when a SARIF entry is cached', () => {
+        putSarif('idx', 250);
+        expect(countIndexRows('idx')).toBe(250);
+      });
+
+      it('should page through results by index', () => {
+        putSarif('page', 250);
+        const subset = store.getCacheSarifSubset('page', { resultIndices: [120, 129] })!;
+        const parsed = JSON.parse(subset.content);
+        expect(subset.totalResults).toBe(250);
+        expect(subset.returnedResults).toBe(10);
+        expect(subset.truncated).toBe(false);
+        expect(parsed.version).toBe('2.1.0');
+        expect(parsed.runs[0].tool.driver.name).toBe('CodeQL');
+        expect(parsed.runs[0].results.map((r: { message: { text: string } }) => r.message.text))
+          .toEqual(Array.from({ length: 10 }, (_, i) => `result ${120 + i}`));
+      });
+
+      it('should combine rule and file filters with index ranges', () => {
+        putSarif('filters', 100);
+        // js/xss results are even indices; file0 holds indices 0, 5, 10, ...
+        const subset = store.getCacheSarifSubset('filters', {
+          ruleId: 'js/xss',
+          fileFilter: 'file0',
+          resultIndices: [1, 2],
+        })!;
+        const texts = JSON.parse(subset.content).runs[0].results.map((r: { message: { text: string } }) => r.message.text);
+        expect(texts).toEqual(['result 10', 'result 20']);
+      });
+
+      it('should cap results at maxResults and report truncation', () => {
+        putSarif('cap', 50);
+        const subset = store.getCacheSarifSubset('cap', { maxResults: 7 })!;
+        expect(subset.returnedResults).toBe(7);
+        expect(subset.truncated).toBe(true);
+      });
+
+      it('should drop index rows when entries are cleared', () => {
+        putSarif('gone', 20);
+        store.clearCacheEntries({ cacheKey: 'gone' });
+        expect(countIndexRows('gone')).toBe(0);
+      });
+
+      it('should build the index on first retrieval for entries cached without one', () => {
+        putSarif('lazy', 30);
+        const exec = (store as unknown as { exec: (_sql: string) => void }).exec.bind(store);
+        exec("DELETE FROM sarif_result_index WHERE cache_key = 'lazy'");
+        exec("DELETE FROM sarif_index_entries WHERE cache_key = 'lazy'");
+
+        const subset = store.getCacheSarifSubset('lazy', { resultIndices: [29, 29] })!;
+        expect(JSON.parse(subset.content).runs[0].results[0].message.text).toBe('result 29');
+        expect(countIndexRows('lazy')).toBe(30);
+      });
+
+      it('should filter on every location and rule.id the same way with and without the index', () => {
+        const results = [
+          { ruleId: 'js/xss', message: { text: 'two files' }, locations: [
+            { physicalLocation: { artifactLocation: { uri: 'src/a.ts' } } },
+            { physicalLocation: { artifactLocation: { uri: 'src/b.ts' } } },
+          ] },
+          { rule: { id: 'js/xss' }, message: { text: 'rule object' }, locations: [
+            { physicalLocation: { artifactLocation: { uri: 'src/c.ts' } } },
+          ] },
+          { ruleId: 'js/other', message: { text: 'other rule' }, locations: [
+            { physicalLocation: { artifactLocation: { uri: 'src/b.ts' } } },
+          ] },
+        ];
+        store.putCacheEntry({
+          cacheKey: 'parity', queryName: 'Q', queryPath: '/q.ql', databasePath: '/db',
+          language: 'javascript', codeqlVersion: '2.25.0', outputFormat: 'sarif-latest',
+          resultContent: JSON.stringify({ version: '2.1.0', runs: [{ results }] }),
+        });
+        const texts = (options: { fileFilter?: string; ruleId?: string }) =>
+          JSON.parse(store.getCacheSarifSubset('parity', options)!.content).runs[0].results
+            .map((r: { message: { text: string } }) => r.message.text);
+
+        const byFile = texts({ fileFilter: 'b.ts' });
+        const byRule = texts({ ruleId: 'js/xss' });
+        expect(byFile).toEqual(['two files', 'other rule']);
+        expect(byRule).toEqual(['two files', 'rule object']);
+
+        // Force the full-parse path.
+        const exec = (store as unknown as { exec: (_sql: string) => void }).exec.bind(store);
+        exec("UPDATE sarif_index_entries SET indexed = 0 WHERE cache_key = 'parity'");
+        expect(texts({ fileFilter: 'b.ts' })).toEqual(byFile);
+        expect(texts({ ruleId: 'js/xss' })).toEqual(byRule);
+      });
+
+      it('should re-index entries indexed before location files were recorded', () => {
+        putSarif('old-index', 10);
+        const exec = (store as unknown as { exec: (_sql: string) => void }).exec.bind(store);
+        exec("DELETE FROM sarif_result_files WHERE cache_key = 'old-index'");
+        exec("DELETE FROM sarif_index_files WHERE cache_key = 'old-index'");
+        exec("UPDATE sarif_index_entries SET files_indexed = NULL WHERE cache_key = 'old-index'");
+
+        const subset = store.getCacheSarifSubset('old-index', { fileFilter: 'file3' })!;
+        expect(subset.returnedResults).toBe(2);
+        expect(countIndexRows('old-index')).toBe(10);
+      });
+    });
+
     it('should list cache entries with filters', () => {
       store.putCacheEntry({
         cacheKey: 'a', queryName: 'PrintAST', queryPath: '/a.ql',
@@ -542,6 +903,111 @@ describe('SqliteStore', () => {
       expect(meta!.runId).toBe('run-2026-03-31-001');
     });
 
+    it('should store fingerprints and filter entries by database fingerprint', () => {
+      store.putCacheEntry({
+        cacheKey: 'fp-test',
+        queryName: 'Q',
+        queryPath: '/q.ql',
+        databasePath: '/db',
+        language: 'javascript',
+        codeqlVersion: '2.25.0',
+        outputFormat: 'sarif-latest',
+        resultContent: '{}',
+        queryFingerprint: 'qf0001',
+        databaseFingerprint: 'df0001',
+      });
+      store.putCacheEntry({
+        cacheKey: 'fp-legacy',
+        queryName: 'Q',
+        queryPath: '/q.ql',
+        databasePath: '/db',
+        language: 'javascript',
+        codeqlVersion: '2.25.0',
+        outputFormat: 'sarif-latest',
+        resultContent: '{}',
+      });
+
+      const meta = store.getCacheEntryMeta('fp-test');
+      expect(meta!.queryPath).toBe('/q.ql');
+      expect(meta!.queryFingerprint).toBe('qf0001');
+      expect(meta!.databaseFingerprint).toBe('df0001');
+      expect(store.getCacheEntryMeta('fp-legacy')!.databaseFingerprint).toBeNull();
+
+      const entries = store.listCacheEntries({ databaseFingerprint: 'df0001' });
+      expect(entries.map(e => e.cacheKey)).toEqual(['fp-test']);
+    });
+
+    describe('blob-backed content', () => {
+      const base = {
+        queryName: 'Q',
+        queryPath: '/q.ql',
+        databasePath: '/db',
+        language: 'javascript',
+        codeqlVersion: '2.25.0',
+        outputFormat: 'csv',
+      };
+
+      it('should keep content out of the database file', () => {
+        const payload = 'row,'.repeat(50_000);
+        store.putCacheEntry({ ...base, cacheKey: 'blob-1', resultContent: payload });
+        store.flush();
+
+        const file = store.getCacheContentFile('blob-1')!;
+        expect(readFileSync(file, 'utf8')).toBe(payload);
+        expect(file.startsWith(join(testDir, 'blobs'))).toBe(true);
+        expect(readFileSync(join(testDir, 'ql-mcp.db')).length).toBeLessThan(payload.length);
+        expect(store.getCacheContent('blob-1')).toBe(payload);
+      });
+
+      it('should share identical content and delete blobs once unreferenced', () => {
+        store.putCacheEntry({ ...base, cacheKey: 'share-a', resultContent: 'same' });
+        store.putCacheEntry({ ...base, cacheKey: 'share-b', databasePath: '/db2', resultContent: 'same' });
+        const file = store.getCacheContentFile('share-a')!;
+        expect(store.getCacheContentFile('share-b')).toBe(file);
+
+        store.clearCacheEntries({ cacheKey: 'share-a' });
+        expect(existsSync(file)).toBe(true);
+        store.clearCacheEntries({ all: true });
+        expect(existsSync(file)).toBe(false);
+      });
+
+      it('should delete the previous blob when an entry is overwritten', () => {
+        store.putCacheEntry({ ...base, cacheKey: 'over', resultContent: 'v1' });
+        const oldFile = store.getCacheContentFile('over')!;
+        store.putCacheEntry({ ...base, cacheKey: 'over', resultContent: 'v2' });
+        expect(existsSync(oldFile)).toBe(false);
+        expect(store.getCacheContent('over')).toBe('v2');
+      });
+
+      it('should move inline content from older databases into blobs on startup', async () => {
+        store.putCacheEntry({ ...base, cacheKey: 'legacy' });
+        // Simulate a row written before the blob store existed.
+        (store as unknown as { exec: (_sql: string) => void }).exec(
+          "UPDATE query_result_cache SET result_content = 'a\nb\nc' WHERE cache_key = 'legacy'",
+        );
+        store.flush();
+        store.close();
+
+        store = new SqliteStore(testDir);
+        await store.initialize();
+        expect(store.getCacheContentFile('legacy')).not.toBeNull();
+        expect(store.getCacheContent('legacy')).toBe('a\nb\nc');
+        expect(store.getCacheContentSubset('legacy', { lineRange: [2, 3] })!.content).toBe('b\nc');
+      });
+
+      it('should read gzip-compressed content', async () => {
+        store.close();
+        store = new SqliteStore(testDir, { blobCompression: 'gzip' });
+        await store.initialize();
+
+        store.putCacheEntry({ ...base, cacheKey: 'gz', resultContent: 'l1\nl2\nl3' });
+        expect(store.getCacheContentFile('gz')!.endsWith('.gz')).toBe(true);
+        expect(store.getCacheContent('gz')).toBe('l1\nl2\nl3');
+        const subset = store.getCacheContentSubset('gz', { lineRange: [2, 3], maxLines: 1 })!;
+        expect(subset).toEqual({ content: 'l2', totalLines: 3, returnedLines: 1, truncated: true });
+      });
+    });
+
     it('should default rule_id and run_id to null and empty string', () => {
       store.putCacheEntry({
         cacheKey: 'defaults',
@@ -614,4 +1080,325 @@ describe('SqliteStore', () => {
       expect(entries[0].runId).toBe('run-001');
     });
   });
+
+  describe('Query Result Cache Eviction', () => {
+    const noLimits = { maxAgeMs: 0, maxBytes: 0, maxBytesPerDatabase: 0 };
+
+    const put = (cacheKey: string, databasePath: string, bytes: number) => {
+      store.putCacheEntry({
+        cacheKey, queryName: 'Q', queryPath: '/q.ql', databasePath,
+        language: 'javascript', codeqlVersion: '2.25.0', outputFormat: 'csv',
+        resultContent: cacheKey.padEnd(bytes, '.'),
+      });
+    };
+
+    const at = (iso: string) => vi.setSystemTime(new Date(iso));
+
+    beforeEach(() => {
+      vi.useFakeTimers({ toFake: ['Date'] });
+      at('2026-01-01T00:00:00Z');
+    });
+
+    afterEach(() => {
+      vi.useRealTimers();
+    });
+
+    it('should record content size, access time and lookup counters', () => {
+      put('a', '/db1', 10);
+      at('2026-01-01T00:00:30Z');
+      expect(store.getCacheEntryMeta('a')).toMatchObject({
+        contentBytes: 10,
+        createdAt: '2026-01-01 00:00:00',
+        lastAccessedAt: '2026-01-01 00:00:00',
+      });
+      at('2026-01-01T00:05:00Z');
+      expect(store.getCacheEntryMeta('a')!.lastAccessedAt).toBe('2026-01-01 00:05:00');
+      expect(store.listCacheEntries()[0].lastAccessedAt).toBe('2026-01-01 00:05:00');
+      expect(store.getCacheEntryMeta('missing')).toBeNull();
+      // Metadata reads are not cache lookups.
+      expect(store.getCacheStats().lookups).toEqual({ hitRatio: null, hits: 0, misses: 0 });
+
+      expect(store.lookupCacheEntry('a')).toMatchObject({ content: 'a.........', meta: { cacheKey: 'a' } });
+      expect(store.lookupCacheEntry('missing')).toBeNull();
+      expect(store.lookupCacheEntry('a')).not.toBeNull();
+
+      const stats = store.getCacheStats();
+      expect(stats.occupancy).toEqual({ bytes: 10, entries: 1 });
+      expect(stats.lookups).toEqual({ hitRatio: 2 / 3, hits: 2, misses: 1 });
+      expect(stats.databases).toEqual([{ bytes: 10, databasePath: '/db1', entries: 1 }]);
+    });
+
+    it('should evict least recently used entries beyond the byte budget', () => {
+      put('a', '/db1', 10);
+      at('2026-01-01T00:01:00Z');
+      put('b', '/db1', 10);
+      at('2026-01-01T00:02:00Z');
+      put('c', '/db2', 10);
+      at('2026-01-01T00:03:00Z');
+      store.getCacheEntryMeta('a');
+
+      expect(store.evictCacheEntries({ ...noLimits, maxBytes: 20 })).toEqual({ bytes: 10, entries: 1 });
+      expect(store.listCacheEntries().map(e => e.cacheKey).sort()).toEqual(['a', 'c']);
+      expect(store.getCacheContent('b')).toBeNull();
+      expect(store.getCacheStats().evicted).toMatchObject({
+        byReason: { age: 0, databaseQuota: 0, size: 1 },
+        bytes: 10,
+        entries: 1,
+        lastRunAt: '2026-01-01 00:03:00',
+      });
+    });
+
+    it('should enforce the per-database quota', () => {
+      put('a', '/db1', 10);
+      at('2026-01-01T00:01:00Z');
+      put('b', '/db1', 10);
+      at('2026-01-01T00:02:00Z');
+      put('c', '/db1', 10);
+      put('d', '/db2', 20);
+
+      expect(store.evictCacheEntries({ ...noLimits, maxBytesPerDatabase: 20 })).toEqual({ bytes: 10, entries: 1 });
+      expect(store.listCacheEntries().map(e => e.cacheKey).sort()).toEqual(['b', 'c', 'd']);
+      expect(store.getCacheStats().evicted.byReason.databaseQuota).toBe(1);
+    });
+
+    it('should expire entries older than the max age', () => {
+      put('old', '/db1', 10);
+      at('2026-01-02T00:00:00Z');
+      put('new', '/db1', 10);
+      // Access does not extend the age of an entry.
+      store.getCacheEntryMeta('old');
+      at('2026-01-02T12:00:00Z');
+
+      store.evictCacheEntries({ ...noLimits, maxAgeMs: 24 * 60 * 60 * 1000 });
+      expect(store.listCacheEntries().map(e => e.cacheKey)).toEqual(['new']);
+      expect(store.getCacheStats().evicted.byReason.age).toBe(1);
+    });
+
+    it('should drop the SARIF index of evicted entries and keep shared blobs', () => {
+      const sarif = JSON.stringify({ version: '2.1.0', runs: [{ results: [{ ruleId: 'r' }] }] });
+      for (const cacheKey of ['s1', 's2']) {
+        store.putCacheEntry({
+          cacheKey, queryName: 'Q', queryPath: '/q.ql', databasePath: '/db1',
+          language: 'javascript', codeqlVersion: '2.25.0', outputFormat: 'sarif-latest',
+          resultContent: sarif,
+        });
+        at('2026-01-01T00:01:00Z');
+      }
+
+      store.evictCacheEntries({ ...noLimits, maxBytes: sarif.length });
+      expect(store.getCacheSarifSubset('s1', {})).toBeNull();
+      expect(store.getCacheSarifSubset('s2', {})!.totalResults).toBe(1);
+    });
+
+    it('should evict in the background after cache writes', async () => {
+      vi.useRealTimers();
+      const limited = new SqliteStore(join(testDir, 'limited'), {
+        resultCachePolicy: { ...noLimits, maxBytes: 15 },
+      });
+      await limited.initialize();
+      try {
+        for (const cacheKey of ['a', 'b']) {
+          limited.putCacheEntry({
+            cacheKey, queryName: 'Q', queryPath: '/q.ql', databasePath: '/db1',
+            language: 'javascript', codeqlVersion: '2.25.0', outputFormat: 'csv',
+            resultContent: cacheKey.padEnd(10, '.'),
+          });
+        }
+        expect(limited.getCacheStats().occupancy.entries).toBe(2);
+
+        await vi.waitFor(() => {
+          expect(limited.getCacheStats()).toMatchObject({
+            evicted: { entries: 1 },
+            occupancy: { bytes: 10, entries: 1 },
+            policy: { maxBytes: 15 },
+          });
+        }, { timeout: 5000 });
+        expect(limited.listCacheEntries()[0].cacheKey).toBe('b');
+      } finally {
+        limited.close();
+      }
+    });
+
+    it('should resolve the policy from the environment', () => {
+      const names = [
+        'CODEQL_MCP_RESULT_CACHE_MAX_AGE_HOURS',
+        'CODEQL_MCP_RESULT_CACHE_MAX_BYTES',
+        'CODEQL_MCP_RESULT_CACHE_MAX_BYTES_PER_DATABASE',
+      ];
+      const saved = names.map(name => process.env[name]);
+      try {
+        names.forEach(name => delete process.env[name]);
+        expect(getQueryResultCachePolicy()).toEqual({ maxAgeMs: 0, maxBytes: 0, maxBytesPerDatabase: 0 });
+
+        process.env.CODEQL_MCP_RESULT_CACHE_MAX_AGE_HOURS = '1.5';
+        process.env.CODEQL_MCP_RESULT_CACHE_MAX_BYTES = '1048576';
+        process.env.CODEQL_MCP_RESULT_CACHE_MAX_BYTES_PER_DATABASE = 'lots';
+        expect(getQueryResultCachePolicy()).toEqual({ maxAgeMs: 90 * 60 * 1000, maxBytes: 1048576, maxBytesPerDatabase: 0 });
+      } finally {
+        names.forEach((name, i) => {
+          if (saved[i] === undefined) delete process.env[name];
+          else process.env[name] = saved[i];
+        });
+      }
+    });
+  });
+
+  describe('Evaluator Profiles', () => {
+    const base = {
+      databaseFingerprint: 'db-fp',
+      databasePath: '/db',
+      kind: 'profile' as const,
+      logBytes: 1234,
+      logHash: 'hash-1',
+      logPath: '/logs/evaluator-log.jsonl',
+      queryFingerprint: 'q-fp',
+      queryPath: '/q.ql',
+    };
+
+    it('should store and retrieve a profile by log hash and kind', () => {
+      store.putEvaluatorProfile({ ...base, content: '{"queries":[]}', detailTopK: 20 });
+
+      const stored = store.getEvaluatorProfile('hash-1', 'profile', 20)!;
+      expect(stored.content).toBe('{"queries":[]}');
+      expect(stored.meta).toMatchObject({ ...base, detailTopK: 20 });
+      expect(store.getEvaluatorProfile('hash-1', 'pipelines', 20)).toBeNull();
+      expect(store.getEvaluatorProfile('hash-2', 'profile', 20)).toBeNull();
+    });
+
+    it('should return the least detailed profile that keeps enough RA detail', () => {
+      store.putEvaluatorProfile({ ...base, content: 'top5', detailTopK: 5 });
+      store.putEvaluatorProfile({ ...base, content: 'top50', detailTopK: 50 });
+
+      expect(store.getEvaluatorProfile('hash-1', 'profile', 0)!.content).toBe('top5');
+      expect(store.getEvaluatorProfile('hash-1', 'profile', 10)!.content).toBe('top50');
+      expect(store.getEvaluatorProfile('hash-1', 'profile', 100)).toBeNull();
+      expect(store.getEvaluatorProfile('hash-1', 'profile', null)).toBeNull();
+
+      store.putEvaluatorProfile({ ...base, content: 'all', detailTopK: null });
+      expect(store.getEvaluatorProfile('hash-1', 'profile', 100)!.content).toBe('all');
+      expect(store.getEvaluatorProfile('hash-1', 'profile', null)!.meta.detailTopK).toBeNull();
+      expect(store.getEvaluatorProfile('hash-1', 'profile', 10)!.content).toBe('top50');
+    });
+
+    it('should find the latest profiled run of a query and database', () => {
+      store.putEvaluatorProfile({ ...base, content: 'a', detailTopK: null, kind: 'pipelines' });
+
+      expect(store.findEvaluatorProfileForRun('pipelines', '/q.ql', '/db')!.logHash).toBe('hash-1');
+      expect(store.findEvaluatorProfileForRun('profile', '/q.ql', '/db')).toBeNull();
+      expect(store.findEvaluatorProfileForRun('pipelines', '/q.ql', '/other-db')).toBeNull();
+    });
+
+    it('should keep blobs shared with the result cache when profiles are deleted', () => {
+      store.putCacheEntry({
+        cacheKey: 'shared', queryName: 'Q', queryPath: '/q.ql', databasePath: '/db',
+        language: 'javascript', codeqlVersion: '2.25.0', outputFormat: 'csv', resultContent: 'same',
+      });
+      store.putEvaluatorProfile({ ...base, content: 'same', detailTopK: 0 });
+      store.putEvaluatorProfile({ ...base, content: 'own', detailTopK: 10 });
+      expect(store.getEvaluatorProfile('hash-1', 'profile', 10)!.content).toBe('own');
+
+      expect(store.deleteEvaluatorProfiles('hash-1')).toBe(2);
+      expect(store.getEvaluatorProfile('hash-1', 'profile', 0)).toBeNull();
+      expect(store.getCacheContent('shared')).toBe('same');
+    });
+
+    it('should persist profiles across restarts', async () => {
+      store.putEvaluatorProfile({ ...base, content: 'persisted', detailTopK: 0 });
+      store.flush();
+      store.close();
+
+      store = new SqliteStore(testDir);
+      await store.initialize();
+      expect(store.getEvaluatorProfile('hash-1', 'profile', 0)!.content).toBe('persisted');
+    });
+  });
+
+  describe('Discovery Catalog', () => {
+    const row = (entryName: string, data = 'null') => ({
+      data,
+      dependencies: '{"directories":[],"files":[]}',
+      entryName,
+      signature: '1:2',
+    });
+
+    it('should store, replace and delete entries per kind and base directory', () => {
+      store.updateDiscoveryEntries('query-runs', '/runs', [row('a'), row('b')]);
+      store.updateDiscoveryEntries('query-runs', '/other', [row('a')]);
+      store.updateDiscoveryEntries('databases', '/runs', [row('a')]);
+      store.updateDiscoveryEntries('query-runs', '/runs', [row('a', '{"x":1}')], ['b']);
+
+      expect(store.getDiscoveryEntries('query-runs', '/runs')).toEqual([row('a', '{"x":1}')]);
+      expect(store.getDiscoveryEntries('query-runs', '/other')).toHaveLength(1);
+
+      store.deleteDiscoveryEntries('query-runs', '/runs');
+      expect(store.getDiscoveryEntries('query-runs', '/runs')).toEqual([]);
+      expect(store.getDiscoveryEntries('databases', '/runs')).toHaveLength(1);
+    });
+  });
+
+  describe('MRVA Results', () => {
+    const repo = (fullName: string) => ({
+      error: null,
+      fullName,
+      sarifBytes: 10,
+      sarifMtimeMs: 1,
+      sarifPath: `/runs/1/${fullName}/results/results.sarif`,
+    });
+    const row = (fullName: string, resultIndex: number, ruleId: string, filePath: string) => ({
+      filePath,
+      fingerprint: `${ruleId}-fp`,
+      fullName,
+      level: 'error',
+      message: 'm',
+      resultIndex,
+      ruleId,
+      startLine: 1,
+    });
+
+    beforeEach(() => {
+      store.putMrvaRepoResults('/runs/1', repo('o/a'), [
+        row('o/a', 0, 'js/xss', 'src/a.js'),
+        row('o/a', 1, 'js/xss', 'test/a.js'),
+        row('o/a', 2, 'js/sql', 'src/db.js'),
+      ]);
+      store.putMrvaRepoResults('/runs/1', repo('o/b'), [row('o/b', 0, 'js/xss', 'test/b.js')]);
+      store.putMrvaRepoResults('/runs/2', repo('o/a'), [row('o/a', 0, 'js/eval', 'x.js')]);
+    });
+
+    it('should count results per rule and repository within a run', () => {
+      expect(store.aggregateMrvaResults({ runPath: '/runs/1' }, 'rule', 10)).toEqual({
+        groups: [
+          { key: 'js/xss', repos: 2, results: 3 },
+          { key: 'js/sql', repos: 1, results: 1 },
+        ],
+        totalGroups: 2,
+      });
+      expect(store.aggregateMrvaResults(
+        { filePattern: 'test/*', ruleId: 'js/xss', runPath: '/runs/1' },
+        'repo',
+        10,
+      ).groups.map(g => g.key)).toEqual(['o/a', 'o/b']);
+    });
+
+    it('should page through matching results', () => {
+      const page = store.queryMrvaResults({ ruleId: 'js/xss', runPath: '/runs/1' }, 2, 1);
+      expect(page.total).toBe(3);
+      expect(page.results.map(r => [r.fullName, r.resultIndex])).toEqual([['o/a', 1], ['o/b', 0]]);
+      expect(store.queryMrvaResults({ fingerprint: 'js/sql-fp', runPath: '/runs/1' }, 10).results[0]).toEqual(
+        row('o/a', 2, 'js/sql', 'src/db.js'),
+      );
+    });
+
+    it('should replace and delete the results of a repository', () => {
+      store.putMrvaRepoResults('/runs/1', repo('o/a'), [row('o/a', 0, 'js/sql', 'src/db.js')]);
+      expect(store.getMrvaRepos('/runs/1').map(r => [r.fullName, r.resultCount])).toEqual([['o/a', 1], ['o/b', 1]]);
+      expect(store.queryMrvaResults({ runPath: '/runs/1' }, 10).total).toBe(2);
+
+      store.deleteMrvaResults('/runs/1', ['o/b']);
+      expect(store.getMrvaRepos('/runs/1').map(r => r.fullName)).toEqual(['o/a']);
+      store.deleteMrvaResults('/runs/1');
+      expect(store.queryMrvaResults({ runPath: '/runs/1' }, 10).total).toBe(0);
+      expect(store.queryMrvaResults({ runPath: '/runs/2' }, 10).total).toBe(1);
+    });
+  });
 });
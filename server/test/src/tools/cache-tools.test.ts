@@ -4,11 +4,22 @@
 
 import { afterEach, beforeEach, describe, expect, it, vi } from 'vitest';
 import { McpServer } from '@modelcontextprotocol/sdk/server/mcp.js';
-import { existsSync, rmSync } from 'fs';
+import { existsSync, mkdirSync, rmSync, writeFileSync } from 'fs';
+import { join } from 'path';
+import { computeDatabaseFingerprint } from '../../../src/lib/cache-fingerprint';
 import { registerCacheTools } from '../../../src/tools/cache-tools';
 import { sessionDataManager } from '../../../src/lib/session-data-manager';
+import { SharedCodeQLCache } from '../../../src/lib/shared-cache';
 import { createProjectTempDir } from '../../../src/utils/temp-dir';
 
+const { sharedCacheRef } = vi.hoisted(() => ({
+  sharedCacheRef: { current: undefined as unknown },
+}));
+
+vi.mock('../../../src/lib/server-manager', () => ({
+  getServerManager: () => ({ getSharedCache: () => sharedCacheRef.current }),
+}));
+
 describe('Cache Tools', () => {
   let mockServer: McpServer;
   let testStorageDir: string;
@@ -30,7 +41,7 @@ describe('Cache Tools', () => {
   });
 
   describe('registerCacheTools', () => {
-    it('should always register all 4 cache tools', () => {
+    it('should always register all 6 cache tools', () => {
         vi.spyOn(sessionDataManager, 'getConfig').mockReturnValue({
           storageLocation: testStorageDir,
           autoTrackSessions: true,
@@ -54,7 +65,9 @@ describe('Cache Tools', () => {
         expect(toolNames).toContain('query_results_cache_compare');
         expect(toolNames).toContain('query_results_cache_lookup');
         expect(toolNames).toContain('query_results_cache_retrieve');
-        expect(mockServer.tool).toHaveBeenCalledTimes(4);
+        expect(toolNames).toContain('query_results_cache_stats');
+        expect(toolNames).toContain('codeql_cache_stats');
+        expect(mockServer.tool).toHaveBeenCalledTimes(6);
     });
 
     describe('schema validation', () => {
@@ -185,6 +198,37 @@ describe('Cache Tools', () => {
         expect(result.content[0].text).toContain('No cached result found');
       });
 
+      it('should report occupancy and hit ratio of the results cache', async () => {
+        const store = sessionDataManager.getStore();
+        store.putCacheEntry({
+          cacheKey: 'stats-entry',
+          queryName: 'PrintAST',
+          queryPath: '/test.ql',
+          databasePath: '/db',
+          language: 'cpp',
+          codeqlVersion: '2.25.0',
+          outputFormat: 'graphtext',
+          resultContent: 'Function foo\n',
+        });
+
+        registerCacheTools(mockServer);
+        const handlerFor = (name: string) => (mockServer.tool as any).mock.calls.find(
+          (call: any) => call[0] === name,
+        )[3];
+
+        // Retrieval reads are not lookups; only read-through lookups count.
+        await handlerFor('query_results_cache_retrieve')({ cacheKey: 'stats-entry' });
+        store.lookupCacheEntry('stats-entry');
+        store.lookupCacheEntry('nonexistent');
+
+        const parsed = JSON.parse((await handlerFor('query_results_cache_stats')({})).content[0].text);
+        expect(parsed.occupancy).toEqual({ bytes: 13, entries: 1 });
+        expect(parsed.databases).toEqual([{ bytes: 13, databasePath: '/db', entries: 1 }]);
+        expect(parsed.lookups).toEqual({ hitRatio: 0.5, hits: 1, misses: 1 });
+        expect(parsed.evicted).toMatchObject({ bytes: 0, entries: 0 });
+        expect(parsed.policy).toHaveProperty('maxBytes');
+      });
+
       it('should return line-based content for graphtext cache entries', async () => {
         const store = sessionDataManager.getStore();
         store.putCacheEntry({
@@ -516,6 +560,125 @@ describe('Cache Tools', () => {
         // Backward-compatible alias
         expect(parsed.comparison[0].totalResultCount).toBe(5);
       });
+
+      describe('fingerprint freshness', () => {
+        let dbPath: string;
+
+        beforeEach(() => {
+          dbPath = join(testStorageDir, 'fp-db');
+          mkdirSync(join(dbPath, 'db-javascript'), { recursive: true });
+          writeFileSync(join(dbPath, 'codeql-database.yml'), 'primaryLanguage: javascript\n');
+          writeFileSync(join(dbPath, 'db-javascript', 'default.stats'), 'v1');
+        });
+
+        afterEach(() => {
+          vi.useRealTimers();
+        });
+
+        function putEntry(cacheKey: string, resultCount: number): void {
+          sessionDataManager.getStore().putCacheEntry({
+            cacheKey,
+            queryName: 'FpQuery',
+            queryPath: '/fp.ql',
+            databasePath: dbPath,
+            language: 'javascript',
+            codeqlVersion: '2.25.0',
+            outputFormat: 'sarif-latest',
+            resultContent: '{}',
+            resultCount,
+            databaseFingerprint: computeDatabaseFingerprint(dbPath),
+          });
+        }
+
+        it('should report stale entries after the database changes', async () => {
+          putEntry('fp-old', 3);
+          registerCacheTools(mockServer);
+          const lookupHandler = (mockServer.tool as any).mock.calls.find(
+            (call: any) => call[0] === 'query_results_cache_lookup',
+          )[3];
+
+          let parsed = JSON.parse((await lookupHandler({ cacheKey: 'fp-old' })).content[0].text);
+          expect(parsed.freshness).toBe('fresh');
+
+          writeFileSync(join(dbPath, 'db-javascript', 'default.stats'), 'v2-rebuilt');
+          parsed = JSON.parse((await lookupHandler({ cacheKey: 'fp-old' })).content[0].text);
+          expect(parsed.freshness).toBe('stale');
+
+          parsed = JSON.parse((await lookupHandler({ queryName: 'FpQuery', excludeStale: true })).content[0].text);
+          expect(parsed.cached).toBe(false);
+        });
+
+        it('should compare using the latest entry that matches the current database', async () => {
+          vi.useFakeTimers({ toFake: ['Date'] });
+          vi.setSystemTime(new Date('2026-01-01T00:00:00Z'));
+          putEntry('fp-first', 3);
+
+          writeFileSync(join(dbPath, 'db-javascript', 'default.stats'), 'v2-rebuilt');
+          vi.setSystemTime(new Date('2026-01-02T00:00:00Z'));
+          putEntry('fp-second', 7);
+
+          // A newer entry whose fingerprint no longer matches must not win.
+          vi.setSystemTime(new Date('2026-01-03T00:00:00Z'));
+          sessionDataManager.getStore().putCacheEntry({
+            cacheKey: 'fp-bogus',
+            queryName: 'FpQuery',
+            queryPath: '/fp.ql',
+            databasePath: dbPath,
+            language: 'javascript',
+            codeqlVersion: '2.25.0',
+            outputFormat: 'sarif-latest',
+            resultContent: '{}',
+            resultCount: 99,
+            databaseFingerprint: 'not-the-current-fp',
+          });
+
+          registerCacheTools(mockServer);
+          const compareHandler = (mockServer.tool as any).mock.calls.find(
+            (call: any) => call[0] === 'query_results_cache_compare',
+          )[3];
+
+          const parsed = JSON.parse((await compareHandler({ queryName: 'FpQuery' })).content[0].text);
+          expect(parsed.comparison).toHaveLength(1);
+          expect(parsed.comparison[0].cacheKey).toBe('fp-second');
+          expect(parsed.comparison[0].resultCount).toBe(7);
+          expect(parsed.comparison[0].freshness).toBe('fresh');
+          expect(parsed.comparison[0].cachedRuns).toBe(3);
+          expect(parsed.comparison[0].staleRuns).toBe(2);
+        });
+      });
+    });
+  });
+
+  describe('codeql_cache_stats', () => {
+    it('should report shared cache generations with size and hit rate', async () => {
+      const cache = new SharedCodeQLCache({
+        cliVersion: '2.25.0',
+        leaseId: 'cache-tools-stats',
+        maxBytes: 1024 * 1024,
+        root: join(testStorageDir, 'shared'),
+      });
+      await cache.acquire();
+      writeFileSync(join(cache.directory, 'compiled.qlo'), 'x'.repeat(1000));
+      await cache.recordEvaluation(10, 4);
+      sharedCacheRef.current = cache;
+
+      registerCacheTools(mockServer);
+      const statsHandler = (mockServer.tool as any).mock.calls.find(
+        (call: any) => call[0] === 'codeql_cache_stats',
+      )[3];
+
+      const parsed = JSON.parse((await statsHandler({})).content[0].text);
+      expect(parsed.budgetBytes).toBe(1024 * 1024);
+      expect(parsed.generations).toHaveLength(1);
+      expect(parsed.generations[0]).toMatchObject({
+        activeLeases: 1,
+        cliVersion: '2.25.0',
+        current: true,
+        predicateCacheHitRate: 0.4,
+      });
+      expect(parsed.generations[0].bytes).toBeGreaterThanOrEqual(1000);
+      expect(parsed.totalBytes).toBe(parsed.generations[0].bytes);
+      cache.release();
     });
   });
 });
@@ -41,6 +41,11 @@ describe('registerCodeQLTools', () => {
     expect(toolNames).toContain('list_codeql_databases');
     expect(toolNames).toContain('list_mrva_run_results');
     expect(toolNames).toContain('list_query_run_results');
+    expect(toolNames).toContain('mrva_results_ingest');
+    expect(toolNames).toContain('mrva_results_query');
+    expect(toolNames).toContain('profile_codeql_query');
+    expect(toolNames).toContain('profile_codeql_query_diff');
+    expect(toolNames).toContain('profile_codeql_query_from_logs');
     expect(toolNames).toContain('quick_evaluate');
     expect(toolNames).toContain('register_database');
     expect(toolNames).toContain('search_ql_code');
@@ -53,11 +58,11 @@ describe('registerCodeQLTools', () => {
     // rank_sarif_results has been removed in favor of SARIF prompts
     expect(toolNames).not.toContain('rank_sarif_results');
 
-    // Total tools registered: 14 via server.tool() + 24 via server.registerTool() = 38
+    // Total tools registered: 17 via server.tool() + 24 via server.registerTool() = 41
     // (codeql_lsp_diagnostics moved to registerLSPTools in tools/lsp/)
     const totalRegistered = (mockServer.tool as any).mock.calls.length +
       (mockServer.registerTool as any).mock.calls.length;
-    expect(totalRegistered).toBe(38);
+    expect(totalRegistered).toBe(41);
   });
 
   it('should register validate_codeql_query with correct parameters', () => {
@@ -0,0 +1,125 @@
+/**
+ * Tests for the mrva_results_ingest and mrva_results_query tools
+ */
+
+import { afterEach, beforeEach, describe, expect, it, vi } from 'vitest';
+import { McpServer } from '@modelcontextprotocol/sdk/server/mcp.js';
+import { mkdirSync, writeFileSync } from 'fs';
+import { join } from 'path';
+import { createTestTempDir, cleanupTestTempDir } from '../../../utils/temp-dir';
+import { closeDiscoveryCatalogs } from '../../../../src/lib/discovery-catalog';
+import { sessionDataManager } from '../../../../src/lib/session-data-manager';
+import { SqliteStore } from '../../../../src/lib/sqlite-store';
+import {
+  registerMrvaResultsIngestTool,
+  registerMrvaResultsQueryTool,
+} from '../../../../src/tools/codeql/mrva-results';
+
+function getRegisteredHandler(register: (_server: McpServer) => void) {
+  const mockServer = { tool: vi.fn() } as unknown as McpServer;
+  register(mockServer);
+  return (mockServer.tool as ReturnType<typeof vi.fn>).mock.calls[0][3];
+}
+
+function writeRepo(runDir: string, fullName: string, hits: Array<[string, string]>): void {
+  const repoDir = join(runDir, ...fullName.split('/'));
+  mkdirSync(join(repoDir, 'results'), { recursive: true });
+  writeFileSync(join(repoDir, 'repo_task.json'), JSON.stringify({ analysisStatus: 'succeeded', resultCount: hits.length }));
+  writeFileSync(join(repoDir, 'results', 'results.sarif'), JSON.stringify({
+    version: '2.1.0',
+    runs: [{
+      tool: { driver: { name: 'CodeQL' } },
+      results: hits.map(([ruleId, uri]) => ({
+        ruleId,
+        message: { text: ruleId },
+        locations: [{ physicalLocation: { artifactLocation: { uri }, region: { startLine: 1 } } }],
+      })),
+    }],
+  }));
+}
+
+describe('mrva_results tools', () => {
+  let testDir: string;
+  let store: SqliteStore;
+  const originalEnv = process.env.CODEQL_MRVA_RUN_RESULTS_DIRS;
+
+  beforeEach(async () => {
+    testDir = createTestTempDir('mrva-results');
+    const runDir = join(testDir, 'runs', '20442');
+    writeRepo(runDir, 'octo/app', [['js/xss', 'src/view.js'], ['js/xss', 'test/view.test.js']]);
+    writeRepo(runDir, 'octo/lib', [['js/xss', 'test/util.test.js'], ['js/sql-injection', 'src/db.js']]);
+    mkdirSync(join(runDir, 'octo', 'pending'), { recursive: true });
+    process.env.CODEQL_MRVA_RUN_RESULTS_DIRS = join(testDir, 'runs');
+
+    store = new SqliteStore(join(testDir, 'store'));
+    await store.initialize();
+    vi.spyOn(sessionDataManager, 'getStore').mockReturnValue(store);
+  });
+
+  afterEach(() => {
+    closeDiscoveryCatalogs();
+    vi.restoreAllMocks();
+    store.close();
+    if (originalEnv === undefined) {
+      delete process.env.CODEQL_MRVA_RUN_RESULTS_DIRS;
+    } else {
+      process.env.CODEQL_MRVA_RUN_RESULTS_DIRS = originalEnv;
+    }
+    cleanupTestTempDir(testDir);
+  });
+
+  it('should register both tools', () => {
+    const mockServer = { tool: vi.fn() } as unknown as McpServer;
+    registerMrvaResultsIngestTool(mockServer);
+    registerMrvaResultsQueryTool(mockServer);
+
+    const calls = (mockServer.tool as ReturnType<typeof vi.fn>).mock.calls;
+    expect(calls.map(call => call[0])).toEqual(['mrva_results_ingest', 'mrva_results_query']);
+    expect(calls[1][2]).toEqual(expect.objectContaining({
+      filePattern: expect.any(Object),
+      groupBy: expect.any(Object),
+      ruleId: expect.any(Object),
+      runId: expect.any(Object),
+    }));
+  });
+
+  it('should report runs that do not exist or were not ingested', async () => {
+    const ingest = getRegisteredHandler(registerMrvaResultsIngestTool);
+    const query = getRegisteredHandler(registerMrvaResultsQueryTool);
+
+    const missing = await ingest({ runId: '1' });
+    expect(missing.isError).toBe(true);
+    expect(missing.content[0].text).toContain('MRVA run "1" not found');
+
+    const notIngested = await query({ runId: '20442' });
+    expect(notIngested.isError).toBe(true);
+    expect(notIngested.content[0].text).toContain('Call mrva_results_ingest first');
+  });
+
+  it('should answer cross-repository questions after ingestion', async () => {
+    const ingest = getRegisteredHandler(registerMrvaResultsIngestTool);
+    const query = getRegisteredHandler(registerMrvaResultsQueryTool);
+
+    const summary = JSON.parse((await ingest({ runId: '20442' })).content[0].text);
+    expect(summary).toMatchObject({ ingestedRepos: 2, repositoriesWithoutSarif: 1, results: 4, runId: '20442' });
+
+    const topRules = JSON.parse((await query({ groupBy: 'rule', runId: '20442' })).content[0].text);
+    expect(topRules.groups).toEqual([
+      { key: 'js/xss', repos: 2, results: 3 },
+      { key: 'js/sql-injection', repos: 1, results: 1 },
+    ]);
+
+    const inTests = JSON.parse((await query({
+      filePattern: 'test/*',
+      groupBy: 'repo',
+      ruleId: 'js/xss',
+      runId: '20442',
+    })).content[0].text);
+    expect(inTests.groups.map((g: { key: string }) => g.key)).toEqual(['octo/app', 'octo/lib']);
+
+    const page = JSON.parse((await query({ limit: 1, repo: 'octo/lib', runId: '20442' })).content[0].text);
+    expect(page.total).toBe(2);
+    expect(page.nextOffset).toBe(1);
+    expect(page.results[0]).toMatchObject({ filePath: 'test/util.test.js', fullName: 'octo/lib', ruleId: 'js/xss' });
+  });
+});
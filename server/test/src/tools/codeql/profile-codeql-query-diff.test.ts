@@ -0,0 +1,114 @@
+/**
+ * Tests for the profile_codeql_query_diff MCP tool.
+ */
+
+import { afterEach, describe, expect, it, vi } from 'vitest';
+import { McpServer } from '@modelcontextprotocol/sdk/server/mcp.js';
+import { writeFileSync } from 'fs';
+import { join } from 'path';
+import {
+  createTestTempDir,
+  cleanupTestTempDir,
+} from '../../../utils/temp-dir';
+import { registerProfileCodeQLQueryDiffTool } from '../../../../src/tools/codeql/profile-codeql-query-diff';
+
+/** A raw log of `Q.ql` evaluating `predicates` one after another. */
+function rawLog(predicates: Array<{ name: string; ms: number; raHash: string; resultSize: number }>): string {
+  const events: object[] = [
+    { type: 'LOG_HEADER', eventId: 1, nanoTime: 0, codeqlVersion: '2.24.1', logVersion: '0.5.0' },
+    { type: 'QUERY_STARTED', eventId: 2, nanoTime: 0, queryName: 'Q.ql' },
+  ];
+  let nanoTime = 0;
+  predicates.forEach((p, i) => {
+    const startEvent = 10 + 2 * i;
+    events.push({ type: 'PREDICATE_STARTED', eventId: startEvent, nanoTime, predicateName: p.name, raHash: p.raHash, queryCausingWork: 2, dependencies: {} });
+    nanoTime += p.ms * 1_000_000;
+    events.push({ type: 'PREDICATE_COMPLETED', eventId: startEvent + 1, nanoTime, startEvent, resultSize: p.resultSize });
+  });
+  events.push({ type: 'QUERY_COMPLETED', eventId: 3, nanoTime, startEvent: 2, terminationType: 'NORMAL' });
+  return events.map(e => JSON.stringify(e, null, 2)).join('\n\n');
+}
+
+function getRegisteredHandler(mockServer: McpServer) {
+  return (mockServer.tool as ReturnType<typeof vi.fn>).mock.calls[0][3];
+}
+
+describe('Profile CodeQL Query Diff Tool', () => {
+  let tempDir: string;
+
+  afterEach(() => {
+    if (tempDir) {
+      cleanupTestTempDir(tempDir);
+    }
+  });
+
+  it('should register the tool with the expected name and schema', () => {
+    const mockServer = { tool: vi.fn() } as unknown as McpServer;
+    registerProfileCodeQLQueryDiffTool(mockServer);
+
+    expect(mockServer.tool).toHaveBeenCalledOnce();
+    expect(mockServer.tool).toHaveBeenCalledWith(
+      'profile_codeql_query_diff',
+      expect.any(String),
+      expect.objectContaining({
+        baselineLog: expect.any(Object),
+        candidateLog: expect.any(Object),
+        minDeltaMs: expect.any(Object),
+        regressionPercent: expect.any(Object),
+        topN: expect.any(Object),
+      }),
+      expect.any(Function)
+    );
+  });
+
+  it('should return an error when a log does not exist', async () => {
+    tempDir = createTestTempDir('profile-diff-missing-');
+    const baselineLog = join(tempDir, 'baseline.jsonl');
+    writeFileSync(baselineLog, rawLog([]));
+
+    const mockServer = { tool: vi.fn() } as unknown as McpServer;
+    registerProfileCodeQLQueryDiffTool(mockServer);
+    const result = await getRegisteredHandler(mockServer)({
+      baselineLog,
+      candidateLog: join(tempDir, 'missing.jsonl'),
+    });
+
+    expect(result.isError).toBe(true);
+    expect(result.content[0].text).toContain('Evaluator log not found');
+  });
+
+  it('should report regressions, renamed and added or removed predicates', async () => {
+    tempDir = createTestTempDir('profile-diff-');
+    const baselineLog = join(tempDir, 'baseline.jsonl');
+    const candidateLog = join(tempDir, 'candidate.jsonl');
+    writeFileSync(baselineLog, rawLog([
+      { name: 'Slower', ms: 100, raHash: 'h1', resultSize: 10 },
+      { name: 'Stable', ms: 50, raHash: 'h2', resultSize: 5 },
+      { name: 'Old#aaaaaaaa', ms: 20, raHash: 'h3', resultSize: 3 },
+      { name: 'Removed', ms: 30, raHash: 'h4', resultSize: 1 },
+    ]));
+    writeFileSync(candidateLog, rawLog([
+      { name: 'Slower', ms: 300, raHash: 'h1', resultSize: 1000 },
+      { name: 'Stable', ms: 52, raHash: 'h2', resultSize: 5 },
+      { name: 'New#bbbbbbbb', ms: 20, raHash: 'h3', resultSize: 3 },
+      { name: 'Added', ms: 40, raHash: 'h5', resultSize: 2 },
+    ]));
+
+    const mockServer = { tool: vi.fn() } as unknown as McpServer;
+    registerProfileCodeQLQueryDiffTool(mockServer);
+    const result = await getRegisteredHandler(mockServer)({ baselineLog, candidateLog });
+
+    expect(result.isError).toBeUndefined();
+    const response = JSON.parse(result.content[0].text);
+    expect(response.queries).toHaveLength(1);
+    const [q] = response.queries;
+    expect(q.matchedPredicates).toBe(3);
+    expect(q.regressions.map((c: { name: string }) => c.name)).toEqual(['Slower']);
+    expect(q.regressions[0]).toMatchObject({ baselineMs: 100, candidateMs: 300, deltaMs: 200, ratio: 3 });
+    expect(q.largestTupleChanges[0]).toMatchObject({ name: 'Slower', baselineTuples: 10, candidateTuples: 1000 });
+    expect(q.largestTimeChanges.map((c: { name: string }) => c.name)).toEqual(['Slower', 'Stable']);
+    expect(q.addedPredicates).toEqual({ count: 1, slowest: [{ name: 'Added', durationMs: 40, tupleCount: 2 }] });
+    expect(q.removedPredicates.count).toBe(1);
+    expect(q.removedPredicates.slowest[0].name).toBe('Removed');
+  });
+});
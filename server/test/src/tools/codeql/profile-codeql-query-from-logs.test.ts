@@ -140,6 +140,7 @@ describe('Profile CodeQL Query From Logs Tool', () => {
         expect.any(String),
         expect.objectContaining({
           evaluatorLog: expect.any(Object),
+          detailTopK: expect.any(Object),
           outputDir: expect.any(Object),
           topN: expect.any(Object),
         }),
@@ -492,4 +493,44 @@ describe('Profile CodeQL Query From Logs Tool', () => {
       expect(response.queries[0].slowestPredicates[0].detailLines).toBeDefined();
     });
   });
+
+  // -----------------------------------------------------------------------
+  // Bounded detail retention
+  // -----------------------------------------------------------------------
+
+  describe('detailTopK', () => {
+    it('should keep RA steps in the full profile only for the slowest predicates', async () => {
+      tempDir = createTestTempDir('profile-detail-topk-');
+      mkdirSync(tempDir, { recursive: true });
+
+      const events: Record<string, unknown>[] = [
+        { type: 'QUERY_STARTED', eventId: 1, nanoTime: 0, queryName: 'Big.ql' },
+      ];
+      [30, 10, 20].forEach((ms, i) => {
+        events.push(
+          { type: 'PREDICATE_STARTED', eventId: 10 + 2 * i, nanoTime: 0, predicateName: `P#${i}`, queryCausingWork: 1, ra: { pipeline: [`r${i} = SCAN t`] } },
+          { type: 'PREDICATE_COMPLETED', eventId: 11 + 2 * i, nanoTime: ms * 1_000_000, startEvent: 10 + 2 * i, resultSize: i },
+        );
+      });
+      const logPath = join(tempDir, 'evaluator-log.jsonl');
+      writeFileSync(logPath, events.map((e) => JSON.stringify(e, null, 2)).join('\n\n'));
+
+      const mockServer = {
+        tool: vi.fn(),
+      } as unknown as McpServer;
+      registerProfileCodeQLQueryFromLogsTool(mockServer);
+      const handler = getRegisteredHandler(mockServer);
+
+      const result = await handler({ evaluatorLog: logPath, topN: 1, detailTopK: 2 });
+
+      expect(result.isError).toBeUndefined();
+      const profile = JSON.parse(readFileSync(join(tempDir, 'query-evaluation-profile.json'), 'utf-8'));
+      const predicates = profile.queries[0].predicates as { predicateName: string; raSteps?: string[] }[];
+      expect(predicates.map((p) => p.predicateName)).toEqual(['P#0', 'P#1', 'P#2']);
+      expect(predicates.filter((p) => p.raSteps).map((p) => p.predicateName)).toEqual(['P#0', 'P#2']);
+
+      const detail = readFileSync(join(tempDir, 'query-evaluation-detail.txt'), 'utf-8');
+      expect(detail).toContain('r0 = SCAN t');
+    });
+  });
 });
@@ -8,6 +8,13 @@ import { existsSync, mkdirSync, writeFileSync, readFileSync, rmSync } from 'fs';
 import { join } from 'path';
 import { createTestTempDir, cleanupTestTempDir } from '../../../utils/temp-dir';
 import { registerProfileCodeQLQueryTool } from '../../../../src/tools/codeql/profile-codeql-query';
+import { executeCodeQLCommand } from '../../../../src/lib/cli-executor';
+import { sessionDataManager } from '../../../../src/lib/session-data-manager';
+import { SqliteStore } from '../../../../src/lib/sqlite-store';
+
+vi.mock('../../../../src/lib/cli-executor', () => ({
+  executeCodeQLCommand: vi.fn(),
+}));
 
 // We'll test the parsing and formatting functions by importing them
 // Since they're not exported, we'll need to test via the file output
@@ -413,6 +420,79 @@ describe('Profile CodeQL Query Tool', () => {
       expect(existsSync(join(profileTestDir, 'query-evaluation-profile.md'))).toBe(true);
     });
 
+    /**
+     * Profile `querySource` twice against a fresh database, with a mocked
+     * CLI that writes the evaluator log, BQRS and SARIF of each run.
+     */
+    async function profileTwice(name: string, querySource: string) {
+      const runDir = join(testDir, name);
+      const dbDir = join(runDir, 'db');
+      mkdirSync(join(dbDir, 'db-javascript', 'default'), { recursive: true });
+      writeFileSync(join(dbDir, 'codeql-database.yml'), 'primaryLanguage: javascript\n');
+      writeFileSync(join(dbDir, 'db-javascript', 'default', 'files.rel'), 'rel');
+      const queryPath = join(runDir, 'Reuse.ql');
+      writeFileSync(queryPath, querySource);
+
+      const store = new SqliteStore(join(runDir, 'store'));
+      await store.initialize();
+      const getStore = vi.spyOn(sessionDataManager, 'getStore').mockReturnValue(store);
+
+      const log = [
+        { type: 'LOG_HEADER', eventId: 0, nanoTime: 0, codeqlVersion: '2.23.1', logVersion: '0.5.0' },
+        { type: 'QUERY_STARTED', eventId: 1, nanoTime: 0, queryName: queryPath },
+        { type: 'QUERY_COMPLETED', eventId: 2, nanoTime: 1000000 },
+      ].map(e => JSON.stringify(e)).join('\n\n');
+      vi.mocked(executeCodeQLCommand).mockClear();
+      vi.mocked(executeCodeQLCommand).mockImplementation(async (subcommand, options) => {
+        if (subcommand === 'query run') {
+          writeFileSync(options['evaluator-log'] as string, log);
+          writeFileSync(options.output as string, 'bqrs');
+          // Like a real run, write the database's evaluation cache.
+          const cacheDir = join(dbDir, 'db-javascript', 'default', 'cache');
+          mkdirSync(cacheDir, { recursive: true });
+          writeFileSync(join(cacheDir, `page-${Date.now()}`), 'cached');
+        } else if (subcommand === 'bqrs interpret') {
+          writeFileSync(options.output as string, '{"runs":[]}');
+        }
+        return { stdout: '', stderr: '', success: true };
+      });
+
+      const mockServer = {
+        tool: vi.fn(),
+      } as unknown as McpServer;
+      registerProfileCodeQLQueryTool(mockServer);
+      const handler = (mockServer.tool as ReturnType<typeof vi.fn>).mock.calls[0][3];
+
+      const outputDir = join(runDir, 'out');
+      try {
+        const first = await handler({ query: queryPath, database: dbDir, outputDir });
+        const second = await handler({ query: queryPath, database: dbDir, outputDir });
+        const queryRuns = vi.mocked(executeCodeQLCommand).mock.calls.filter(call => call[0] === 'query run');
+        return { first, outputDir, queryRuns, second };
+      } finally {
+        getStore.mockRestore();
+        store.close();
+      }
+    }
+
+    it('should reuse the evaluator log when the same query and database are profiled again', async () => {
+      const { first, outputDir, queryRuns, second } = await profileTwice('reuse-test', 'select 1\n');
+
+      expect(first.isError).toBeUndefined();
+      expect(second.isError).toBeUndefined();
+      expect(queryRuns).toHaveLength(1);
+      expect(second.content[0].text).toContain('Reused the evaluator log of an earlier run');
+      expect(second.content[0].text).toContain(`Query Results (BQRS): ${join(outputDir, 'query-results.bqrs')}`);
+      expect(second.content[0].text).toContain(`Query Results (SARIF): ${join(outputDir, 'query-results.sarif')}`);
+    });
+
+    it('should run the query again when it imports libraries no lock file pins', async () => {
+      const { queryRuns, second } = await profileTwice('unpinned-test', 'import javascript\nselect 1\n');
+
+      expect(queryRuns).toHaveLength(2);
+      expect(second.content[0].text).not.toContain('Reused the evaluator log');
+    });
+
     it('should handle completely invalid evaluator log content gracefully', async () => {
       const errorTestDir = join(testDir, 'error-test');
       mkdirSync(errorTestDir, { recursive: true });
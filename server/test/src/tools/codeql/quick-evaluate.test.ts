@@ -2,13 +2,49 @@
  * Tests for quick-evaluate tool
  */
 
-import { describe, expect, it, vi } from 'vitest';
+import { beforeEach, describe, expect, it, vi } from 'vitest';
 import { McpServer } from '@modelcontextprotocol/sdk/server/mcp.js';
 import { promises as fs } from 'fs';
 import { join } from 'path';
 import { quickEvaluate, registerQuickEvaluateTool } from '../../../../src/tools/codeql/quick-evaluate';
+import { executeCodeQLCommand } from '../../../../src/lib/cli-executor';
+import { runQueryOnQueryServer } from '../../../../src/lib/query-server-evaluation';
 import { createTestTempDir } from '../../../utils/temp-dir';
 
+vi.mock('../../../../src/lib/query-server-evaluation', () => ({
+  runQueryOnQueryServer: vi.fn(),
+}));
+
+vi.mock('../../../../src/lib/cli-executor', () => ({
+  executeCodeQLCommand: vi.fn(),
+}));
+
+const BQRS_INFO = {
+  resultSets: [
+    { columns: [{ kind: 'e', name: 'node' }], name: '#select', rows: 3 },
+    { columns: [{ kind: 's', name: 'label' }], name: 'edges', rows: 0 },
+  ],
+};
+
+beforeEach(() => {
+  vi.clearAllMocks();
+  vi.mocked(runQueryOnQueryServer).mockResolvedValue({
+    stderr: '',
+    stdout: 'Evaluated selection on the query server',
+    success: true,
+  });
+  vi.mocked(executeCodeQLCommand).mockImplementation(async (subcommand, options) => {
+    if (subcommand === 'bqrs info') {
+      return { stderr: '', stdout: JSON.stringify(BQRS_INFO), success: true };
+    }
+    const startAt = options['start-at'] as number | undefined;
+    const chunk = startAt === undefined
+      ? { next: 120, tuples: [['a'], ['b']] }
+      : { tuples: [['c']] };
+    return { stderr: '', stdout: JSON.stringify(chunk), success: true };
+  });
+});
+
 // Helper function to create unique temp files and ensure cleanup
 // eslint-disable-next-line no-unused-vars
 async function withTempFile<T>(content: string, testName: string, fn: (filePath: string) => Promise<T>): Promise<T> {
@@ -48,7 +84,7 @@ class MyTestClass extends DataFlow::Node {
         output_path: outputPath
       });
 
-      expect(result).toContain('custom-output.bqrs');
+      expect(result.bqrsPath).toContain('custom-output.bqrs');
     });
   });
 
@@ -69,7 +105,7 @@ predicate isVulnerable(DataFlow::Node node) {
         symbol: 'isVulnerable'
       });
 
-      expect(result).toContain('quickeval.bqrs'); // default output path
+      expect(result.bqrsPath).toContain('quickeval.bqrs'); // default output path
     });
   });
 
@@ -83,7 +119,18 @@ predicate isVulnerable(DataFlow::Node node) {
         symbol: 'TestClass'
       });
 
-      expect(result).toContain('quickeval.bqrs');
+      expect(result.bqrsPath).toContain('quickeval.bqrs');
+    });
+  });
+
+  it('should write each default-path evaluation to its own file', async () => {
+    await withTempFile('predicate p() { any() }', 'test-unique-output', async (tempFile) => {
+      const first = await quickEvaluate({ file: tempFile, db: '/mock/db', symbol: 'p' });
+      const second = await quickEvaluate({ file: tempFile, db: '/mock/db', symbol: 'p' });
+
+      expect(first.bqrsPath).not.toBe(second.bqrsPath);
+      const outputPaths = vi.mocked(runQueryOnQueryServer).mock.calls.map(call => call[0].outputPath);
+      expect(outputPaths).toEqual([first.bqrsPath, second.bqrsPath]);
     });
   });
 
@@ -105,7 +152,108 @@ class SomeOtherClass extends Node {
         symbol: 'myFunction'
       });
 
-      expect(result).toContain('quickeval.bqrs');
+      expect(result.bqrsPath).toContain('quickeval.bqrs');
+    });
+  });
+
+  it('should evaluate the symbol range on the query server and return the first page', async () => {
+    const testContent = `import javascript
+
+predicate isVulnerable(DataFlow::Node node) {
+  none()
+}
+`;
+
+    await withTempFile(testContent, 'test-quick-eval-page', async (tempFile) => {
+      const result = await quickEvaluate({
+        file: tempFile,
+        db: '/mock/db',
+        symbol: 'isVulnerable',
+        output_path: '/tmp/quickeval-page.bqrs',
+        page_size: 2,
+      });
+
+      expect(runQueryOnQueryServer).toHaveBeenCalledWith({
+        database: '/mock/db',
+        outputPath: '/tmp/quickeval-page.bqrs',
+        queryPath: tempFile,
+        quickEvalPosition: { column: 11, endColumn: 22, endLine: 3, fileName: tempFile, line: 3 },
+      });
+      const decodeCall = vi.mocked(executeCodeQLCommand).mock.calls.find(call => call[0] === 'bqrs decode')!;
+      expect(decodeCall[1]).toMatchObject({ format: 'json', 'result-set': '#select', rows: 2 });
+      expect(result).toMatchObject({
+        columns: [{ kind: 'e', name: 'node' }],
+        next: 120,
+        resultSet: '#select',
+        totalRows: 3,
+        tuples: [['a'], ['b']],
+      });
+    });
+  });
+
+  it('should page an existing result without re-evaluating', async () => {
+    const testContent = `predicate p() { any() }`;
+
+    await withTempFile(testContent, 'test-quick-eval-next-page', async (tempFile) => {
+      const outputPath = join(createTestTempDir('quick-eval'), 'paged.bqrs');
+      await fs.writeFile(outputPath, '');
+
+      const result = await quickEvaluate({
+        file: tempFile,
+        db: '/mock/db',
+        symbol: 'p',
+        output_path: outputPath,
+        result_set: 'edges',
+        start_at: 120,
+      });
+
+      expect(runQueryOnQueryServer).not.toHaveBeenCalled();
+      expect(result.resultSet).toBe('edges');
+      expect(result.tuples).toEqual([['c']]);
+      expect(result.next).toBeUndefined();
+    });
+  });
+
+  it('should reject paging when there is no earlier result', async () => {
+    const testContent = `predicate p() { any() }`;
+
+    await withTempFile(testContent, 'test-quick-eval-no-result', async (tempFile) => {
+      await expect(quickEvaluate({
+        file: tempFile,
+        db: '/mock/db',
+        symbol: 'p',
+        output_path: '/nonexistent/quickeval.bqrs',
+        start_at: 120,
+      })).rejects.toThrow('call without start_at first');
+    });
+  });
+
+  it('should require output_path when paging', async () => {
+    await withTempFile('predicate p() { any() }', 'test-quick-eval-page-no-output', async (tempFile) => {
+      await expect(quickEvaluate({
+        file: tempFile,
+        db: '/mock/db',
+        symbol: 'p',
+        start_at: 120,
+      })).rejects.toThrow('Paging with start_at requires output_path');
+      expect(runQueryOnQueryServer).not.toHaveBeenCalled();
+    });
+  });
+
+  it('should report query server evaluation failures', async () => {
+    vi.mocked(runQueryOnQueryServer).mockResolvedValueOnce({
+      error: 'Query server evaluation failed (compilation error): could not resolve type Foo',
+      stderr: '',
+      stdout: '',
+      success: false,
+    });
+
+    await withTempFile('predicate p() { any() }', 'test-quick-eval-failure', async (tempFile) => {
+      await expect(quickEvaluate({
+        file: tempFile,
+        db: '/mock/db',
+        symbol: 'p',
+      })).rejects.toThrow('could not resolve type Foo');
     });
   });
 
@@ -178,8 +326,8 @@ class VulnerableCall extends DataFlow::CallNode {
         symbol: 'hasVulnerability'
       });
 
-      expect(classResult).toContain('quickeval.bqrs');
-      expect(predicateResult).toContain('quickeval.bqrs');
+      expect(classResult.position.line).toBe(20);
+      expect(predicateResult.position.line).toBe(14);
     });
   });
 });
@@ -201,6 +349,9 @@ describe('registerQuickEvaluateTool', () => {
         db: expect.any(Object),
         symbol: expect.any(Object),
         output_path: expect.any(Object),
+        page_size: expect.any(Object),
+        result_set: expect.any(Object),
+        start_at: expect.any(Object),
       }),
       expect.any(Function)
     );
@@ -229,7 +380,7 @@ class TestClass extends Node {
       });
 
       expect(result).toEqual({
-        content: [{ type: 'text', text: expect.stringContaining('bqrs') }],
+        content: [{ type: 'text', text: expect.stringContaining('"bqrsPath"') }],
       });
     });
   });
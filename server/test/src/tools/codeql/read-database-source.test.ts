@@ -223,6 +223,25 @@ describe('readDatabaseSource (src/ directory)', () => {
       readDatabaseSource({ databasePath: dir, filePath: 'does/not/exist.java' }),
     ).rejects.toThrow('File not found in src/');
   });
+
+  it('resolves a file:// URI and slices lines like src.zip', async () => {
+    await createDirDatabase(dir);
+    await fs.writeFile(join(dir, 'src', 'home/user/repo/lib/Crlf.java'), 'a\r\nb\r\nc\r\n', 'utf-8');
+
+    const result = await readDatabaseSource({
+      databasePath: dir,
+      filePath: 'file:///checkout/home/user/repo/lib/Crlf.java',
+      startLine: 2,
+    });
+
+    expect(result).toMatchObject({
+      content: 'b\nc\n',
+      endLine: 4,
+      entryPath: 'home/user/repo/lib/Crlf.java',
+      startLine: 2,
+      totalLines: 4,
+    });
+  });
 });
 
 // ---------------------------------------------------------------------------
@@ -330,7 +349,7 @@ describe('readDatabaseSource listing mode filtering', () => {
 });
 
 // ---------------------------------------------------------------------------
-// applyLineRange validation
+// Line range validation
 // ---------------------------------------------------------------------------
 
 describe('readDatabaseSource line range validation', () => {
@@ -359,7 +378,7 @@ describe('readDatabaseSource line range validation', () => {
 });
 
 // ---------------------------------------------------------------------------
-// resolveEntryPath ambiguous suffix match
+// Ambiguous suffix match
 // ---------------------------------------------------------------------------
 
 describe('readDatabaseSource ambiguous suffix match', () => {
@@ -391,3 +410,44 @@ describe('readDatabaseSource ambiguous suffix match', () => {
     expect(file.content).toBe('short');
   });
 });
+
+// ---------------------------------------------------------------------------
+// Entries above the size limit
+// ---------------------------------------------------------------------------
+
+describe('readDatabaseSource large entries', () => {
+  let dir: string;
+
+  beforeEach(async () => {
+    dir = createTestTempDir('read-src-large');
+    await fs.writeFile(join(dir, 'codeql-database.yml'), 'primaryLanguage: java\n');
+    const zip = new AdmZip();
+    // ~11 MB: above the 10 MB limit for whole-entry reads.
+    const lines = Array.from({ length: 500_000 }, (_, i) => `// generated line ${String(i + 1).padStart(6, '0')}`);
+    zip.addFile('gen/Generated.java', Buffer.from(lines.join('\n'), 'utf-8'));
+    zip.writeZip(join(dir, 'src.zip'));
+  });
+
+  afterEach(() => {
+    cleanupTestTempDir(dir);
+  });
+
+  it('refuses to read the whole entry', async () => {
+    await expect(
+      readDatabaseSource({ databasePath: dir, filePath: 'gen/Generated.java' }),
+    ).rejects.toThrow('too large to read');
+  });
+
+  it('reads a line range of the entry', async () => {
+    const result = await readDatabaseSource({
+      databasePath: dir,
+      filePath: 'Generated.java',
+      startLine: 250_000,
+      endLine: 250_001,
+    });
+
+    const file = result as import('../../../../src/tools/codeql/read-database-source').DatabaseSourceFile;
+    expect(file.content).toBe('// generated line 250000\n// generated line 250001');
+    expect(file.totalLines).toBe(500_000);
+  });
+});
@@ -368,4 +368,105 @@ describe('searchQlCode', () => {
       expect(after.results[0].filePath).toContain('src');
     });
   });
+
+  describe('large trees', () => {
+    function setupTree(): string {
+      tempDir = createTestTempDir('search-ql-code');
+      for (let d = 0; d < 10; d++) {
+        const dir = join(tempDir, `pkg${d}`, 'lib');
+        mkdirSync(dir, { recursive: true });
+        for (let f = 0; f < 15; f++) {
+          writeFileSync(join(dir, `M${f}.qll`), `module M${f} {\n  predicate findme() { any() }\n}\n`);
+        }
+      }
+      return tempDir;
+    }
+
+    it('should return the same results on workers and on the main thread', async () => {
+      const dir = setupTree();
+
+      const options = { pattern: 'findme', paths: [dir], maxResults: 40, contextLines: 1, useIndex: false };
+      const inline = await searchQlCode({ ...options, useWorkers: false });
+      const workers = await searchQlCode({ ...options, useWorkers: true });
+
+      expect(inline.filesSearched).toBe(150);
+      expect(inline.totalMatches).toBe(150);
+      expect(inline.returnedMatches).toBe(40);
+      expect(workers).toEqual(inline);
+      const paths = inline.results.map(r => r.filePath);
+      expect(paths).toEqual([...paths].sort());
+    });
+
+    it('should stop at maxResults when countAllMatches is false', async () => {
+      const dir = setupTree();
+
+      const result = await searchQlCode({ pattern: 'findme', paths: [dir], maxResults: 5, countAllMatches: false });
+
+      expect(result.returnedMatches).toBe(5);
+      expect(result.truncated).toBe(true);
+      expect(result.stoppedEarly).toBe(true);
+      expect(result.totalMatches).toBeGreaterThan(5);
+      expect(result.filesSearched).toBeLessThan(150);
+    });
+  });
+
+  describe('trigram index', () => {
+    beforeEach(() => {
+      tempDir = createTestTempDir('search-ql-code');
+      vi.stubEnv('CODEQL_MCP_SEARCH_INDEX_DIR', join(tempDir, 'index'));
+    });
+
+    afterEach(() => {
+      vi.unstubAllEnvs();
+    });
+
+    it('should index files on the first search and skip non-matching files afterwards', async () => {
+      const src = join(tempDir, 'src');
+      mkdirSync(src);
+      writeFileSync(join(src, 'A.qll'), 'class Alpha extends Node {}\n');
+      writeFileSync(join(src, 'B.qll'), 'class Beta extends Node {}\n');
+      writeFileSync(join(src, 'C.qll'), 'class Gamma extends Node {}\n');
+
+      const first = await searchQlCode({ pattern: 'class Beta', paths: [src] });
+      expect(first.totalMatches).toBe(1);
+      expect(first.index).toEqual({ freshFiles: 0, refreshedFiles: 3, skippedFiles: 0, narrowed: true });
+
+      const second = await searchQlCode({ pattern: 'class Beta', paths: [src] });
+      expect(second.results).toEqual(first.results);
+      expect(second.filesSearched).toBe(3);
+      expect(second.index).toEqual({ freshFiles: 3, refreshedFiles: 0, skippedFiles: 2, narrowed: true });
+
+      const unnarrowed = await searchQlCode({ pattern: '\\w+ \\w+', paths: [src] });
+      expect(unnarrowed.totalMatches).toBe(3);
+      expect(unnarrowed.index!.narrowed).toBe(false);
+    });
+
+    it('should re-read and reindex files that changed since they were indexed', async () => {
+      const file = join(tempDir, 'Lib.qll');
+      writeFileSync(file, 'predicate old() { any() }\n');
+      await searchQlCode({ pattern: 'newPredicate', paths: [tempDir] });
+
+      writeFileSync(file, 'predicate old() { any() }\npredicate newPredicate() { any() }\n');
+      const result = await searchQlCode({ pattern: 'newPredicate', paths: [tempDir] });
+
+      expect(result.totalMatches).toBe(1);
+      expect(result.results[0].lineNumber).toBe(2);
+      expect(result.index).toMatchObject({ freshFiles: 0, refreshedFiles: 1 });
+    });
+
+    it('should return the same results with and without the index', async () => {
+      for (let i = 0; i < 20; i++) {
+        writeFileSync(join(tempDir, `M${i}.qll`), `module M${i} {\n  predicate p${i % 3}() { none() }\n}\n`);
+      }
+      const options = { pattern: 'predicate P1|module M1\\d', paths: [tempDir], caseSensitive: false, contextLines: 1 };
+
+      const withoutIndex = await searchQlCode({ ...options, useIndex: false });
+      await searchQlCode(options);
+      const withIndex = await searchQlCode(options);
+
+      expect(withIndex.index!.skippedFiles).toBeGreaterThan(0);
+      const { index: _index, ...rest } = withIndex;
+      expect(rest).toEqual(withoutIndex);
+    });
+  });
 });
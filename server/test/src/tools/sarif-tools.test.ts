@@ -3,7 +3,7 @@
  * and integration with sarif-utils library functions.
  */
 
-import { existsSync, rmSync, writeFileSync } from 'fs';
+import { existsSync, mkdirSync, rmSync, writeFileSync } from 'fs';
 import { join } from 'path';
 import { afterEach, beforeEach, describe, expect, it, vi } from 'vitest';
 import { McpServer } from '@modelcontextprotocol/sdk/server/mcp.js';
@@ -124,7 +124,7 @@ describe('SARIF Tools', () => {
   });
 
   describe('registerSarifTools', () => {
-    it('should register all 8 SARIF tools', () => {
+    it('should register all 10 SARIF tools', () => {
       vi.spyOn(sessionDataManager, 'getConfig').mockReturnValue({
         storageLocation: testStorageDir,
         autoTrackSessions: true,
@@ -140,9 +140,10 @@ describe('SARIF Tools', () => {
       });
 
       registerSarifTools(mockServer);
-      expect(mockServer.tool).toHaveBeenCalledTimes(8);
+      expect(mockServer.tool).toHaveBeenCalledTimes(10);
 
       const toolNames = (mockServer.tool as any).mock.calls.map((call: any) => call[0]);
+      expect(toolNames).toContain('sarif_alert_context');
       expect(toolNames).toContain('sarif_compare_alerts');
       expect(toolNames).toContain('sarif_deduplicate_rules');
       expect(toolNames).toContain('sarif_diff_by_commits');
@@ -151,6 +152,7 @@ describe('SARIF Tools', () => {
       expect(toolNames).toContain('sarif_list_rules');
       expect(toolNames).toContain('sarif_rule_to_markdown');
       expect(toolNames).toContain('sarif_store');
+      expect(toolNames).toContain('sarif_cache_stats');
     });
   });
 
@@ -348,6 +350,30 @@ describe('SARIF Tools', () => {
         expect(parsed.changedRules[0].delta).toBe(-1);
       });
 
+      it('should match individual results when matchResults is set', async () => {
+        const sarifB = createTestSarif();
+        sarifB.runs[0].results = sarifB.runs[0].results.filter(r => r.ruleId !== 'js/xss');
+        const pathB = join(testStorageDir, 'modified-results.sarif');
+        writeFileSync(pathB, JSON.stringify(sarifB));
+
+        const result = await handlers.sarif_diff_runs({
+          sarifPathA: testSarifPath,
+          sarifPathB: pathB,
+          matchResults: true,
+        });
+        const parsed = JSON.parse(result.content[0].text);
+
+        expect(parsed.resultDiff.summary.absentResults).toBe(1);
+        expect(parsed.resultDiff.summary.newResults).toBe(0);
+        const xss = parsed.resultDiff.rules.find((r: { ruleId: string }) => r.ruleId === 'js/xss');
+        expect(xss.absentIndicesA).toEqual([0]);
+      });
+
+      it('should omit resultDiff by default', async () => {
+        const result = await handlers.sarif_diff_runs({ sarifPathA: testSarifPath, sarifPathB: testSarifPath });
+        expect(JSON.parse(result.content[0].text).resultDiff).toBeUndefined();
+      });
+
       it('should return error when sarifPathA is missing', async () => {
         const result = await handlers.sarif_diff_runs({
           sarifPathB: testSarifPath,
@@ -356,6 +382,74 @@ describe('SARIF Tools', () => {
       });
     });
 
+    describe('sarif_alert_context', () => {
+      let dbPath: string;
+
+      beforeEach(() => {
+        dbPath = join(testStorageDir, 'db');
+        const lines = (name: string) => Array.from({ length: 60 }, (_, i) => `${name} line ${i + 1}`).join('\n');
+        for (const file of ['db.js', 'handler.js', 'api.js']) {
+          mkdirSync(join(dbPath, 'src', 'home', 'user', 'repo', 'src'), { recursive: true });
+          writeFileSync(join(dbPath, 'src', 'home', 'user', 'repo', 'src', file), lines(file));
+        }
+      });
+
+      it('should return snippets for every alert location grouped by file', async () => {
+        const result = await handlers.sarif_alert_context({ sarifPath: testSarifPath, databasePath: dbPath, contextLines: 1 });
+        const parsed = JSON.parse(result.content[0].text);
+
+        expect(parsed.sourceType).toBe('src/');
+        expect(parsed.totalAlerts).toBe(3);
+        expect(parsed.files.map((f: any) => f.path)).toEqual(['src/db.js', 'src/handler.js', 'src/api.js', 'src/views.js']);
+
+        const db = parsed.files[0];
+        expect(db.snippets).toHaveLength(1);
+        expect(db.snippets[0].text).toBe('db.js line 41\ndb.js line 42\ndb.js line 43');
+        expect(db.snippets[0].locations.map((l: any) => l.kind)).toEqual(['primary', 'flow']);
+        expect(parsed.files[3].error).toContain('File not found');
+      });
+
+      it('should page alerts with a cursor', async () => {
+        const first = JSON.parse((await handlers.sarif_alert_context({
+          sarifPath: testSarifPath, databasePath: dbPath, maxAlerts: 2,
+        })).content[0].text);
+        expect(first.alerts).toHaveLength(2);
+        expect(first.nextCursor).toBe(2);
+
+        const second = JSON.parse((await handlers.sarif_alert_context({
+          sarifPath: testSarifPath, databasePath: dbPath, maxAlerts: 2, cursor: first.nextCursor,
+        })).content[0].text);
+        expect(second.alerts.map((a: any) => a.ruleId)).toEqual(['js/xss']);
+        expect(second.nextCursor).toBeUndefined();
+      });
+
+      it('should require a database path', async () => {
+        const result = await handlers.sarif_alert_context({ sarifPath: testSarifPath });
+        expect(result.content[0].text).toContain('No databasePath provided');
+      });
+    });
+
+    describe('sarif_cache_stats', () => {
+      it('should count a hit when the same SARIF file is loaded again', async () => {
+        const before = JSON.parse((await handlers.sarif_cache_stats({})).content[0].text);
+        await handlers.sarif_list_rules({ sarifPath: testSarifPath });
+        await handlers.sarif_extract_rule({ sarifPath: testSarifPath, ruleId: 'js/xss' });
+        const after = JSON.parse((await handlers.sarif_cache_stats({})).content[0].text);
+
+        expect(after.misses - before.misses).toBe(1);
+        expect(after.hits - before.hits).toBe(1);
+      });
+
+      it('should re-parse a SARIF file after it changes', async () => {
+        await handlers.sarif_list_rules({ sarifPath: testSarifPath });
+        writeFileSync(testSarifPath, JSON.stringify(createZeroResultsSarif()));
+
+        const result = await handlers.sarif_list_rules({ sarifPath: testSarifPath });
+        const parsed = JSON.parse(result.content[0].text);
+        expect(parsed.totalResults).toBe(0);
+      });
+    });
+
     describe('sarif_store', () => {
       let mockPutCacheEntry: ReturnType<typeof vi.fn>;
 
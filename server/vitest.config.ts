@@ -29,6 +29,10 @@ export default defineConfig({
     pool: 'forks', // Use process forks for better isolation
     isolate: true, // Isolate each test file
     fileParallelism: false, // Disable file-level parallelism for stability
+    // Micro-benchmarks run separately via `npm run bench`
+    benchmark: {
+      include: ['test/bench/**/*.bench.ts'],
+    },
     coverage: {
       include: ['src/**/*.ts'],
       exclude: ['src/**/*.d.ts', 'src/types/**'],